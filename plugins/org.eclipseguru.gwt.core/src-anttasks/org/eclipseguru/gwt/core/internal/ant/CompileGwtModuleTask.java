@@ -15,11 +15,14 @@ import org.eclipseguru.gwt.core.GwtCore;
 import org.eclipseguru.gwt.core.GwtModelException;
 import org.eclipseguru.gwt.core.GwtModule;
 import org.eclipseguru.gwt.core.GwtProject;
+import org.eclipseguru.gwt.core.builder.GwtCompileResultCache;
 import org.eclipseguru.gwt.core.builder.GwtProjectPublisher;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Task;
 
+import java.io.File;
+
 /**
  * Ant Task for compiling a GWT module.
  */
@@ -27,6 +30,8 @@ public class CompileGwtModuleTask extends Task {
 
 	private String moduleId;
 
+	private File cacheLocation;
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.apache.tools.ant.Task#execute()
@@ -46,12 +51,17 @@ public class CompileGwtModuleTask extends Task {
 
 		// publish project and block while publishing
 		final GwtProjectPublisher publisher = new GwtProjectPublisher(module);
+		publisher.setResultCacheLocation(cacheLocation);
 		try {
 			publisher.schedule();
 			publisher.join();
 		} catch (final InterruptedException e) {
 			Thread.currentThread().interrupt();
 		}
+
+		// report cache statistics
+		final GwtCompileResultCache cache = null != cacheLocation ? GwtCompileResultCache.getCache(cacheLocation) : GwtCompileResultCache.getCache();
+		log("GWT compile cache " + cache.getStoreFolder() + ": " + cache.getHits() + " hits, " + cache.getMisses() + " misses, " + cache.getStores() + " stored, " + cache.getEvictions() + " evicted");
 	}
 
 	private GwtModule findModule(final String moduleId) throws BuildException {
@@ -69,6 +79,13 @@ public class CompileGwtModuleTask extends Task {
 		return null;
 	}
 
+	/**
+	 * @return the cacheLocation
+	 */
+	public File getCacheLocation() {
+		return cacheLocation;
+	}
+
 	/**
 	 * @return the moduleId
 	 */
@@ -76,6 +93,15 @@ public class CompileGwtModuleTask extends Task {
 		return moduleId;
 	}
 
+	/**
+	 * @param cacheLocation
+	 *            the folder storing compile results to set (maybe shared
+	 *            with other workspaces and machines)
+	 */
+	public void setCacheLocation(final File cacheLocation) {
+		this.cacheLocation = cacheLocation;
+	}
+
 	/**
 	 * @param moduleId
 	 *            the moduleId to set
@@ -0,0 +1,489 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.internal.compilerd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.Permission;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * A long running GWT compiler process.
+ * <p>
+ * The worker is launched by the GWT tooling with the port of a local server
+ * socket and a secret. It connects back, sends the secret and receives the
+ * GWT runtime classpath. The GWT runtime is loaded once into a class loader
+ * which is kept for the lifetime of the worker. Each compile request is then
+ * run in a new class loader for the project classpath which delegates to the
+ * runtime class loader. Classes and resources are looked up in the same order as
+ * with the classpath of a launched compiler, i.e. the project source folders
+ * win over the GWT runtime. Everything the compiler writes to
+ * <code>System.out</code> and <code>System.err</code> is streamed back line
+ * by line and copied to the output of the worker process. The worker
+ * terminates when the connection is closed.
+ * </p>
+ * <p>
+ * This class is loaded into the compiler process and must only depend on
+ * the Java runtime. The protocol constants must match the ones used by the
+ * tooling.
+ * </p>
+ */
+public final class GwtCompilerWorker {
+
+	/**
+	 * Streams lines written to it back to the tooling.
+	 */
+	private static final class LogOutputStream extends OutputStream {
+
+		/** the kind of the stream */
+		private final byte kind;
+
+		/** the stream of the worker process the output is copied to */
+		private final PrintStream processOutput;
+
+		/** the collected bytes of the current line */
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param kind
+		 * @param processOutput
+		 */
+		LogOutputStream(final byte kind, final PrintStream processOutput) {
+			this.kind = kind;
+			this.processOutput = processOutput;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.OutputStream#flush()
+		 */
+		@Override
+		public synchronized void flush() throws IOException {
+			if (line.size() > 0) {
+				sendLine();
+			}
+			processOutput.flush();
+		}
+
+		/**
+		 * Sends the current line.
+		 * 
+		 * @throws IOException
+		 */
+		private void sendLine() throws IOException {
+			String text = line.toString();
+			line.reset();
+			if (text.length() > MAX_LINE_LENGTH) {
+				text = text.substring(0, MAX_LINE_LENGTH);
+			}
+			synchronized (out) {
+				out.writeByte(MSG_LOG);
+				out.writeByte(kind);
+				out.writeUTF(text);
+				out.flush();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.OutputStream#write(int)
+		 */
+		@Override
+		public synchronized void write(final int b) throws IOException {
+			processOutput.write(b);
+			if (b == '\n') {
+				sendLine();
+			} else if (b != '\r') {
+				line.write(b);
+			}
+		}
+	}
+
+	/**
+	 * Loads the classes of a project in the order of the classpath of a
+	 * launched compiler.
+	 * <p>
+	 * Classes and resources are looked up in the Java runtime, the project
+	 * source folders, the GWT runtime and the remaining project classpath in
+	 * that order. The classes found in the project source folders and
+	 * classpath are defined by this loader so that they see each other in the
+	 * same order.
+	 * </p>
+	 */
+	private static final class ProjectClassLoader extends ClassLoader {
+
+		/** finds the resources of the project source folders */
+		private final URLClassLoader sourceFinder;
+
+		/** the loader of the GWT runtime */
+		private final ClassLoader runtimeLoader;
+
+		/** finds the resources of the remaining project classpath */
+		private final URLClassLoader classpathFinder;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param sourceClasspath
+		 *            the project source folders
+		 * @param runtimeLoader
+		 *            the loader of the GWT runtime
+		 * @param classpath
+		 *            the remaining project classpath
+		 * @param jreLoader
+		 *            the loader of the Java runtime
+		 */
+		ProjectClassLoader(final URL[] sourceClasspath, final ClassLoader runtimeLoader, final URL[] classpath, final ClassLoader jreLoader) {
+			super(jreLoader);
+			sourceFinder = new URLClassLoader(sourceClasspath, null);
+			this.runtimeLoader = runtimeLoader;
+			classpathFinder = new URLClassLoader(classpath, null);
+		}
+
+		/**
+		 * Defines a class of the project.
+		 * 
+		 * @param name
+		 * @param url
+		 *            the location of the class file
+		 * @return the class
+		 * @throws ClassNotFoundException
+		 */
+		private Class<?> defineClass(final String name, final URL url) throws ClassNotFoundException {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+			try {
+				final InputStream in = url.openStream();
+				try {
+					final byte[] buffer = new byte[8192];
+					int read;
+					while ((read = in.read(buffer)) != -1) {
+						bytes.write(buffer, 0, read);
+					}
+				} finally {
+					in.close();
+				}
+			} catch (final IOException e) {
+				throw new ClassNotFoundException(name, e);
+			}
+
+			final int lastDot = name.lastIndexOf('.');
+			if (lastDot != -1) {
+				final String packageName = name.substring(0, lastDot);
+				if (null == getPackage(packageName)) {
+					definePackage(packageName, null, null, null, null, null, null, null);
+				}
+			}
+			return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.ClassLoader#findClass(java.lang.String)
+		 */
+		@Override
+		protected Class<?> findClass(final String name) throws ClassNotFoundException {
+			final String path = name.replace('.', '/').concat(".class"); //$NON-NLS-1$
+			final URL source = sourceFinder.findResource(path);
+			if (null != source) {
+				return defineClass(name, source);
+			}
+			try {
+				return runtimeLoader.loadClass(name);
+			} catch (final ClassNotFoundException e) {
+				final URL classFile = classpathFinder.findResource(path);
+				if (null == classFile) {
+					throw e;
+				}
+				return defineClass(name, classFile);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.ClassLoader#findResource(java.lang.String)
+		 */
+		@Override
+		protected URL findResource(final String name) {
+			URL url = sourceFinder.findResource(name);
+			if (null == url) {
+				url = runtimeLoader.getResource(name);
+			}
+			if (null == url) {
+				url = classpathFinder.findResource(name);
+			}
+			return url;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.ClassLoader#findResources(java.lang.String)
+		 */
+		@Override
+		protected Enumeration<URL> findResources(final String name) throws IOException {
+			final List<URL> urls = Collections.list(sourceFinder.findResources(name));
+			for (final Enumeration<URL> runtimeUrls = runtimeLoader.getResources(name); runtimeUrls.hasMoreElements();) {
+				// the Java runtime resources are already included
+				final URL url = runtimeUrls.nextElement();
+				if (!urls.contains(url)) {
+					urls.add(url);
+				}
+			}
+			urls.addAll(Collections.list(classpathFinder.findResources(name)));
+			return Collections.enumeration(urls);
+		}
+	}
+
+	/**
+	 * Thrown instead of exiting the worker when the compiler calls
+	 * <code>System.exit</code>.
+	 */
+	private static final class ExitTrappedException extends SecurityException {
+
+		/** serialVersionUID */
+		private static final long serialVersionUID = 1L;
+
+		/** status */
+		final int status;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param status
+		 */
+		ExitTrappedException(final int status) {
+			super("System.exit(" + status + ")");
+			this.status = status;
+		}
+	}
+
+	/**
+	 * Traps <code>System.exit</code> while a compile is running and allows
+	 * everything else.
+	 */
+	private static final class ExitTrap extends SecurityManager {
+
+		/** indicates if a compile is running */
+		volatile boolean compiling;
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.SecurityManager#checkExit(int)
+		 */
+		@Override
+		public void checkExit(final int status) {
+			if (compiling) {
+				throw new ExitTrappedException(status);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.SecurityManager#checkPermission(java.security.Permission)
+		 */
+		@Override
+		public void checkPermission(final Permission perm) {
+			// allowed
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.SecurityManager#checkPermission(java.security.Permission,
+		 * java.lang.Object)
+		 */
+		@Override
+		public void checkPermission(final Permission perm, final Object context) {
+			// allowed
+		}
+	}
+
+	/** request to compile a module */
+	public static final byte CMD_COMPILE = 1;
+
+	/** request to terminate */
+	public static final byte CMD_SHUTDOWN = 2;
+
+	/** a line of compiler output */
+	public static final byte MSG_LOG = 1;
+
+	/** a compile finished */
+	public static final byte MSG_DONE = 2;
+
+	/** output written to <code>System.out</code> */
+	public static final byte LOG_OUT = 1;
+
+	/** output written to <code>System.err</code> */
+	public static final byte LOG_ERR = 2;
+
+	/** the maximum length of a streamed line */
+	private static final int MAX_LINE_LENGTH = 16 * 1024;
+
+	/** the connection to the tooling (guarded by <code>out</code>) */
+	static DataOutputStream out;
+
+	/**
+	 * Compiles a module.
+	 * 
+	 * @param runtimeLoader
+	 *            the class loader of the GWT runtime
+	 * @param jreLoader
+	 *            the class loader of the Java runtime
+	 * @param trap
+	 * @param in
+	 * @throws IOException
+	 */
+	private static void compile(final ClassLoader runtimeLoader, final ClassLoader jreLoader, final ExitTrap trap, final DataInputStream in) throws IOException {
+		final String mainClass = in.readUTF();
+		final URL[] sourceClasspath = readClasspath(in);
+		final URL[] classpath = readClasspath(in);
+		final String[] args = new String[in.readInt()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = in.readUTF();
+		}
+
+		// a fresh loader so that changed generators are picked up
+		final ClassLoader projectLoader = new ProjectClassLoader(sourceClasspath, runtimeLoader, classpath, jreLoader);
+		final Thread thread = Thread.currentThread();
+		final ClassLoader contextLoader = thread.getContextClassLoader();
+		final PrintStream stdout = System.out;
+		final PrintStream stderr = System.err;
+		final PrintStream compileOut = new PrintStream(new LogOutputStream(LOG_OUT, stdout), true);
+		final PrintStream compileErr = new PrintStream(new LogOutputStream(LOG_ERR, stderr), true);
+		int status = 0;
+		try {
+			thread.setContextClassLoader(projectLoader);
+			System.setOut(compileOut);
+			System.setErr(compileErr);
+			trap.compiling = true;
+			final Method main = projectLoader.loadClass(mainClass).getMethod("main", new Class[] { String[].class }); //$NON-NLS-1$
+			main.invoke(null, new Object[] { args });
+		} catch (final InvocationTargetException e) {
+			if (e.getCause() instanceof ExitTrappedException) {
+				status = ((ExitTrappedException) e.getCause()).status;
+			} else {
+				e.getCause().printStackTrace(compileErr);
+				status = 1;
+			}
+		} catch (final ExitTrappedException e) {
+			status = e.status;
+		} catch (final Throwable e) {
+			e.printStackTrace(compileErr);
+			status = 1;
+		} finally {
+			trap.compiling = false;
+			compileOut.flush();
+			compileErr.flush();
+			System.setOut(stdout);
+			System.setErr(stderr);
+			thread.setContextClassLoader(contextLoader);
+		}
+
+		// report the heap left over for recycling decisions
+		System.gc();
+		final Runtime runtime = Runtime.getRuntime();
+		synchronized (out) {
+			out.writeByte(MSG_DONE);
+			out.writeInt(status);
+			out.writeLong(runtime.totalMemory() - runtime.freeMemory());
+			out.writeLong(runtime.maxMemory());
+			out.flush();
+		}
+	}
+
+	/**
+	 * Runs the worker.
+	 * 
+	 * @param args
+	 *            the port to connect to and the secret to send
+	 */
+	public static void main(final String[] args) {
+		if (args.length != 2) {
+			System.err.println("usage: GwtCompilerWorker <port> <secret>"); //$NON-NLS-1$
+			System.exit(2);
+		}
+
+		try {
+			final Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), Integer.parseInt(args[0])); //$NON-NLS-1$
+			socket.setTcpNoDelay(true);
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeUTF(args[1]);
+			out.flush();
+
+			// the GWT runtime stays loaded for all compiles
+			final ClassLoader jreLoader = ClassLoader.getSystemClassLoader().getParent();
+			final ClassLoader runtimeLoader = new URLClassLoader(readClasspath(in), jreLoader);
+
+			final ExitTrap trap = new ExitTrap();
+			System.setSecurityManager(trap);
+			while (true) {
+				final byte command = in.readByte();
+				if (command == CMD_COMPILE) {
+					compile(runtimeLoader, jreLoader, trap, in);
+				} else {
+					break;
+				}
+			}
+		} catch (final EOFException e) {
+			// closed by the tooling
+		} catch (final IOException e) {
+			e.printStackTrace();
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Reads a classpath.
+	 * 
+	 * @param in
+	 * @return the classpath URLs
+	 * @throws IOException
+	 */
+	private static URL[] readClasspath(final DataInputStream in) throws IOException {
+		final URL[] urls = new URL[in.readInt()];
+		for (int i = 0; i < urls.length; i++) {
+			final String entry = in.readUTF();
+			try {
+				urls[i] = new File(entry).toURI().toURL();
+			} catch (final MalformedURLException e) {
+				throw new IOException("Invalid classpath entry " + entry); //$NON-NLS-1$
+			}
+		}
+		return urls;
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private GwtCompilerWorker() {
+		// empty
+	}
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core;
+
+import org.eclipse.core.resources.IStorage;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A module descriptor stored in an archive on the classpath.
+ * <p>
+ * Carries the module source information read when the archive was scanned so
+ * that the archive does not need to be opened again for resolving inherited
+ * modules.
+ * </p>
+ */
+final class ArchiveModuleDescriptor implements IStorage {
+
+	/** archive */
+	private final File archive;
+
+	/** archivePath */
+	private final IPath archivePath;
+
+	/** entryName */
+	private final String entryName;
+
+	/** moduleSource */
+	private final GwtModuleDescriptor moduleSource;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param archive
+	 *            the archive file in the local file system
+	 * @param archivePath
+	 *            the path of the archive on the classpath
+	 * @param entryName
+	 *            the name of the zip entry
+	 * @param moduleSource
+	 *            the module source information (maybe <code>null</code> if
+	 *            the descriptor could not be read during the scan)
+	 */
+	ArchiveModuleDescriptor(final File archive, final IPath archivePath, final String entryName, final GwtModuleDescriptor moduleSource) {
+		this.archive = archive;
+		this.archivePath = archivePath;
+		this.entryName = entryName;
+		this.moduleSource = moduleSource;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ArchiveModuleDescriptor)) {
+			return false;
+		}
+		final ArchiveModuleDescriptor other = (ArchiveModuleDescriptor) obj;
+		return archive.equals(other.archive) && entryName.equals(other.entryName);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.runtime.IAdaptable#getAdapter(java.lang.Class)
+	 */
+	@SuppressWarnings("unchecked")
+	public Object getAdapter(final Class adapter) {
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IStorage#getContents()
+	 */
+	public InputStream getContents() throws CoreException {
+		try {
+			final ZipFile zipFile = new ZipFile(archive);
+			final ZipEntry entry = zipFile.getEntry(entryName);
+			if (null == entry) {
+				zipFile.close();
+				throw new CoreException(GwtCore.newErrorStatus("Entry " + entryName + " not found in " + archive));
+			}
+			return new FilterInputStream(zipFile.getInputStream(entry)) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						zipFile.close();
+					}
+				}
+			};
+		} catch (final IOException e) {
+			throw new CoreException(GwtCore.newErrorStatus("Error while reading " + entryName + " from " + archive, e));
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IStorage#getFullPath()
+	 */
+	public IPath getFullPath() {
+		return archivePath.append(entryName);
+	}
+
+	/**
+	 * Returns the module source information read during the archive scan.
+	 * 
+	 * @return the module source information (maybe <code>null</code>)
+	 */
+	GwtModuleDescriptor getModuleSource() {
+		return moduleSource;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IStorage#getName()
+	 */
+	public String getName() {
+		return entryName.substring(entryName.lastIndexOf('/') + 1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return (31 * archive.hashCode()) + entryName.hashCode();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IStorage#isReadOnly()
+	 */
+	public boolean isReadOnly() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return archive.getPath() + "!/" + entryName; //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core;
+
+import org.xml.sax.SAXException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Caches the module descriptors found in archives on the classpath.
+ * <p>
+ * Each archive is scanned only once by reading its zip central directory. The
+ * module sources of all <code>*.gwt.xml</code> entries are parsed and
+ * remembered by archive location together with the archive size and time
+ * stamp. The cache is shared by all projects and persisted in the plug-in
+ * state location.
+ * </p>
+ */
+final class GwtArchiveModuleCache {
+
+	/**
+	 * The scanned content of an archive.
+	 */
+	private static final class Archive {
+
+		/** length */
+		final long length;
+
+		/** lastModified */
+		final long lastModified;
+
+		/** module sources by entry name */
+		final Map<String, GwtModuleDescriptor> moduleDescriptors;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param length
+		 * @param lastModified
+		 * @param moduleDescriptors
+		 */
+		Archive(final long length, final long lastModified, final Map<String, GwtModuleDescriptor> moduleDescriptors) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.moduleDescriptors = moduleDescriptors;
+		}
+	}
+
+	/** the name of the cache file in the state location */
+	static final String CACHE_FILE_NAME = "archives.index"; //$NON-NLS-1$
+
+	/** MAGIC */
+	private static final int MAGIC = 0x47574152; // GWAR
+
+	/** VERSION */
+	private static final int VERSION = 2;
+
+	/**
+	 * Loads the cache from the specified file.
+	 * <p>
+	 * An empty cache is returned if the file does not exist or could not be
+	 * read.
+	 * </p>
+	 * 
+	 * @param cacheFile
+	 * @return the loaded cache
+	 */
+	static GwtArchiveModuleCache load(final File cacheFile) {
+		final GwtArchiveModuleCache cache = new GwtArchiveModuleCache(cacheFile);
+		if (!cacheFile.isFile()) {
+			return cache;
+		}
+
+		try {
+			cache.read();
+		} catch (final IOException e) {
+			// start over with an empty cache
+			GwtCore.logError("Error while reading GWT archive module cache. Archives will be scanned again.", e);
+			cache.clear();
+		}
+		return cache;
+	}
+
+	/**
+	 * Scans the specified archive for module descriptors.
+	 * 
+	 * @param archive
+	 * @return the module sources by entry name
+	 * @throws IOException
+	 */
+	private static Map<String, GwtModuleDescriptor> scan(final File archive) throws IOException {
+		final ZipFile zipFile = new ZipFile(archive);
+		try {
+			Map<String, GwtModuleDescriptor> moduleDescriptors = null;
+			for (final Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+				final ZipEntry entry = entries.nextElement();
+				if (entry.isDirectory() || !entry.getName().endsWith(GwtUtil.GWT_MODULE_SOURCE_EXTENSION)) {
+					continue;
+				}
+
+				if (null == moduleDescriptors) {
+					moduleDescriptors = new LinkedHashMap<String, GwtModuleDescriptor>();
+				}
+				moduleDescriptors.put(entry.getName(), scanModuleSource(zipFile, entry));
+			}
+			if (null == moduleDescriptors) {
+				return Collections.emptyMap();
+			}
+			return moduleDescriptors;
+		} finally {
+			zipFile.close();
+		}
+	}
+
+	/**
+	 * Reads the module source of the specified entry.
+	 * 
+	 * @param zipFile
+	 * @param entry
+	 * @return the module source (maybe <code>null</code> if it could not be
+	 *         parsed)
+	 * @throws IOException
+	 */
+	private static GwtModuleDescriptor scanModuleSource(final ZipFile zipFile, final ZipEntry entry) throws IOException {
+		final InputStream contents = zipFile.getInputStream(entry);
+		try {
+			return GwtModuleSourceHandler.parse(contents);
+		} catch (final SAXException e) {
+			// the module will report the error when parsed again
+			return null;
+		} catch (final ParserConfigurationException e) {
+			return null;
+		} finally {
+			contents.close();
+		}
+	}
+
+	/** cacheFile */
+	private final File cacheFile;
+
+	/** archives by absolute path */
+	private final Map<String, Archive> archives = new HashMap<String, Archive>();
+
+	/** dirty */
+	private boolean dirty;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param cacheFile
+	 */
+	private GwtArchiveModuleCache(final File cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * Removes everything from the cache.
+	 */
+	synchronized void clear() {
+		archives.clear();
+		dirty = true;
+	}
+
+	/**
+	 * Returns the module descriptors contained in the specified archive.
+	 * <p>
+	 * The archive is scanned if it is not known or if its size or time stamp
+	 * changed.
+	 * </p>
+	 * 
+	 * @param archive
+	 * @return an unmodifiable map of module sources by entry name (a value
+	 *         might be <code>null</code> if the module source could not be
+	 *         parsed)
+	 * @throws IOException
+	 */
+	synchronized Map<String, GwtModuleDescriptor> getModuleDescriptors(final File archive) throws IOException {
+		final String key = archive.getAbsolutePath();
+		final long length = archive.length();
+		final long lastModified = archive.lastModified();
+
+		Archive cached = archives.get(key);
+		if ((null == cached) || (cached.length != length) || (cached.lastModified != lastModified)) {
+			cached = new Archive(length, lastModified, Collections.unmodifiableMap(scan(archive)));
+			archives.put(key, cached);
+			dirty = true;
+		}
+		return cached.moduleDescriptors;
+	}
+
+	/**
+	 * Reads the cache file.
+	 * 
+	 * @throws IOException
+	 */
+	private void read() throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+		try {
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+				throw new IOException("unsupported cache format");
+			}
+
+			final int archiveCount = in.readInt();
+			for (int i = 0; i < archiveCount; i++) {
+				final String key = in.readUTF();
+				final long length = in.readLong();
+				final long lastModified = in.readLong();
+				final int entryCount = in.readInt();
+				final Map<String, GwtModuleDescriptor> moduleDescriptors = new LinkedHashMap<String, GwtModuleDescriptor>(entryCount);
+				for (int j = 0; j < entryCount; j++) {
+					final String entryName = in.readUTF();
+					moduleDescriptors.put(entryName, in.readBoolean() ? GwtModuleIndex.readModuleSource(in) : null);
+				}
+				archives.put(key, new Archive(length, lastModified, Collections.unmodifiableMap(moduleDescriptors)));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Saves the cache if it has been modified.
+	 * <p>
+	 * Archives which no longer exist are not saved.
+	 * </p>
+	 * 
+	 * @throws IOException
+	 */
+	synchronized void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			final Map<String, Archive> existingArchives = new HashMap<String, Archive>(archives.size());
+			for (final Map.Entry<String, Archive> entry : archives.entrySet()) {
+				if (new File(entry.getKey()).isFile()) {
+					existingArchives.put(entry.getKey(), entry.getValue());
+				}
+			}
+
+			out.writeInt(existingArchives.size());
+			for (final Map.Entry<String, Archive> entry : existingArchives.entrySet()) {
+				final Archive archive = entry.getValue();
+				out.writeUTF(entry.getKey());
+				out.writeLong(archive.length);
+				out.writeLong(archive.lastModified);
+				out.writeInt(archive.moduleDescriptors.size());
+				for (final Map.Entry<String, GwtModuleDescriptor> moduleDescriptor : archive.moduleDescriptors.entrySet()) {
+					out.writeUTF(moduleDescriptor.getKey());
+					out.writeBoolean(null != moduleDescriptor.getValue());
+					if (null != moduleDescriptor.getValue()) {
+						GwtModuleIndex.writeModuleSource(out, moduleDescriptor.getValue());
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+		dirty = false;
+	}
+}
@@ -11,6 +11,8 @@
  *******************************************************************************/
 package org.eclipseguru.gwt.core;
 
+import org.eclipseguru.gwt.core.builder.GwtCompileScheduler;
+import org.eclipseguru.gwt.core.internal.metrics.MetricsRegistry;
 import org.eclipseguru.gwt.core.runtimes.GwtRuntime;
 import org.eclipseguru.gwt.core.runtimes.GwtRuntimeManager;
 
@@ -215,6 +217,9 @@ public class GwtCore extends Plugin {
 
 		// startup performed in model manager
 		GwtModelManager.getModelManager().startup();
+
+		// expose build metrics
+		MetricsRegistry.startup();
 	}
 
 	/*
@@ -224,6 +229,12 @@ public class GwtCore extends Plugin {
 	 */
 	@Override
 	public void stop(final BundleContext context) throws Exception {
+		// stop pending compiles
+		GwtCompileScheduler.shutdown();
+
+		// stop exposing build metrics
+		MetricsRegistry.shutdown();
+
 		// shutdown model manager
 		GwtModelManager.getModelManager().shutdown();
 
@@ -15,10 +15,6 @@ import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.ResourcesPlugin;
-
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * The GWT model element.
@@ -40,7 +36,7 @@ public class GwtModel extends GwtElement {
 	}
 
 	/**
-	 * Creates a new project from the specified resources
+	 * Returns the (canonical) project for the specified resources
 	 * 
 	 * @param project
 	 * @return
@@ -51,32 +47,43 @@ public class GwtModel extends GwtElement {
 
 		switch (resource.getType()) {
 			case IResource.FILE:
-				return new GwtProject(((IFile) resource).getProject(), this);
+				return GwtModelManager.getModelManager().getProject(((IFile) resource).getProject());
 			case IResource.FOLDER:
-				return new GwtProject(((IFolder) resource).getProject(), this);
+				return GwtModelManager.getModelManager().getProject(((IFolder) resource).getProject());
 			case IResource.PROJECT:
-				return new GwtProject(((IProject) resource).getProject(), this);
+				return GwtModelManager.getModelManager().getProject(((IProject) resource).getProject());
 			default:
 				throw new IllegalArgumentException("The specified resource could not be resolved to a project!");
 		}
 	}
 
+	/**
+	 * Returns the module inheritance graph of the workspace.
+	 * 
+	 * @return the module graph
+	 */
+	public GwtModuleGraph getModuleGraph() {
+		return GwtModelManager.getModelManager().getModuleGraph();
+	}
+
 	/**
 	 * Returns the GWT projects.
+	 * <p>
+	 * The projects are taken from a snapshot maintained by the model manager
+	 * so this is cheap to call repeatedly.
+	 * </p>
 	 * 
 	 * @return the GWT projects
 	 */
 	public GwtProject[] getProjects() {
-		final IProject[] projects = ResourcesPlugin.getWorkspace().getRoot().getProjects();
+		final GwtProject[] projects = GwtModelManager.getModelManager().getGwtProjects();
 		if (projects.length == 0)
-			return new GwtProject[0];
+			return projects;
 
-		final List<GwtProject> gwtProjects = new ArrayList<GwtProject>(projects.length);
-		for (final IProject project : projects)
-			if (GwtProject.hasGwtNature(project)) {
-				gwtProjects.add(createProject(project));
-			}
-		return gwtProjects.toArray(new GwtProject[gwtProjects.size()]);
+		// callers own the returned array
+		final GwtProject[] copy = new GwtProject[projects.length];
+		System.arraycopy(projects, 0, copy, 0, projects.length);
+		return copy;
 	}
 
 	/*
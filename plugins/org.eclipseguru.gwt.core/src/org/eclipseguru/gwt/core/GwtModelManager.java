@@ -12,25 +12,315 @@
 package org.eclipseguru.gwt.core;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ISaveContext;
+import org.eclipse.core.resources.ISaveParticipant;
+import org.eclipse.core.resources.ISavedState;
 import org.eclipse.core.resources.IStorage;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
 import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A singletong model manager
+ * <p>
+ * The manager keeps one canonical instance per GWT project and per module
+ * descriptor. The instances are invalidated by a resource change listener so
+ * that lazily computed information (modules, entry points, parsed module
+ * sources) survives between builds but never gets stale.
+ * </p>
  */
 class GwtModelManager {
 
+	/**
+	 * Invalidates cached model elements based on resource changes.
+	 */
+	private final class ElementCacheInvalidator implements IResourceChangeListener, IResourceDeltaVisitor {
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * org.eclipse.core.resources.IResourceChangeListener#resourceChanged
+		 * (org.eclipse.core.resources.IResourceChangeEvent)
+		 */
+		public void resourceChanged(final IResourceChangeEvent event) {
+			switch (event.getType()) {
+				case IResourceChangeEvent.PRE_DELETE:
+					if (event.getResource() instanceof IProject) {
+						forgetModuleDescriptors((IProject) event.getResource());
+					}
+					//$FALL-THROUGH$
+				case IResourceChangeEvent.PRE_CLOSE:
+					if (event.getResource() instanceof IProject) {
+						removeProject((IProject) event.getResource());
+						updateGwtProjects((IProject) event.getResource(), true);
+					}
+					break;
+
+				case IResourceChangeEvent.POST_CHANGE:
+				case IResourceChangeEvent.POST_BUILD: // delta replayed from saved state
+					final IResourceDelta delta = event.getDelta();
+					if (null != delta) {
+						try {
+							delta.accept(this);
+						} catch (final CoreException e) {
+							// should not happen, we don't throw any
+							GwtCore.logError("Error while updating GWT model cache.", e);
+						}
+					}
+					break;
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * org.eclipse.core.resources.IResourceDeltaVisitor#visit(org.eclipse
+		 * .core.resources.IResourceDelta)
+		 */
+		public boolean visit(final IResourceDelta delta) throws CoreException {
+			final IResource resource = delta.getResource();
+			switch (resource.getType()) {
+				case IResource.ROOT:
+					return true;
+
+				case IResource.PROJECT:
+					final IProject project = (IProject) resource;
+					if (delta.getKind() == IResourceDelta.REMOVED) {
+						forgetModuleDescriptors(project);
+					}
+					if ((delta.getKind() == IResourceDelta.REMOVED) || ((delta.getFlags() & (IResourceDelta.OPEN | IResourceDelta.DESCRIPTION)) != 0)) {
+						// natures or accessibility might have changed
+						removeProject(project);
+						updateGwtProjects(project, delta.getKind() == IResourceDelta.REMOVED);
+						return false;
+					}
+					if (delta.getKind() == IResourceDelta.ADDED) {
+						updateGwtProjects(project, false);
+					}
+
+					// only interesting if we cached or indexed something for the project
+					return true;
+
+				case IResource.FOLDER:
+					return true;
+
+				case IResource.FILE:
+					final IFile file = (IFile) resource;
+					if (GwtUtil.isModuleDescriptor(file)) {
+						moduleDescriptorChanged(file, delta);
+					} else if (GwtUtil.isClasspathFile(file)) {
+						classpathChanged(file.getProject());
+					} else if (GwtUtil.isPreferencesFile(file)) {
+						final GwtProject gwtProject = getCachedProject(file.getProject());
+						if (null != gwtProject) {
+							gwtProject.resetIncludedModules();
+						}
+					}
+					return false;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Keeps the module locators up to date based on Java element changes.
+	 */
+	private final class ModuleLocatorUpdater implements IElementChangedListener {
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * org.eclipse.jdt.core.IElementChangedListener#elementChanged(org.eclipse
+		 * .jdt.core.ElementChangedEvent)
+		 */
+		public void elementChanged(final ElementChangedEvent event) {
+			if (processDelta(event.getDelta())) {
+				// inherited modules might resolve differently now
+				resetInheritedModules();
+			}
+		}
+
+		/**
+		 * Processes the specified delta.
+		 * 
+		 * @param delta
+		 * @return <code>true</code> if a locator has been updated
+		 */
+		private boolean processDelta(final IJavaElementDelta delta) {
+			final IJavaElement element = delta.getElement();
+			switch (element.getElementType()) {
+				case IJavaElement.JAVA_MODEL:
+					return processChildren(delta);
+
+				case IJavaElement.JAVA_PROJECT:
+					if ((delta.getKind() != IJavaElementDelta.CHANGED) || ((delta.getFlags() & (IJavaElementDelta.F_CLASSPATH_CHANGED | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED | IJavaElementDelta.F_OPENED | IJavaElementDelta.F_CLOSED)) != 0)) {
+						// other projects might depend on it
+						resetModuleLocators(null);
+						return true;
+					}
+					return processChildren(delta);
+
+				case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+					final IPackageFragmentRoot root = (IPackageFragmentRoot) element;
+					if ((delta.getKind() != IJavaElementDelta.CHANGED) || ((delta.getFlags() & (IJavaElementDelta.F_ADDED_TO_CLASSPATH | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH | IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED | IJavaElementDelta.F_REORDER)) != 0)) {
+						resetModuleLocators(root.getPath());
+						return true;
+					}
+					// non-java resources of the root belong to the default package
+					final boolean changed = processResourceDeltas(delta, root.getPackageFragment("")); //$NON-NLS-1$
+					return processChildren(delta) | changed;
+
+				case IJavaElement.PACKAGE_FRAGMENT:
+					final IPackageFragment packageFragment = (IPackageFragment) element;
+					if (delta.getKind() != IJavaElementDelta.CHANGED) {
+						// package might contain module descriptors
+						resetModuleLocators(packageFragment.getParent().getPath());
+						return true;
+					}
+					return processResourceDeltas(delta, packageFragment);
+			}
+			return false;
+		}
+
+		/**
+		 * Processes the children of the specified delta.
+		 * 
+		 * @param delta
+		 * @return <code>true</code> if a locator has been updated
+		 */
+		private boolean processChildren(final IJavaElementDelta delta) {
+			boolean changed = false;
+			for (final IJavaElementDelta child : delta.getAffectedChildren()) {
+				changed |= processDelta(child);
+			}
+			return changed;
+		}
+
+		/**
+		 * Processes the non-java resource changes of the specified delta.
+		 * 
+		 * @param delta
+		 * @param packageFragment
+		 * @return <code>true</code> if a locator has been updated
+		 */
+		private boolean processResourceDeltas(final IJavaElementDelta delta, final IPackageFragment packageFragment) {
+			final IResourceDelta[] resourceDeltas = delta.getResourceDeltas();
+			if (null == resourceDeltas) {
+				return false;
+			}
+
+			boolean changed = false;
+			for (final IResourceDelta resourceDelta : resourceDeltas) {
+				final IResource resource = resourceDelta.getResource();
+				if ((resource.getType() != IResource.FILE) || !GwtUtil.isModuleDescriptor(resource)) {
+					continue;
+				}
+
+				final IFile moduleDescriptor = (IFile) resource;
+				final IPath rootPath = packageFragment.getParent().getPath();
+				switch (resourceDelta.getKind()) {
+					case IResourceDelta.ADDED:
+						for (final GwtModuleLocator locator : getModuleLocators()) {
+							if (locator.covers(rootPath)) {
+								locator.moduleDescriptorAdded(moduleDescriptor, packageFragment);
+								changed = true;
+							}
+						}
+						break;
+
+					case IResourceDelta.REMOVED:
+						for (final GwtModuleLocator locator : getModuleLocators()) {
+							if (locator.covers(rootPath)) {
+								locator.moduleDescriptorRemoved(moduleDescriptor, packageFragment);
+								changed = true;
+							}
+						}
+						break;
+				}
+			}
+			return changed;
+		}
+	}
+
+	/**
+	 * Participates in workspace saves in order to receive the resource delta
+	 * since the last session when starting up.
+	 */
+	private static final class ModelSaveParticipant implements ISaveParticipant {
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * org.eclipse.core.resources.ISaveParticipant#doneSaving(org.eclipse
+		 * .core.resources.ISaveContext)
+		 */
+		public void doneSaving(final ISaveContext context) {
+			// nothing to do
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * org.eclipse.core.resources.ISaveParticipant#prepareToSave(org.eclipse
+		 * .core.resources.ISaveContext)
+		 */
+		public void prepareToSave(final ISaveContext context) throws CoreException {
+			// nothing to do
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * org.eclipse.core.resources.ISaveParticipant#rollback(org.eclipse.
+		 * core.resources.ISaveContext)
+		 */
+		public void rollback(final ISaveContext context) {
+			// nothing to do
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * org.eclipse.core.resources.ISaveParticipant#saving(org.eclipse.core
+		 * .resources.ISaveContext)
+		 */
+		public void saving(final ISaveContext context) throws CoreException {
+			// we want to know what changed until the next session
+			if (context.getKind() == ISaveContext.FULL_SAVE) {
+				context.needDelta();
+			}
+		}
+	}
+
 	/** NO_MODULES */
 	static final GwtModule[] NO_MODULES = new GwtModule[0];
 
+	/** NO_PROJECTS */
+	private static final GwtProject[] NO_PROJECTS = new GwtProject[0];
+
 	/** MANAGER */
 	private static final GwtModelManager MANAGER = new GwtModelManager();
 
@@ -94,12 +384,10 @@ class GwtModelManager {
 					return null;
 
 				final GwtProject project = getModelManager().getModel().createProject(resource);
-				final GwtModule[] modules = project.getModules();
-				for (final GwtModule module2 : modules)
-					if (module2.isModuleResource(resource)) {
-						module = module2;
-						break;
-					}
+				final GwtModule[] owningModules = project.getOwningModules(resource);
+				if (owningModules.length > 0) {
+					module = owningModules[0];
+				}
 
 			}
 
@@ -115,55 +403,14 @@ class GwtModelManager {
 	}
 
 	/**
-	 * Finds a module in a given package.
-	 * 
-	 * @param packageFragment
-	 * @param moduleId
-	 * @param modules
-	 * @throws JavaModelException
-	 */
-	private static boolean findModuleInPackage(final IPackageFragment packageFragment, final String moduleId, final List<GwtModule> modules) throws JavaModelException {
-		// check package first
-		if (!packageFragment.getElementName().equals(GwtUtil.getPackageName(moduleId)))
-			return false;
-
-		// find module source
-		final String gwtFileName = GwtUtil.getSimpleName(moduleId).concat(GwtUtil.GWT_MODULE_SOURCE_EXTENSION);
-		final Object[] nonJavaResources = packageFragment.getNonJavaResources();
-		for (final Object nonJavaResource : nonJavaResources)
-			// project resource
-			if (nonJavaResource instanceof IResource) {
-				final IResource resource = (IResource) nonJavaResource;
-				if (GwtUtil.isModuleDescriptor(resource) && resource.getName().equals(gwtFileName)) {
-					final GwtModule module = createModule((IFile) resource, getModelManager().getModel().createProject(resource));
-					if (null != module) {
-						modules.add(module);
-						return true;
-					}
-				}
-			}
-
-			// jar entry
-			else if (nonJavaResource instanceof IStorage) {
-				final IStorage resource = (IStorage) nonJavaResource;
-				if (gwtFileName.equals(resource.getName())) {
-					final GwtModule module = createBinaryModule(resource, packageFragment);
-					if (null != module) {
-						modules.add(module);
-						return true;
-					}
-				}
-			}
-
-		return false;
-	}
-
-	/**
-	 * Finds the module with the specified id using the projects classpath.
+	 * Finds the modules with the specified ids using the projects classpath.
+	 * <p>
+	 * Modules which cannot be found are not included in the result.
+	 * </p>
 	 * 
-	 * @param moduleId
+	 * @param moduleIds
 	 * @param project
-	 * @return
+	 * @return the found modules
 	 * @throws GwtModelException
 	 */
 	public static GwtModule[] findModules(final String[] moduleIds, final GwtProject project) throws GwtModelException {
@@ -173,31 +420,20 @@ class GwtModelManager {
 		if (moduleIds.length == 0)
 			return NO_MODULES;
 
+		final GwtModuleLocator locator = getModelManager().getModuleLocator(project);
 		final List<GwtModule> modules = new ArrayList<GwtModule>(moduleIds.length);
-		final IJavaProject javaProject = project.getJavaProject();
-
 		try {
-			final IPackageFragment[] packageFragments = javaProject.getPackageFragments();
-			if (packageFragments.length > moduleIds.length) {
-				for (final IPackageFragment fragment : packageFragments) {
-					for (final String moduleId : moduleIds) {
-						findModuleInPackage(fragment, moduleId, modules);
-					}
-				}
-			} else {
-				for (final String moduleId : moduleIds) {
-					for (final IPackageFragment fragment : packageFragments) {
-						findModuleInPackage(fragment, moduleId, modules);
-					}
+			for (final String moduleId : moduleIds) {
+				final GwtModule module = locator.findModule(moduleId);
+				if (null != module) {
+					modules.add(module);
 				}
 			}
-
 		} catch (final JavaModelException e) {
 			throw new GwtModelException(e.getStatus());
 		}
 
-		// TODO Auto-generated method stub
-		return null;
+		return modules.toArray(new GwtModule[modules.size()]);
 	}
 
 	/**
@@ -212,6 +448,113 @@ class GwtModelManager {
 	/** model */
 	private final GwtModel model = new GwtModel();
 
+	/** projects (guarded by <code>this</code>) */
+	private final Map<IProject, GwtProject> projects = new HashMap<IProject, GwtProject>();
+
+	/** modules by descriptor full path (guarded by <code>this</code>) */
+	private final Map<IPath, GwtModule> modules = new HashMap<IPath, GwtModule>();
+
+	/** binary modules by project, package and descriptor (guarded by <code>this</code>) */
+	private final Map<String, GwtModule> binaryModules = new HashMap<String, GwtModule>();
+
+	/** module locators by project (guarded by <code>this</code>) */
+	private final Map<IProject, GwtModuleLocator> moduleLocators = new HashMap<IProject, GwtModuleLocator>();
+
+	/** moduleLocatorUpdater */
+	private final ModuleLocatorUpdater moduleLocatorUpdater = new ModuleLocatorUpdater();
+
+	/** moduleGraph */
+	private final GwtModuleGraph moduleGraph = new GwtModuleGraph();
+
+	/** elementCacheInvalidator */
+	private final ElementCacheInvalidator elementCacheInvalidator = new ElementCacheInvalidator();
+
+	/** snapshot of the projects with GWT nature (<code>null</code> if not computed yet) */
+	private volatile GwtProject[] gwtProjects;
+
+	/** gwtProjectsGeneration (guarded by <code>this</code>) */
+	private int gwtProjectsGeneration;
+
+	/** the persistent module index (<code>null</code> when not started) */
+	private volatile GwtModuleIndex moduleIndex;
+
+	/** the persistent archive module cache (<code>null</code> when not started) */
+	private volatile GwtArchiveModuleCache archiveModuleCache;
+
+	/**
+	 * Flushes all cached information which depends on the classpath of the
+	 * specified project.
+	 * 
+	 * @param project
+	 */
+	void classpathChanged(final IProject project) {
+		final GwtProject gwtProject;
+		synchronized (this) {
+			removeModules(project);
+			gwtProject = projects.get(project);
+		}
+		forgetModuleDescriptors(project);
+		moduleGraph.projectChanged(project);
+
+		if (null != gwtProject) {
+			gwtProject.resetModules();
+			gwtProject.resetIncludedModules();
+		}
+
+		// other modules might have resolved their inherited modules from the classpath
+		resetInheritedModules();
+	}
+
+	/**
+	 * Forgets the indexed module descriptors of the specified project.
+	 * 
+	 * @param project
+	 */
+	void forgetModuleDescriptors(final IProject project) {
+		final GwtModuleIndex index = moduleIndex;
+		if (null != index) {
+			index.forgetModuleDescriptors(project);
+		}
+	}
+
+	/**
+	 * Returns the archive module cache.
+	 * 
+	 * @return the archive module cache (maybe <code>null</code> if the manager
+	 *         is not started)
+	 */
+	GwtArchiveModuleCache getArchiveModuleCache() {
+		return archiveModuleCache;
+	}
+
+	/**
+	 * Returns the canonical binary module for the specified module descriptor.
+	 * 
+	 * @param moduleDescriptor
+	 * @param packageFragment
+	 * @param project
+	 * @return the binary module
+	 */
+	synchronized GwtModule getBinaryModule(final IStorage moduleDescriptor, final IPackageFragment packageFragment, final GwtProject project) {
+		final String key = project.getName().concat("|").concat(packageFragment.getHandleIdentifier()).concat("|").concat(moduleDescriptor.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+		GwtModule module = binaryModules.get(key);
+		if (null == module) {
+			module = new GwtModule(moduleDescriptor, packageFragment, project);
+			binaryModules.put(key, module);
+		}
+		return module;
+	}
+
+	/**
+	 * Returns the cached project for the specified project resource.
+	 * 
+	 * @param project
+	 * @return the cached project (maybe <code>null</code>)
+	 */
+	synchronized GwtProject getCachedProject(final IProject project) {
+		return projects.get(project);
+	}
+
 	/**
 	 * @return the model
 	 */
@@ -219,19 +562,346 @@ class GwtModelManager {
 		return model;
 	}
 
+	/**
+	 * Returns the persistent module index.
+	 * 
+	 * @return the module index (maybe <code>null</code> if the manager is not
+	 *         started)
+	 */
+	GwtModuleIndex getModuleIndex() {
+		return moduleIndex;
+	}
+
+	/**
+	 * Returns the module inheritance graph.
+	 * 
+	 * @return the module graph
+	 */
+	GwtModuleGraph getModuleGraph() {
+		return moduleGraph;
+	}
+
+	/**
+	 * Returns the module locator for the specified project.
+	 * 
+	 * @param project
+	 * @return the module locator
+	 */
+	synchronized GwtModuleLocator getModuleLocator(final GwtProject project) {
+		GwtModuleLocator locator = moduleLocators.get(project.getProjectResource());
+		if (null == locator) {
+			locator = new GwtModuleLocator(project.getJavaProject());
+			moduleLocators.put(project.getProjectResource(), locator);
+		}
+		return locator;
+	}
+
+	/**
+	 * Returns a snapshot of all module locators.
+	 * 
+	 * @return the module locators
+	 */
+	synchronized GwtModuleLocator[] getModuleLocators() {
+		return moduleLocators.values().toArray(new GwtModuleLocator[moduleLocators.size()]);
+	}
+
+	/**
+	 * Returns the canonical module for the specified module descriptor.
+	 * 
+	 * @param moduleDescriptor
+	 * @param project
+	 * @return the module
+	 */
+	synchronized GwtModule getModule(final IFile moduleDescriptor, final GwtProject project) {
+		final IPath key = moduleDescriptor.getFullPath();
+		GwtModule module = modules.get(key);
+		if (null == module) {
+			module = new GwtModule(moduleDescriptor, project);
+			modules.put(key, module);
+		}
+		return module;
+	}
+
+	/**
+	 * Returns the projects with GWT nature.
+	 * <p>
+	 * The workspace is scanned only once. Afterwards the snapshot is
+	 * maintained from project deltas (added, removed, opened, closed or
+	 * description changed).
+	 * </p>
+	 * 
+	 * @return the canonical GWT projects (must not be modified)
+	 */
+	GwtProject[] getGwtProjects() {
+		GwtProject[] gwtProjects = this.gwtProjects;
+		if (null == gwtProjects) {
+			final int expectedGeneration;
+			synchronized (this) {
+				expectedGeneration = gwtProjectsGeneration;
+			}
+
+			// natures are read outside the manager lock
+			final List<GwtProject> natureProjects = new ArrayList<GwtProject>();
+			for (final IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+				if (GwtProject.hasGwtNature(project)) {
+					natureProjects.add(getProject(project));
+				}
+			}
+			gwtProjects = natureProjects.isEmpty() ? NO_PROJECTS : natureProjects.toArray(new GwtProject[natureProjects.size()]);
+
+			synchronized (this) {
+				// don't publish if a project changed meanwhile
+				if (expectedGeneration == gwtProjectsGeneration) {
+					this.gwtProjects = gwtProjects;
+				}
+			}
+		}
+		return gwtProjects;
+	}
+
+	/**
+	 * Returns the canonical GWT project for the specified project resource.
+	 * 
+	 * @param project
+	 * @return the GWT project
+	 */
+	synchronized GwtProject getProject(final IProject project) {
+		GwtProject gwtProject = projects.get(project);
+		if (null == gwtProject) {
+			gwtProject = new GwtProject(project, model);
+			projects.put(project, gwtProject);
+		}
+		return gwtProject;
+	}
+
+	/**
+	 * Updates the cache after a module descriptor changed.
+	 * 
+	 * @param moduleDescriptor
+	 * @param delta
+	 */
+	void moduleDescriptorChanged(final IFile moduleDescriptor, final IResourceDelta delta) {
+		switch (delta.getKind()) {
+			case IResourceDelta.ADDED:
+			case IResourceDelta.REMOVED:
+				final GwtProject gwtProject;
+				synchronized (this) {
+					modules.remove(moduleDescriptor.getFullPath());
+					gwtProject = projects.get(moduleDescriptor.getProject());
+				}
+				moduleGraph.moduleDescriptorChanged(moduleDescriptor);
+				if (null != gwtProject) {
+					// update discovered modules (and index) instead of discovering them again
+					if (delta.getKind() == IResourceDelta.ADDED) {
+						gwtProject.moduleDescriptorAdded(moduleDescriptor);
+					} else {
+						gwtProject.moduleDescriptorRemoved(moduleDescriptor);
+					}
+					gwtProject.resetIncludedModules();
+				} else {
+					forgetModuleDescriptors(moduleDescriptor.getProject());
+				}
+				resetInheritedModules();
+				break;
+
+			case IResourceDelta.CHANGED:
+				if ((delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED | IResourceDelta.ENCODING)) != 0) {
+					final GwtModule module;
+					final GwtProject changedProject;
+					synchronized (this) {
+						module = modules.get(moduleDescriptor.getFullPath());
+						changedProject = projects.get(moduleDescriptor.getProject());
+					}
+					final GwtModuleIndex index = moduleIndex;
+					if (null != index) {
+						index.remove(moduleDescriptor.getFullPath());
+					}
+					moduleGraph.moduleDescriptorChanged(moduleDescriptor);
+					if (null != module) {
+						// keep the canonical instance but forget what we know about it
+						module.resetSourceInfo();
+						resetInheritedModules();
+					}
+					if (null != changedProject) {
+						// source paths might have changed
+						changedProject.resetPathMatcher();
+					}
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Removes the modules of the specified project from the cache.
+	 * <p>
+	 * Must be called while holding the manager lock.
+	 * </p>
+	 * 
+	 * @param project
+	 */
+	private void removeModules(final IProject project) {
+		for (final Iterator<GwtModule> stream = modules.values().iterator(); stream.hasNext();) {
+			if (project.equals(stream.next().getProjectResource())) {
+				stream.remove();
+			}
+		}
+		final String binaryKeyPrefix = project.getName().concat("|"); //$NON-NLS-1$
+		for (final Iterator<String> stream = binaryModules.keySet().iterator(); stream.hasNext();) {
+			if (stream.next().startsWith(binaryKeyPrefix)) {
+				stream.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes the specified project and all its modules from the cache.
+	 * 
+	 * @param project
+	 */
+	void removeProject(final IProject project) {
+		synchronized (this) {
+			projects.remove(project);
+			moduleLocators.remove(project);
+			removeModules(project);
+		}
+		moduleGraph.projectChanged(project);
+		resetInheritedModules();
+	}
+
+	/**
+	 * Resets the module locators.
+	 * <p>
+	 * Note, the locators are reset outside the manager lock because locators
+	 * call back into the manager while holding their own lock.
+	 * </p>
+	 * 
+	 * @param rootPath
+	 *            the path of the package fragment root which changed
+	 *            (<code>null</code> to reset all locators)
+	 */
+	void resetModuleLocators(final IPath rootPath) {
+		for (final GwtModuleLocator locator : getModuleLocators()) {
+			if ((null == rootPath) || locator.covers(rootPath)) {
+				locator.reset();
+			}
+		}
+	}
+
+	/**
+	 * Forgets the inherited modules resolved by the cached modules.
+	 * <p>
+	 * Note, the modules are reset outside the manager lock because modules
+	 * call back into the manager while holding their own lock.
+	 * </p>
+	 */
+	private void resetInheritedModules() {
+		final List<GwtModule> cachedModules;
+		synchronized (this) {
+			cachedModules = new ArrayList<GwtModule>(modules.size() + binaryModules.size());
+			cachedModules.addAll(modules.values());
+			cachedModules.addAll(binaryModules.values());
+		}
+		for (final GwtModule module : cachedModules) {
+			module.resetInheritedModules();
+		}
+	}
+
 	/**
 	 * Stops the model manager
 	 */
 	public void shutdown() {
-		// TODO Auto-generated method stub
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(elementCacheInvalidator);
+		JavaCore.removeElementChangedListener(moduleLocatorUpdater);
+		GwtModuleDiscovery.shutdown();
+		ResourcesPlugin.getWorkspace().removeSaveParticipant(GwtCore.getGwtCore());
+
+		// write module index
+		final GwtModuleIndex index = moduleIndex;
+		moduleIndex = null;
+		if (null != index) {
+			try {
+				index.save();
+			} catch (final IOException e) {
+				GwtCore.logError("Error while saving GWT module index.", e);
+			}
+		}
+		final GwtArchiveModuleCache archiveCache = archiveModuleCache;
+		archiveModuleCache = null;
+		if (null != archiveCache) {
+			try {
+				archiveCache.save();
+			} catch (final IOException e) {
+				GwtCore.logError("Error while saving GWT archive module cache.", e);
+			}
+		}
 
+		moduleGraph.clear();
+		synchronized (this) {
+			gwtProjectsGeneration++;
+			gwtProjects = null;
+			projects.clear();
+			moduleLocators.clear();
+			modules.clear();
+			binaryModules.clear();
+		}
 	}
 
 	/**
 	 * Starts the model manager
 	 */
 	public void startup() {
-		// TODO Auto-generated method stub
+		// load module index (entries are validated lazily)
+		final File indexFile = GwtCore.getGwtCore().getStateLocation().append(GwtModuleIndex.INDEX_FILE_NAME).toFile();
+		moduleIndex = GwtModuleIndex.load(indexFile);
+		archiveModuleCache = GwtArchiveModuleCache.load(GwtCore.getGwtCore().getStateLocation().append(GwtArchiveModuleCache.CACHE_FILE_NAME).toFile());
 
+		// catch up with changes made since the last session
+		try {
+			final ISavedState savedState = ResourcesPlugin.getWorkspace().addSaveParticipant(GwtCore.getGwtCore(), new ModelSaveParticipant());
+			if (null != savedState) {
+				savedState.processResourceChangeEvents(elementCacheInvalidator);
+			}
+		} catch (final CoreException e) {
+			// we can't trust the index without knowing what changed
+			GwtCore.logError("Error while processing changes since last session. GWT module index will be rebuild.", e);
+			moduleIndex.clear();
+		}
+
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(elementCacheInvalidator, IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+		JavaCore.addElementChangedListener(moduleLocatorUpdater, ElementChangedEvent.POST_CHANGE);
+	}
+
+	/**
+	 * Updates the snapshot of projects with GWT nature after the specified
+	 * project changed.
+	 * 
+	 * @param project
+	 * @param removed
+	 *            <code>true</code> if the project is about to be removed or
+	 *            closed
+	 */
+	void updateGwtProjects(final IProject project, final boolean removed) {
+		// natures are read outside the manager lock
+		final boolean gwtProject = !removed && GwtProject.hasGwtNature(project);
+
+		synchronized (this) {
+			gwtProjectsGeneration++;
+			final GwtProject[] gwtProjects = this.gwtProjects;
+			if (null == gwtProjects) {
+				return;
+			}
+
+			// copy on write (the canonical instance might have been replaced)
+			final List<GwtProject> newProjects = new ArrayList<GwtProject>(gwtProjects.length + 1);
+			for (final GwtProject existing : gwtProjects) {
+				if (!project.equals(existing.getProjectResource())) {
+					newProjects.add(existing);
+				}
+			}
+			if (gwtProject) {
+				newProjects.add(getProject(project));
+			}
+			this.gwtProjects = newProjects.isEmpty() ? NO_PROJECTS : newProjects.toArray(new GwtProject[newProjects.size()]);
+		}
 	}
 }
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipseguru.gwt.core;
 
+import org.eclipseguru.gwt.core.internal.jdtext.TypeResolutionCache;
+
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
@@ -25,7 +27,6 @@ import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
@@ -38,11 +39,34 @@ import javax.xml.parsers.ParserConfigurationException;
  */
 public class GwtModule extends GwtElement {
 
+	/**
+	 * A module descriptor snapshot with only some facts known.
+	 */
+	private static final class PartialDescriptor {
+
+		/** the known facts */
+		final int facts;
+
+		/** the snapshot (only the known facts are reliable) */
+		final GwtModuleDescriptor descriptor;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param facts
+		 * @param descriptor
+		 */
+		PartialDescriptor(final int facts, final GwtModuleDescriptor descriptor) {
+			this.facts = facts;
+			this.descriptor = descriptor;
+		}
+	}
+
 	/** FOLDER_NAME_SERVER */
-	private static final String FOLDER_NAME_SERVER = "server";
+	private static final String FOLDER_NAME_SERVER = GwtModulePathMatcher.FOLDER_NAME_SERVER;
 
 	/** FOLDER_NAME_PUBLIC */
-	private static final String FOLDER_NAME_PUBLIC = "public";
+	private static final String FOLDER_NAME_PUBLIC = GwtModulePathMatcher.FOLDER_NAME_PUBLIC;
 
 	/** FILE_EXTENSION_GWT_MODULE_DESCRIPTOR */
 	private static final String FILE_EXTENSION_GWT_MODULE_DESCRIPTOR = "gwt.xml";
@@ -87,17 +111,23 @@ public class GwtModule extends GwtElement {
 	/** modulePackage */
 	private final IPackageFragment modulePackage;
 
-	/** entryPointType */
-	private IType entryPointType;
+	/** the resolved entry point type */
+	private volatile IType entryPointType;
 
-	/** entryPointTypeName */
-	private String entryPointTypeName;
+	/** the resolved inherited modules */
+	private volatile GwtModule[] inheritedModules;
 
-	/** inheritedModules */
-	private GwtModule[] inheritedModules;
+	/** the immutable snapshot of the module source */
+	private volatile GwtModuleDescriptor descriptor;
 
-	/** moduleSourceInfo */
-	private GwtModuleSourceHandler moduleSourceInfo;
+	/** the snapshot of the module source parsed only partially (maybe <code>null</code>) */
+	private volatile PartialDescriptor partialDescriptor;
+
+	/**
+	 * incremented on every reset; lazily computed state is only published if
+	 * no reset happened meanwhile (guarded by <code>this</code>)
+	 */
+	private int generation;
 
 	/**
 	 * Creates a new module from a file.
@@ -144,7 +174,7 @@ public class GwtModule extends GwtElement {
 			final String path = moduleDescriptor.getFullPath().makeRelative().toString();
 			moduleIdBuilder.append(path.substring(0, path.length() - GwtUtil.GWT_MODULE_SOURCE_EXTENSION.length()).replace('/', '.'));
 		}
-		moduleId = moduleIdBuilder.toString();
+		moduleId = moduleIdBuilder.toString().intern();
 	}
 
 	/**
@@ -171,9 +201,9 @@ public class GwtModule extends GwtElement {
 		}
 
 		if (packageFragment.isDefaultPackage()) {
-			moduleId = GwtUtil.getSimpleName(moduleDescriptor);
+			moduleId = GwtUtil.getSimpleName(moduleDescriptor).intern();
 		} else {
-			moduleId = packageFragment.getElementName().concat(".").concat(simpleName);
+			moduleId = packageFragment.getElementName().concat(".").concat(simpleName).intern();
 		}
 		modulePackage = packageFragment;
 		this.moduleDescriptor = moduleDescriptor;
@@ -214,15 +244,11 @@ public class GwtModule extends GwtElement {
 	/**
 	 * Finds the entry point type.
 	 * 
+	 * @param typeResolutionCache
 	 * @return the entry point type (maybe <code>null</code>)
 	 * @throws GwtModelException
 	 */
-	private synchronized IType findEntryPointType() throws GwtModelException {
-		// check if already set
-		if (null != entryPointType) {
-			return entryPointType;
-		}
-
+	private IType findEntryPointType(final TypeResolutionCache typeResolutionCache) throws GwtModelException {
 		// get entry point type name
 		final String entryPointClass = getEntryPointTypeName();
 		if (null == entryPointClass) {
@@ -230,43 +256,21 @@ public class GwtModule extends GwtElement {
 		}
 
 		try {
-			return getProject().getJavaProject().findType(entryPointClass);
+			return typeResolutionCache.findType(getProject().getJavaProject(), entryPointClass);
 		} catch (final JavaModelException e) {
 			throw new GwtModelException(e.getStatus());
 		}
 	}
 
-	/**
-	 * Finds the entry point type name.
-	 * 
-	 * @return the entry point type name (maybe <code>null</code>)
-	 * @throws GwtModelException
-	 */
-	private synchronized String findEntryPointTypeName() throws GwtModelException {
-		// check if already set
-		if (null != entryPointTypeName) {
-			return entryPointTypeName;
-		}
-
-		// get type name from module source
-		return getModuleSourceInfo().getEntryPointClass();
-	}
-
 	/**
 	 * Finds the modules inherited by this module.
 	 * 
 	 * @return
 	 * @throws CoreException
 	 */
-	private synchronized GwtModule[] findInheritedModules() throws GwtModelException {
-		if (null != inheritedModules) {
-			return inheritedModules;
-		}
-
-		final GwtModuleSourceHandler info = getModuleSourceInfo();
-
+	private GwtModule[] findInheritedModules() throws GwtModelException {
 		// read all inherited module ids
-		final String[] inheritedModuleIds = info.getInheritedModules();
+		final String[] inheritedModuleIds = getDescriptor().getInheritedModules();
 
 		// resolve modules
 		final GwtModule[] resolvedModules = GwtModelManager.findModules(inheritedModuleIds, getProject());
@@ -286,7 +290,7 @@ public class GwtModule extends GwtElement {
 	 * @throws GwtModelException
 	 */
 	public String getAlternateName() throws GwtModelException {
-		return getModuleSourceInfo().getAlternateModuleName();
+		return getDescriptor(GwtModuleSourceHandler.FACT_ALTERNATE_NAME).getAlternateModuleName();
 	}
 
 	/**
@@ -296,11 +300,31 @@ public class GwtModule extends GwtElement {
 	 * @throws GwtModelException
 	 */
 	public IType getEntryPointType() throws GwtModelException {
-		if (null == entryPointType) {
-			entryPointType = findEntryPointType();
+		return getEntryPointType(new TypeResolutionCache());
+	}
+
+	/**
+	 * Returns the entry point type using the specified cache to find it.
+	 * 
+	 * @param typeResolutionCache
+	 *            the cache to find the type with
+	 * @return the entry point type (maybe <code>null</code>)
+	 * @throws GwtModelException
+	 */
+	public IType getEntryPointType(final TypeResolutionCache typeResolutionCache) throws GwtModelException {
+		// the module is cached, thus the type might have been deleted meanwhile
+		IType type = entryPointType;
+		if ((null == type) || !type.exists()) {
+			final int expectedGeneration = getGeneration();
+			type = findEntryPointType(typeResolutionCache);
+			synchronized (this) {
+				if (expectedGeneration == generation) {
+					entryPointType = type;
+				}
+			}
 		}
 
-		return entryPointType;
+		return type;
 	}
 
 	/**
@@ -310,11 +334,7 @@ public class GwtModule extends GwtElement {
 	 * @throws GwtModelException
 	 */
 	public String getEntryPointTypeName() throws GwtModelException {
-		if (null == entryPointTypeName) {
-			entryPointTypeName = findEntryPointTypeName();
-		}
-
-		return entryPointTypeName;
+		return getDescriptor(GwtModuleSourceHandler.FACT_ENTRY_POINT).getEntryPointClass();
 	}
 
 	/**
@@ -324,11 +344,29 @@ public class GwtModule extends GwtElement {
 	 * @throws CoreException
 	 */
 	public GwtModule[] getInheritedModules() throws CoreException {
-		if (null == inheritedModules) {
-			inheritedModules = findInheritedModules();
+		GwtModule[] modules = inheritedModules;
+		if (null == modules) {
+			final int expectedGeneration = getGeneration();
+			modules = findInheritedModules();
+			synchronized (this) {
+				if (expectedGeneration == generation) {
+					inheritedModules = modules;
+				}
+			}
 		}
 
-		return inheritedModules;
+		return modules;
+	}
+
+	/**
+	 * Returns the ids of the modules directly inherited by this module as
+	 * declared in the module descriptor.
+	 * 
+	 * @return the inherited module ids
+	 * @throws GwtModelException
+	 */
+	String[] getInheritedModuleIds() throws GwtModelException {
+		return getDescriptor().getInheritedModules();
 	}
 
 	/**
@@ -360,18 +398,61 @@ public class GwtModule extends GwtElement {
 	}
 
 	/**
-	 * Returns (creates if necessary) the module source info.
+	 * Returns (creates if necessary) the module descriptor snapshot.
+	 * 
+	 * @return the module descriptor snapshot
+	 * @throws GwtModelException
+	 */
+	GwtModuleDescriptor getDescriptor() throws GwtModelException {
+		return getDescriptor(GwtModuleSourceHandler.ALL_FACTS);
+	}
+
+	/**
+	 * Returns the module descriptor snapshot with at least the specified
+	 * facts.
+	 * <p>
+	 * If the complete snapshot is not available yet the module source is
+	 * parsed only until the requested facts are known. Such a partial snapshot
+	 * is remembered until the module source changes. Requesting other facts
+	 * parses again until those and the ones known before are known.
+	 * </p>
+	 * <p>
+	 * Readers don't lock; the snapshot is published with a single volatile
+	 * write.
+	 * </p>
 	 * 
-	 * @return the module source info
+	 * @param facts
+	 *            the requested facts
+	 * @return the module descriptor snapshot
 	 * @throws GwtModelException
 	 */
-	private synchronized GwtModuleSourceHandler getModuleSourceInfo() throws GwtModelException {
-		if (null == moduleSourceInfo) {
-			moduleSourceInfo = new GwtModuleSourceHandler();
+	private GwtModuleDescriptor getDescriptor(final int facts) throws GwtModelException {
+		GwtModuleDescriptor snapshot = descriptor;
+		if (null != snapshot) {
+			return snapshot;
+		}
+		final PartialDescriptor partialSnapshot = partialDescriptor;
+		if ((null != partialSnapshot) && ((partialSnapshot.facts & facts) == facts)) {
+			return partialSnapshot.descriptor;
+		}
+
+		final int expectedGeneration = getGeneration();
+		final GwtModuleIndex index = moduleDescriptor instanceof IFile ? GwtModelManager.getModelManager().getModuleIndex() : null;
+		if (moduleDescriptor instanceof ArchiveModuleDescriptor) {
+			// read when the archive was scanned
+			snapshot = ((ArchiveModuleDescriptor) moduleDescriptor).getModuleSource();
+		} else if (null != index) {
+			// try the persistent index
+			snapshot = index.getModuleSource((IFile) moduleDescriptor, moduleId);
+		}
+
+		if (null == snapshot) {
+			// keep the facts known before
+			final int parsedFacts = null != partialSnapshot ? facts | partialSnapshot.facts : facts;
 			InputStream contents = null;
 			try {
 				contents = getModuleDescriptor().getContents();
-				moduleSourceInfo.parseContents(new InputSource(contents));
+				snapshot = GwtModuleSourceHandler.parse(contents, parsedFacts);
 			} catch (final IOException e) {
 				throw new GwtModelException(GwtCore.newErrorStatus("Error while parsing module source", e));
 			} catch (final ParserConfigurationException e) {
@@ -391,8 +472,37 @@ public class GwtModule extends GwtElement {
 					}
 				}
 			}
+
+			if ((parsedFacts & GwtModuleSourceHandler.ALL_FACTS) != GwtModuleSourceHandler.ALL_FACTS) {
+				synchronized (this) {
+					if (expectedGeneration == generation) {
+						partialDescriptor = new PartialDescriptor(parsedFacts, snapshot);
+					}
+				}
+				return snapshot;
+			}
+
+			if (null != index) {
+				index.putModuleSource((IFile) moduleDescriptor, moduleId, snapshot);
+			}
 		}
-		return moduleSourceInfo;
+
+		synchronized (this) {
+			if (expectedGeneration == generation) {
+				descriptor = snapshot;
+				partialDescriptor = null;
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Returns the current generation.
+	 * 
+	 * @return the generation
+	 */
+	private synchronized int getGeneration() {
+		return generation;
 	}
 
 	/**
@@ -461,7 +571,7 @@ public class GwtModule extends GwtElement {
 	 * @throws GwtModelException
 	 */
 	public String[] getSourcePaths() throws GwtModelException {
-		return getModuleSourceInfo().getSourcePaths();
+		return getDescriptor().getSourcePaths().clone();
 	}
 
 	/*
@@ -509,8 +619,7 @@ public class GwtModule extends GwtElement {
 		final IPath moduleRoot = isBinary() ? modulePackage.getPath() : ((IFile) moduleDescriptor).getParent().getFullPath();
 
 		// client folder
-		final GwtModuleSourceHandler info = getModuleSourceInfo();
-		for (final String sourcePath : info.getSourcePaths()) {
+		for (final String sourcePath : getDescriptor().getSourcePaths()) {
 			if (moduleRoot.append(sourcePath).isPrefixOf(fullPath)) {
 				return true;
 			}
@@ -539,6 +648,14 @@ public class GwtModule extends GwtElement {
 	 * @see #isModulePath(IPath)
 	 */
 	public boolean isModuleResource(final IResource resource) throws GwtModelException {
+		// use the compiled paths of the project modules
+		if (!isBinary()) {
+			final GwtModulePathMatcher matcher = getProject().getPathMatcher();
+			if (matcher.isCompiled(this)) {
+				return matcher.isOwnedBy(resource, this);
+			}
+		}
+
 		// if the resource is below the module path, then consider it a module resource
 		if (isModulePath(resource.getFullPath())) {
 			return true;
@@ -549,8 +666,7 @@ public class GwtModule extends GwtElement {
 		if (javaProject.isOnClasspath(resource)) {
 			final String resourceFullPath = resource.getFullPath().toString();
 			final String modulePackageBaseName = getModulePackage().getElementName().replace('.', '/');
-			final GwtModuleSourceHandler info = getModuleSourceInfo();
-			for (final String sourcePath : info.getSourcePaths()) {
+			for (final String sourcePath : getDescriptor().getSourcePaths()) {
 				String modulePackageName;
 				if (sourcePath.equals(".") || sourcePath.equals("./") || sourcePath.equals("/") || sourcePath.equals("")) {
 					modulePackageName = modulePackageBaseName;
@@ -568,6 +684,27 @@ public class GwtModule extends GwtElement {
 		return false;
 	}
 
+	/**
+	 * Forgets the resolved inherited modules so that they are resolved again
+	 * on next access.
+	 */
+	synchronized void resetInheritedModules() {
+		generation++;
+		inheritedModules = null;
+	}
+
+	/**
+	 * Forgets everything read from the module descriptor so that it is parsed
+	 * again on next access.
+	 */
+	synchronized void resetSourceInfo() {
+		generation++;
+		descriptor = null;
+		partialDescriptor = null;
+		entryPointType = null;
+		inheritedModules = null;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see java.lang.Object#toString()
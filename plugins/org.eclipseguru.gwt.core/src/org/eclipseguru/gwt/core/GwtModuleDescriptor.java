@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core;
+
+/**
+ * An immutable snapshot of the information read from a module source.
+ * <p>
+ * All strings are interned and empty or default arrays are shared so that a
+ * snapshot only takes a few hundred bytes. The arrays returned by the getters
+ * are not copied and must not be modified.
+ * </p>
+ */
+final class GwtModuleDescriptor {
+
+	/** NO_STRINGS */
+	static final String[] NO_STRINGS = new String[0];
+
+	/** default source path */
+	static final String[] DEFAULT_SOURCE_PATHS = new String[] { "client" }; //$NON-NLS-1$
+
+	/**
+	 * Interns the specified strings.
+	 * 
+	 * @param strings
+	 * @return the interned strings (maybe a shared array if empty)
+	 */
+	private static String[] intern(final String[] strings) {
+		if ((null == strings) || (strings.length == 0)) {
+			return NO_STRINGS;
+		}
+		final String[] interned = new String[strings.length];
+		for (int i = 0; i < strings.length; i++) {
+			interned[i] = strings[i].intern();
+		}
+		return interned;
+	}
+
+	/**
+	 * Interns the specified string.
+	 * 
+	 * @param string
+	 * @return the interned string (maybe <code>null</code>)
+	 */
+	private static String intern(final String string) {
+		return null != string ? string.intern() : null;
+	}
+
+	/** alternateModuleName */
+	private final String alternateModuleName;
+
+	/** entryPointClass */
+	private final String entryPointClass;
+
+	/** inheritedModules */
+	private final String[] inheritedModules;
+
+	/** sourcePaths */
+	private final String[] sourcePaths;
+
+	/** superSourcePaths */
+	private final String[] superSourcePaths;
+
+	/**
+	 * Creates a new snapshot.
+	 * 
+	 * @param alternateModuleName
+	 *            the alternate module name (maybe <code>null</code>)
+	 * @param entryPointClass
+	 *            the entry point class (maybe <code>null</code>)
+	 * @param inheritedModules
+	 *            the inherited module ids
+	 * @param sourcePaths
+	 *            the source paths (the default source path is used if empty)
+	 * @param superSourcePaths
+	 *            the super source paths
+	 */
+	GwtModuleDescriptor(final String alternateModuleName, final String entryPointClass, final String[] inheritedModules, final String[] sourcePaths, final String[] superSourcePaths) {
+		this.alternateModuleName = intern(alternateModuleName);
+		this.entryPointClass = intern(entryPointClass);
+		this.inheritedModules = intern(inheritedModules);
+		if ((null == sourcePaths) || (sourcePaths.length == 0) || ((sourcePaths.length == 1) && DEFAULT_SOURCE_PATHS[0].equals(sourcePaths[0]))) {
+			this.sourcePaths = DEFAULT_SOURCE_PATHS;
+		} else {
+			this.sourcePaths = intern(sourcePaths);
+		}
+		this.superSourcePaths = intern(superSourcePaths);
+	}
+
+	/**
+	 * Returns the alternate module name.
+	 * 
+	 * @return the alternate module name (maybe <code>null</code>)
+	 */
+	String getAlternateModuleName() {
+		return alternateModuleName;
+	}
+
+	/**
+	 * Returns the entry point class.
+	 * 
+	 * @return the entry point class (maybe <code>null</code>)
+	 */
+	String getEntryPointClass() {
+		return entryPointClass;
+	}
+
+	/**
+	 * Returns the inherited module ids.
+	 * 
+	 * @return the inherited module ids (must not be modified)
+	 */
+	String[] getInheritedModules() {
+		return inheritedModules;
+	}
+
+	/**
+	 * Returns the source paths.
+	 * 
+	 * @return the source paths (must not be modified)
+	 */
+	String[] getSourcePaths() {
+		return sourcePaths;
+	}
+
+	/**
+	 * Returns the super source paths.
+	 * 
+	 * @return the super source paths (must not be modified)
+	 */
+	String[] getSuperSourcePaths() {
+		return superSourcePaths;
+	}
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discovers the module descriptors in the source folders of a project.
+ * <p>
+ * Source folders are walked using resource proxies which is a lot cheaper
+ * than asking JDT for the non-Java resources of every package. Independent
+ * source folders are walked in parallel on a small shared pool.
+ * </p>
+ */
+final class GwtModuleDiscovery {
+
+	/**
+	 * Collects the module descriptors of one source folder.
+	 */
+	private static final class SourceFolderVisitor implements IResourceProxyVisitor, Callable<List<IFile>> {
+
+		/** javaProject */
+		private final IJavaProject javaProject;
+
+		/** sourceFolder */
+		private final IContainer sourceFolder;
+
+		/** moduleDescriptors */
+		private final List<IFile> moduleDescriptors = new ArrayList<IFile>(2);
+
+		/** indicates if the next visited proxy is the source folder itself */
+		private boolean atSourceFolder = true;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param javaProject
+		 * @param sourceFolder
+		 */
+		SourceFolderVisitor(final IJavaProject javaProject, final IContainer sourceFolder) {
+			this.javaProject = javaProject;
+			this.sourceFolder = sourceFolder;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		public List<IFile> call() throws CoreException {
+			sourceFolder.accept(this, IResource.NONE);
+			return moduleDescriptors;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * org.eclipse.core.resources.IResourceProxyVisitor#visit(org.eclipse
+		 * .core.resources.IResourceProxy)
+		 */
+		public boolean visit(final IResourceProxy proxy) throws CoreException {
+			if (atSourceFolder) {
+				atSourceFolder = false;
+				return true;
+			}
+
+			switch (proxy.getType()) {
+				case IResource.FILE:
+					if (proxy.getName().endsWith(GwtUtil.GWT_MODULE_SOURCE_EXTENSION)) {
+						// honor exclusion filters and nested output folders
+						final IFile file = (IFile) proxy.requestResource();
+						if (GwtUtil.isModuleDescriptor(file) && javaProject.isOnClasspath(file)) {
+							moduleDescriptors.add(file);
+						}
+					}
+					return false;
+
+				case IResource.FOLDER:
+					// only folders which can be packages
+					return isPackageSegment(proxy.getName());
+			}
+			return false;
+		}
+	}
+
+	/** the maximum number of threads used for discovery */
+	private static final int MAX_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	/** the shared pool (guarded by <code>GwtModuleDiscovery.class</code>) */
+	private static ExecutorService executor;
+
+	/**
+	 * Finds the module descriptors in the source folders of the specified
+	 * project.
+	 * 
+	 * @param javaProject
+	 * @return the module descriptors in classpath order
+	 * @throws CoreException
+	 */
+	static IFile[] findModuleDescriptors(final IJavaProject javaProject) throws CoreException {
+		final List<SourceFolderVisitor> visitors = new ArrayList<SourceFolderVisitor>();
+		for (final IPackageFragmentRoot root : javaProject.getPackageFragmentRoots()) {
+			// check only in source folders. Skip others
+			if ((root.getKind() != IPackageFragmentRoot.K_SOURCE) || !(root.getResource() instanceof IContainer)) {
+				continue;
+			}
+			visitors.add(new SourceFolderVisitor(javaProject, (IContainer) root.getResource()));
+		}
+
+		// nested source folders might report the same descriptor
+		final Set<IFile> moduleDescriptors = new LinkedHashSet<IFile>();
+		if (visitors.size() == 1) {
+			moduleDescriptors.addAll(visitors.get(0).call());
+		} else if (!visitors.isEmpty()) {
+			final List<Future<List<IFile>>> results = new ArrayList<Future<List<IFile>>>(visitors.size());
+			final ExecutorService executor = getExecutor();
+			for (final SourceFolderVisitor visitor : visitors) {
+				results.add(executor.submit(visitor));
+			}
+			try {
+				for (final Future<List<IFile>> result : results) {
+					moduleDescriptors.addAll(result.get());
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			} catch (final ExecutionException e) {
+				if (e.getCause() instanceof CoreException) {
+					throw (CoreException) e.getCause();
+				}
+				throw new CoreException(GwtCore.newErrorStatus("Error while discovering GWT modules in project " + javaProject.getElementName(), e.getCause()));
+			} finally {
+				for (final Future<List<IFile>> result : results) {
+					result.cancel(false);
+				}
+			}
+		}
+		return moduleDescriptors.toArray(new IFile[moduleDescriptors.size()]);
+	}
+
+	/**
+	 * Returns the shared pool.
+	 * 
+	 * @return the pool
+	 */
+	private static synchronized ExecutorService getExecutor() {
+		if (null == executor) {
+			executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private int count;
+
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r, "GWT Module Discovery " + (++count)); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Indicates if the specified folder name is a valid package name segment.
+	 * 
+	 * @param name
+	 * @return <code>true</code> if the name is a Java identifier
+	 */
+	static boolean isPackageSegment(final String name) {
+		if ((name.length() == 0) || !Character.isJavaIdentifierStart(name.charAt(0))) {
+			return false;
+		}
+		for (int i = 1; i < name.length(); i++) {
+			if (!Character.isJavaIdentifierPart(name.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the shared pool.
+	 */
+	static synchronized void shutdown() {
+		if (null != executor) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private GwtModuleDiscovery() {
+		// empty
+	}
+}
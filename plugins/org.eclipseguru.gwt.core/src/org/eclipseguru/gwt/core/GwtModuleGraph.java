@@ -0,0 +1,495 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The inheritance graph of the modules in the workspace.
+ * <p>
+ * The graph is keyed by module id. It contains an edge from each workspace
+ * module to every module it inherits (including modules which are not part of
+ * the workspace, e.g. modules in the GWT runtime). The graph is built lazily
+ * and updated incrementally when module descriptors or projects change.
+ * Transitive closures are memoized until a module they depend on changes.
+ * </p>
+ * <p>
+ * The module inheritance is expected to be acyclic. Cycles are tolerated when
+ * computing closures and can be detected using {@link #findCycle(String)}.
+ * </p>
+ */
+public final class GwtModuleGraph {
+
+	/**
+	 * A workspace module known to the graph.
+	 */
+	private static final class Node {
+
+		/** module */
+		final GwtModule module;
+
+		/** inheritedModuleIds */
+		final String[] inheritedModuleIds;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param module
+		 * @param inheritedModuleIds
+		 */
+		Node(final GwtModule module, final String[] inheritedModuleIds) {
+			this.module = module;
+			this.inheritedModuleIds = inheritedModuleIds;
+		}
+	}
+
+	/** NO_MODULE_IDS */
+	private static final String[] NO_MODULE_IDS = new String[0];
+
+	/** nodes by module descriptor full path */
+	private final Map<IPath, Node> nodes = new HashMap<IPath, Node>();
+
+	/** workspace modules by module id */
+	private final Map<String, List<Node>> nodesByModuleId = new HashMap<String, List<Node>>();
+
+	/** inherited module ids by module id */
+	private final Map<String, Set<String>> inherits = new HashMap<String, Set<String>>();
+
+	/** inheriting module ids by module id */
+	private final Map<String, Set<String>> inheritedBy = new HashMap<String, Set<String>>();
+
+	/** memoized transitive closures by module id */
+	private final Map<String, Set<String>> closures = new HashMap<String, Set<String>>();
+
+	/** module descriptors changed since last update */
+	private final Set<IFile> changedModuleDescriptors = new HashSet<IFile>();
+
+	/** projects changed since last update */
+	private final Set<IProject> changedProjects = new HashSet<IProject>();
+
+	/** indicates if the graph has been built */
+	private boolean built;
+
+	/**
+	 * Hidden constructor.
+	 */
+	GwtModuleGraph() {
+		// empty
+	}
+
+	/**
+	 * Adds a node for the specified module.
+	 * 
+	 * @param module
+	 */
+	private void addNode(final GwtModule module) {
+		String[] inheritedModuleIds;
+		try {
+			inheritedModuleIds = module.getInheritedModuleIds();
+		} catch (final GwtModelException e) {
+			// broken descriptor, the builder reports it
+			inheritedModuleIds = NO_MODULE_IDS;
+		}
+
+		final Node node = new Node(module, inheritedModuleIds);
+		nodes.put(getKey(module), node);
+		List<Node> nodesWithSameId = nodesByModuleId.get(module.getModuleId());
+		if (null == nodesWithSameId) {
+			nodesWithSameId = new ArrayList<Node>(1);
+			nodesByModuleId.put(module.getModuleId(), nodesWithSameId);
+		}
+		nodesWithSameId.add(node);
+		updateEdges(module.getModuleId());
+	}
+
+	/**
+	 * Builds the graph from all modules of all GWT projects.
+	 */
+	private void build() {
+		clear();
+		for (final GwtProject project : GwtModelManager.getModelManager().getModel().getProjects()) {
+			addProject(project);
+		}
+		built = true;
+	}
+
+	/**
+	 * Adds all modules of the specified project.
+	 * 
+	 * @param project
+	 */
+	private void addProject(final GwtProject project) {
+		try {
+			for (final GwtModule module : project.getModules()) {
+				addNode(module);
+			}
+		} catch (final GwtModelException e) {
+			GwtCore.logError("Error while reading modules of project " + project.getName(), e);
+		}
+	}
+
+	/**
+	 * Forgets everything.
+	 */
+	synchronized void clear() {
+		nodes.clear();
+		nodesByModuleId.clear();
+		inherits.clear();
+		inheritedBy.clear();
+		closures.clear();
+		changedModuleDescriptors.clear();
+		changedProjects.clear();
+		built = false;
+	}
+
+	/**
+	 * Finds a cycle in the module inheritance.
+	 * 
+	 * @param moduleId
+	 *            the module id
+	 * @return the module ids of the cycle starting and ending with the
+	 *         specified module (<code>null</code> if the module is not part
+	 *         of a cycle)
+	 */
+	public synchronized String[] findCycle(final String moduleId) {
+		update();
+
+		// breadth first search back to the module
+		final Map<String, String> predecessors = new HashMap<String, String>();
+		final LinkedList<String> queue = new LinkedList<String>();
+		queue.add(moduleId);
+		while (!queue.isEmpty()) {
+			final String current = queue.removeFirst();
+			final Set<String> inheritedModuleIds = inherits.get(current);
+			if (null == inheritedModuleIds) {
+				continue;
+			}
+			for (final String inheritedModuleId : inheritedModuleIds) {
+				if (predecessors.containsKey(inheritedModuleId)) {
+					continue;
+				}
+				predecessors.put(inheritedModuleId, current);
+				if (inheritedModuleId.equals(moduleId)) {
+					// found, walk back
+					final LinkedList<String> cycle = new LinkedList<String>();
+					String step = moduleId;
+					do {
+						cycle.addFirst(step);
+						step = predecessors.get(step);
+					} while (!step.equals(moduleId));
+					cycle.addFirst(moduleId);
+					return cycle.toArray(new String[cycle.size()]);
+				}
+				queue.add(inheritedModuleId);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the transitive closure of the specified module ids in the
+	 * specified direction.
+	 * 
+	 * @param moduleId
+	 * @param edges
+	 * @return the closure (excluding the module itself unless it is part of a
+	 *         cycle)
+	 */
+	private Set<String> getClosure(final String moduleId, final Map<String, Set<String>> edges) {
+		final Set<String> closure = new LinkedHashSet<String>();
+		final LinkedList<String> stack = new LinkedList<String>();
+		stack.add(moduleId);
+		while (!stack.isEmpty()) {
+			final Set<String> next = edges.get(stack.removeLast());
+			if (null == next) {
+				continue;
+			}
+			for (final String id : next) {
+				if (!closure.add(id)) {
+					continue;
+				}
+
+				// re-use what we know already
+				final Set<String> memoized = edges == inherits ? closures.get(id) : null;
+				if (null != memoized) {
+					closure.addAll(memoized);
+				} else {
+					stack.add(id);
+				}
+			}
+		}
+		return closure;
+	}
+
+	/**
+	 * Returns the workspace modules which inherit the specified module either
+	 * directly or indirectly.
+	 * 
+	 * @param moduleId
+	 *            the module id
+	 * @return the dependent workspace modules
+	 */
+	public synchronized GwtModule[] getDependentModules(final String moduleId) {
+		update();
+		return getModules(getClosure(moduleId, inheritedBy));
+	}
+
+	/**
+	 * Returns the workspace modules which directly inherit the specified
+	 * module.
+	 * 
+	 * @param moduleId
+	 *            the module id
+	 * @return the inheriting workspace modules
+	 */
+	public synchronized GwtModule[] getInheritingModules(final String moduleId) {
+		update();
+		final Set<String> moduleIds = inheritedBy.get(moduleId);
+		return getModules(null != moduleIds ? moduleIds : Collections.<String> emptySet());
+	}
+
+	/**
+	 * Returns the workspace modules inherited by the specified module either
+	 * directly or indirectly.
+	 * 
+	 * @param moduleId
+	 *            the module id
+	 * @return the inherited workspace modules
+	 */
+	public synchronized GwtModule[] getInheritedModules(final String moduleId) {
+		return getModules(new LinkedHashSet<String>(Arrays.asList(getInheritedModuleIds(moduleId))));
+	}
+
+	/**
+	 * Returns the ids of all modules inherited by the specified module either
+	 * directly or indirectly.
+	 * 
+	 * @param moduleId
+	 *            the module id
+	 * @return the inherited module ids
+	 */
+	public synchronized String[] getInheritedModuleIds(final String moduleId) {
+		update();
+		Set<String> closure = closures.get(moduleId);
+		if (null == closure) {
+			closure = getClosure(moduleId, inherits);
+			closures.put(moduleId, closure);
+		}
+		return closure.toArray(new String[closure.size()]);
+	}
+
+	/**
+	 * Returns the key for the specified module.
+	 * 
+	 * @param module
+	 * @return the key
+	 */
+	private IPath getKey(final GwtModule module) {
+		return module.getModuleDescriptor().getFullPath();
+	}
+
+	/**
+	 * Returns the workspace modules with the specified ids.
+	 * 
+	 * @param moduleIds
+	 * @return the workspace modules
+	 */
+	private GwtModule[] getModules(final Set<String> moduleIds) {
+		final List<GwtModule> modules = new ArrayList<GwtModule>(moduleIds.size());
+		for (final String moduleId : moduleIds) {
+			final List<Node> nodesWithSameId = nodesByModuleId.get(moduleId);
+			if (null != nodesWithSameId) {
+				for (final Node node : nodesWithSameId) {
+					modules.add(node.module);
+				}
+			}
+		}
+		return modules.toArray(new GwtModule[modules.size()]);
+	}
+
+	/**
+	 * Invalidates the memoized closures depending on the specified module.
+	 * 
+	 * @param moduleId
+	 */
+	private void invalidateClosures(final String moduleId) {
+		closures.remove(moduleId);
+		for (final String dependentModuleId : getClosure(moduleId, inheritedBy)) {
+			closures.remove(dependentModuleId);
+		}
+	}
+
+	/**
+	 * Records a change of the specified module descriptor.
+	 * <p>
+	 * The graph will be updated on next access.
+	 * </p>
+	 * 
+	 * @param moduleDescriptor
+	 */
+	synchronized void moduleDescriptorChanged(final IFile moduleDescriptor) {
+		if (built) {
+			changedModuleDescriptors.add(moduleDescriptor);
+		}
+	}
+
+	/**
+	 * Records a change of the specified project.
+	 * <p>
+	 * The graph will be updated on next access.
+	 * </p>
+	 * 
+	 * @param project
+	 */
+	synchronized void projectChanged(final IProject project) {
+		if (built) {
+			changedProjects.add(project);
+		}
+	}
+
+	/**
+	 * Removes the node with the specified key.
+	 * 
+	 * @param key
+	 */
+	private void removeNode(final IPath key) {
+		final Node node = nodes.remove(key);
+		if (null == node) {
+			return;
+		}
+
+		final String moduleId = node.module.getModuleId();
+		final List<Node> nodesWithSameId = nodesByModuleId.get(moduleId);
+		nodesWithSameId.remove(node);
+		if (nodesWithSameId.isEmpty()) {
+			nodesByModuleId.remove(moduleId);
+		}
+		updateEdges(moduleId);
+	}
+
+	/**
+	 * Applies recorded changes.
+	 */
+	private void update() {
+		if (!built) {
+			build();
+			return;
+		}
+
+		if (!changedProjects.isEmpty()) {
+			final IProject[] projects = changedProjects.toArray(new IProject[changedProjects.size()]);
+			changedProjects.clear();
+			for (final IProject project : projects) {
+				final List<IPath> keys = new ArrayList<IPath>();
+				for (final Map.Entry<IPath, Node> entry : nodes.entrySet()) {
+					if (project.equals(entry.getValue().module.getProjectResource())) {
+						keys.add(entry.getKey());
+					}
+				}
+				for (final IPath key : keys) {
+					removeNode(key);
+				}
+				if (GwtProject.hasGwtNature(project)) {
+					addProject(GwtModelManager.getModelManager().getProject(project));
+				}
+			}
+		}
+
+		if (!changedModuleDescriptors.isEmpty()) {
+			final IFile[] moduleDescriptors = changedModuleDescriptors.toArray(new IFile[changedModuleDescriptors.size()]);
+			changedModuleDescriptors.clear();
+			for (final IFile moduleDescriptor : moduleDescriptors) {
+				removeNode(moduleDescriptor.getFullPath());
+				if (!moduleDescriptor.isAccessible() || !GwtProject.hasGwtNature(moduleDescriptor.getProject())) {
+					continue;
+				}
+
+				// only descriptors in source folders are modules
+				final GwtProject project = GwtModelManager.getModelManager().getProject(moduleDescriptor.getProject());
+				try {
+					for (final GwtModule module : project.getModules()) {
+						if (moduleDescriptor.equals(module.getModuleDescriptor())) {
+							addNode(module);
+							break;
+						}
+					}
+				} catch (final GwtModelException e) {
+					GwtCore.logError("Error while reading modules of project " + project.getName(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recomputes the outgoing edges of the specified module id.
+	 * 
+	 * @param moduleId
+	 */
+	private void updateEdges(final String moduleId) {
+		// union of all workspace modules with the same id
+		final Set<String> newInherits = new LinkedHashSet<String>();
+		final List<Node> nodesWithSameId = nodesByModuleId.get(moduleId);
+		if (null != nodesWithSameId) {
+			for (final Node node : nodesWithSameId) {
+				for (final String inheritedModuleId : node.inheritedModuleIds) {
+					newInherits.add(inheritedModuleId);
+				}
+			}
+		}
+
+		final Set<String> oldInherits = inherits.get(moduleId);
+		if ((null != oldInherits) && oldInherits.equals(newInherits)) {
+			return;
+		}
+
+		// update reverse index
+		if (null != oldInherits) {
+			for (final String inheritedModuleId : oldInherits) {
+				final Set<String> inheriting = inheritedBy.get(inheritedModuleId);
+				if (null != inheriting) {
+					inheriting.remove(moduleId);
+					if (inheriting.isEmpty()) {
+						inheritedBy.remove(inheritedModuleId);
+					}
+				}
+			}
+		}
+		for (final String inheritedModuleId : newInherits) {
+			Set<String> inheriting = inheritedBy.get(inheritedModuleId);
+			if (null == inheriting) {
+				inheriting = new HashSet<String>(4);
+				inheritedBy.put(inheritedModuleId, inheriting);
+			}
+			inheriting.add(moduleId);
+		}
+
+		if (newInherits.isEmpty()) {
+			inherits.remove(moduleId);
+		} else {
+			inherits.put(moduleId, newInherits);
+		}
+		invalidateClosures(moduleId);
+	}
+}
@@ -0,0 +1,570 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A persistent index of GWT module descriptors.
+ * <p>
+ * The index remembers what was read from module descriptors in workspace
+ * projects (module id, entry point, inherited modules, source paths and
+ * <code>rename-to</code>) as well as the module descriptors found in each
+ * project. It is stored in a compact binary file in the plug-in state
+ * location which is memory-mapped when read. Entries are only decoded on
+ * demand and are validated against the modification stamp of the descriptor
+ * so that stale information is never used.
+ * </p>
+ */
+final class GwtModuleIndex {
+
+	/**
+	 * An input stream reading from a byte buffer.
+	 */
+	private static final class ByteBufferInputStream extends InputStream {
+
+		/** buffer */
+		private final ByteBuffer buffer;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param buffer
+		 */
+		ByteBufferInputStream(final ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return buffer.remaining();
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			return buffer.get() & 0xFF;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, int len) throws IOException {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+	}
+
+	/**
+	 * An index entry.
+	 */
+	private static final class Entry {
+
+		/** modificationStamp */
+		final long modificationStamp;
+
+		/** moduleId */
+		final String moduleId;
+
+		/** moduleSource */
+		final GwtModuleDescriptor moduleSource;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param modificationStamp
+		 * @param moduleId
+		 * @param moduleSource
+		 */
+		Entry(final long modificationStamp, final String moduleId, final GwtModuleDescriptor moduleSource) {
+			this.modificationStamp = modificationStamp;
+			this.moduleId = moduleId;
+			this.moduleSource = moduleSource;
+		}
+	}
+
+	/** INDEX_FILE_NAME */
+	static final String INDEX_FILE_NAME = "modules.index"; //$NON-NLS-1$
+
+	/** NEW_INDEX_FILE_SUFFIX */
+	private static final String NEW_INDEX_FILE_SUFFIX = ".new"; //$NON-NLS-1$
+
+	/** MAGIC */
+	private static final int MAGIC = 0x47574958; // GWIX
+
+	/** VERSION */
+	private static final int VERSION = 2;
+
+	/** NO_STRINGS */
+	private static final String[] NO_STRINGS = new String[0];
+
+	/**
+	 * Loads the index from the specified file.
+	 * <p>
+	 * Only the directory of the index is read. The entries remain in the
+	 * memory-mapped file and are decoded on demand. An empty index is returned
+	 * if the file does not exist or could not be read.
+	 * </p>
+	 * 
+	 * @param indexFile
+	 * @return the loaded index
+	 */
+	static GwtModuleIndex load(final File indexFile) {
+		final GwtModuleIndex index = new GwtModuleIndex(indexFile);
+
+		// a new index might not have been renamed because the old one was still mapped
+		final File newIndexFile = new File(indexFile.getPath() + NEW_INDEX_FILE_SUFFIX);
+		if (newIndexFile.isFile()) {
+			indexFile.delete();
+			if (!newIndexFile.renameTo(indexFile)) {
+				newIndexFile.delete();
+			}
+		}
+
+		if (!indexFile.isFile()) {
+			return index;
+		}
+
+		try {
+			index.readDirectory(indexFile);
+		} catch (final IOException e) {
+			// start over with an empty index
+			GwtCore.logError("Error while reading GWT module index. The index will be rebuild.", e);
+			index.clear();
+		}
+		return index;
+	}
+
+	/**
+	 * Reads the information of a module source.
+	 * 
+	 * @param in
+	 * @return the module source information
+	 * @throws IOException
+	 */
+	static GwtModuleDescriptor readModuleSource(final DataInputStream in) throws IOException {
+		final String entryPointClass = readNullableString(in);
+		final String alternateModuleName = readNullableString(in);
+		final String[] inheritedModules = readStrings(in);
+		final String[] sourcePaths = readStrings(in);
+		final String[] superSourcePaths = readStrings(in);
+		return new GwtModuleDescriptor(alternateModuleName, entryPointClass, inheritedModules, sourcePaths, superSourcePaths);
+	}
+
+	/**
+	 * Reads a nullable string.
+	 * 
+	 * @param in
+	 * @return the string (maybe <code>null</code>)
+	 * @throws IOException
+	 */
+	private static String readNullableString(final DataInputStream in) throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		return in.readUTF();
+	}
+
+	/**
+	 * Reads a string array.
+	 * 
+	 * @param in
+	 * @return the string array
+	 * @throws IOException
+	 */
+	private static String[] readStrings(final DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length == 0) {
+			return NO_STRINGS;
+		}
+		final String[] strings = new String[length];
+		for (int i = 0; i < length; i++) {
+			strings[i] = in.readUTF();
+		}
+		return strings;
+	}
+
+	/**
+	 * Writes the information of a module source.
+	 * 
+	 * @param out
+	 * @param moduleSource
+	 * @throws IOException
+	 */
+	static void writeModuleSource(final DataOutputStream out, final GwtModuleDescriptor moduleSource) throws IOException {
+		writeNullableString(out, moduleSource.getEntryPointClass());
+		writeNullableString(out, moduleSource.getAlternateModuleName());
+		writeStrings(out, moduleSource.getInheritedModules());
+		writeStrings(out, moduleSource.getSourcePaths());
+		writeStrings(out, moduleSource.getSuperSourcePaths());
+	}
+
+	/**
+	 * Writes a nullable string.
+	 * 
+	 * @param out
+	 * @param string
+	 * @throws IOException
+	 */
+	private static void writeNullableString(final DataOutputStream out, final String string) throws IOException {
+		out.writeBoolean(null != string);
+		if (null != string) {
+			out.writeUTF(string);
+		}
+	}
+
+	/**
+	 * Writes a string array.
+	 * 
+	 * @param out
+	 * @param strings
+	 * @throws IOException
+	 */
+	private static void writeStrings(final DataOutputStream out, final String[] strings) throws IOException {
+		out.writeInt(strings.length);
+		for (final String string : strings) {
+			out.writeUTF(string);
+		}
+	}
+
+	/** indexFile */
+	private final File indexFile;
+
+	/** the memory-mapped index file (maybe <code>null</code>) */
+	private MappedByteBuffer mappedIndex;
+
+	/** offsets of the undecoded entries in the mapped index */
+	private final Map<String, Integer> mappedEntries = new HashMap<String, Integer>();
+
+	/** decoded or updated entries */
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/** module descriptors by project name */
+	private final Map<String, String[]> projectModuleDescriptors = new HashMap<String, String[]>();
+
+	/** dirty */
+	private boolean dirty;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param indexFile
+	 */
+	private GwtModuleIndex(final File indexFile) {
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Removes everything from the index.
+	 */
+	synchronized void clear() {
+		mappedIndex = null;
+		mappedEntries.clear();
+		entries.clear();
+		projectModuleDescriptors.clear();
+		dirty = true;
+	}
+
+	/**
+	 * Decodes an entry from the mapped index.
+	 * 
+	 * @param offset
+	 * @return the entry
+	 * @throws IOException
+	 */
+	private Entry decodeEntry(final int offset) throws IOException {
+		final ByteBuffer buffer = mappedIndex.duplicate();
+		buffer.position(offset);
+		final DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+		final long modificationStamp = in.readLong();
+		in.readInt(); // payload length
+		final String moduleId = in.readUTF();
+		return new Entry(modificationStamp, moduleId, readModuleSource(in));
+	}
+
+	/**
+	 * Removes the information about the module descriptors of the specified
+	 * project.
+	 * 
+	 * @param project
+	 */
+	synchronized void forgetModuleDescriptors(final IProject project) {
+		if (null != projectModuleDescriptors.remove(project.getName())) {
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Returns the module descriptors of the specified project.
+	 * <p>
+	 * Returns <code>null</code> if the index does not know the module
+	 * descriptors of the project or if one of them is no longer accessible.
+	 * </p>
+	 * 
+	 * @param project
+	 * @return the module descriptors (maybe <code>null</code>)
+	 */
+	synchronized IFile[] getModuleDescriptors(final IProject project) {
+		final String[] paths = projectModuleDescriptors.get(project.getName());
+		if (null == paths) {
+			return null;
+		}
+
+		final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		final IFile[] files = new IFile[paths.length];
+		for (int i = 0; i < paths.length; i++) {
+			files[i] = root.getFile(Path.fromPortableString(paths[i]));
+			if (!files[i].isAccessible()) {
+				forgetModuleDescriptors(project);
+				return null;
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Returns the module source information for the specified module
+	 * descriptor.
+	 * <p>
+	 * Returns <code>null</code> if the index has no or only stale information
+	 * about the module descriptor.
+	 * </p>
+	 * 
+	 * @param moduleDescriptor
+	 * @param moduleId
+	 *            the expected module id
+	 * @return the module source information (maybe <code>null</code>)
+	 */
+	synchronized GwtModuleDescriptor getModuleSource(final IFile moduleDescriptor, final String moduleId) {
+		final String key = moduleDescriptor.getFullPath().toPortableString();
+		Entry entry = entries.get(key);
+		if (null == entry) {
+			final Integer offset = mappedEntries.remove(key);
+			if (null == offset) {
+				return null;
+			}
+			try {
+				entry = decodeEntry(offset.intValue());
+			} catch (final IOException e) {
+				GwtCore.logError("Error while reading GWT module index entry.", e);
+				dirty = true;
+				return null;
+			}
+			entries.put(key, entry);
+		}
+
+		// validate
+		if ((entry.modificationStamp == IResource.NULL_STAMP) || (entry.modificationStamp != moduleDescriptor.getModificationStamp()) || !entry.moduleId.equals(moduleId)) {
+			entries.remove(key);
+			dirty = true;
+			return null;
+		}
+
+		return entry.moduleSource;
+	}
+
+	/**
+	 * Indicates if the index has been modified since it was loaded.
+	 * 
+	 * @return <code>true</code> if the index must be saved
+	 */
+	synchronized boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Remembers the module descriptors of the specified project.
+	 * 
+	 * @param project
+	 * @param moduleDescriptors
+	 */
+	synchronized void putModuleDescriptors(final IProject project, final IFile[] moduleDescriptors) {
+		final String[] paths = new String[moduleDescriptors.length];
+		for (int i = 0; i < moduleDescriptors.length; i++) {
+			paths[i] = moduleDescriptors[i].getFullPath().toPortableString();
+		}
+		projectModuleDescriptors.put(project.getName(), paths);
+		dirty = true;
+	}
+
+	/**
+	 * Remembers the module source information for the specified module
+	 * descriptor.
+	 * 
+	 * @param moduleDescriptor
+	 * @param moduleId
+	 * @param moduleSource
+	 */
+	synchronized void putModuleSource(final IFile moduleDescriptor, final String moduleId, final GwtModuleDescriptor moduleSource) {
+		final long modificationStamp = moduleDescriptor.getModificationStamp();
+		if (modificationStamp == IResource.NULL_STAMP) {
+			return;
+		}
+		final String key = moduleDescriptor.getFullPath().toPortableString();
+		mappedEntries.remove(key);
+		entries.put(key, new Entry(modificationStamp, moduleId, moduleSource));
+		dirty = true;
+	}
+
+	/**
+	 * Reads the directory of the index file and maps the file into memory.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	private synchronized void readDirectory(final File file) throws IOException {
+		final FileInputStream stream = new FileInputStream(file);
+		try {
+			final FileChannel channel = stream.getChannel();
+			mappedIndex = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			stream.close();
+		}
+
+		final ByteBuffer buffer = mappedIndex.duplicate();
+		final DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+		if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+			// unknown format, start over
+			clear();
+			return;
+		}
+
+		// module descriptors per project
+		final int projectCount = in.readInt();
+		for (int i = 0; i < projectCount; i++) {
+			final String projectName = in.readUTF();
+			projectModuleDescriptors.put(projectName, readStrings(in));
+		}
+
+		// entries (skip the payload, it's decoded on demand)
+		final int entryCount = in.readInt();
+		for (int i = 0; i < entryCount; i++) {
+			final String key = in.readUTF();
+			final int offset = buffer.position();
+			in.readLong(); // modification stamp
+			final int payloadLength = in.readInt();
+			buffer.position(buffer.position() + payloadLength);
+			mappedEntries.put(key, new Integer(offset));
+		}
+	}
+
+	/**
+	 * Removes the module source information of the specified module
+	 * descriptor.
+	 * 
+	 * @param moduleDescriptor
+	 *            the module descriptor full path
+	 */
+	synchronized void remove(final IPath moduleDescriptor) {
+		final String key = moduleDescriptor.toPortableString();
+		if ((null != entries.remove(key)) | (null != mappedEntries.remove(key))) {
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Saves the index if it has been modified.
+	 * 
+	 * @throws IOException
+	 */
+	synchronized void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+
+		final File newIndexFile = new File(indexFile.getPath() + NEW_INDEX_FILE_SUFFIX);
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newIndexFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			// module descriptors per project
+			out.writeInt(projectModuleDescriptors.size());
+			for (final Map.Entry<String, String[]> projectEntry : projectModuleDescriptors.entrySet()) {
+				out.writeUTF(projectEntry.getKey());
+				writeStrings(out, projectEntry.getValue());
+			}
+
+			// entries
+			out.writeInt(entries.size() + mappedEntries.size());
+			for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+				out.writeUTF(entry.getKey());
+				writeEntry(out, entry.getValue());
+			}
+			for (final Map.Entry<String, Integer> mappedEntry : mappedEntries.entrySet()) {
+				// copy undecoded entries as is
+				out.writeUTF(mappedEntry.getKey());
+				final ByteBuffer buffer = mappedIndex.duplicate();
+				buffer.position(mappedEntry.getValue().intValue());
+				final long modificationStamp = buffer.getLong();
+				final int payloadLength = buffer.getInt();
+				final byte[] payload = new byte[payloadLength];
+				buffer.get(payload);
+				out.writeLong(modificationStamp);
+				out.writeInt(payloadLength);
+				out.write(payload);
+			}
+		} finally {
+			out.close();
+		}
+
+		// replace the old index (this fails on some platforms if the old index is still mapped; the new one will be picked up on next load)
+		indexFile.delete();
+		newIndexFile.renameTo(indexFile);
+		dirty = false;
+	}
+
+	/**
+	 * Writes an entry.
+	 * 
+	 * @param out
+	 * @param entry
+	 * @throws IOException
+	 */
+	private void writeEntry(final DataOutputStream out, final Entry entry) throws IOException {
+		final ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(256);
+		final DataOutputStream payload = new DataOutputStream(payloadBytes);
+		final GwtModuleDescriptor moduleSource = entry.moduleSource;
+		payload.writeUTF(entry.moduleId);
+		writeModuleSource(payload, moduleSource);
+		payload.flush();
+
+		out.writeLong(entry.modificationStamp);
+		out.writeInt(payloadBytes.size());
+		payloadBytes.writeTo(out);
+	}
+}
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IStorage;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaModelException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Locates module descriptors by module id on the classpath of a project.
+ * <p>
+ * The locator walks all package fragment roots of the project (source
+ * folders, required projects and archives) once and keeps a hash map from
+ * module id to descriptor location. Archives are read through the
+ * {@link GwtArchiveModuleCache}. Afterwards the locator is kept up to date from
+ * Java element deltas. As on the GWT compiler classpath, the first descriptor found
+ * for a module id wins.
+ * </p>
+ */
+final class GwtModuleLocator {
+
+	/**
+	 * The location of a module descriptor.
+	 */
+	private static final class Location {
+
+		/** moduleDescriptor */
+		final IStorage moduleDescriptor;
+
+		/** packageFragment */
+		final IPackageFragment packageFragment;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param moduleDescriptor
+		 * @param packageFragment
+		 */
+		Location(final IStorage moduleDescriptor, final IPackageFragment packageFragment) {
+			this.moduleDescriptor = moduleDescriptor;
+			this.packageFragment = packageFragment;
+		}
+
+		/**
+		 * Returns the canonical module for this location.
+		 * 
+		 * @return the module
+		 */
+		GwtModule getModule() {
+			final GwtModelManager manager = GwtModelManager.getModelManager();
+			final GwtProject project = manager.getProject(packageFragment.getJavaProject().getProject());
+			if (moduleDescriptor instanceof IFile) {
+				return manager.getModule((IFile) moduleDescriptor, project);
+			}
+			return manager.getBinaryModule(moduleDescriptor, packageFragment, project);
+		}
+	}
+
+	/**
+	 * Computes the id of the module described by the specified descriptor.
+	 * 
+	 * @param moduleDescriptor
+	 * @param packageFragment
+	 * @return the module id (maybe <code>null</code> if the storage is not a
+	 *         module descriptor)
+	 */
+	static String getModuleId(final IStorage moduleDescriptor, final IPackageFragment packageFragment) {
+		final String simpleName = GwtUtil.getSimpleName(moduleDescriptor);
+		if (null == simpleName) {
+			return null;
+		}
+		if (packageFragment.isDefaultPackage()) {
+			return simpleName;
+		}
+		return packageFragment.getElementName().concat(".").concat(simpleName); //$NON-NLS-1$
+	}
+
+	/** javaProject */
+	private final IJavaProject javaProject;
+
+	/** locations by module id (<code>null</code> if not built yet) */
+	private Map<String, Location> locations;
+
+	/** paths of all package fragment roots searched */
+	private Set<IPath> rootPaths;
+
+	/** module ids which are defined in more than one root */
+	private Set<String> shadowedModuleIds;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param javaProject
+	 */
+	GwtModuleLocator(final IJavaProject javaProject) {
+		this.javaProject = javaProject;
+	}
+
+	/**
+	 * Adds a location unless another location is already known for the module.
+	 * 
+	 * @param moduleId
+	 * @param location
+	 * @return <code>true</code> if the location has been added
+	 */
+	private boolean add(final String moduleId, final Location location) {
+		if (locations.containsKey(moduleId)) {
+			shadowedModuleIds.add(moduleId);
+			return false;
+		}
+		locations.put(moduleId, location);
+		return true;
+	}
+
+	/**
+	 * Adds the module descriptors of the specified archive using the archive
+	 * module cache.
+	 * 
+	 * @param root
+	 * @return <code>false</code> if the archive could not be scanned
+	 */
+	private boolean addArchiveModuleDescriptors(final IPackageFragmentRoot root) {
+		final GwtArchiveModuleCache archiveModuleCache = GwtModelManager.getModelManager().getArchiveModuleCache();
+		if (null == archiveModuleCache) {
+			return false;
+		}
+
+		final IResource resource = root.getResource();
+		final IPath location = null != resource ? resource.getLocation() : root.getPath();
+		if (null == location) {
+			return false;
+		}
+
+		final File archive = location.toFile();
+		final Map<String, GwtModuleDescriptor> moduleDescriptors;
+		try {
+			moduleDescriptors = archiveModuleCache.getModuleDescriptors(archive);
+		} catch (final IOException e) {
+			GwtCore.logError("Error while scanning archive " + archive + " for GWT modules.", e);
+			return false;
+		}
+
+		for (final Map.Entry<String, GwtModuleDescriptor> entry : moduleDescriptors.entrySet()) {
+			final String entryName = entry.getKey();
+			final int lastSlash = entryName.lastIndexOf('/');
+			final String packageName = lastSlash != -1 ? entryName.substring(0, lastSlash).replace('/', '.') : ""; //$NON-NLS-1$
+			final IPackageFragment packageFragment = root.getPackageFragment(packageName);
+			final ArchiveModuleDescriptor moduleDescriptor = new ArchiveModuleDescriptor(archive, root.getPath(), entryName, entry.getValue());
+			final String moduleId = getModuleId(moduleDescriptor, packageFragment);
+			if (null != moduleId) {
+				add(moduleId, new Location(moduleDescriptor, packageFragment));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the module descriptors of the specified package fragment root by
+	 * asking JDT for the non-Java resources of its packages.
+	 * 
+	 * @param root
+	 * @throws JavaModelException
+	 */
+	private void addModuleDescriptors(final IPackageFragmentRoot root) throws JavaModelException {
+		for (final IJavaElement child : root.getChildren()) {
+			// look only for packages. Skip others
+			if (child.getElementType() != IJavaElement.PACKAGE_FRAGMENT) {
+				continue;
+			}
+
+			final IPackageFragment packageFragment = (IPackageFragment) child;
+			for (final Object nonJavaResource : packageFragment.getNonJavaResources()) {
+				if (nonJavaResource instanceof IFile) {
+					if (!GwtUtil.isModuleDescriptor((IFile) nonJavaResource)) {
+						continue;
+					}
+				} else if (!(nonJavaResource instanceof IStorage)) {
+					continue;
+				}
+
+				final IStorage moduleDescriptor = (IStorage) nonJavaResource;
+				final String moduleId = getModuleId(moduleDescriptor, packageFragment);
+				if (null != moduleId) {
+					add(moduleId, new Location(moduleDescriptor, packageFragment));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the locations from the package fragment roots of the project.
+	 * 
+	 * @throws JavaModelException
+	 */
+	private void build() throws JavaModelException {
+		locations = new HashMap<String, Location>();
+		rootPaths = new HashSet<IPath>();
+		shadowedModuleIds = new HashSet<String>(2);
+
+		try {
+			for (final IPackageFragmentRoot root : javaProject.getAllPackageFragmentRoots()) {
+				rootPaths.add(root.getPath());
+				if (!root.isArchive() || !addArchiveModuleDescriptors(root)) {
+					addModuleDescriptors(root);
+				}
+			}
+		} catch (final JavaModelException e) {
+			// don't keep a partial index
+			locations = null;
+			rootPaths = null;
+			shadowedModuleIds = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Indicates if the locator searches the specified package fragment root.
+	 * 
+	 * @param rootPath
+	 * @return <code>true</code> if the root is searched
+	 */
+	synchronized boolean covers(final IPath rootPath) {
+		return (null != rootPaths) && rootPaths.contains(rootPath);
+	}
+
+	/**
+	 * Finds the module with the specified id.
+	 * 
+	 * @param moduleId
+	 * @return the module (maybe <code>null</code> if not found)
+	 * @throws JavaModelException
+	 */
+	synchronized GwtModule findModule(final String moduleId) throws JavaModelException {
+		if (null == locations) {
+			build();
+		}
+
+		final Location location = locations.get(moduleId);
+		return null != location ? location.getModule() : null;
+	}
+
+	/**
+	 * Updates the locator after a module descriptor has been added.
+	 * 
+	 * @param moduleDescriptor
+	 * @param packageFragment
+	 */
+	synchronized void moduleDescriptorAdded(final IFile moduleDescriptor, final IPackageFragment packageFragment) {
+		if (null == locations) {
+			return;
+		}
+
+		final String moduleId = getModuleId(moduleDescriptor, packageFragment);
+		if ((null != moduleId) && !add(moduleId, new Location(moduleDescriptor, packageFragment))) {
+			// the classpath order decides which one wins
+			reset();
+		}
+	}
+
+	/**
+	 * Updates the locator after a module descriptor has been removed.
+	 * 
+	 * @param moduleDescriptor
+	 * @param packageFragment
+	 */
+	synchronized void moduleDescriptorRemoved(final IFile moduleDescriptor, final IPackageFragment packageFragment) {
+		if (null == locations) {
+			return;
+		}
+
+		final String moduleId = getModuleId(moduleDescriptor, packageFragment);
+		if (null == moduleId) {
+			return;
+		}
+
+		if (shadowedModuleIds.contains(moduleId)) {
+			// another root might provide the module now
+			reset();
+		} else {
+			final Location location = locations.get(moduleId);
+			if ((null != location) && moduleDescriptor.equals(location.moduleDescriptor)) {
+				locations.remove(moduleId);
+			}
+		}
+	}
+
+	/**
+	 * Forgets all locations. They will be rebuild on next access.
+	 */
+	synchronized void reset() {
+		locations = null;
+		rootPaths = null;
+		shadowedModuleIds = null;
+	}
+}
@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaModelException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers which modules of a project own a resource.
+ * <p>
+ * The matcher is compiled once from the modules of a project into two path
+ * tries. The first one contains the workspace paths of all module source,
+ * super source, public and server folders. The second one contains the
+ * package paths of the module source folders and is used for resources of a
+ * module package which live in a different source folder. A lookup walks the
+ * path segments of a resource once. Only if a package path matches the
+ * resource is checked to be on the classpath.
+ * </p>
+ * <p>
+ * Matchers are immutable. They are discarded when the modules of a project
+ * or the project classpath change.
+ * </p>
+ */
+final class GwtModulePathMatcher {
+
+	/**
+	 * A node in a path trie.
+	 */
+	private static final class Node {
+
+		/** child nodes by path segment (maybe <code>null</code>) */
+		Map<String, Node> children;
+
+		/** modules owning the path ending at this node (maybe <code>null</code>) */
+		List<GwtModule> owners;
+
+		/**
+		 * Adds an owner for the specified path below this node.
+		 * 
+		 * @param path
+		 * @param module
+		 */
+		void add(final IPath path, final GwtModule module) {
+			Node node = this;
+			for (int i = 0; i < path.segmentCount(); i++) {
+				if (null == node.children) {
+					node.children = new HashMap<String, Node>(4);
+				}
+				Node child = node.children.get(path.segment(i));
+				if (null == child) {
+					child = new Node();
+					node.children.put(path.segment(i), child);
+				}
+				node = child;
+			}
+			if (null == node.owners) {
+				node.owners = new ArrayList<GwtModule>(1);
+			}
+			if (!node.owners.contains(module)) {
+				node.owners.add(module);
+			}
+		}
+
+		/**
+		 * Collects the owners of all prefixes of the specified path.
+		 * 
+		 * @param path
+		 * @param firstSegment
+		 *            the first segment to consider
+		 * @param owners
+		 *            the set to collect owners into (maybe <code>null</code>)
+		 * @return the set of collected owners (maybe <code>null</code> if none
+		 *         were found)
+		 */
+		Set<GwtModule> collect(final IPath path, final int firstSegment, Set<GwtModule> owners) {
+			Node node = this;
+			for (int i = firstSegment; (null != node) && (i <= path.segmentCount()); i++) {
+				if (null != node.owners) {
+					if (null == owners) {
+						owners = new LinkedHashSet<GwtModule>(2);
+					}
+					owners.addAll(node.owners);
+				}
+				node = (i < path.segmentCount()) && (null != node.children) ? node.children.get(path.segment(i)) : null;
+			}
+			return owners;
+		}
+
+		/**
+		 * Indicates if the specified path is a prefix of a path of this trie or
+		 * if a path of this trie is a prefix of the specified path.
+		 * 
+		 * @param path
+		 * @param firstSegment
+		 *            the first segment to consider
+		 * @return <code>true</code> if the paths overlap
+		 */
+		boolean overlaps(final IPath path, final int firstSegment) {
+			Node node = this;
+			for (int i = firstSegment; i < path.segmentCount(); i++) {
+				if (null != node.owners) {
+					return true;
+				}
+				node = null != node.children ? node.children.get(path.segment(i)) : null;
+				if (null == node) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/** FOLDER_NAME_PUBLIC */
+	static final String FOLDER_NAME_PUBLIC = "public"; //$NON-NLS-1$
+
+	/** FOLDER_NAME_SERVER */
+	static final String FOLDER_NAME_SERVER = "server"; //$NON-NLS-1$
+
+	/**
+	 * Compiles a matcher for the modules of the specified project.
+	 * 
+	 * @param project
+	 * @return the matcher
+	 * @throws GwtModelException
+	 */
+	static GwtModulePathMatcher compile(final GwtProject project) throws GwtModelException {
+		final Node fullPaths = new Node();
+		final Node clientPaths = new Node();
+		final Node packagePaths = new Node();
+		final Set<GwtModule> modules = new HashSet<GwtModule>();
+		for (final GwtModule module : project.getModules()) {
+			if (module.isBinary()) {
+				continue;
+			}
+			modules.add(module);
+
+			final GwtModuleDescriptor descriptor = module.getDescriptor();
+			final IPath moduleRoot = ((IFile) module.getModuleDescriptor()).getParent().getFullPath();
+			for (final String sourcePath : descriptor.getSourcePaths()) {
+				fullPaths.add(moduleRoot.append(sourcePath), module);
+				clientPaths.add(moduleRoot.append(sourcePath), module);
+			}
+			for (final String superSourcePath : descriptor.getSuperSourcePaths()) {
+				fullPaths.add(moduleRoot.append(superSourcePath), module);
+			}
+			fullPaths.add(moduleRoot.append(FOLDER_NAME_PUBLIC), module);
+			fullPaths.add(moduleRoot.append(FOLDER_NAME_SERVER), module);
+
+			// package paths for resources in other source folders
+			if (null != module.getModulePackage()) {
+				final IPath packagePath = new Path(module.getModulePackage().getElementName().replace('.', '/'));
+				for (final String sourcePath : descriptor.getSourcePaths()) {
+					packagePaths.add(packagePath.append(sourcePath), module);
+				}
+			}
+		}
+
+		final List<IPath> sourceFolders = new ArrayList<IPath>(2);
+		try {
+			for (final IPackageFragmentRoot root : project.getJavaProject().getPackageFragmentRoots()) {
+				if (root.getKind() == IPackageFragmentRoot.K_SOURCE) {
+					sourceFolders.add(root.getPath());
+				}
+			}
+		} catch (final JavaModelException e) {
+			throw new GwtModelException(e.getStatus());
+		}
+
+		return new GwtModulePathMatcher(project.getJavaProject(), modules, fullPaths, clientPaths, packagePaths, sourceFolders.toArray(new IPath[sourceFolders.size()]));
+	}
+
+	/** javaProject */
+	private final IJavaProject javaProject;
+
+	/** the compiled modules */
+	private final Set<GwtModule> modules;
+
+	/** fullPaths */
+	private final Node fullPaths;
+
+	/** the full paths of the module source folders */
+	private final Node clientPaths;
+
+	/** packagePaths */
+	private final Node packagePaths;
+
+	/** sourceFolders */
+	private final IPath[] sourceFolders;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param javaProject
+	 * @param modules
+	 * @param fullPaths
+	 * @param clientPaths
+	 * @param packagePaths
+	 * @param sourceFolders
+	 */
+	private GwtModulePathMatcher(final IJavaProject javaProject, final Set<GwtModule> modules, final Node fullPaths, final Node clientPaths, final Node packagePaths, final IPath[] sourceFolders) {
+		this.javaProject = javaProject;
+		this.modules = modules;
+		this.fullPaths = fullPaths;
+		this.clientPaths = clientPaths;
+		this.packagePaths = packagePaths;
+		this.sourceFolders = sourceFolders;
+	}
+
+	/**
+	 * Indicates if the specified folder may contain module client sources.
+	 * <p>
+	 * This is the case if the folder is inside a module source folder or a
+	 * module source package or if it is an ancestor of one. Folders for which
+	 * this method returns <code>false</code> can be skipped entirely when
+	 * looking for client code.
+	 * </p>
+	 * 
+	 * @param fullPath
+	 *            the full, absolute path of the folder
+	 * @return <code>true</code> if the folder may contain client sources
+	 */
+	boolean mayContainClientSources(final IPath fullPath) {
+		if (clientPaths.overlaps(fullPath, 0)) {
+			return true;
+		}
+		if (null == packagePaths.children) {
+			return false;
+		}
+
+		IPath sourceFolder = null;
+		for (final IPath candidate : sourceFolders) {
+			if (fullPath.isPrefixOf(candidate)) {
+				// the folder contains a source folder
+				return true;
+			}
+			// nested source folders: the innermost one wins
+			if (candidate.isPrefixOf(fullPath) && ((null == sourceFolder) || (candidate.segmentCount() > sourceFolder.segmentCount()))) {
+				sourceFolder = candidate;
+			}
+		}
+		return (null != sourceFolder) && packagePaths.overlaps(fullPath, sourceFolder.segmentCount());
+	}
+
+	/**
+	 * Returns the modules owning the specified resource.
+	 * 
+	 * @param resource
+	 * @return the owning modules (maybe empty)
+	 */
+	GwtModule[] getOwningModules(final IResource resource) {
+		final IPath fullPath = resource.getFullPath();
+
+		// module folders
+		Set<GwtModule> owners = fullPaths.collect(fullPath, 0, null);
+
+		// module packages in other source folders
+		if (null != packagePaths.children) {
+			IPath sourceFolder = null;
+			for (final IPath candidate : sourceFolders) {
+				// nested source folders: the innermost one wins
+				if (candidate.isPrefixOf(fullPath) && ((null == sourceFolder) || (candidate.segmentCount() > sourceFolder.segmentCount()))) {
+					sourceFolder = candidate;
+				}
+			}
+			if (null != sourceFolder) {
+				final Set<GwtModule> packageOwners = packagePaths.collect(fullPath, sourceFolder.segmentCount(), null);
+				if ((null != packageOwners) && javaProject.isOnClasspath(resource)) {
+					if (null == owners) {
+						owners = packageOwners;
+					} else {
+						owners.addAll(packageOwners);
+					}
+				}
+			}
+		}
+
+		if (null == owners) {
+			return GwtModelManager.NO_MODULES;
+		}
+		return owners.toArray(new GwtModule[owners.size()]);
+	}
+
+	/**
+	 * Indicates if the specified module has been compiled into this matcher.
+	 * 
+	 * @param module
+	 * @return <code>true</code> if the matcher knows the module
+	 */
+	boolean isCompiled(final GwtModule module) {
+		return modules.contains(module);
+	}
+
+	/**
+	 * Indicates if the specified module is owning the specified resource.
+	 * 
+	 * @param resource
+	 * @param module
+	 * @return <code>true</code> if the module owns the resource
+	 */
+	boolean isOwnedBy(final IResource resource, final GwtModule module) {
+		for (final GwtModule owner : getOwningModules(resource)) {
+			if (owner == module) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
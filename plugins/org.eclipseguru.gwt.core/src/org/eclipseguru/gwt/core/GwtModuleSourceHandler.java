@@ -20,11 +20,20 @@ import org.xml.sax.SAXNotSupportedException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -32,6 +41,13 @@ import javax.xml.parsers.SAXParserFactory;
 
 /**
  * An XML event handler for parsing a GWT module source file.
+ * <p>
+ * Parsers are pooled and shared between handlers. Callers interested in only
+ * some facts of a module source may request them using
+ * {@link #parse(InputStream, int)}, which stops parsing as soon as the facts
+ * are known. Complete parse results are cached by content digest so that
+ * identical module sources are parsed only once.
+ * </p>
  */
 public class GwtModuleSourceHandler extends DefaultHandler {
 
@@ -63,13 +79,11 @@ public class GwtModuleSourceHandler extends DefaultHandler {
 		private static final long serialVersionUID = 1L;
 	}
 
-	/** default source path */
-	private static final String[] DEFAULT_SOURCE_PATHS = new String[] { "client" };
-
 	static final String ELEM_MODULE = "module"; //$NON-NLS-1$
 	static final String ELEM_INHERITS = "inherits"; //$NON-NLS-1$
 	static final String ELEM_ENTRY_POINT = "entry-point"; //$NON-NLS-1$
 	static final String ELEM_SOURCE = "source"; //$NON-NLS-1$
+	static final String ELEM_SUPER_SOURCE = "super-source"; //$NON-NLS-1$
 	static final String ELEM_PUBLIC = "public"; //$NON-NLS-1$
 	static final String ELEM_SERVLET = "servlet"; //$NON-NLS-1$
 	static final String ELEM_SCRIPT = "script"; //$NON-NLS-1$
@@ -82,27 +96,54 @@ public class GwtModuleSourceHandler extends DefaultHandler {
 	static final String ATTR_VALUES = "values"; //$NON-NLS-1$
 	static final String ATTR_RENAME_TO = "rename-to"; //$NON-NLS-1$
 
-	private SAXParserFactory factory;
-	private int level = -1;
+	/** fact: the alternate module name (<code>rename-to</code>) */
+	public static final int FACT_ALTERNATE_NAME = 1;
 
-	private String entryPointClass;
-	private final List<String> inheritedModules = new ArrayList<String>(4);
-	private final List<String> sourcePaths = new ArrayList<String>();
+	/** fact: the entry point class */
+	public static final int FACT_ENTRY_POINT = 2;
 
-	private String alternateModuleName;
+	/** fact: the inherited modules */
+	public static final int FACT_INHERITED_MODULES = 4;
+
+	/** fact: the source and super source paths */
+	public static final int FACT_SOURCE_PATHS = 8;
+
+	/** all facts */
+	public static final int ALL_FACTS = FACT_ALTERNATE_NAME | FACT_ENTRY_POINT | FACT_INHERITED_MODULES | FACT_SOURCE_PATHS;
+
+	/** the maximum number of idle parsers kept in the pool */
+	private static final int MAX_POOLED_PARSERS = 4;
+
+	/** the maximum number of parse results kept in the cache */
+	private static final int MAX_CACHED_RESULTS = 256;
+
+	/** the shared parser factory (guarded by itself) */
+	private static final SAXParserFactory parserFactory;
+	static {
+		parserFactory = SAXParserFactory.newInstance();
+		parserFactory.setNamespaceAware(true);
+	}
+
+	/** idle parsers (guarded by itself) */
+	private static final LinkedList<SAXParser> parserPool = new LinkedList<SAXParser>();
+
+	/** complete parse results by content digest (guarded by itself) */
+	private static final Map<String, GwtModuleDescriptor> parseResults = new LinkedHashMap<String, GwtModuleDescriptor>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, GwtModuleDescriptor> eldest) {
+			return size() > MAX_CACHED_RESULTS;
+		}
+	};
 
 	/**
-	 * Creates a new SAX parser for use within this instance.
+	 * Configures a parser.
 	 * 
-	 * @return The newly created parser.
-	 * @throws ParserConfigurationException
-	 *             If a parser of the given configuration cannot be created.
+	 * @param parser
 	 * @throws SAXException
-	 *             If something in general goes wrong when creating the parser.
 	 */
-	private final SAXParser createParser(final SAXParserFactory parserFactory) throws ParserConfigurationException, SAXException, SAXNotRecognizedException, SAXNotSupportedException {
-		// Initialize the parser.
-		final SAXParser parser = parserFactory.newSAXParser();
+	private static void configureParser(final SAXParser parser) throws SAXException {
 		final XMLReader reader = parser.getXMLReader();
 		// disable DTD validation
 		// (bug https://bugs.eclipse.org/bugs/show_bug.cgi?id=63625)
@@ -116,9 +157,196 @@ public class GwtModuleSourceHandler extends DefaultHandler {
 		} catch (final SAXNotSupportedException e) {
 			// not a big deal if the parser does not support the features
 		}
+	}
+
+	/**
+	 * Computes the digest of the specified content.
+	 * 
+	 * @param content
+	 * @return the digest (maybe <code>null</code> if no digest algorithm is
+	 *         available)
+	 */
+	private static String digest(final byte[] content) {
+		try {
+			return new BigInteger(1, MessageDigest.getInstance("SHA-1").digest(content)).toString(16); //$NON-NLS-1$
+		} catch (final NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parses all facts of the specified module source.
+	 * <p>
+	 * The result is shared with other callers parsing identical content. The
+	 * contents are not closed.
+	 * </p>
+	 * 
+	 * @param contents
+	 *            the module source contents
+	 * @return the parsed module source
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	static GwtModuleDescriptor parse(final InputStream contents) throws IOException, ParserConfigurationException, SAXException {
+		// module sources are small, read them completely for the digest
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		final byte[] buffer = new byte[1024];
+		int read;
+		while ((read = contents.read(buffer)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		final byte[] content = bytes.toByteArray();
+
+		final String digest = digest(content);
+		if (null != digest) {
+			synchronized (parseResults) {
+				final GwtModuleDescriptor result = parseResults.get(digest);
+				if (null != result) {
+					return result;
+				}
+			}
+		}
+
+		final GwtModuleSourceHandler handler = new GwtModuleSourceHandler();
+		handler.parseContents(new InputSource(new ByteArrayInputStream(content)));
+		final GwtModuleDescriptor result = handler.toDescriptor();
+
+		if (null != digest) {
+			synchronized (parseResults) {
+				parseResults.put(digest, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Parses the specified module source until the requested facts are known.
+	 * <p>
+	 * The contents are not closed.
+	 * </p>
+	 * 
+	 * @param contents
+	 *            the module source contents
+	 * @param facts
+	 *            the requested facts (a combination of the <code>FACT_*</code>
+	 *            constants)
+	 * @return the parsed module source (only the requested facts are reliable)
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	static GwtModuleDescriptor parse(final InputStream contents, final int facts) throws IOException, ParserConfigurationException, SAXException {
+		if ((facts & ALL_FACTS) == ALL_FACTS) {
+			return parse(contents);
+		}
+
+		final GwtModuleSourceHandler handler = new GwtModuleSourceHandler(facts);
+		handler.parseContents(new InputSource(contents));
+		return handler.toDescriptor();
+	}
+
+	/**
+	 * Returns a parser to the pool.
+	 * 
+	 * @param parser
+	 */
+	private static void releaseParser(final SAXParser parser) {
+		try {
+			parser.reset();
+			configureParser(parser);
+		} catch (final SAXException e) {
+			// don't pool
+			return;
+		} catch (final UnsupportedOperationException e) {
+			// don't pool
+			return;
+		}
+		synchronized (parserPool) {
+			if (parserPool.size() < MAX_POOLED_PARSERS) {
+				parserPool.add(parser);
+			}
+		}
+	}
+
+	/** the requested facts */
+	private final int requestedFacts;
+
+	/** the facts known so far */
+	private int knownFacts;
+
+	private int level = -1;
+
+	private String entryPointClass;
+	private final List<String> inheritedModules = new ArrayList<String>(4);
+	private final List<String> sourcePaths = new ArrayList<String>();
+	private final List<String> superSourcePaths = new ArrayList<String>(1);
+
+	private String alternateModuleName;
+
+	/**
+	 * Creates a new handler for parsing a module source.
+	 */
+	public GwtModuleSourceHandler() {
+		this(ALL_FACTS);
+	}
+
+	/**
+	 * Creates a new handler for parsing the specified facts of a module
+	 * source.
+	 * 
+	 * @param requestedFacts
+	 */
+	private GwtModuleSourceHandler(final int requestedFacts) {
+		this.requestedFacts = requestedFacts;
+	}
+
+	/**
+	 * Returns a parser from the pool or creates a new one.
+	 * 
+	 * @return the parser
+	 * @throws ParserConfigurationException
+	 *             If a parser of the given configuration cannot be created.
+	 * @throws SAXException
+	 *             If something in general goes wrong when creating the parser.
+	 */
+	private static SAXParser acquireParser() throws ParserConfigurationException, SAXException {
+		synchronized (parserPool) {
+			if (!parserPool.isEmpty()) {
+				return parserPool.removeFirst();
+			}
+		}
+
+		// Initialize the parser.
+		final SAXParser parser;
+		synchronized (parserFactory) {
+			parser = parserFactory.newSAXParser();
+		}
+		configureParser(parser);
 		return parser;
 	}
 
+	/**
+	 * Stops parsing if all requested facts are known.
+	 * 
+	 * @throws StopParsingException
+	 */
+	private void checkRequestedFactsKnown() throws StopParsingException {
+		if ((knownFacts & requestedFacts) == requestedFacts) {
+			throw new StopParsingException();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.xml.sax.helpers.DefaultHandler#endDocument()
+	 */
+	@Override
+	public void endDocument() throws SAXException {
+		super.endDocument();
+		knownFacts = ALL_FACTS;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.xml.sax.ContentHandler#endElement(java.lang.String,
@@ -144,17 +372,6 @@ public class GwtModuleSourceHandler extends DefaultHandler {
 		return entryPointClass;
 	}
 
-	private SAXParserFactory getFactory() {
-		synchronized (this) {
-			if (factory != null) {
-				return factory;
-			}
-			factory = SAXParserFactory.newInstance();
-			factory.setNamespaceAware(true);
-		}
-		return factory;
-	}
-
 	/**
 	 * @return the inheritedModules
 	 */
@@ -167,30 +384,50 @@ public class GwtModuleSourceHandler extends DefaultHandler {
 	 */
 	public String[] getSourcePaths() {
 		if (sourcePaths.isEmpty()) {
-			return DEFAULT_SOURCE_PATHS; // default source path
+			return GwtModuleDescriptor.DEFAULT_SOURCE_PATHS; // default source path
 		} else {
 			return sourcePaths.toArray(new String[sourcePaths.size()]);
 		}
 	}
 
+	/**
+	 * @return the superSourcePaths
+	 */
+	public String[] getSuperSourcePaths() {
+		return superSourcePaths.toArray(new String[superSourcePaths.size()]);
+	}
+
 	protected boolean parseContents(final InputSource contents) throws IOException, ParserConfigurationException, SAXException {
 		// Parse the file into we have what we need (or an error occurs).
+		final SAXParser parser = acquireParser();
+		boolean reusable = false;
 		try {
-			factory = getFactory();
-			if (factory == null) {
-				return false;
-			}
-			final SAXParser parser = createParser(factory);
 			// to support external entities specified as relative URIs
 			// (see https://bugs.eclipse.org/bugs/show_bug.cgi?id=63298)
 			contents.setSystemId("/"); //$NON-NLS-1$
 			parser.parse(contents, this);
+			reusable = true;
 		} catch (final StopParsingException e) {
 			// Abort the parsing normally. Fall through...
+			reusable = true;
+		} finally {
+			// don't re-use parsers in an unknown state
+			if (reusable) {
+				releaseParser(parser);
+			}
 		}
 		return true;
 	}
 
+	/**
+	 * Creates an immutable snapshot of the parsed information.
+	 * 
+	 * @return the module descriptor
+	 */
+	GwtModuleDescriptor toDescriptor() {
+		return new GwtModuleDescriptor(alternateModuleName, entryPointClass, getInheritedModules(), sourcePaths.toArray(new String[sourcePaths.size()]), getSuperSourcePaths());
+	}
+
 	private void processEntryPoint(final Attributes attributes) throws InvalidModuleSourceException {
 		if (null != entryPointClass) {
 			throw new InvalidModuleSourceException("entry point defined more than once");
@@ -219,6 +456,12 @@ public class GwtModuleSourceHandler extends DefaultHandler {
 		}
 	}
 
+	private void processSuperSource(final Attributes attributes) {
+		final String superSourcePath = attributes.getValue(ATTR_PATH);
+		// the path is optional for super source
+		superSourcePaths.add(null != superSourcePath ? superSourcePath : ""); //$NON-NLS-1$
+	}
+
 	/*
 	 * Resolve external entity definitions to an empty string. This is to speed
 	 * up processing of files with external DTDs. Not resolving the contents of
@@ -241,15 +484,21 @@ public class GwtModuleSourceHandler extends DefaultHandler {
 					throw new InvalidModuleSourceException(MessageFormat.format("Root element is not ''{0}''.", ELEM_MODULE));
 				}
 				processModule(attributes);
+				knownFacts |= FACT_ALTERNATE_NAME;
+				checkRequestedFactsKnown();
 				break;
 
 			case 1:
 				if (ELEM_ENTRY_POINT.equals(elementName)) {
 					processEntryPoint(attributes);
+					knownFacts |= FACT_ENTRY_POINT;
+					checkRequestedFactsKnown();
 				} else if (ELEM_INHERITS.equals(elementName)) {
 					processInherits(attributes);
 				} else if (ELEM_SOURCE.equals(elementName)) {
 					processSource(attributes);
+				} else if (ELEM_SUPER_SOURCE.equals(elementName)) {
+					processSuperSource(attributes);
 				}
 				break;
 		}
@@ -13,6 +13,7 @@ package org.eclipseguru.gwt.core;
 
 import org.eclipseguru.gwt.core.preferences.GwtCorePreferenceConstants;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IProjectDescription;
@@ -26,10 +27,8 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
-import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IPackageFragment;
-import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.JavaCore;
 
 import java.util.ArrayList;
@@ -100,10 +99,16 @@ public class GwtProject extends GwtElement {
 	private final IJavaProject javaProject;
 
 	/** modules */
-	private GwtModule[] modules;
+	private volatile GwtModule[] modules;
+
+	/** incremented whenever the modules change (guarded by <code>this</code>) */
+	private int modulesGeneration;
 
 	/** includedModules */
-	private GwtModule[] includedModules;
+	private volatile GwtModule[] includedModules;
+
+	/** the compiled module paths (guarded by <code>modulesGeneration</code>) */
+	private volatile GwtModulePathMatcher pathMatcher;
 
 	/**
 	 * Creates a new instance.
@@ -127,17 +132,17 @@ public class GwtProject extends GwtElement {
 	 * @return
 	 */
 	GwtModule createBinaryModule(final IStorage moduleDescriptor, final IPackageFragment packageFragment) {
-		return new GwtModule(moduleDescriptor, packageFragment, this);
+		return GwtModelManager.getModelManager().getBinaryModule(moduleDescriptor, packageFragment, this);
 	}
 
 	/**
-	 * Creates a GWT module for the specified module descriptor.
+	 * Returns the (canonical) GWT module for the specified module descriptor.
 	 * 
 	 * @param file
 	 * @return
 	 */
 	GwtModule createModule(final IFile moduleDescriptor) {
-		return new GwtModule(moduleDescriptor, this);
+		return GwtModelManager.getModelManager().getModule(moduleDescriptor, this);
 	}
 
 	/**
@@ -183,33 +188,27 @@ public class GwtProject extends GwtElement {
 	 * @throws CoreException
 	 */
 	protected GwtModule[] findModules() throws CoreException {
-		final IJavaProject javaProject = getJavaProject();
-		final List<GwtModule> moduleFiles = new ArrayList<GwtModule>();
-		for (final IPackageFragmentRoot aRoot : javaProject.getPackageFragmentRoots()) {
-			// check only in source folders. Skip others
-			if (aRoot.getKind() != IPackageFragmentRoot.K_SOURCE) {
-				continue;
+		// try the persistent index first
+		final GwtModuleIndex index = GwtModelManager.getModelManager().getModuleIndex();
+		final IFile[] indexedModuleDescriptors = null != index ? index.getModuleDescriptors(project) : null;
+		if (null != indexedModuleDescriptors) {
+			final GwtModule[] indexedModules = new GwtModule[indexedModuleDescriptors.length];
+			for (int i = 0; i < indexedModuleDescriptors.length; i++) {
+				indexedModules[i] = createModule(indexedModuleDescriptors[i]);
 			}
-			for (final IJavaElement aPackage : aRoot.getChildren()) {
-				// look only for packages. Skip others
-				if (aPackage.getElementType() != IJavaElement.PACKAGE_FRAGMENT) {
-					continue;
-				}
+			return indexedModules;
+		}
 
-				for (final Object aResource : ((IPackageFragment) aPackage).getNonJavaResources()) {
-					// look only files. Skip others
-					if (!(aResource instanceof IFile)) {
-						continue;
-					}
+		final IFile[] moduleDescriptors = GwtModuleDiscovery.findModuleDescriptors(getJavaProject());
+		if (null != index) {
+			index.putModuleDescriptors(project, moduleDescriptors);
+		}
 
-					final IFile aFile = (IFile) aResource;
-					if (GwtUtil.isModuleDescriptor(aFile)) {
-						moduleFiles.add(createModule(aFile));
-					}
-				}
-			}
+		final GwtModule[] modules = new GwtModule[moduleDescriptors.length];
+		for (int i = 0; i < modules.length; i++) {
+			modules[i] = createModule(moduleDescriptors[i]);
 		}
-		return moduleFiles.toArray(new GwtModule[moduleFiles.size()]);
+		return modules;
 	}
 
 	/**
@@ -219,8 +218,9 @@ public class GwtProject extends GwtElement {
 	 * @return the list of included modules
 	 */
 	public GwtModule[] getIncludedModules() {
+		GwtModule[] includedModules = this.includedModules;
 		if (null == includedModules) {
-			includedModules = findIncludedModules();
+			this.includedModules = includedModules = findIncludedModules();
 		}
 
 		return includedModules;
@@ -263,16 +263,91 @@ public class GwtProject extends GwtElement {
 	 *             if an error occured while accessing the project
 	 */
 	public GwtModule[] getModules() throws GwtModelException {
+		GwtModule[] modules = this.modules;
 		if (null == modules) {
+			final int expectedGeneration = getModulesGeneration();
 			try {
 				modules = findModules();
 			} catch (final CoreException e) {
 				throw newGwtModelException(e);
 			}
+			synchronized (this) {
+				// don't publish if the modules changed meanwhile
+				if (expectedGeneration == modulesGeneration) {
+					this.modules = modules;
+				}
+			}
 		}
 		return modules;
 	}
 
+	/**
+	 * Returns the current modules generation.
+	 * 
+	 * @return the modules generation
+	 */
+	private synchronized int getModulesGeneration() {
+		return modulesGeneration;
+	}
+
+	/**
+	 * Returns the modules of this project which own the specified resource.
+	 * <p>
+	 * A module owns a resource if the resource is located in one of the
+	 * module source, super source, public or server folders or in a module
+	 * source package of another source folder.
+	 * </p>
+	 * 
+	 * @param resource
+	 * @return the owning modules (maybe empty)
+	 * @throws GwtModelException
+	 *             if an error occured while accessing the project
+	 */
+	public GwtModule[] getOwningModules(final IResource resource) throws GwtModelException {
+		return getPathMatcher().getOwningModules(resource);
+	}
+
+	/**
+	 * Indicates if the specified folder may contain client sources of one of
+	 * the modules of this project.
+	 * <p>
+	 * Folders for which this method returns <code>false</code> are neither
+	 * inside nor an ancestor of a module source folder or module source
+	 * package.
+	 * </p>
+	 * 
+	 * @param folder
+	 * @return <code>true</code> if the folder may contain module client
+	 *         sources, <code>false</code> otherwise
+	 * @throws GwtModelException
+	 *             if an error occured while accessing the project
+	 */
+	public boolean mayContainClientSources(final IContainer folder) throws GwtModelException {
+		return getPathMatcher().mayContainClientSources(folder.getFullPath());
+	}
+
+	/**
+	 * Returns the compiled module paths of this project.
+	 * 
+	 * @return the path matcher
+	 * @throws GwtModelException
+	 *             if an error occured while accessing the project
+	 */
+	GwtModulePathMatcher getPathMatcher() throws GwtModelException {
+		GwtModulePathMatcher pathMatcher = this.pathMatcher;
+		if (null == pathMatcher) {
+			final int expectedGeneration = getModulesGeneration();
+			pathMatcher = GwtModulePathMatcher.compile(this);
+			synchronized (this) {
+				// don't publish if the modules changed meanwhile
+				if (expectedGeneration == modulesGeneration) {
+					this.pathMatcher = pathMatcher;
+				}
+			}
+		}
+		return pathMatcher;
+	}
+
 	/**
 	 * Returns the project name.
 	 * 
@@ -316,6 +391,112 @@ public class GwtProject extends GwtElement {
 		return GWT_PROJECT;
 	}
 
+	/**
+	 * Forgets the included modules so that they are computed again on next
+	 * access.
+	 */
+	void resetIncludedModules() {
+		includedModules = null;
+	}
+
+	/**
+	 * Forgets the modules so that they are discovered again on next access.
+	 */
+	synchronized void resetModules() {
+		modulesGeneration++;
+		modules = null;
+		pathMatcher = null;
+	}
+
+	/**
+	 * Forgets the compiled module paths so that they are compiled again on
+	 * next access.
+	 * <p>
+	 * Called when the source paths of a module might have changed.
+	 * </p>
+	 */
+	synchronized void resetPathMatcher() {
+		modulesGeneration++;
+		pathMatcher = null;
+	}
+
+	/**
+	 * Updates the discovered modules after a module descriptor has been
+	 * added.
+	 * 
+	 * @param moduleDescriptor
+	 */
+	synchronized void moduleDescriptorAdded(final IFile moduleDescriptor) {
+		modulesGeneration++;
+		pathMatcher = null;
+		final GwtModule[] modules = this.modules;
+		if (null == modules) {
+			// the index does not know the new descriptor
+			GwtModelManager.getModelManager().forgetModuleDescriptors(getProjectResource());
+			return;
+		}
+
+		for (final GwtModule module : modules) {
+			if (moduleDescriptor.equals(module.getModuleDescriptor())) {
+				return;
+			}
+		}
+		if (!getJavaProject().isOnClasspath(moduleDescriptor)) {
+			return;
+		}
+
+		final GwtModule[] newModules = new GwtModule[modules.length + 1];
+		System.arraycopy(modules, 0, newModules, 0, modules.length);
+		newModules[modules.length] = createModule(moduleDescriptor);
+		setModules(newModules);
+	}
+
+	/**
+	 * Updates the discovered modules after a module descriptor has been
+	 * removed.
+	 * 
+	 * @param moduleDescriptor
+	 */
+	synchronized void moduleDescriptorRemoved(final IFile moduleDescriptor) {
+		modulesGeneration++;
+		pathMatcher = null;
+		final GwtModule[] modules = this.modules;
+		if (null == modules) {
+			return;
+		}
+
+		final List<GwtModule> newModules = new ArrayList<GwtModule>(modules.length);
+		for (final GwtModule module : modules) {
+			if (!moduleDescriptor.equals(module.getModuleDescriptor())) {
+				newModules.add(module);
+			}
+		}
+		if (newModules.size() != modules.length) {
+			setModules(newModules.toArray(new GwtModule[newModules.size()]));
+		}
+	}
+
+	/**
+	 * Publishes updated modules and records them in the module index.
+	 * <p>
+	 * Must be called while holding the project lock.
+	 * </p>
+	 * 
+	 * @param modules
+	 */
+	private void setModules(final GwtModule[] modules) {
+		this.modules = modules;
+
+		final GwtModuleIndex index = GwtModelManager.getModelManager().getModuleIndex();
+		if (null != index) {
+			final IFile[] moduleDescriptors = new IFile[modules.length];
+			for (int i = 0; i < modules.length; i++) {
+				moduleDescriptors[i] = (IFile) modules[i].getModuleDescriptor();
+			}
+			index.putModuleDescriptors(project, moduleDescriptors);
+		}
+	}
+
 	/**
 	 * Sets the included modules for the specified project.
 	 * 
@@ -14,6 +14,7 @@ package org.eclipseguru.gwt.core;
 import org.eclipseguru.gwt.core.launch.GwtLaunchConstants;
 import org.eclipseguru.gwt.core.preferences.GwtCorePreferenceConstants;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IStorage;
@@ -39,12 +40,132 @@ public class GwtUtil {
 	/** SYSTEM_LINE_SEPARATOR */
 	public static String SYSTEM_LINE_SEPARATOR = System.getProperty("line.separator"); //$NON-NLS-1$
 
+	/** DEFAULT_COMPILE_QUIET_PERIOD */
+	public static final long DEFAULT_COMPILE_QUIET_PERIOD = 1000;
+
+	/** DEFAULT_COMPILER_DAEMON_MAX_COMPILES */
+	public static final int DEFAULT_COMPILER_DAEMON_MAX_COMPILES = 20;
+
+	/** DEFAULT_COMPILE_CACHE_SIZE_LIMIT */
+	public static final long DEFAULT_COMPILE_CACHE_SIZE_LIMIT = 1024;
+
+	/** the system property overriding the compile result store location */
+	public static final String COMPILE_CACHE_LOCATION_PROPERTY = "org.eclipseguru.gwt.core.compileCacheLocation"; //$NON-NLS-1$
+
+	/** the system property overriding the compile result store size limit */
+	public static final String COMPILE_CACHE_SIZE_LIMIT_PROPERTY = "org.eclipseguru.gwt.core.compileCacheSizeLimit"; //$NON-NLS-1$
+
+	/** the system property overriding the build metrics port */
+	public static final String METRICS_PORT_PROPERTY = "org.eclipseguru.gwt.core.metricsPort"; //$NON-NLS-1$
+
 	/** DEFAULT_OUTPUT_LOCATION */
 	public static final String DEFAULT_OUTPUT_LOCATION = "bin.gwt"; //$NON-NLS-1$
 
 	/** GWT_MODULE_SOURCE_EXTENSION */
 	public static final String GWT_MODULE_SOURCE_EXTENSION = ".gwt.xml"; //$NON-NLS-1$
 
+	/** CLASSPATH_FILE_NAME */
+	private static final String CLASSPATH_FILE_NAME = ".classpath"; //$NON-NLS-1$
+
+	/** PREFERENCES_FILE_PATH */
+	private static final IPath PREFERENCES_FILE_PATH = new Path(".settings").append(GwtCore.PLUGIN_ID).addFileExtension("prefs"); //$NON-NLS-1$ //$NON-NLS-2$
+
+	/**
+	 * Returns the location of the folder storing compile results.
+	 * <p>
+	 * The location is read from a system property first so that headless
+	 * builds can share a store. Otherwise it is read from the workspace or
+	 * configuration preferences.
+	 * </p>
+	 * 
+	 * @return the location of the compile result store (maybe
+	 *         <code>null</code> if the store in the plug-in state location
+	 *         should be used)
+	 */
+	public static String getCompileCacheLocation() {
+		String location = System.getProperty(COMPILE_CACHE_LOCATION_PROPERTY);
+		if (null == location) {
+			location = Platform.getPreferencesService().getString(GwtCore.PLUGIN_ID, GwtCorePreferenceConstants.PREF_COMPILE_CACHE_LOCATION, null, null);
+		}
+		if ((null == location) || (location.trim().length() == 0)) {
+			return null;
+		}
+		return location.trim();
+	}
+
+	/**
+	 * Returns the maximum size of the folder storing compile results.
+	 * 
+	 * @return the size limit in MB
+	 */
+	public static long getCompileCacheSizeLimit() {
+		final String configured = System.getProperty(COMPILE_CACHE_SIZE_LIMIT_PROPERTY);
+		if (null != configured) {
+			try {
+				return Math.max(0, Long.parseLong(configured.trim()));
+			} catch (final NumberFormatException e) {
+				GwtCore.logError("Invalid value for " + COMPILE_CACHE_SIZE_LIMIT_PROPERTY + ": " + configured, e);
+			}
+		}
+
+		return Math.max(0, Platform.getPreferencesService().getLong(GwtCore.PLUGIN_ID, GwtCorePreferenceConstants.PREF_COMPILE_CACHE_SIZE_LIMIT, DEFAULT_COMPILE_CACHE_SIZE_LIMIT, null));
+	}
+
+	/**
+	 * Returns the local port serving build metrics in the Prometheus text
+	 * format.
+	 * <p>
+	 * The port is read from a system property first. Otherwise it is read
+	 * from the workspace or configuration preferences.
+	 * </p>
+	 * 
+	 * @return the port (<code>0</code> if metrics should not be served)
+	 */
+	public static int getMetricsPort() {
+		final String configured = System.getProperty(METRICS_PORT_PROPERTY);
+		if (null != configured) {
+			try {
+				return Math.max(0, Integer.parseInt(configured.trim()));
+			} catch (final NumberFormatException e) {
+				GwtCore.logError("Invalid value for " + METRICS_PORT_PROPERTY + ": " + configured, e);
+			}
+		}
+
+		return Math.max(0, Platform.getPreferencesService().getInt(GwtCore.PLUGIN_ID, GwtCorePreferenceConstants.PREF_METRICS_PORT, 0, null));
+	}
+
+	/**
+	 * Returns the time to wait for further changes before modules of the
+	 * specified project are compiled automatically.
+	 * 
+	 * @param project
+	 * @return the quiet period in milliseconds
+	 */
+	public static long getCompileQuietPeriod(final GwtProject project) {
+		final IEclipsePreferences projectPreferences = project.getProjectPreferences();
+		if (null == projectPreferences) {
+			return DEFAULT_COMPILE_QUIET_PERIOD;
+		}
+
+		return Math.max(0, projectPreferences.getLong(GwtCorePreferenceConstants.PREF_COMPILE_QUIET_PERIOD, DEFAULT_COMPILE_QUIET_PERIOD));
+	}
+
+	/**
+	 * Returns the number of compiles after which a compiler daemon used for
+	 * the specified project is recycled.
+	 * 
+	 * @param project
+	 * @return the maximum number of compiles per daemon
+	 */
+	public static int getCompilerDaemonMaxCompiles(final GwtProject project) {
+		final IEclipsePreferences projectPreferences = project.getProjectPreferences();
+		if (null == projectPreferences) {
+			return DEFAULT_COMPILER_DAEMON_MAX_COMPILES;
+		}
+
+		return Math.max(1, projectPreferences.getInt(GwtCorePreferenceConstants.PREF_COMPILER_DAEMON_MAX_COMPILES, DEFAULT_COMPILER_DAEMON_MAX_COMPILES));
+	}
+
 	/**
 	 * Returns the GWT compiler style for the specified project.
 	 * <p>
@@ -65,6 +186,30 @@ public class GwtUtil {
 		return projectPreferences.get(GwtCorePreferenceConstants.PREF_COMPILER_JAVASCRIPT_STYLE, GwtLaunchConstants.JAVSCRIPT_STYLE_OBFUSCATED);
 	}
 
+	/**
+	 * Returns the time to wait for the GWT compiler to compile the specified
+	 * module.
+	 * <p>
+	 * A timeout configured for the module (using the preference key suffixed
+	 * with <code>.</code> and the module id) takes precedence over the one
+	 * configured for the project.
+	 * </p>
+	 * 
+	 * @param project
+	 * @param moduleId
+	 * @return the timeout in seconds (<code>0</code> if the timeout should be
+	 *         derived from previous compiles of the module)
+	 */
+	public static int getCompilerTimeout(final GwtProject project, final String moduleId) {
+		final IEclipsePreferences projectPreferences = project.getProjectPreferences();
+		if (null == projectPreferences) {
+			return 0;
+		}
+
+		final int projectTimeout = projectPreferences.getInt(GwtCorePreferenceConstants.PREF_COMPILER_TIMEOUT, 0);
+		return Math.max(0, projectPreferences.getInt(GwtCorePreferenceConstants.PREF_COMPILER_TIMEOUT + '.' + moduleId, projectTimeout));
+	}
+
 	/**
 	 * Returns the GWT compiler Java VM arguments for the specified project.
 	 * <p>
@@ -252,6 +397,40 @@ public class GwtUtil {
 		return projectPreferences.getBoolean(GwtCorePreferenceConstants.PREF_AUTO_BUILD_MODULES, false);
 	}
 
+	/**
+	 * Indicates if the modules of the specified project are compiled in a
+	 * long running compiler daemon instead of a new VM for each compile.
+	 * 
+	 * @param project
+	 * @return <code>true</code> if a compiler daemon should be used (the
+	 *         default), <code>false</code> otherwise
+	 */
+	public static boolean isCompilerDaemonEnabled(final GwtProject project) {
+		final IEclipsePreferences projectPreferences = project.getProjectPreferences();
+		if (null == projectPreferences) {
+			return true;
+		}
+
+		return projectPreferences.getBoolean(GwtCorePreferenceConstants.PREF_COMPILER_DAEMON, true);
+	}
+
+	/**
+	 * Indicates if the modules of the specified project may be compiled in
+	 * parallel.
+	 * 
+	 * @param project
+	 * @return <code>true</code> if the project is configured to compile
+	 *         modules in parallel, <code>false</code> otherwise
+	 */
+	public static boolean isCompileInParallel(final GwtProject project) {
+		final IEclipsePreferences projectPreferences = project.getProjectPreferences();
+		if (null == projectPreferences) {
+			return false;
+		}
+
+		return projectPreferences.getBoolean(GwtCorePreferenceConstants.PREF_COMPILE_IN_PARALLEL, false);
+	}
+
 	/**
 	 * Indicates if the project is deployed in hosted mode.
 	 * 
@@ -268,6 +447,17 @@ public class GwtUtil {
 		return projectPreferences.getBoolean(GwtCorePreferenceConstants.PREF_HOSTED_DEPLOY_MODE, true);
 	}
 
+	/**
+	 * Indicates if the specified file is the Java classpath file of its
+	 * project.
+	 * 
+	 * @param file
+	 * @return <code>true</code> if the file is the <code>.classpath</code> file
+	 */
+	public static boolean isClasspathFile(final IFile file) {
+		return (file.getParent().getType() == IResource.PROJECT) && CLASSPATH_FILE_NAME.equals(file.getName());
+	}
+
 	/**
 	 * Indicates if the resource is a GWT module descriptor.
 	 * 
@@ -282,6 +472,16 @@ public class GwtUtil {
 		return false;
 	}
 
+	/**
+	 * Indicates if the specified file stores the GWT project preferences.
+	 * 
+	 * @param file
+	 * @return <code>true</code> if the file stores the GWT project preferences
+	 */
+	public static boolean isPreferencesFile(final IFile file) {
+		return file.getProjectRelativePath().equals(PREFERENCES_FILE_PATH);
+	}
+
 	/**
 	 * Hidden constructor.
 	 */
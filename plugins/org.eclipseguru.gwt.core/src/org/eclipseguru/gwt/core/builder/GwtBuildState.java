@@ -0,0 +1,743 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.builder;
+
+import org.eclipseguru.gwt.core.GwtCore;
+import org.eclipseguru.gwt.core.GwtModule;
+import org.eclipseguru.gwt.core.GwtModuleGraph;
+import org.eclipseguru.gwt.core.GwtProject;
+import org.eclipseguru.gwt.core.GwtUtil;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The state of the GWT builder of a project which survives sessions.
+ * <p>
+ * The state remembers the signature fingerprints of the remote services as of
+ * their last async service interface generation and, for each module, a
+ * digest of the resources the module was compiled from together with the
+ * time of the compile and a manifest of the files written. The duration of
+ * the last compile of each module is kept as well. The state is stored in
+ * the working location of the project.
+ * </p>
+ * <p>
+ * Whenever nothing is known about the changes since the last build (eg. after
+ * a restart or after an error), only modules whose inputs differ from the
+ * last successful compile or whose output is incomplete need to be compiled
+ * again.
+ * </p>
+ */
+final class GwtBuildState {
+
+	/**
+	 * Digests the resources of the modules of a project.
+	 */
+	private static final class InputDigestVisitor implements IResourceProxyVisitor {
+
+		/** gwtProject */
+		private final GwtProject gwtProject;
+
+		/** the digests of the module resources by module id */
+		private final Map<String, MessageDigest> moduleDigests;
+
+		/** the digest of the project configuration */
+		private final MessageDigest configurationDigest;
+
+		/** the output folders (ignored) */
+		private final Set<IPath> outputFolders = new HashSet<IPath>(4);
+
+		/** the modules of the project */
+		private final GwtModule[] modules;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param gwtProject
+		 * @param moduleDigests
+		 * @param configurationDigest
+		 * @throws CoreException
+		 */
+		InputDigestVisitor(final GwtProject gwtProject, final Map<String, MessageDigest> moduleDigests, final MessageDigest configurationDigest) throws CoreException {
+			this.gwtProject = gwtProject;
+			this.moduleDigests = moduleDigests;
+			this.configurationDigest = configurationDigest;
+			modules = gwtProject.getModules();
+			GwtProjectBuilder.collectOutputFolders(gwtProject, outputFolders);
+		}
+
+		/**
+		 * Returns the digest of the specified module.
+		 * 
+		 * @param moduleId
+		 * @return the digest
+		 * @throws CoreException
+		 */
+		private MessageDigest getDigest(final String moduleId) throws CoreException {
+			MessageDigest digest = moduleDigests.get(moduleId);
+			if (null == digest) {
+				digest = newDigest();
+				moduleDigests.put(moduleId, digest);
+			}
+			return digest;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * org.eclipse.core.resources.IResourceProxyVisitor#visit(org.eclipse
+		 * .core.resources.IResourceProxy)
+		 */
+		public boolean visit(final IResourceProxy proxy) throws CoreException {
+			if (proxy.isDerived() || proxy.isTeamPrivateMember()) {
+				return false;
+			}
+
+			switch (proxy.getType()) {
+				case IResource.FOLDER:
+					// don't look into build output
+					return !outputFolders.contains(proxy.requestFullPath());
+
+				case IResource.FILE:
+					final IFile file = (IFile) proxy.requestResource();
+					if (GwtUtil.isClasspathFile(file) || GwtUtil.isPreferencesFile(file)) {
+						update(configurationDigest, file, proxy.getModificationStamp());
+					} else if (GwtUtil.isModuleDescriptor(file)) {
+						for (final GwtModule module : modules) {
+							if (file.equals(module.getModuleDescriptor())) {
+								update(getDigest(module.getModuleId()), file, proxy.getModificationStamp());
+							}
+						}
+					} else {
+						for (final GwtModule module : gwtProject.getOwningModules(file)) {
+							update(getDigest(module.getModuleId()), file, proxy.getModificationStamp());
+						}
+					}
+					return false;
+
+				default:
+					return true;
+			}
+		}
+	}
+
+	/**
+	 * The state of a module as of its last successful compile.
+	 */
+	private static final class ModuleState {
+
+		/** the digest of the inputs the module was compiled from */
+		final String inputDigest;
+
+		/** the time of the compile */
+		final long compileTime;
+
+		/** the files written by the compiler (relative to the module output folder) */
+		final String[] outputManifest;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param inputDigest
+		 * @param compileTime
+		 * @param outputManifest
+		 */
+		ModuleState(final String inputDigest, final long compileTime, final String[] outputManifest) {
+			this.inputDigest = inputDigest;
+			this.compileTime = compileTime;
+			this.outputManifest = outputManifest;
+		}
+	}
+
+	/** STATE_FILE_NAME */
+	private static final String STATE_FILE_NAME = "build.state"; //$NON-NLS-1$
+
+	/** NEW_STATE_FILE_SUFFIX */
+	private static final String NEW_STATE_FILE_SUFFIX = ".new"; //$NON-NLS-1$
+
+	/** MAGIC */
+	private static final int MAGIC = 0x47574253; // GWBS
+
+	/** VERSION */
+	private static final int VERSION = 2;
+
+	/** the states by project (guarded by <code>GwtBuildState.class</code>) */
+	private static final Map<IProject, GwtBuildState> states = new HashMap<IProject, GwtBuildState>();
+
+	/**
+	 * Computes the input digests of the specified modules.
+	 * <p>
+	 * The digest of a module covers the modification stamps of the resources
+	 * of the module and of all modules it inherits, the module descriptors,
+	 * the classpath and GWT preferences of the projects involved and the
+	 * archives providing inherited binary modules.
+	 * </p>
+	 * 
+	 * @param gwtProject
+	 * @param modules
+	 *            the modules of the project
+	 * @return the input digests by module id
+	 * @throws CoreException
+	 */
+	static Map<String, String> computeInputDigests(final GwtProject gwtProject, final GwtModule[] modules) throws CoreException {
+		final GwtModuleGraph moduleGraph = GwtCore.getModel().getModuleGraph();
+
+		// the projects providing the modules and their inherited modules
+		final Set<IProject> projects = new LinkedHashSet<IProject>();
+		final Map<String, GwtModule> binaryModules = new HashMap<String, GwtModule>();
+		final Map<String, String> sourceModuleProjects = new HashMap<String, String>();
+		projects.add(gwtProject.getProjectResource());
+		for (final GwtModule module : modules) {
+			for (final GwtModule inheritedModule : moduleGraph.getInheritedModules(module.getModuleId())) {
+				if (inheritedModule.isBinary()) {
+					binaryModules.put(inheritedModule.getModuleId(), inheritedModule);
+				} else {
+					sourceModuleProjects.put(inheritedModule.getModuleId(), inheritedModule.getProjectName());
+					projects.add(inheritedModule.getProjectResource());
+				}
+			}
+		}
+
+		// digest the resources of each project
+		final Map<String, MessageDigest> moduleDigests = new HashMap<String, MessageDigest>();
+		final Map<String, byte[]> configurationDigests = new HashMap<String, byte[]>(projects.size());
+		for (final IProject project : projects) {
+			if (!GwtProject.hasGwtNature(project)) {
+				continue;
+			}
+			final MessageDigest configurationDigest = newDigest();
+			project.accept(new InputDigestVisitor(GwtCore.create(project), moduleDigests, configurationDigest), IResource.NONE);
+			configurationDigests.put(project.getName(), configurationDigest.digest());
+		}
+		final Map<String, byte[]> resourceDigests = new HashMap<String, byte[]>(moduleDigests.size());
+		for (final Map.Entry<String, MessageDigest> entry : moduleDigests.entrySet()) {
+			resourceDigests.put(entry.getKey(), entry.getValue().digest());
+		}
+
+		// combine the digests of each module and its inherited modules
+		final Map<String, String> inputDigests = new HashMap<String, String>(modules.length);
+		for (final GwtModule module : modules) {
+			final MessageDigest digest = newDigest();
+			updateModule(digest, module.getModuleId(), module.getProjectName(), resourceDigests, configurationDigests);
+			final String[] inheritedModuleIds = moduleGraph.getInheritedModuleIds(module.getModuleId());
+			Arrays.sort(inheritedModuleIds);
+			for (final String inheritedModuleId : inheritedModuleIds) {
+				final GwtModule binaryModule = binaryModules.get(inheritedModuleId);
+				if (null != binaryModule) {
+					update(digest, inheritedModuleId);
+					update(digest, getArchiveStamp(binaryModule));
+				} else {
+					updateModule(digest, inheritedModuleId, sourceModuleProjects.get(inheritedModuleId), resourceDigests, configurationDigests);
+				}
+			}
+			inputDigests.put(module.getModuleId(), GwtCompileResultCache.toHex(digest.digest()));
+		}
+		return inputDigests;
+	}
+
+	/**
+	 * Returns a stamp of the archive providing a binary module.
+	 * 
+	 * @param module
+	 * @return the stamp (maybe empty if unknown)
+	 */
+	private static String getArchiveStamp(final GwtModule module) {
+		final IPackageFragment modulePackage = module.getModulePackage();
+		if (null == modulePackage) {
+			return ""; //$NON-NLS-1$
+		}
+		final IPackageFragmentRoot root = (IPackageFragmentRoot) modulePackage.getParent();
+		final IResource archive = root.getResource();
+		if (null != archive) {
+			return archive.getFullPath().toPortableString() + ':' + archive.getModificationStamp();
+		}
+		final File archiveFile = root.getPath().toFile();
+		return archiveFile.getPath() + ':' + archiveFile.length() + ':' + archiveFile.lastModified();
+	}
+
+	/**
+	 * Returns the build state of the specified project.
+	 * <p>
+	 * The state is loaded from the working location of the project when it
+	 * is requested for the first time.
+	 * </p>
+	 * 
+	 * @param project
+	 * @return the build state
+	 */
+	static synchronized GwtBuildState getState(final IProject project) {
+		GwtBuildState state = states.get(project);
+		if (null == state) {
+			final IPath workingLocation = project.getWorkingLocation(GwtCore.PLUGIN_ID);
+			state = load(null != workingLocation ? workingLocation.append(STATE_FILE_NAME).toFile() : null);
+			states.put(project, state);
+		}
+		return state;
+	}
+
+	/**
+	 * Lists the files of a folder recursively.
+	 * 
+	 * @param folder
+	 * @param prefix
+	 *            the path of the folder relative to the listed root
+	 * @param files
+	 *            the list to add the relative file paths to
+	 */
+	private static void listFiles(final File folder, final String prefix, final List<String> files) {
+		final File[] children = folder.listFiles();
+		if (null == children) {
+			return;
+		}
+		for (final File child : children) {
+			if (child.isDirectory()) {
+				listFiles(child, prefix + child.getName() + '/', files);
+			} else {
+				files.add(prefix + child.getName());
+			}
+		}
+	}
+
+	/**
+	 * Loads the state from the specified file.
+	 * <p>
+	 * An empty state is returned if the file does not exist or could not be
+	 * read.
+	 * </p>
+	 * 
+	 * @param stateFile
+	 *            the state file (maybe <code>null</code>)
+	 * @return the loaded state
+	 */
+	private static GwtBuildState load(final File stateFile) {
+		final GwtBuildState state = new GwtBuildState(stateFile);
+		if (null == stateFile) {
+			return state;
+		}
+
+		// a new state might not have been renamed
+		final File newStateFile = new File(stateFile.getPath() + NEW_STATE_FILE_SUFFIX);
+		if (newStateFile.isFile()) {
+			stateFile.delete();
+			if (!newStateFile.renameTo(stateFile)) {
+				newStateFile.delete();
+			}
+		}
+
+		if (!stateFile.isFile()) {
+			return state;
+		}
+
+		try {
+			state.read(stateFile);
+		} catch (final IOException e) {
+			// start over with an empty state
+			GwtCore.logError("Error while reading GWT build state. All modules will be compiled.", e);
+			state.asyncServiceFingerprints.clear();
+			state.moduleStates.clear();
+			state.compileDurations.clear();
+		}
+		return state;
+	}
+
+	/**
+	 * Creates a new digest.
+	 * 
+	 * @return the digest
+	 * @throws CoreException
+	 *             if the digest algorithm is not available
+	 */
+	private static MessageDigest newDigest() throws CoreException {
+		try {
+			return GwtCompileResultCache.newDigest();
+		} catch (final IOException e) {
+			throw new CoreException(GwtCore.newErrorStatus(e.getMessage(), e));
+		}
+	}
+
+	/**
+	 * Updates the digest with the specified file stamp.
+	 * 
+	 * @param digest
+	 * @param file
+	 * @param modificationStamp
+	 * @throws CoreException
+	 */
+	private static void update(final MessageDigest digest, final IFile file, final long modificationStamp) throws CoreException {
+		update(digest, file.getFullPath().toPortableString());
+		update(digest, String.valueOf(modificationStamp));
+	}
+
+	/**
+	 * Updates the digest with the specified string.
+	 * 
+	 * @param digest
+	 * @param string
+	 * @throws CoreException
+	 */
+	private static void update(final MessageDigest digest, final String string) throws CoreException {
+		try {
+			GwtCompileResultCache.update(digest, string);
+		} catch (final IOException e) {
+			throw new CoreException(GwtCore.newErrorStatus(e.getMessage(), e));
+		}
+	}
+
+	/**
+	 * Updates the digest with the resource and configuration digests of a
+	 * source module.
+	 * 
+	 * @param digest
+	 * @param moduleId
+	 * @param projectName
+	 *            the name of the project providing the module (maybe
+	 *            <code>null</code>)
+	 * @param resourceDigests
+	 * @param configurationDigests
+	 * @throws CoreException
+	 */
+	private static void updateModule(final MessageDigest digest, final String moduleId, final String projectName, final Map<String, byte[]> resourceDigests, final Map<String, byte[]> configurationDigests) throws CoreException {
+		update(digest, moduleId);
+		final byte[] resourceDigest = resourceDigests.get(moduleId);
+		if (null != resourceDigest) {
+			digest.update(resourceDigest);
+		}
+		final byte[] configurationDigest = null != projectName ? configurationDigests.get(projectName) : null;
+		if (null != configurationDigest) {
+			digest.update(configurationDigest);
+		}
+	}
+
+	/** the state file (maybe <code>null</code> if the state cannot be saved) */
+	private final File stateFile;
+
+	/**
+	 * the signature fingerprints of the remote services as of their last
+	 * async service interface generation (by handle identifier)
+	 */
+	private final Map<String, String> asyncServiceFingerprints = new HashMap<String, String>();
+
+	/** the module states as of their last successful compile (by module id) */
+	private final Map<String, ModuleState> moduleStates = new LinkedHashMap<String, ModuleState>();
+
+	/** the durations (in milliseconds) of the last successful compiles by module id */
+	private final Map<String, Long> compileDurations = new HashMap<String, Long>();
+
+	/** the current input digests by module id (not persisted) */
+	private Map<String, String> inputDigests = new HashMap<String, String>();
+
+	/** dirty */
+	private boolean dirty;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param stateFile
+	 */
+	private GwtBuildState(final File stateFile) {
+		this.stateFile = stateFile;
+	}
+
+	/**
+	 * Forgets everything except the compile durations.
+	 */
+	synchronized void clear() {
+		if (!asyncServiceFingerprints.isEmpty() || !moduleStates.isEmpty()) {
+			asyncServiceFingerprints.clear();
+			moduleStates.clear();
+			dirty = true;
+		}
+		inputDigests = new HashMap<String, String>();
+	}
+
+	/**
+	 * Returns the signature fingerprint of a remote service as of its last
+	 * async service interface generation.
+	 * 
+	 * @param remoteServiceHandle
+	 *            the handle identifier of the remote service
+	 * @return the fingerprint (maybe <code>null</code>)
+	 */
+	synchronized String getAsyncServiceFingerprint(final String remoteServiceHandle) {
+		return asyncServiceFingerprints.get(remoteServiceHandle);
+	}
+
+	/**
+	 * Returns the duration of the last successful compile of the specified
+	 * module.
+	 * 
+	 * @param moduleId
+	 * @return the duration in milliseconds (<code>0</code> if unknown)
+	 */
+	synchronized long getCompileDuration(final String moduleId) {
+		final Long duration = compileDurations.get(moduleId);
+		return null != duration ? duration.longValue() : 0;
+	}
+
+	/**
+	 * Returns the current input digest of the specified module.
+	 * 
+	 * @param moduleId
+	 * @return the input digest (maybe <code>null</code> if unknown)
+	 * @see #setInputDigests(Map)
+	 */
+	synchronized String getInputDigest(final String moduleId) {
+		return inputDigests.get(moduleId);
+	}
+
+	/**
+	 * Returns the modules which must be compiled because their current input
+	 * digest differs from the one of their last successful compile or because
+	 * files of that compile are missing.
+	 * 
+	 * @param gwtProject
+	 * @param modules
+	 * @return the outdated modules
+	 */
+	GwtModule[] getOutdatedModules(final GwtProject gwtProject, final GwtModule[] modules) {
+		final IPath targetLocation = gwtProject.getProjectResource().getFolder(GwtUtil.getOutputLocation(gwtProject)).getLocation();
+		if (null == targetLocation) {
+			return modules;
+		}
+		final List<GwtModule> outdated = new ArrayList<GwtModule>(modules.length);
+		for (final GwtModule module : modules) {
+			if (!isUpToDate(module.getModuleId(), targetLocation.append(GwtProjectPublisher.getModuleOutputName(module)).toFile())) {
+				outdated.add(module);
+			}
+		}
+		return outdated.toArray(new GwtModule[outdated.size()]);
+	}
+
+	/**
+	 * Indicates if the last successful compile of the specified module was
+	 * done from its current inputs and all files written are still present.
+	 * 
+	 * @param moduleId
+	 * @param moduleOutputFolder
+	 * @return <code>true</code> if the module is up to date
+	 */
+	private synchronized boolean isUpToDate(final String moduleId, final File moduleOutputFolder) {
+		final ModuleState moduleState = moduleStates.get(moduleId);
+		if ((null == moduleState) || !moduleState.inputDigest.equals(inputDigests.get(moduleId))) {
+			return false;
+		}
+		for (final String path : moduleState.outputManifest) {
+			if (!new File(moduleOutputFolder, path).isFile()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Records a successful compile of the specified module.
+	 * 
+	 * @param moduleId
+	 * @param inputDigest
+	 *            the input digest as of the start of the compile (maybe
+	 *            <code>null</code> if unknown in which case nothing is
+	 *            recorded)
+	 * @param moduleOutputFolder
+	 *            the folder the compiler wrote the module into
+	 */
+	void moduleCompiled(final String moduleId, final String inputDigest, final File moduleOutputFolder) {
+		if (null == inputDigest) {
+			return;
+		}
+		final List<String> outputManifest = new ArrayList<String>();
+		listFiles(moduleOutputFolder, "", outputManifest); //$NON-NLS-1$
+		synchronized (this) {
+			moduleStates.put(moduleId, new ModuleState(inputDigest, System.currentTimeMillis(), outputManifest.toArray(new String[outputManifest.size()])));
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Forgets the last successful compile of the specified module.
+	 * <p>
+	 * Must be called before the module output is modified.
+	 * </p>
+	 * 
+	 * @param moduleId
+	 */
+	synchronized void moduleCompileStarted(final String moduleId) {
+		if (null != moduleStates.remove(moduleId)) {
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Reads the state.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	private synchronized void read(final File file) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+				// unknown format, start over
+				return;
+			}
+
+			// remote services
+			final int fingerprintCount = in.readInt();
+			for (int i = 0; i < fingerprintCount; i++) {
+				final String remoteServiceHandle = in.readUTF();
+				asyncServiceFingerprints.put(remoteServiceHandle, in.readUTF());
+			}
+
+			// modules
+			final int moduleCount = in.readInt();
+			for (int i = 0; i < moduleCount; i++) {
+				final String moduleId = in.readUTF();
+				final String inputDigest = in.readUTF();
+				final long compileTime = in.readLong();
+				final String[] outputManifest = new String[in.readInt()];
+				for (int j = 0; j < outputManifest.length; j++) {
+					outputManifest[j] = in.readUTF();
+				}
+				moduleStates.put(moduleId, new ModuleState(inputDigest, compileTime, outputManifest));
+			}
+
+			// compile durations
+			final int durationCount = in.readInt();
+			for (int i = 0; i < durationCount; i++) {
+				final String moduleId = in.readUTF();
+				compileDurations.put(moduleId, new Long(in.readLong()));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Saves the state if it has been modified.
+	 * 
+	 * @throws IOException
+	 */
+	synchronized void save() throws IOException {
+		if (!dirty || (null == stateFile)) {
+			return;
+		}
+
+		final File newStateFile = new File(stateFile.getPath() + NEW_STATE_FILE_SUFFIX);
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newStateFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			// remote services
+			out.writeInt(asyncServiceFingerprints.size());
+			for (final Map.Entry<String, String> entry : asyncServiceFingerprints.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeUTF(entry.getValue());
+			}
+
+			// modules
+			out.writeInt(moduleStates.size());
+			for (final Map.Entry<String, ModuleState> entry : moduleStates.entrySet()) {
+				final ModuleState moduleState = entry.getValue();
+				out.writeUTF(entry.getKey());
+				out.writeUTF(moduleState.inputDigest);
+				out.writeLong(moduleState.compileTime);
+				out.writeInt(moduleState.outputManifest.length);
+				for (final String path : moduleState.outputManifest) {
+					out.writeUTF(path);
+				}
+			}
+
+			// compile durations
+			out.writeInt(compileDurations.size());
+			for (final Map.Entry<String, Long> entry : compileDurations.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue().longValue());
+			}
+		} finally {
+			out.close();
+		}
+
+		// replace the old state
+		stateFile.delete();
+		newStateFile.renameTo(stateFile);
+		dirty = false;
+	}
+
+	/**
+	 * Sets the signature fingerprint of a remote service after its async
+	 * service interface has been generated.
+	 * 
+	 * @param remoteServiceHandle
+	 *            the handle identifier of the remote service
+	 * @param fingerprint
+	 *            the fingerprint
+	 */
+	synchronized void setAsyncServiceFingerprint(final String remoteServiceHandle, final String fingerprint) {
+		if (!fingerprint.equals(asyncServiceFingerprints.put(remoteServiceHandle, fingerprint))) {
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Sets the duration of the last successful compile of the specified
+	 * module.
+	 * 
+	 * @param moduleId
+	 * @param duration
+	 *            the duration in milliseconds
+	 */
+	synchronized void setCompileDuration(final String moduleId, final long duration) {
+		compileDurations.put(moduleId, new Long(duration));
+		dirty = true;
+	}
+
+	/**
+	 * Sets the current input digests of the specified modules.
+	 * <p>
+	 * The digest of a module is recorded when the module compiles
+	 * successfully. Digests of other modules are kept.
+	 * </p>
+	 * 
+	 * @param inputDigests
+	 *            the input digests by module id
+	 * @see #computeInputDigests(GwtProject, GwtModule[])
+	 */
+	synchronized void setInputDigests(final Map<String, String> inputDigests) {
+		this.inputDigests.putAll(inputDigests);
+	}
+}
@@ -0,0 +1,709 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.builder;
+
+import org.eclipseguru.gwt.core.GwtCore;
+import org.eclipseguru.gwt.core.GwtUtil;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content addressed store of module compile results.
+ * <p>
+ * The key of a compile result is a SHA-1 digest of everything the GWT
+ * compiler reads: the compiler class and arguments, the VM arguments and the
+ * content of every entry of the compiler classpath. Folders on the classpath
+ * (source folders including all module source, super source and public files
+ * as well as class folders with generators) and archives are digested by
+ * content. Locations of the classpath entries and of the output folder are not
+ * part of the key so that the same sources produce the same key in any
+ * workspace and on any machine. Content digests of files are remembered by
+ * size and time stamp so that unchanged files are not read again.
+ * </p>
+ * <p>
+ * The store is a plain folder which may be shared by several workspaces,
+ * headless builds and machines (eg. on a network file system). Each result
+ * lives in a folder named after its key which contains a copy of the module
+ * folder written by the compiler and its size. Results are written into a
+ * temporary folder first and published by renaming it so that readers never
+ * see a partial result. Readers touch the result they restore. If the store
+ * grows beyond its size limit the least recently used results are evicted by
+ * renaming them before they are deleted. A result which disappears while it
+ * is being restored is treated like a missing one.
+ * </p>
+ */
+public final class GwtCompileResultCache {
+
+	/**
+	 * A result in the store.
+	 */
+	private static final class Entry {
+
+		/** folder */
+		final File folder;
+
+		/** lastUsed */
+		final long lastUsed;
+
+		/** size */
+		final long size;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param folder
+		 * @param lastUsed
+		 * @param size
+		 */
+		Entry(final File folder, final long lastUsed, final long size) {
+			this.folder = folder;
+			this.lastUsed = lastUsed;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * The remembered content digest of a file.
+	 */
+	private static final class FileDigest {
+
+		/** length */
+		final long length;
+
+		/** lastModified */
+		final long lastModified;
+
+		/** digest */
+		final byte[] digest;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param length
+		 * @param lastModified
+		 * @param digest
+		 */
+		FileDigest(final long length, final long lastModified, final byte[] digest) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.digest = digest;
+		}
+	}
+
+	/** the name of the default store folder in the state location */
+	static final String STORE_FOLDER_NAME = "compile-results"; //$NON-NLS-1$
+
+	/** the version of the key and the store layout */
+	private static final String STORE_VERSION = "2"; //$NON-NLS-1$
+
+	/** the name of the folder holding the module output in a result */
+	private static final String OUTPUT_FOLDER_NAME = "module"; //$NON-NLS-1$
+
+	/** the name of the file holding the size of a result */
+	private static final String SIZE_FILE_NAME = "size"; //$NON-NLS-1$
+
+	/** the extension of results being published */
+	private static final String TEMP_EXTENSION = ".tmp"; //$NON-NLS-1$
+
+	/** the extension of results being evicted */
+	private static final String DELETED_EXTENSION = ".deleted"; //$NON-NLS-1$
+
+	/** the age (in milliseconds) after which abandoned temporary results are removed */
+	private static final long ABANDONED_AGE = 24 * 60 * 60 * 1000;
+
+	/** the placeholder for the output folder in compiler arguments */
+	private static final String OUTPUT_LOCATION_VARIABLE = "${output}"; //$NON-NLS-1$
+
+	/** DIGEST_ALGORITHM */
+	private static final String DIGEST_ALGORITHM = "SHA-1"; //$NON-NLS-1$
+
+	/** UTF_8 */
+	private static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
+
+	/** HEX_DIGITS */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+
+	/** caches by canonical store folder (guarded by <code>GwtCompileResultCache.class</code>) */
+	private static final Map<File, GwtCompileResultCache> caches = new HashMap<File, GwtCompileResultCache>(2);
+
+	/** content digests by absolute file path (guarded by <code>fileDigests</code>) */
+	private static final Map<String, FileDigest> fileDigests = new HashMap<String, FileDigest>();
+
+	/**
+	 * Copies the specified file.
+	 * 
+	 * @param source
+	 * @param target
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 */
+	private static long copyFile(final File source, final File target) throws IOException {
+		long size = 0;
+		final InputStream in = new FileInputStream(source);
+		try {
+			final OutputStream out = new FileOutputStream(target);
+			try {
+				final byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+					size += read;
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		target.setLastModified(source.lastModified());
+		return size;
+	}
+
+	/**
+	 * Copies the specified folder recursively.
+	 * 
+	 * @param source
+	 * @param target
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 */
+	private static long copyFolder(final File source, final File target) throws IOException {
+		if (!target.isDirectory() && !target.mkdirs()) {
+			throw new IOException("Unable to create folder " + target);
+		}
+		final File[] children = source.listFiles();
+		if (null == children) {
+			throw new IOException("Unable to list folder " + source);
+		}
+		long size = 0;
+		for (final File child : children) {
+			if (child.isDirectory()) {
+				size += copyFolder(child, new File(target, child.getName()));
+			} else {
+				size += copyFile(child, new File(target, child.getName()));
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Deletes the specified file or folder recursively.
+	 * 
+	 * @param file
+	 * @return <code>true</code> if the file does not exist anymore
+	 */
+	static boolean delete(final File file) {
+		final File[] children = file.listFiles();
+		if (null != children) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		return file.delete() || !file.exists();
+	}
+
+	/**
+	 * Returns the cache in the configured store folder.
+	 * 
+	 * @return the cache
+	 * @see GwtUtil#getCompileCacheLocation()
+	 */
+	public static GwtCompileResultCache getCache() {
+		final String location = GwtUtil.getCompileCacheLocation();
+		if (null == location) {
+			return getCache(GwtCore.getGwtCore().getStateLocation().append(STORE_FOLDER_NAME).toFile());
+		}
+		return getCache(new File(location));
+	}
+
+	/**
+	 * Returns the cache in the specified store folder.
+	 * 
+	 * @param storeFolder
+	 * @return the cache
+	 */
+	public static synchronized GwtCompileResultCache getCache(final File storeFolder) {
+		File key;
+		try {
+			key = storeFolder.getCanonicalFile();
+		} catch (final IOException e) {
+			key = storeFolder.getAbsoluteFile();
+		}
+		GwtCompileResultCache cache = caches.get(key);
+		if (null == cache) {
+			cache = new GwtCompileResultCache(key);
+			caches.put(key, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Returns the content digest of the specified file.
+	 * 
+	 * @param file
+	 * @return the content digest
+	 * @throws IOException
+	 */
+	private static byte[] getFileDigest(final File file) throws IOException {
+		final String path = file.getAbsolutePath();
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+		synchronized (fileDigests) {
+			final FileDigest known = fileDigests.get(path);
+			if ((null != known) && (known.length == length) && (known.lastModified == lastModified)) {
+				return known.digest;
+			}
+		}
+
+		final MessageDigest digest = newDigest();
+		final InputStream in = new FileInputStream(file);
+		try {
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		final byte[] fileDigest = digest.digest();
+		synchronized (fileDigests) {
+			fileDigests.put(path, new FileDigest(length, lastModified, fileDigest));
+		}
+		return fileDigest;
+	}
+
+	/**
+	 * Returns the size of the specified folder.
+	 * 
+	 * @param folder
+	 * @return the size in bytes
+	 */
+	private static long getFolderSize(final File folder) {
+		final File[] children = folder.listFiles();
+		if (null == children) {
+			return 0;
+		}
+		long size = 0;
+		for (final File child : children) {
+			size += child.isDirectory() ? getFolderSize(child) : child.length();
+		}
+		return size;
+	}
+
+	/**
+	 * Indicates if the specified folder is skipped when digesting a folder.
+	 * 
+	 * @param folder
+	 * @return <code>true</code> for version control meta data folders
+	 */
+	private static boolean isIgnoredFolder(final File folder) {
+		final String name = folder.getName();
+		return name.equals(".svn") || name.equals("CVS") || name.equals(".git"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	/**
+	 * Creates a new digest.
+	 * 
+	 * @return the digest
+	 * @throws IOException
+	 *             if the digest algorithm is not available
+	 */
+	static MessageDigest newDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (final NoSuchAlgorithmException e) {
+			final IOException ioException = new IOException("Digest algorithm " + DIGEST_ALGORITHM + " not available");
+			ioException.initCause(e);
+			throw ioException;
+		}
+	}
+
+	/**
+	 * Returns a hex representation of the specified bytes.
+	 * 
+	 * @param bytes
+	 * @return the hex string
+	 */
+	static String toHex(final byte[] bytes) {
+		final char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			chars[(i * 2) + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Updates the digest with the specified string.
+	 * 
+	 * @param digest
+	 * @param string
+	 * @throws UnsupportedEncodingException
+	 */
+	static void update(final MessageDigest digest, final String string) throws UnsupportedEncodingException {
+		digest.update(string.getBytes(UTF_8));
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Updates the digest with the specified argument.
+	 * <p>
+	 * The output location is replaced with a placeholder.
+	 * </p>
+	 * 
+	 * @param digest
+	 * @param arg
+	 * @param outputLocation
+	 * @throws UnsupportedEncodingException
+	 */
+	private static void updateArgument(final MessageDigest digest, final String arg, final String outputLocation) throws UnsupportedEncodingException {
+		if (arg.startsWith(outputLocation)) {
+			update(digest, OUTPUT_LOCATION_VARIABLE + arg.substring(outputLocation.length()).replace(File.separatorChar, '/'));
+		} else {
+			update(digest, arg);
+		}
+	}
+
+	/**
+	 * Updates the digest with the content of the specified folder.
+	 * 
+	 * @param digest
+	 * @param folder
+	 * @param relativePath
+	 *            the path of the folder relative to the classpath entry
+	 * @throws IOException
+	 */
+	private static void updateFolder(final MessageDigest digest, final File folder, final String relativePath) throws IOException {
+		final File[] children = folder.listFiles();
+		if (null == children) {
+			return;
+		}
+
+		// stable order
+		Arrays.sort(children);
+		for (final File child : children) {
+			final String childPath = relativePath + '/' + child.getName();
+			if (child.isDirectory()) {
+				if (!isIgnoredFolder(child)) {
+					updateFolder(digest, child, childPath);
+				}
+			} else {
+				update(digest, childPath);
+				digest.update(getFileDigest(child));
+			}
+		}
+	}
+
+	/** storeFolder */
+	private final File storeFolder;
+
+	/** hits */
+	private final AtomicLong hits = new AtomicLong();
+
+	/** misses */
+	private final AtomicLong misses = new AtomicLong();
+
+	/** stores */
+	private final AtomicLong stores = new AtomicLong();
+
+	/** evictions */
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param storeFolder
+	 */
+	private GwtCompileResultCache(final File storeFolder) {
+		this.storeFolder = storeFolder;
+	}
+
+	/**
+	 * Computes the key of a compile.
+	 * 
+	 * @param mainClass
+	 *            the compiler class
+	 * @param classpath
+	 *            the compiler classpath
+	 * @param vmArgs
+	 *            the VM arguments
+	 * @param programArgs
+	 *            the compiler arguments
+	 * @param outputLocation
+	 *            the location of the output folder
+	 * @return the key
+	 * @throws IOException
+	 *             if the classpath could not be read
+	 */
+	String computeKey(final String mainClass, final List<String> classpath, final String[] vmArgs, final String[] programArgs, final File outputLocation) throws IOException {
+		final String outputPath = outputLocation.getAbsolutePath();
+		final MessageDigest digest = newDigest();
+		update(digest, STORE_VERSION);
+		update(digest, mainClass);
+		update(digest, String.valueOf(vmArgs.length));
+		for (final String arg : vmArgs) {
+			updateArgument(digest, arg, outputPath);
+		}
+		update(digest, String.valueOf(programArgs.length));
+		for (final String arg : programArgs) {
+			updateArgument(digest, arg, outputPath);
+		}
+		update(digest, String.valueOf(classpath.size()));
+		for (final String entry : classpath) {
+			final File file = new File(entry);
+			if (file.isDirectory()) {
+				update(digest, "folder"); //$NON-NLS-1$
+				updateFolder(digest, file, ""); //$NON-NLS-1$
+			} else if (file.isFile()) {
+				update(digest, "file"); //$NON-NLS-1$
+				digest.update(getFileDigest(file));
+			} else {
+				// missing entries are ignored by the compiler
+				update(digest, "missing"); //$NON-NLS-1$
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Evicts the least recently used results until the store fits into the
+	 * configured size limit.
+	 * <p>
+	 * Also removes results abandoned by writers which did not finish.
+	 * </p>
+	 */
+	private void evict() {
+		final File[] children = storeFolder.listFiles();
+		if (null == children) {
+			return;
+		}
+
+		final long now = System.currentTimeMillis();
+		final List<Entry> entries = new ArrayList<Entry>(children.length);
+		long totalSize = 0;
+		for (final File child : children) {
+			final String name = child.getName();
+			if (name.endsWith(DELETED_EXTENSION) || (name.endsWith(TEMP_EXTENSION) && ((now - child.lastModified()) > ABANDONED_AGE))) {
+				delete(child);
+			} else if (child.isDirectory() && (name.indexOf('.') == -1)) {
+				final Entry entry = new Entry(child, child.lastModified(), readSize(child));
+				entries.add(entry);
+				totalSize += entry.size;
+			}
+		}
+
+		final long sizeLimit = GwtUtil.getCompileCacheSizeLimit() * 1024 * 1024;
+		if (totalSize <= sizeLimit) {
+			return;
+		}
+
+		// least recently used first
+		Collections.sort(entries, new Comparator<Entry>() {
+			public int compare(final Entry e1, final Entry e2) {
+				return e1.lastUsed < e2.lastUsed ? -1 : (e1.lastUsed == e2.lastUsed ? 0 : 1);
+			}
+		});
+		for (final Entry entry : entries) {
+			if (totalSize <= sizeLimit) {
+				break;
+			}
+
+			// readers of a renamed result fail and compile again
+			final File deleted = new File(storeFolder, entry.folder.getName() + '.' + UUID.randomUUID() + DELETED_EXTENSION);
+			if (entry.folder.renameTo(deleted)) {
+				delete(deleted);
+				evictions.incrementAndGet();
+			}
+			totalSize -= entry.size;
+		}
+	}
+
+	/**
+	 * Returns the number of results evicted from the store since the cache
+	 * was created.
+	 * 
+	 * @return the number of evicted results
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Returns the number of compiles answered by the cache since the cache
+	 * was created.
+	 * 
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of compiles not answered by the cache since the
+	 * cache was created.
+	 * 
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the folder of the specified result.
+	 * 
+	 * @param key
+	 * @return the result folder
+	 */
+	private File getResultFolder(final String key) {
+		return new File(storeFolder, key);
+	}
+
+	/**
+	 * Returns the store folder.
+	 * 
+	 * @return the store folder
+	 */
+	public File getStoreFolder() {
+		return storeFolder;
+	}
+
+	/**
+	 * Returns the number of results stored since the cache was created.
+	 * 
+	 * @return the number of stored results
+	 */
+	public long getStores() {
+		return stores.get();
+	}
+
+	/**
+	 * Reads the size of the specified result.
+	 * 
+	 * @param resultFolder
+	 * @return the size in bytes
+	 */
+	private long readSize(final File resultFolder) {
+		final File sizeFile = new File(resultFolder, SIZE_FILE_NAME);
+		try {
+			final BufferedReader reader = new BufferedReader(new FileReader(sizeFile));
+			try {
+				return Long.parseLong(reader.readLine().trim());
+			} finally {
+				reader.close();
+			}
+		} catch (final Exception e) {
+			// missing or written by someone else
+			return getFolderSize(resultFolder);
+		}
+	}
+
+	/**
+	 * Restores the stored result with the specified key.
+	 * 
+	 * @param key
+	 * @param moduleOutputFolder
+	 *            the module folder in the war folder
+	 * @return <code>true</code> if the result has been restored,
+	 *         <code>false</code> if there is no such result
+	 * @throws IOException
+	 *             if the module folder could not be replaced
+	 */
+	boolean restore(final String key, final File moduleOutputFolder) throws IOException {
+		final File resultFolder = getResultFolder(key);
+		final File resultOutputFolder = new File(resultFolder, OUTPUT_FOLDER_NAME);
+		if (!resultOutputFolder.isDirectory()) {
+			misses.incrementAndGet();
+			return false;
+		}
+
+		// remember the use for eviction
+		resultFolder.setLastModified(System.currentTimeMillis());
+
+		if (!delete(moduleOutputFolder)) {
+			throw new IOException("Unable to delete " + moduleOutputFolder);
+		}
+		try {
+			copyFolder(resultOutputFolder, moduleOutputFolder);
+		} catch (final IOException e) {
+			// evicted while copying
+			delete(moduleOutputFolder);
+			misses.incrementAndGet();
+			return false;
+		}
+		hits.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Stores a compile result.
+	 * <p>
+	 * The result is copied into a temporary folder first which is then renamed
+	 * so that other readers never see a partial result. Least recently used
+	 * results are evicted afterwards if the store grew beyond its size limit.
+	 * </p>
+	 * 
+	 * @param key
+	 * @param moduleOutputFolder
+	 *            the module folder in the war folder
+	 * @throws IOException
+	 *             if the result could not be stored
+	 */
+	void store(final String key, final File moduleOutputFolder) throws IOException {
+		final File resultFolder = getResultFolder(key);
+		if (resultFolder.isDirectory() || !moduleOutputFolder.isDirectory()) {
+			return;
+		}
+
+		final File tempFolder = new File(storeFolder, key + '.' + UUID.randomUUID() + TEMP_EXTENSION);
+		try {
+			final long size = copyFolder(moduleOutputFolder, new File(tempFolder, OUTPUT_FOLDER_NAME));
+			final Writer writer = new FileWriter(new File(tempFolder, SIZE_FILE_NAME));
+			try {
+				writer.write(String.valueOf(size));
+			} finally {
+				writer.close();
+			}
+			if (tempFolder.renameTo(resultFolder)) {
+				stores.incrementAndGet();
+			} else if (!resultFolder.isDirectory()) {
+				throw new IOException("Unable to rename " + tempFolder + " to " + resultFolder);
+			}
+			// otherwise another writer was faster
+		} finally {
+			delete(tempFolder);
+		}
+
+		evict();
+	}
+}
@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.builder;
+
+import org.eclipseguru.gwt.core.GwtCore;
+import org.eclipseguru.gwt.core.GwtModule;
+import org.eclipseguru.gwt.core.GwtProject;
+import org.eclipseguru.gwt.core.GwtUtil;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Schedules the compilation of modules requested by the builder.
+ * <p>
+ * Requests are collected per project and compiled in the background once no
+ * new request arrived within the quiet period configured for the project.
+ * Duplicate requests for a module are merged. If a module which is currently
+ * being compiled is requested again the running compile is cancelled and
+ * restarted with the newer sources after the quiet period.
+ * </p>
+ * <p>
+ * The compile jobs do not hold a scheduling rule while the GWT compiler runs
+ * so that editors and the builder are not blocked by a long running compile.
+ * </p>
+ */
+public final class GwtCompileScheduler {
+
+	/**
+	 * Compiles the pending modules of a project.
+	 */
+	private static final class CompileJob extends Job {
+
+		/** project */
+		private final GwtProject project;
+
+		/** modules waiting to be compiled (guarded by <code>this</code>) */
+		private final Set<GwtModule> pendingModules = new LinkedHashSet<GwtModule>();
+
+		/** the input digests of pending modules computed by the builder by module id (guarded by <code>this</code>) */
+		private final Map<String, String> pendingInputDigests = new HashMap<String, String>();
+
+		/** modules currently being compiled (guarded by <code>this</code>) */
+		private Set<GwtModule> runningModules;
+
+		/** indicates if the running compile was cancelled by a newer request (guarded by <code>this</code>) */
+		private boolean superseded;
+
+		/** the running publisher (maybe <code>null</code>) */
+		private volatile GwtProjectPublisher publisher;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param project
+		 */
+		CompileJob(final GwtProject project) {
+			super(MessageFormat.format("GWT Compiling {0}", project.getName()));
+			this.project = project;
+			setPriority(LONG);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.core.runtime.jobs.Job#belongsTo(java.lang.Object)
+		 */
+		@Override
+		public boolean belongsTo(final Object family) {
+			return FAMILY == family;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.core.runtime.jobs.Job#canceling()
+		 */
+		@Override
+		protected void canceling() {
+			// don't wait for the compilers to notice
+			final GwtProjectPublisher publisher = this.publisher;
+			if (null != publisher) {
+				GwtCompilerProcess.destroyAll(publisher);
+			}
+		}
+
+		/**
+		 * Drops all pending modules and cancels the running compile.
+		 */
+		synchronized void cancelAll() {
+			pendingModules.clear();
+			pendingInputDigests.clear();
+			superseded = false;
+			cancel();
+		}
+
+		/**
+		 * Adds the specified modules and restarts the quiet period.
+		 * 
+		 * @param modules
+		 * @param inputDigests
+		 *            the input digests computed by the builder (maybe
+		 *            <code>null</code>)
+		 */
+		synchronized void request(final GwtModule[] modules, final Map<String, String> inputDigests) {
+			boolean supersedes = false;
+			for (final GwtModule module : modules) {
+				pendingModules.add(module);
+				final String inputDigest = null != inputDigests ? inputDigests.get(module.getModuleId()) : null;
+				if (null != inputDigest) {
+					pendingInputDigests.put(module.getModuleId(), inputDigest);
+				} else {
+					// changed since, the publisher must compute it
+					pendingInputDigests.remove(module.getModuleId());
+				}
+				if ((null != runningModules) && runningModules.contains(module)) {
+					supersedes = true;
+				}
+			}
+
+			if (null != runningModules) {
+				if (supersedes) {
+					// the running compile uses outdated sources
+					superseded = true;
+					cancel();
+				}
+				// otherwise pending modules are picked up when the compile finished
+				return;
+			}
+
+			// restart the quiet period
+			cancel();
+			schedule(GwtUtil.getCompileQuietPeriod(project));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.
+		 * IProgressMonitor)
+		 */
+		@Override
+		protected IStatus run(final IProgressMonitor monitor) {
+			final GwtModule[] modules;
+			final Map<String, String> inputDigests;
+			synchronized (this) {
+				// a newer request might have cancelled us before we started
+				if (monitor.isCanceled()) {
+					return Status.CANCEL_STATUS;
+				}
+				if (pendingModules.isEmpty()) {
+					return Status.OK_STATUS;
+				}
+				modules = pendingModules.toArray(new GwtModule[pendingModules.size()]);
+				runningModules = new LinkedHashSet<GwtModule>(pendingModules);
+				pendingModules.clear();
+				inputDigests = new HashMap<String, String>(pendingInputDigests);
+				pendingInputDigests.clear();
+				superseded = false;
+			}
+
+			IStatus status = Status.CANCEL_STATUS;
+			final ProblemMarkerReconciler markers = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+			try {
+				if (project.getProjectResource().isAccessible()) {
+					publisher = new GwtProjectPublisher(project, modules);
+					publisher.setInputDigests(inputDigests);
+					if (!monitor.isCanceled()) {
+						status = publisher.publish(markers, monitor);
+					}
+				}
+			} finally {
+				publisher = null;
+				synchronized (this) {
+					if (superseded) {
+						// compile again with the newer sources
+						pendingModules.addAll(runningModules);
+					}
+					runningModules = null;
+					superseded = false;
+					if (!pendingModules.isEmpty()) {
+						schedule(GwtUtil.getCompileQuietPeriod(project));
+					}
+				}
+			}
+
+			// report problems like the builder did before
+			if (status.getSeverity() == IStatus.ERROR) {
+				markers.addProblem(project.getProjectResource(), MessageFormat.format("Error while compiling modules: {0} ", status.getMessage()));
+			}
+			try {
+				markers.apply(null);
+			} catch (final CoreException e) {
+				GwtCore.logError("Error while reporting GWT compile problem.", e);
+			}
+			return status.matches(IStatus.CANCEL) ? Status.CANCEL_STATUS : Status.OK_STATUS;
+		}
+	}
+
+	/** the job family of all compile jobs */
+	public static final Object FAMILY = new Object();
+
+	/** compile jobs by project (guarded by <code>jobs</code>) */
+	private static final Map<IProject, CompileJob> jobs = new HashMap<IProject, CompileJob>();
+
+	/**
+	 * Drops all pending compiles of the specified project and cancels a
+	 * running one.
+	 * 
+	 * @param project
+	 */
+	public static void cancelCompiles(final IProject project) {
+		final CompileJob job;
+		synchronized (jobs) {
+			job = jobs.remove(project);
+		}
+		if (null != job) {
+			job.cancelAll();
+		}
+	}
+
+	/**
+	 * Requests the compilation of the specified modules.
+	 * <p>
+	 * Returns immediately. The modules are compiled in the background after
+	 * the quiet period.
+	 * </p>
+	 * 
+	 * @param project
+	 * @param modules
+	 * @param inputDigests
+	 *            the input digests of the modules by module id if the builder
+	 *            computed them already (maybe <code>null</code>)
+	 */
+	public static void schedule(final GwtProject project, final GwtModule[] modules, final Map<String, String> inputDigests) {
+		if (modules.length == 0) {
+			return;
+		}
+
+		CompileJob job;
+		synchronized (jobs) {
+			job = jobs.get(project.getProjectResource());
+			if ((null == job) || (job.project != project)) {
+				// the canonical project instance changed
+				if (null != job) {
+					job.cancelAll();
+				}
+				job = new CompileJob(project);
+				jobs.put(project.getProjectResource(), job);
+			}
+		}
+		job.request(modules, inputDigests);
+	}
+
+	/**
+	 * Cancels all compiles.
+	 */
+	public static void shutdown() {
+		final CompileJob[] allJobs;
+		synchronized (jobs) {
+			allJobs = jobs.values().toArray(new CompileJob[jobs.size()]);
+			jobs.clear();
+		}
+		for (final CompileJob job : allJobs) {
+			job.cancelAll();
+		}
+		Job.getJobManager().cancel(FAMILY);
+		GwtProjectPublisher.shutdown();
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private GwtCompileScheduler() {
+		// empty
+	}
+}
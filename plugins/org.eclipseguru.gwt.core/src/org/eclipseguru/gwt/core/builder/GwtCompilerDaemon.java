@@ -0,0 +1,625 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.builder;
+
+import org.eclipseguru.gwt.core.GwtCore;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.ILaunch;
+import org.eclipse.debug.core.ILaunchManager;
+import org.eclipse.debug.core.IStreamListener;
+import org.eclipse.debug.core.Launch;
+import org.eclipse.jdt.launching.IVMInstall;
+import org.eclipse.jdt.launching.IVMRunner;
+import org.eclipse.jdt.launching.VMRunnerConfiguration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A long running GWT compiler process.
+ * <p>
+ * Launching a VM for every compile means paying the VM startup and loading
+ * the GWT compiler again and again. A daemon runs the
+ * <code>GwtCompilerWorker</code> from <code>gwt-compilerd.jar</code> in a VM
+ * launched once per JRE, VM arguments and GWT runtime. The worker keeps the
+ * GWT runtime loaded and compiles each module in a fresh class loader for the
+ * project classpath. The project source folders win over the GWT runtime like
+ * with a launched compiler. The compiler output is streamed back over a local
+ * socket and shown in the console of the daemon launch.
+ * </p>
+ * <p>
+ * A daemon compiles one module at a time. Idle daemons are kept in a pool and
+ * stopped when unused for a while. A daemon is recycled after a number of
+ * compiles or when the heap left over by a compile is above a threshold.
+ * </p>
+ */
+final class GwtCompilerDaemon {
+
+	/**
+	 * Reads from the worker and gives up when the compile is cancelled or
+	 * takes too long.
+	 */
+	private static final class CancelableInputStream extends FilterInputStream {
+
+		/** monitor (maybe <code>null</code> if no compile is running) */
+		volatile IProgressMonitor monitor;
+
+		/** the time at which the running compile takes too long */
+		volatile long deadline = Long.MAX_VALUE;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param in
+		 */
+		CancelableInputStream(final InputStream in) {
+			super(in);
+		}
+
+		/**
+		 * Checks if the running compile should be abandoned.
+		 * 
+		 * @throws IOException
+		 */
+		private void check() throws IOException {
+			final IProgressMonitor monitor = this.monitor;
+			if ((null != monitor) && monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			if (System.currentTimeMillis() > deadline) {
+				throw new CompileTimeoutException();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.FilterInputStream#read()
+		 */
+		@Override
+		public int read() throws IOException {
+			while (true) {
+				try {
+					return super.read();
+				} catch (final SocketTimeoutException e) {
+					check();
+				}
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.FilterInputStream#read(byte[], int, int)
+		 */
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			while (true) {
+				try {
+					return super.read(b, off, len);
+				} catch (final SocketTimeoutException e) {
+					check();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Signals that a compile took too long.
+	 */
+	private static final class CompileTimeoutException extends IOException {
+
+		/** serialVersionUID */
+		private static final long serialVersionUID = 1L;
+	}
+
+	/** the name of the worker archive in the bundle */
+	private static final String WORKER_JAR = "gwt-compilerd.jar"; //$NON-NLS-1$
+
+	/** the worker class folder when self-hosting */
+	private static final String WORKER_CLASS_FOLDER = "bin.compilerd"; //$NON-NLS-1$
+
+	/** the worker main class */
+	private static final String WORKER_CLASS = "org.eclipseguru.gwt.core.internal.compilerd.GwtCompilerWorker"; //$NON-NLS-1$
+
+	/** request to compile a module (see <code>GwtCompilerWorker</code>) */
+	private static final byte CMD_COMPILE = 1;
+
+	/** request to terminate (see <code>GwtCompilerWorker</code>) */
+	private static final byte CMD_SHUTDOWN = 2;
+
+	/** a line of compiler output (see <code>GwtCompilerWorker</code>) */
+	private static final byte MSG_LOG = 1;
+
+	/** a compile finished (see <code>GwtCompilerWorker</code>) */
+	private static final byte MSG_DONE = 2;
+
+	/** the time (in milliseconds) to wait for a worker to connect */
+	private static final int CONNECT_TIMEOUT = 30000;
+
+	/** the interval (in milliseconds) for checking cancellation */
+	private static final int POLL_INTERVAL = 1000;
+
+	/** the time (in milliseconds) after which idle daemons are stopped */
+	private static final long IDLE_TIMEOUT = 10 * 60 * 1000;
+
+	/** the fraction of the maximum heap a compile may leave over before the daemon is recycled */
+	private static final double HEAP_THRESHOLD = 0.75;
+
+	/** idle daemons by key (guarded by <code>pool</code>) */
+	private static final Map<String, LinkedList<GwtCompilerDaemon>> pool = new HashMap<String, LinkedList<GwtCompilerDaemon>>();
+
+	/** daemons running a compile (guarded by <code>pool</code>) */
+	private static final Set<GwtCompilerDaemon> busy = new HashSet<GwtCompilerDaemon>();
+
+	/** stops idle daemons */
+	private static final Job reaper = new Job("Stopping idle GWT compilers") {
+		@Override
+		protected IStatus run(final IProgressMonitor monitor) {
+			stopIdle(System.currentTimeMillis() - IDLE_TIMEOUT);
+			return Status.OK_STATUS;
+		}
+	};
+
+	/** indicates if the pool has been shut down (guarded by <code>pool</code>) */
+	private static boolean shutdown;
+
+	/** the worker classpath entry (guarded by <code>GwtCompilerDaemon.class</code>) */
+	private static String workerClasspath;
+
+	static {
+		reaper.setSystem(true);
+	}
+
+	/**
+	 * Compiles a module in a daemon.
+	 * 
+	 * @param vmInstall
+	 *            the JRE to run the daemon
+	 * @param vmRunner
+	 *            the runner to launch the daemon
+	 * @param runtimeClasspath
+	 *            the GWT runtime classpath kept loaded by the daemon
+	 * @param sourceClasspath
+	 *            the compiler classpath in front of the GWT runtime (i.e. the
+	 *            project source folders)
+	 * @param classpath
+	 *            the remaining compiler classpath
+	 * @param vmArgs
+	 *            the VM arguments of the daemon
+	 * @param maxCompiles
+	 *            the number of compiles after which the daemon is recycled
+	 * @param mainClass
+	 *            the compiler class
+	 * @param programArgs
+	 *            the compiler arguments
+	 * @param output
+	 *            the listener receiving the compiler output
+	 * @param timeout
+	 *            the time (in milliseconds) after which the compile is
+	 *            abandoned
+	 * @param monitor
+	 * @return the exit status of the compiler
+	 * @throws IOException
+	 *             if the daemon failed (the compile should be done without a
+	 *             daemon)
+	 * @throws TimeoutException
+	 *             if the compile took too long
+	 * @throws OperationCanceledException
+	 *             if the compile was cancelled
+	 */
+	static int compile(final IVMInstall vmInstall, final IVMRunner vmRunner, final List<String> runtimeClasspath, final List<String> sourceClasspath, final List<String> classpath, final String[] vmArgs, final int maxCompiles, final String mainClass, final String[] programArgs, final IStreamListener output, final long timeout, final IProgressMonitor monitor) throws IOException, TimeoutException {
+		final String key = getKey(vmInstall, runtimeClasspath, vmArgs);
+		GwtCompilerDaemon daemon = null;
+		synchronized (pool) {
+			if (shutdown) {
+				throw new IOException("GWT compiler daemons are shut down");
+			}
+			final LinkedList<GwtCompilerDaemon> idle = pool.get(key);
+			if ((null != idle) && !idle.isEmpty()) {
+				daemon = idle.removeLast();
+			}
+		}
+		if ((null == daemon) || !daemon.isAlive()) {
+			daemon = start(key, vmRunner, runtimeClasspath, vmArgs, monitor);
+		}
+		synchronized (pool) {
+			busy.add(daemon);
+		}
+
+		boolean reusable = false;
+		try {
+			final int status = daemon.compile(mainClass, sourceClasspath, classpath, programArgs, output, timeout, monitor);
+			reusable = (daemon.compiles < maxCompiles) && (daemon.usedHeap < (daemon.maxHeap * HEAP_THRESHOLD));
+			return status;
+		} catch (final CompileTimeoutException e) {
+			throw new TimeoutException();
+		} finally {
+			synchronized (pool) {
+				busy.remove(daemon);
+			}
+			if (reusable) {
+				release(daemon);
+			} else {
+				daemon.stop();
+			}
+		}
+	}
+
+	/**
+	 * Returns the key of the daemons which can be used for a compile.
+	 * 
+	 * @param vmInstall
+	 * @param runtimeClasspath
+	 * @param vmArgs
+	 * @return the key
+	 */
+	private static String getKey(final IVMInstall vmInstall, final List<String> runtimeClasspath, final String[] vmArgs) {
+		final StringBuilder key = new StringBuilder();
+		key.append(vmInstall.getVMInstallType().getId()).append('/').append(vmInstall.getId());
+		for (final String arg : vmArgs) {
+			key.append('\0').append(arg);
+		}
+		key.append('\0');
+		for (final String entry : runtimeClasspath) {
+			// a replaced runtime needs a new daemon
+			final File file = new File(entry);
+			key.append('\0').append(entry).append('@').append(file.length()).append('@').append(file.lastModified());
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the classpath of the worker.
+	 * 
+	 * @return the worker classpath entry (maybe <code>null</code> if the
+	 *         worker is not available)
+	 */
+	static synchronized String getWorkerClasspath() {
+		if (null == workerClasspath) {
+			for (final String path : new String[] { WORKER_JAR, WORKER_CLASS_FOLDER }) {
+				final URL url = FileLocator.find(GwtCore.getGwtCore().getBundle(), new Path(path), null);
+				if (null == url) {
+					continue;
+				}
+				try {
+					final File file = new File(FileLocator.toFileURL(url).getPath());
+					if (file.exists()) {
+						workerClasspath = file.getAbsolutePath();
+						break;
+					}
+				} catch (final IOException e) {
+					GwtCore.logError("Error while locating the GWT compiler worker.", e);
+				}
+			}
+		}
+		return workerClasspath;
+	}
+
+	/**
+	 * Returns an idle daemon to the pool.
+	 * 
+	 * @param daemon
+	 */
+	private static void release(final GwtCompilerDaemon daemon) {
+		daemon.lastUsed = System.currentTimeMillis();
+		synchronized (pool) {
+			if (!shutdown) {
+				LinkedList<GwtCompilerDaemon> idle = pool.get(daemon.key);
+				if (null == idle) {
+					idle = new LinkedList<GwtCompilerDaemon>();
+					pool.put(daemon.key, idle);
+				}
+				idle.add(daemon);
+				reaper.schedule(IDLE_TIMEOUT);
+				return;
+			}
+		}
+		daemon.stop();
+	}
+
+	/**
+	 * Stops all daemons including the ones running a compile.
+	 */
+	static void shutdown() {
+		final List<GwtCompilerDaemon> running;
+		synchronized (pool) {
+			shutdown = true;
+			running = new ArrayList<GwtCompilerDaemon>(busy);
+		}
+		reaper.cancel();
+		stopIdle(Long.MAX_VALUE);
+		for (final GwtCompilerDaemon daemon : running) {
+			daemon.stop();
+		}
+	}
+
+	/**
+	 * Starts a new daemon.
+	 * 
+	 * @param key
+	 * @param vmRunner
+	 * @param runtimeClasspath
+	 * @param vmArgs
+	 * @param monitor
+	 * @return the started daemon
+	 * @throws IOException
+	 *             if the daemon could not be started
+	 */
+	private static GwtCompilerDaemon start(final String key, final IVMRunner vmRunner, final List<String> runtimeClasspath, final String[] vmArgs, final IProgressMonitor monitor) throws IOException {
+		final String workerClasspath = getWorkerClasspath();
+		if (null == workerClasspath) {
+			throw new IOException("GWT compiler worker not found");
+		}
+
+		final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1")); //$NON-NLS-1$
+		try {
+			serverSocket.setSoTimeout(POLL_INTERVAL);
+			final String secret = UUID.randomUUID().toString();
+			final VMRunnerConfiguration vmConfig = new VMRunnerConfiguration(WORKER_CLASS, new String[] { workerClasspath });
+			vmConfig.setVMArguments(vmArgs);
+			vmConfig.setProgramArguments(new String[] { String.valueOf(serverSocket.getLocalPort()), secret });
+			// registered like a launched compiler so that the output shows up in a console
+			final ILaunch launch = new Launch(null, ILaunchManager.RUN_MODE, null);
+			DebugPlugin.getDefault().getLaunchManager().addLaunch(launch);
+			try {
+				vmRunner.run(vmConfig, launch, monitor);
+			} catch (final CoreException e) {
+				final IOException ioException = new IOException("Unable to launch GWT compiler worker");
+				ioException.initCause(e);
+				throw ioException;
+			}
+
+			// wait for the worker to connect
+			Socket socket = null;
+			final long connectDeadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+			while (null == socket) {
+				if (launch.isTerminated() || (System.currentTimeMillis() > connectDeadline) || monitor.isCanceled()) {
+					terminate(launch);
+					if (monitor.isCanceled()) {
+						throw new OperationCanceledException();
+					}
+					throw new IOException("GWT compiler worker did not connect");
+				}
+				try {
+					socket = serverSocket.accept();
+				} catch (final SocketTimeoutException e) {
+					// check again
+				}
+			}
+
+			final GwtCompilerDaemon daemon = new GwtCompilerDaemon(key, launch, socket);
+			try {
+				if (!secret.equals(daemon.in.readUTF())) {
+					throw new IOException("GWT compiler worker sent an invalid secret");
+				}
+				daemon.writeClasspath(runtimeClasspath);
+				daemon.out.flush();
+			} catch (final IOException e) {
+				daemon.stop();
+				throw e;
+			}
+			return daemon;
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * Stops idle daemons.
+	 * 
+	 * @param lastUsedBefore
+	 *            the time before which a daemon must have been used last to
+	 *            be stopped
+	 */
+	private static void stopIdle(final long lastUsedBefore) {
+		final List<GwtCompilerDaemon> stopped = new ArrayList<GwtCompilerDaemon>();
+		synchronized (pool) {
+			for (final Iterator<LinkedList<GwtCompilerDaemon>> entries = pool.values().iterator(); entries.hasNext();) {
+				final LinkedList<GwtCompilerDaemon> idle = entries.next();
+				for (final Iterator<GwtCompilerDaemon> daemons = idle.iterator(); daemons.hasNext();) {
+					final GwtCompilerDaemon daemon = daemons.next();
+					if (daemon.lastUsed < lastUsedBefore) {
+						daemons.remove();
+						stopped.add(daemon);
+					}
+				}
+				if (idle.isEmpty()) {
+					entries.remove();
+				}
+			}
+			if (!shutdown && !pool.isEmpty()) {
+				reaper.schedule(IDLE_TIMEOUT);
+			}
+		}
+		for (final GwtCompilerDaemon daemon : stopped) {
+			daemon.stop();
+		}
+	}
+
+	/**
+	 * Terminates the specified launch and all processes it started.
+	 * 
+	 * @param launch
+	 */
+	private static void terminate(final ILaunch launch) {
+		// the worker might have started permutation workers
+		GwtCompilerProcess.terminate(launch);
+	}
+
+	/** key */
+	private final String key;
+
+	/** launch */
+	private final ILaunch launch;
+
+	/** socket */
+	private final Socket socket;
+
+	/** input */
+	private final CancelableInputStream input;
+
+	/** in */
+	private final DataInputStream in;
+
+	/** out */
+	private final DataOutputStream out;
+
+	/** the number of compiles done */
+	private int compiles;
+
+	/** the heap (in bytes) used after the last compile */
+	private long usedHeap;
+
+	/** the maximum heap (in bytes) of the worker */
+	private long maxHeap = Long.MAX_VALUE;
+
+	/** the time the daemon has been used last */
+	private volatile long lastUsed;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param key
+	 * @param launch
+	 * @param socket
+	 * @throws IOException
+	 */
+	private GwtCompilerDaemon(final String key, final ILaunch launch, final Socket socket) throws IOException {
+		this.key = key;
+		this.launch = launch;
+		this.socket = socket;
+		socket.setTcpNoDelay(true);
+		socket.setSoTimeout(POLL_INTERVAL);
+		input = new CancelableInputStream(new BufferedInputStream(socket.getInputStream()));
+		in = new DataInputStream(input);
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	}
+
+	/**
+	 * Compiles a module.
+	 * 
+	 * @param mainClass
+	 * @param sourceClasspath
+	 * @param classpath
+	 * @param programArgs
+	 * @param output
+	 * @param timeout
+	 * @param monitor
+	 * @return the exit status of the compiler
+	 * @throws IOException
+	 */
+	private int compile(final String mainClass, final List<String> sourceClasspath, final List<String> classpath, final String[] programArgs, final IStreamListener output, final long timeout, final IProgressMonitor monitor) throws IOException {
+		input.monitor = monitor;
+		input.deadline = System.currentTimeMillis() + timeout;
+		try {
+			out.writeByte(CMD_COMPILE);
+			out.writeUTF(mainClass);
+			writeClasspath(sourceClasspath);
+			writeClasspath(classpath);
+			out.writeInt(programArgs.length);
+			for (final String arg : programArgs) {
+				out.writeUTF(arg);
+			}
+			out.flush();
+
+			while (true) {
+				final byte message = in.readByte();
+				if (message == MSG_LOG) {
+					in.readByte(); // stdout or stderr
+					output.streamAppended(in.readUTF() + '\n', null);
+				} else if (message == MSG_DONE) {
+					final int status = in.readInt();
+					usedHeap = in.readLong();
+					maxHeap = in.readLong();
+					compiles++;
+					return status;
+				} else {
+					throw new IOException("Unexpected message from GWT compiler worker: " + message);
+				}
+			}
+		} finally {
+			input.monitor = null;
+			input.deadline = Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Indicates if the worker is still running.
+	 * 
+	 * @return <code>true</code> if the worker can accept compiles
+	 */
+	private boolean isAlive() {
+		return !launch.isTerminated() && !socket.isClosed();
+	}
+
+	/**
+	 * Stops the worker.
+	 */
+	private void stop() {
+		try {
+			if (!socket.isClosed()) {
+				out.writeByte(CMD_SHUTDOWN);
+				out.flush();
+			}
+		} catch (final IOException e) {
+			// already gone
+		}
+		try {
+			socket.close();
+		} catch (final IOException e) {
+			// ignore
+		}
+		terminate(launch);
+	}
+
+	/**
+	 * Writes a classpath.
+	 * 
+	 * @param classpath
+	 * @throws IOException
+	 */
+	private void writeClasspath(final List<String> classpath) throws IOException {
+		out.writeInt(classpath.size());
+		for (final String entry : classpath) {
+			out.writeUTF(entry);
+		}
+	}
+}
@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.builder;
+
+import org.eclipseguru.gwt.core.GwtModule;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.debug.core.IStreamListener;
+import org.eclipse.debug.core.model.IStreamMonitor;
+import org.eclipse.osgi.util.NLS;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the output of the GWT compiler for compile errors while the
+ * compiler is running.
+ * <p>
+ * The output is processed line by line as it arrives. Besides the errors
+ * found, only a fixed number of recent lines is kept. The nesting of the GWT
+ * log tree, given by the indentation of the lines, is used to attribute the
+ * errors reported for a source file to the workspace file and line. Errors are
+ * shown as problem markers right away if requested.
+ * </p>
+ * <p>
+ * This class is thread safe.
+ * </p>
+ */
+final class GwtCompilerOutputParser implements IStreamListener {
+
+	/**
+	 * An error reported by the compiler.
+	 */
+	static final class CompileError {
+
+		/** resource */
+		final IResource resource;
+
+		/** message */
+		final String message;
+
+		/** the line number (<code>-1</code> if unknown) */
+		final int lineNumber;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param resource
+		 * @param message
+		 * @param lineNumber
+		 */
+		CompileError(final IResource resource, final String message, final int lineNumber) {
+			this.resource = resource;
+			this.message = message;
+			this.lineNumber = lineNumber;
+		}
+	}
+
+	/** the number of recent lines kept */
+	private static final int CONTEXT_LINES = 10;
+
+	/** the number of recent lines reported if the compiler fails without errors */
+	private static final int REPORTED_CONTEXT_LINES = 3;
+
+	/** the maximum number of characters kept of a line */
+	private static final int MAX_LINE_LENGTH = 4096;
+
+	/** the maximum number of errors kept */
+	private static final int MAX_ERRORS = 500;
+
+	/** ERROR_PREFIX */
+	private static final String ERROR_PREFIX = "[ERROR] "; //$NON-NLS-1$
+
+	/** FILE_URL_PREFIX */
+	private static final String FILE_URL_PREFIX = "file:"; //$NON-NLS-1$
+
+	/** the error announcing the errors of a source file */
+	private static final Pattern FILE_ERRORS_PATTERN = Pattern.compile("Errors in '(.+)'"); //$NON-NLS-1$
+
+	/** an error of a source file */
+	private static final Pattern LINE_ERROR_PATTERN = Pattern.compile("Line (\\d+):\\s*(.*)"); //$NON-NLS-1$
+
+	/** the compiler output announcing the number of permutations */
+	private static final Pattern PERMUTATIONS_PATTERN = Pattern.compile("Compiling (\\d+) permutations?"); //$NON-NLS-1$
+
+	/**
+	 * Finds the workspace file of a source file reported by the compiler.
+	 * 
+	 * @param name
+	 *            the reported source name
+	 * @return the file (maybe <code>null</code> if not in the workspace)
+	 */
+	private static IFile findFile(final String name) {
+		if (!name.startsWith(FILE_URL_PREFIX)) {
+			return null;
+		}
+		File file;
+		try {
+			file = new File(new URI(name));
+		} catch (final URISyntaxException e) {
+			file = new File(name.substring(FILE_URL_PREFIX.length()));
+		} catch (final IllegalArgumentException e) {
+			file = new File(name.substring(FILE_URL_PREFIX.length()));
+		}
+		for (final IFile candidate : ResourcesPlugin.getWorkspace().getRoot().findFilesForLocation(new Path(file.getAbsolutePath()))) {
+			if (candidate.isAccessible()) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Indicates if the specified error is not worth reporting.
+	 * 
+	 * @param errorMsg
+	 * @return <code>true</code> if the error should be ignored
+	 */
+	private static boolean ignoreError(final String errorMsg) {
+		if (errorMsg.equals("Build failed")) {
+			return true;
+		}
+		if (errorMsg.equals("Failure while parsing XML")) {
+			return true;
+		}
+		if (errorMsg.contains("Unexpected exception while processing element")) {
+			return true;
+		}
+		return false;
+	}
+
+	/** module */
+	private final GwtModule module;
+
+	/** the resource for errors which cannot be attributed to a source file */
+	private final IResource markerResource;
+
+	/** indicates if markers are created while parsing */
+	private final boolean liveMarkers;
+
+	/** the errors found */
+	private final List<CompileError> errors = new ArrayList<CompileError>();
+
+	/** the number of errors not kept */
+	private int omittedErrors;
+
+	/** the number of markers created while parsing by resource */
+	private final Map<IResource, Integer> liveMarkerCounts = new HashMap<IResource, Integer>();
+
+	/** the errors found but not yet shown as markers */
+	private final List<CompileError> pendingMarkers = new ArrayList<CompileError>();
+
+	/** the incomplete last line */
+	private final StringBuilder partialLine = new StringBuilder();
+
+	/** the recent lines (ring buffer) */
+	private final String[] recentLines = new String[CONTEXT_LINES];
+
+	/** the number of lines seen */
+	private long lineCount;
+
+	/** the number of permutations (<code>0</code> if not reported yet) */
+	private int permutationCount;
+
+	/** the source file reported by the current file errors entry (<code>null</code> if outside) */
+	private String sourceName;
+
+	/** the workspace file of the source file (maybe <code>null</code>) */
+	private IFile sourceFile;
+
+	/** the indentation of the current file errors entry */
+	private int sourceIndent;
+
+	/** the number of errors reported for the current source file */
+	private int sourceErrorCount;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param module
+	 *            the module being compiled
+	 * @param markerResource
+	 *            the resource for errors which cannot be attributed to a
+	 *            source file
+	 * @param liveMarkers
+	 *            <code>true</code> if errors should be shown as markers while
+	 *            parsing
+	 */
+	GwtCompilerOutputParser(final GwtModule module, final IResource markerResource, final boolean liveMarkers) {
+		this.module = module;
+		this.markerResource = markerResource;
+		this.liveMarkers = liveMarkers;
+	}
+
+	/**
+	 * Adds an error.
+	 * 
+	 * @param resource
+	 * @param message
+	 * @param lineNumber
+	 */
+	private void addError(final IResource resource, final String message, final int lineNumber) {
+		if (errors.size() >= MAX_ERRORS) {
+			omittedErrors++;
+			return;
+		}
+		final CompileError error = new CompileError(resource, message, lineNumber);
+		errors.add(error);
+		if (liveMarkers) {
+			final Integer count = liveMarkerCounts.get(resource);
+			if ((null == count) || (count.intValue() < ProblemMarkerReconciler.MAX_PROBLEMS_PER_RESOURCE)) {
+				liveMarkerCounts.put(resource, new Integer(null != count ? count.intValue() + 1 : 1));
+				pendingMarkers.add(error);
+			}
+		}
+	}
+
+	/**
+	 * Appends a part of the output to the current line.
+	 * <p>
+	 * Carriage returns are dropped and overly long lines are truncated.
+	 * </p>
+	 * 
+	 * @param text
+	 * @param start
+	 * @param end
+	 */
+	private void appendToLine(final String text, final int start, final int end) {
+		final int lineEnd = (end > start) && (text.charAt(end - 1) == '\r') ? end - 1 : end;
+		final int length = Math.min(lineEnd - start, MAX_LINE_LENGTH - partialLine.length());
+		if (length > 0) {
+			partialLine.append(text, start, start + length);
+		}
+	}
+
+	/**
+	 * Formats an error which is reported on the marker resource.
+	 * 
+	 * @param error
+	 * @return the message
+	 */
+	private String format(final String error) {
+		if (module.getModuleDescriptor() instanceof IResource) {
+			return NLS.bind("GWT Compiler: {0}", error);
+		}
+		return NLS.bind("GWT Compiler, module {0}: {1}", module.getModuleId(), error);
+	}
+
+	/**
+	 * Returns the errors reported by the compiler.
+	 * <p>
+	 * Must be called after the compiler finished.
+	 * </p>
+	 * 
+	 * @return the compile errors
+	 */
+	synchronized List<CompileError> getCompileErrors() {
+		if (partialLine.length() > 0) {
+			parseLine(partialLine.toString());
+			partialLine.setLength(0);
+		}
+		leaveSource();
+		final List<CompileError> result = new ArrayList<CompileError>(errors);
+		if (omittedErrors > 0) {
+			result.add(new CompileError(markerResource, format(NLS.bind("{0} more errors are not shown. See the console for the complete compiler output.", String.valueOf(omittedErrors))), -1));
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Returns the number of permutations the compiler reported.
+	 * 
+	 * @return the permutation count (<code>0</code> if not reported)
+	 */
+	synchronized int getPermutationCount() {
+		return permutationCount;
+	}
+
+	/**
+	 * Returns the last lines of output.
+	 * <p>
+	 * Useful if the compiler failed without reporting an error.
+	 * </p>
+	 * 
+	 * @return the last non-empty lines (maybe empty)
+	 */
+	synchronized String getRecentOutput() {
+		final List<String> lines = new ArrayList<String>(REPORTED_CONTEXT_LINES);
+		for (long i = lineCount - 1; (i >= 0) && (i >= (lineCount - CONTEXT_LINES)) && (lines.size() < REPORTED_CONTEXT_LINES); i--) {
+			final String line = recentLines[(int) (i % CONTEXT_LINES)].trim();
+			if (line.length() > 0) {
+				lines.add(0, line);
+			}
+		}
+		final StringBuilder output = new StringBuilder();
+		for (final String line : lines) {
+			if (output.length() > 0) {
+				output.append(" / "); //$NON-NLS-1$
+			}
+			output.append(line);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Leaves the current file errors entry.
+	 */
+	private void leaveSource() {
+		if (null == sourceName) {
+			return;
+		}
+		if (sourceErrorCount == 0) {
+			// report the entry itself
+			addError(null != sourceFile ? sourceFile : markerResource, format(NLS.bind("Errors in ''{0}''", sourceName)), -1);
+		}
+		sourceName = null;
+		sourceFile = null;
+		sourceErrorCount = 0;
+	}
+
+	/**
+	 * Parses a line of output.
+	 * 
+	 * @param line
+	 */
+	private void parseLine(final String line) {
+		recentLines[(int) (lineCount++ % CONTEXT_LINES)] = line;
+
+		// the indentation reflects the nesting in the log tree
+		int indent = 0;
+		while ((indent < line.length()) && (line.charAt(indent) == ' ')) {
+			indent++;
+		}
+		if ((null != sourceName) && (indent <= sourceIndent)) {
+			leaveSource();
+		}
+
+		final String text = line.trim();
+		if (0 == permutationCount) {
+			final Matcher matcher = PERMUTATIONS_PATTERN.matcher(text);
+			if (matcher.find()) {
+				permutationCount = Integer.parseInt(matcher.group(1));
+			}
+		}
+		if (!text.startsWith(ERROR_PREFIX)) {
+			return;
+		}
+
+		final String error = text.substring(ERROR_PREFIX.length()).trim();
+		final Matcher fileErrors = FILE_ERRORS_PATTERN.matcher(error);
+		if (fileErrors.matches()) {
+			// the errors of a source file follow nested
+			sourceName = fileErrors.group(1);
+			sourceFile = findFile(sourceName);
+			sourceIndent = indent;
+			return;
+		}
+		if (ignoreError(error)) {
+			return;
+		}
+		if (null != sourceName) {
+			final Matcher lineError = LINE_ERROR_PATTERN.matcher(error);
+			if (lineError.matches()) {
+				sourceErrorCount++;
+				if (null != sourceFile) {
+					addError(sourceFile, NLS.bind("GWT Compiler: {0}", lineError.group(2)), Integer.parseInt(lineError.group(1)));
+				} else {
+					addError(markerResource, format(NLS.bind("{0}, line {1}: {2}", new Object[] { sourceName, lineError.group(1), lineError.group(2) })), -1);
+				}
+				return;
+			}
+		}
+		addError(markerResource, format(error), -1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.eclipse.debug.core.IStreamListener#streamAppended(java.lang.String
+	 * , org.eclipse.debug.core.model.IStreamMonitor)
+	 */
+	public void streamAppended(final String text, final IStreamMonitor monitor) {
+		final List<CompileError> newMarkers;
+		synchronized (this) {
+			int start = 0;
+			int end;
+			while ((end = text.indexOf('\n', start)) != -1) {
+				appendToLine(text, start, end);
+				parseLine(partialLine.toString());
+				partialLine.setLength(0);
+				start = end + 1;
+			}
+			appendToLine(text, start, text.length());
+
+			if (pendingMarkers.isEmpty()) {
+				return;
+			}
+			newMarkers = new ArrayList<CompileError>(pendingMarkers);
+			pendingMarkers.clear();
+		}
+
+		// don't hold the lock while changing the workspace
+		for (final CompileError error : newMarkers) {
+			ProblemMarkerReconciler.reportImmediately(ProblemMarkerReconciler.SOURCE_PUBLISHER, error.resource, error.message, error.lineNumber);
+		}
+	}
+}
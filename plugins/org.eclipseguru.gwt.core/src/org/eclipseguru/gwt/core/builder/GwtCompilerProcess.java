@@ -0,0 +1,452 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.builder;
+
+import org.eclipseguru.gwt.core.GwtCore;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.debug.core.DebugEvent;
+import org.eclipse.debug.core.DebugException;
+import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.IDebugEventSetListener;
+import org.eclipse.debug.core.ILaunch;
+import org.eclipse.debug.core.ILaunchManager;
+import org.eclipse.debug.core.IStreamListener;
+import org.eclipse.debug.core.Launch;
+import org.eclipse.debug.core.model.IProcess;
+import org.eclipse.jdt.launching.IVMRunner;
+import org.eclipse.jdt.launching.VMRunnerConfiguration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A GWT compiler running in a launched VM.
+ * <p>
+ * Completion is signalled by the debug events of the launch, waiting for a
+ * compiler does not hold any lock. A compiler which is cancelled, takes too
+ * long or is abandoned for any other reason is terminated together with all
+ * processes it started (eg. the permutation workers of the GWT compiler).
+ * Compilers which are still running on shutdown are terminated as well.
+ * </p>
+ */
+final class GwtCompilerProcess implements IDebugEventSetListener {
+
+	/** the time (in milliseconds) between checks of the progress monitor */
+	private static final long POLL_INTERVAL = 250;
+
+	/** the running compilers (guarded by <code>running</code>) */
+	private static final Set<GwtCompilerProcess> running = new HashSet<GwtCompilerProcess>();
+
+	/** indicates if compilers have been shut down (guarded by <code>running</code>) */
+	private static boolean shutdown;
+
+	/**
+	 * Terminates all running compilers started by the specified owner.
+	 * 
+	 * @param owner
+	 *            the owner (maybe <code>null</code> for all compilers)
+	 */
+	static void destroyAll(final Object owner) {
+		final List<GwtCompilerProcess> compilers = new ArrayList<GwtCompilerProcess>();
+		synchronized (running) {
+			for (final GwtCompilerProcess compiler : running) {
+				if ((null == owner) || (owner == compiler.owner)) {
+					compilers.add(compiler);
+				}
+			}
+		}
+		for (final GwtCompilerProcess compiler : compilers) {
+			compiler.destroy();
+		}
+	}
+
+	/**
+	 * Terminates the specified process and all its descendants.
+	 * <p>
+	 * The descendants are found using the operating system tools. The
+	 * process itself is always destroyed.
+	 * </p>
+	 * 
+	 * @param process
+	 */
+	private static void destroyTree(final Process process) {
+		final long pid = getPid(process);
+		if (pid > 0) {
+			try {
+				if (Platform.OS_WIN32.equals(Platform.getOS())) {
+					exec(new String[] { "taskkill", "/F", "/T", "/PID", String.valueOf(pid) }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				} else {
+					final List<String> command = new ArrayList<String>();
+					command.add("kill"); //$NON-NLS-1$
+					command.add("-KILL"); //$NON-NLS-1$
+					for (final Long descendant : getDescendants(pid)) {
+						command.add(descendant.toString());
+					}
+					command.add(String.valueOf(pid));
+					exec(command.toArray(new String[command.size()]));
+				}
+			} catch (final IOException e) {
+				GwtCore.logError("Error while terminating processes started by GWT compiler " + pid + ".", e);
+			}
+		}
+		process.destroy();
+	}
+
+	/**
+	 * Executes a command and waits for it to finish.
+	 * 
+	 * @param command
+	 * @return the output of the command
+	 * @throws IOException
+	 */
+	private static List<String> exec(final String[] command) throws IOException {
+		final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		final List<String> output = new ArrayList<String>();
+		try {
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			String line;
+			while (null != (line = reader.readLine())) {
+				output.add(line);
+			}
+			process.waitFor();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			process.getInputStream().close();
+			process.getOutputStream().close();
+			process.getErrorStream().close();
+		}
+		return output;
+	}
+
+	/**
+	 * Returns the ids of all descendants of the specified process.
+	 * 
+	 * @param pid
+	 * @return the descendant process ids
+	 * @throws IOException
+	 */
+	private static List<Long> getDescendants(final long pid) throws IOException {
+		// build the process tree
+		final Map<Long, List<Long>> children = new HashMap<Long, List<Long>>();
+		for (final String line : exec(new String[] { "ps", "-A", "-o", "pid=", "-o", "ppid=" })) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+			final String[] ids = line.trim().split("\\s+"); //$NON-NLS-1$
+			if (ids.length != 2) {
+				continue;
+			}
+			try {
+				final Long parent = Long.valueOf(ids[1]);
+				List<Long> siblings = children.get(parent);
+				if (null == siblings) {
+					siblings = new ArrayList<Long>(2);
+					children.put(parent, siblings);
+				}
+				siblings.add(Long.valueOf(ids[0]));
+			} catch (final NumberFormatException e) {
+				// ignore
+			}
+		}
+
+		// collect the descendants
+		final List<Long> descendants = new ArrayList<Long>();
+		final List<Long> parents = new ArrayList<Long>();
+		parents.add(new Long(pid));
+		for (int i = 0; i < parents.size(); i++) {
+			final List<Long> directChildren = children.get(parents.get(i));
+			if (null != directChildren) {
+				for (final Long child : directChildren) {
+					if (!parents.contains(child)) {
+						parents.add(child);
+						descendants.add(child);
+					}
+				}
+			}
+		}
+		return descendants;
+	}
+
+	/**
+	 * Returns the operating system id of a process.
+	 * 
+	 * @param process
+	 * @return the process id (<code>-1</code> if unknown)
+	 */
+	private static long getPid(final Process process) {
+		// Java 9 and newer
+		try {
+			final Method pid = Process.class.getMethod("pid"); //$NON-NLS-1$
+			return ((Number) pid.invoke(process)).longValue();
+		} catch (final Exception e) {
+			// not available
+		}
+
+		// older VMs on Unix
+		for (Class<?> type = process.getClass(); null != type; type = type.getSuperclass()) {
+			try {
+				final Field pid = type.getDeclaredField("pid"); //$NON-NLS-1$
+				pid.setAccessible(true);
+				return pid.getLong(process);
+			} catch (final Exception e) {
+				// not available
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the system process of a debug process.
+	 * 
+	 * @param process
+	 * @return the system process (maybe <code>null</code> if not available)
+	 */
+	private static Process getSystemProcess(final IProcess process) {
+		// not part of the API of RuntimeProcess
+		for (Class<?> type = process.getClass(); null != type; type = type.getSuperclass()) {
+			try {
+				final Method method = type.getDeclaredMethod("getSystemProcess"); //$NON-NLS-1$
+				method.setAccessible(true);
+				return (Process) method.invoke(process);
+			} catch (final Exception e) {
+				// not available
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Launches a compiler.
+	 * 
+	 * @param vmRunner
+	 * @param vmConfig
+	 * @param output
+	 *            the listener receiving the compiler output
+	 * @param owner
+	 *            the owner of the compiler (see {@link #destroyAll(Object)})
+	 * @param monitor
+	 * @return the running compiler
+	 * @throws CoreException
+	 *             if the compiler could not be launched
+	 */
+	static GwtCompilerProcess launch(final IVMRunner vmRunner, final VMRunnerConfiguration vmConfig, final IStreamListener output, final Object owner, final IProgressMonitor monitor) throws CoreException {
+		final GwtCompilerProcess compiler = new GwtCompilerProcess(output, owner);
+		synchronized (running) {
+			if (shutdown) {
+				throw new CoreException(GwtCore.newErrorStatus("GWT compilers are shut down"));
+			}
+			running.add(compiler);
+		}
+		DebugPlugin.getDefault().getLaunchManager().addLaunch(compiler.launch);
+		DebugPlugin.getDefault().addDebugEventListener(compiler);
+		boolean launched = false;
+		try {
+			vmRunner.run(vmConfig, compiler.launch, monitor);
+			launched = true;
+		} finally {
+			if (!launched) {
+				compiler.destroy();
+			}
+		}
+		return compiler;
+	}
+
+	/**
+	 * Terminates all running compilers and prevents new ones from being
+	 * launched.
+	 */
+	static void shutdown() {
+		synchronized (running) {
+			shutdown = true;
+		}
+		destroyAll(null);
+	}
+
+	/**
+	 * Terminates the specified launch including all processes started by its
+	 * processes.
+	 * 
+	 * @param launch
+	 */
+	static void terminate(final ILaunch launch) {
+		for (final IProcess process : launch.getProcesses()) {
+			if (!process.isTerminated()) {
+				final Process systemProcess = getSystemProcess(process);
+				if (null != systemProcess) {
+					destroyTree(systemProcess);
+				}
+			}
+		}
+		try {
+			if (launch.canTerminate()) {
+				launch.terminate();
+			}
+		} catch (final DebugException e) {
+			GwtCore.logError("Error while terminating GWT compiler.", e);
+		}
+	}
+
+	/** launch */
+	private final ILaunch launch;
+
+	/** output */
+	private final IStreamListener output;
+
+	/** owner */
+	private final Object owner;
+
+	/** signalled when the compiler terminated */
+	private final CountDownLatch terminated = new CountDownLatch(1);
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param output
+	 * @param owner
+	 */
+	private GwtCompilerProcess(final IStreamListener output, final Object owner) {
+		this.output = output;
+		this.owner = owner;
+		launch = new Launch(null, ILaunchManager.RUN_MODE, null);
+	}
+
+	/**
+	 * Terminates the compiler and all processes it started unless it already
+	 * terminated and releases all resources.
+	 * <p>
+	 * May be called at any time from any thread.
+	 * </p>
+	 */
+	void destroy() {
+		synchronized (running) {
+			running.remove(this);
+		}
+		if (!launch.isTerminated()) {
+			terminate(launch);
+		}
+		DebugPlugin.getDefault().removeDebugEventListener(this);
+		for (final IProcess process : launch.getProcesses()) {
+			if (null != process.getStreamsProxy()) {
+				process.getStreamsProxy().getOutputStreamMonitor().removeListener(output);
+			}
+		}
+		terminated.countDown();
+	}
+
+	/**
+	 * Returns the exit status of the compiler.
+	 * 
+	 * @return the first exit code other than <code>0</code>, <code>0</code>
+	 *         if all processes finished successfully or <code>-1</code> if
+	 *         the launch did not terminate
+	 */
+	private int getExitStatus() {
+		if (!launch.isTerminated()) {
+			return -1;
+		}
+		try {
+			for (final IProcess process : launch.getProcesses()) {
+				if (process.getExitValue() != 0) {
+					return process.getExitValue();
+				}
+			}
+		} catch (final DebugException e) {
+			return -1;
+		}
+		return 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.eclipse.debug.core.IDebugEventSetListener#handleDebugEvents(org.
+	 * eclipse.debug.core.DebugEvent[])
+	 */
+	public void handleDebugEvents(final DebugEvent[] events) {
+		for (final DebugEvent event : events) {
+			if (!(event.getSource() instanceof IProcess)) {
+				continue;
+			}
+			final IProcess process = (IProcess) event.getSource();
+			if (process.getLaunch() != launch) {
+				continue;
+			}
+			if (event.getKind() == DebugEvent.CREATE) {
+				process.getStreamsProxy().getOutputStreamMonitor().addListener(output);
+			} else if ((event.getKind() == DebugEvent.TERMINATE) && launch.isTerminated()) {
+				// wakeup the waiting thread
+				terminated.countDown();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the compiler to finish.
+	 * <p>
+	 * The compiler is terminated if it is cancelled or takes too long. In any
+	 * case, the compiler does no longer run when this method returns.
+	 * </p>
+	 * 
+	 * @param timeout
+	 *            the time (in milliseconds) to wait
+	 * @param monitor
+	 *            the monitor to check for cancellation
+	 * @return the exit status of the compiler (<code>-1</code> if it did not
+	 *         terminate normally)
+	 * @throws TimeoutException
+	 *             if the compiler took too long
+	 * @throws OperationCanceledException
+	 *             if the compile was cancelled
+	 */
+	int waitFor(final long timeout, final IProgressMonitor monitor) throws TimeoutException {
+		final long deadline = System.currentTimeMillis() + timeout;
+		try {
+			while (!launch.isTerminated()) {
+				final long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					throw new TimeoutException();
+				}
+				if (terminated.await(Math.min(POLL_INTERVAL, remaining), TimeUnit.MILLISECONDS)) {
+					break;
+				}
+				if (monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+			}
+			if (monitor.isCanceled()) {
+				// the compiler might have been terminated by the cancellation
+				throw new OperationCanceledException();
+			}
+			return getExitStatus();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} finally {
+			// never leave a compiler running
+			destroy();
+		}
+	}
+}
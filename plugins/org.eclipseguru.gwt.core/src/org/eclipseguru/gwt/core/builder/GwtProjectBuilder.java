@@ -14,10 +14,13 @@ package org.eclipseguru.gwt.core.builder;
 import org.eclipseguru.gwt.core.GwtCore;
 import org.eclipseguru.gwt.core.GwtModelException;
 import org.eclipseguru.gwt.core.GwtModule;
+import org.eclipseguru.gwt.core.GwtModuleGraph;
 import org.eclipseguru.gwt.core.GwtProject;
 import org.eclipseguru.gwt.core.GwtRemoteService;
 import org.eclipseguru.gwt.core.GwtUtil;
 import org.eclipseguru.gwt.core.internal.codegen.AsyncServiceCodeGenerator;
+import org.eclipseguru.gwt.core.internal.jdtext.TypeResolutionCache;
+import org.eclipseguru.gwt.core.internal.metrics.BuildMetrics;
 import org.eclipseguru.gwt.core.utils.ProgressUtil;
 import org.eclipseguru.gwt.core.utils.ResourceUtil;
 
@@ -30,6 +33,7 @@ import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IResourceStatus;
 import org.eclipse.core.resources.IStorage;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
@@ -37,17 +41,26 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IMethod;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.internal.corext.util.Resources;
 import org.eclipse.osgi.util.NLS;
 
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This is the builder for GWT projects.
@@ -55,14 +68,121 @@ import java.util.Map;
 @SuppressWarnings("restriction")
 public class GwtProjectBuilder extends IncrementalProjectBuilder {
 
+	/** NO_MODULES */
+	private static final GwtModule[] NO_MODULES = new GwtModule[0];
+
+	/**
+	 * Finds the modules owning the resources of a resource delta.
+	 */
+	private static final class FindChangedModulesVisitor implements IResourceDeltaVisitor {
+
+		/** gwtProject */
+		private final GwtProject gwtProject;
+
+		/** the ids of the changed modules */
+		private final Set<String> changedModuleIds;
+
+		/** the output folder (ignored) */
+		private final IPath outputFolder;
+
+		/** indicates if all modules must be compiled */
+		private boolean compileAll;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param gwtProject
+		 * @param changedModuleIds
+		 */
+		FindChangedModulesVisitor(final GwtProject gwtProject, final Set<String> changedModuleIds) {
+			this.gwtProject = gwtProject;
+			this.changedModuleIds = changedModuleIds;
+			outputFolder = gwtProject.getProjectResource().getFullPath().append(GwtUtil.getOutputLocation(gwtProject));
+		}
+
+		/**
+		 * Indicates if a change requires all modules to be compiled.
+		 * 
+		 * @return <code>true</code> if all modules must be compiled
+		 */
+		boolean isCompileAll() {
+			return compileAll;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * org.eclipse.core.resources.IResourceDeltaVisitor#visit(org.eclipse
+		 * .core.resources.IResourceDelta)
+		 */
+		public boolean visit(final IResourceDelta delta) throws CoreException {
+			if (compileAll) {
+				return false;
+			}
+
+			final IResource resource = delta.getResource();
+			switch (resource.getType()) {
+				case IResource.PROJECT:
+					return true;
+
+				case IResource.FOLDER:
+					// don't react on our own output
+					return !outputFolder.equals(resource.getFullPath());
+
+				case IResource.FILE:
+					// ignore marker and other meta data changes
+					if ((delta.getKind() == IResourceDelta.CHANGED) && ((delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED | IResourceDelta.ENCODING)) == 0)) {
+						return false;
+					}
+
+					final IFile file = (IFile) resource;
+					if (GwtUtil.isClasspathFile(file) || GwtUtil.isPreferencesFile(file)) {
+						compileAll = true;
+					} else if (GwtUtil.isModuleDescriptor(file)) {
+						if (delta.getKind() != IResourceDelta.CHANGED) {
+							// modules added or removed
+							compileAll = true;
+						} else {
+							for (final GwtModule module : gwtProject.getModules()) {
+								if (file.equals(module.getModuleDescriptor())) {
+									changedModuleIds.add(module.getModuleId());
+								}
+							}
+						}
+					} else {
+						for (final GwtModule module : gwtProject.getOwningModules(file)) {
+							changedModuleIds.add(module.getModuleId());
+						}
+					}
+					return false;
+			}
+			return false;
+		}
+	}
+
 	/**
 	 * Finds remote services by visiting a resource delta.
+	 * <p>
+	 * The visitor only descends into folders which may contain client sources
+	 * of a project module. Output and derived folders are skipped entirely.
+	 * Candidate Java files are collected and handed off for parsing in
+	 * batches. Callers must call {@link #flush()} after visiting the delta.
+	 * </p>
 	 */
 	public static final class FindRemoteServicesVisitor implements IResourceDeltaVisitor {
 
+		/** the number of candidate files to parse at once */
+		private static final int BATCH_SIZE = 64;
+
 		private final List<IType> changed;
 
-		private GwtModule[] currentProjectModules;
+		/** the candidate files not parsed yet */
+		private final List<IFile> candidates = new ArrayList<IFile>(BATCH_SIZE);
+
+		/** the output folders of the current project */
+		private final Set<IPath> outputFolders = new HashSet<IPath>(4);
+
+		private final IProgressMonitor monitor;
 
 		private GwtProject gwtProject;
 
@@ -70,7 +190,43 @@ public class GwtProjectBuilder extends IncrementalProjectBuilder {
 		 * @param remoteServices
 		 */
 		public FindRemoteServicesVisitor(final List<IType> remoteServices) {
+			this(remoteServices, null);
+		}
+
+		/**
+		 * @param remoteServices
+		 * @param monitor
+		 *            the monitor to check for cancellation between batches
+		 *            (maybe <code>null</code>)
+		 */
+		public FindRemoteServicesVisitor(final List<IType> remoteServices, final IProgressMonitor monitor) {
 			changed = remoteServices;
+			this.monitor = ProgressUtil.monitor(monitor);
+		}
+
+		/**
+		 * Parses the remaining candidate files.
+		 * 
+		 * @throws CoreException
+		 */
+		public void flush() throws CoreException {
+			if (candidates.isEmpty()) {
+				return;
+			}
+			ProgressUtil.checkCanceled(monitor);
+			try {
+				for (final IFile file : candidates) {
+					if (!gwtProject.getJavaProject().isOnClasspath(file) || (gwtProject.getOwningModules(file).length == 0)) {
+						continue;
+					}
+					final ICompilationUnit cu = (ICompilationUnit) JavaCore.create(file);
+					if ((null != cu) && cu.exists()) {
+						GwtRemoteService.findRemoteServices(cu, changed);
+					}
+				}
+			} finally {
+				candidates.clear();
+			}
 		}
 
 		/**
@@ -80,6 +236,33 @@ public class GwtProjectBuilder extends IncrementalProjectBuilder {
 			return changed;
 		}
 
+		/**
+		 * Initializes the visitor for the specified project.
+		 * 
+		 * @param project
+		 * @return <code>true</code> if the project has modules
+		 * @throws CoreException
+		 */
+		private boolean initialize(final IProject project) throws CoreException {
+			gwtProject = null;
+			outputFolders.clear();
+
+			// check project nature
+			if (!GwtProject.hasGwtNature(project)) {
+				return false;
+			}
+
+			final GwtProject candidate = GwtCore.create(project);
+			if ((null == candidate) || (candidate.getModules().length == 0)) {
+				return false;
+			}
+
+			// never look into build output
+			collectOutputFolders(candidate, outputFolders);
+			gwtProject = candidate;
+			return true;
+		}
+
 		/*
 		 * (non-Javadoc)
 		 * @see
@@ -98,39 +281,30 @@ public class GwtProjectBuilder extends IncrementalProjectBuilder {
 
 			switch (resource.getType()) {
 				case IResource.PROJECT:
-					final IProject project = (IProject) resource;
-					gwtProject = null;
-					currentProjectModules = null;
+					// parse candidates of a previous project first
+					flush();
+					return initialize((IProject) resource);
 
-					// check project nature
-					if (!GwtProject.hasGwtNature(project)) {
+				case IResource.FOLDER:
+					if ((null == gwtProject) || resource.isDerived() || outputFolders.contains(resource.getFullPath())) {
 						return false;
 					}
+					return gwtProject.mayContainClientSources((IContainer) resource);
 
-					gwtProject = GwtCore.create(project);
-					if (null != gwtProject) {
-						currentProjectModules = gwtProject.getModules();
-						return currentProjectModules.length > 0;
+				case IResource.FILE:
+					if (null == gwtProject) {
+						return false;
 					}
 
-					return false;
-
-				case IResource.FOLDER:
-					return true;
-
-				case IResource.FILE:
-					if (null == currentProjectModules) {
+					// ignore marker and other meta data changes
+					if ((delta.getKind() == IResourceDelta.CHANGED) && ((delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED | IResourceDelta.ENCODING)) == 0)) {
 						return false;
 					}
 
-					if (JavaCore.isJavaLikeFileName(resource.getName()) && gwtProject.getJavaProject().isOnClasspath(resource)) {
-						final ICompilationUnit cu = (ICompilationUnit) JavaCore.create(resource);
-						if ((null != cu) && cu.exists()) {
-							for (final GwtModule module : currentProjectModules) {
-								if (module.isModuleResource(resource)) {
-									GwtRemoteService.findRemoteServices(cu, changed);
-								}
-							}
+					if (JavaCore.isJavaLikeFileName(resource.getName()) && !resource.isDerived()) {
+						candidates.add((IFile) resource);
+						if (candidates.size() >= BATCH_SIZE) {
+							flush();
 						}
 					}
 					return false;
@@ -139,6 +313,30 @@ public class GwtProjectBuilder extends IncrementalProjectBuilder {
 		}
 	}
 
+	/**
+	 * Collects the full paths of the folders the builders of a project write
+	 * into.
+	 * <p>
+	 * These are the GWT output folder as well as the default Java output
+	 * folder and the output folders of the source folders.
+	 * </p>
+	 * 
+	 * @param gwtProject
+	 * @param outputFolders
+	 *            the set to add the output folder paths to
+	 * @throws JavaModelException
+	 */
+	static void collectOutputFolders(final GwtProject gwtProject, final Set<IPath> outputFolders) throws JavaModelException {
+		outputFolders.add(gwtProject.getProjectResource().getFullPath().append(GwtUtil.getOutputLocation(gwtProject)));
+		final IJavaProject javaProject = gwtProject.getJavaProject();
+		outputFolders.add(javaProject.getOutputLocation());
+		for (final IClasspathEntry entry : javaProject.getRawClasspath()) {
+			if (null != entry.getOutputLocation()) {
+				outputFolders.add(entry.getOutputLocation());
+			}
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.eclipse.core.resources.IncrementalProjectBuilder#build(int,
@@ -147,10 +345,13 @@ public class GwtProjectBuilder extends IncrementalProjectBuilder {
 	@Override
 	protected IProject[] build(final int kind, final Map args, IProgressMonitor monitor) throws CoreException {
 		monitor = ProgressUtil.monitor(monitor);
+		final long buildStart = System.nanoTime();
+		final boolean isIncrementalBuild = (kind == AUTO_BUILD) || (kind == INCREMENTAL_BUILD);
+		final IProject project = getProject();
+		final ProblemMarkerReconciler problems = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_BUILDER);
+		final TypeResolutionCache typeResolutionCache = new TypeResolutionCache();
 		try {
 			// initialize
-			final boolean isIncrementalBuild = (kind == AUTO_BUILD) || (kind == INCREMENTAL_BUILD);
-			final IProject project = getProject();
 			monitor.beginTask(NLS.bind("Building project{0} ...", project.getName()), 10);
 
 			// check for our nature
@@ -158,18 +359,16 @@ public class GwtProjectBuilder extends IncrementalProjectBuilder {
 				return null;
 			}
 
-			if (isIncrementalBuild) {
-				// remove current project markers
-				project.deleteMarkers(GwtCore.PROBLEM_MARKER, true, IResource.DEPTH_ZERO);
-				monitor.worked(1);
-			} else {
-				// do a complete clean on full builds
-				clean(ProgressUtil.subProgressMonitor(monitor, 1));
-			}
+			// current project markers are reconciled at the end
+			// (full builds keep the build state, only an explicit clean discards it)
+			long phaseStart = System.nanoTime();
+			problems.addScope(project);
+			monitor.worked(1);
+			BuildMetrics.phase(BuildMetrics.PHASE_MARKER_CLEANUP, phaseStart);
 
 			// check for Java nature
 			if (!project.isNatureEnabled(JavaCore.NATURE_ID)) {
-				ResourceUtil.createProblem(project, MessageFormat.format("Project {0} is not properly configured as a Java project.", project.getName()));
+				problems.addProblem(project, MessageFormat.format("Project {0} is not properly configured as a Java project.", project.getName()));
 				forgetLastBuiltState();
 				return null;
 			}
@@ -188,26 +387,45 @@ public class GwtProjectBuilder extends IncrementalProjectBuilder {
 			// find project modules
 			final GwtModule[] projectModules = gwtProject.getModules();
 
+			// we need the deltas of projects providing inherited modules
+			final GwtModuleGraph moduleGraph = GwtCore.getModel().getModuleGraph();
+			for (final GwtModule module : projectModules) {
+				for (final GwtModule inheritedModule : moduleGraph.getInheritedModules(module.getModuleId())) {
+					final IProject inheritedProject = inheritedModule.getProjectResource();
+					if (!project.equals(inheritedProject) && !includedModulesProjects.contains(inheritedProject)) {
+						includedModulesProjects.add(inheritedProject);
+					}
+				}
+			}
+
 			monitor.subTask("Building Remote services ...");
 
 			// update/generate RemoteServiceAsync interfaces
 			final IResourceDelta delta = isIncrementalBuild ? getDelta(project) : null;
+			phaseStart = System.nanoTime();
 			final List<IType> remoteServices = findRemoteServiceFiles(gwtProject, projectModules, delta, ProgressUtil.subProgressMonitor(monitor, 1));
+			BuildMetrics.phase(BuildMetrics.PHASE_FIND_REMOTE_SERVICES, phaseStart);
 			if (!remoteServices.isEmpty()) {
-				updateAsyncFiles(remoteServices, ProgressUtil.subProgressMonitor(monitor, 1));
+				phaseStart = System.nanoTime();
+				updateAsyncFiles(remoteServices, typeResolutionCache, problems, ProgressUtil.subProgressMonitor(monitor, 1));
+				BuildMetrics.phase(BuildMetrics.PHASE_UPDATE_ASYNC_FILES, phaseStart);
 			}
 
 			// compile modules if enabled
 			if (GwtUtil.isAutoBuildModules(gwtProject)) {
 				monitor.subTask("Compiling modules ...");
-				compileProjectModules(gwtProject, projectModules, delta, ProgressUtil.subProgressMonitor(monitor, 1));
+				phaseStart = System.nanoTime();
+				compileProjectModules(gwtProject, projectModules, delta, problems, ProgressUtil.subProgressMonitor(monitor, 1));
+				BuildMetrics.phase(BuildMetrics.PHASE_COMPILE_MODULES, phaseStart);
 			} else {
 				monitor.worked(1);
 			}
 
 			// check modules
 			monitor.subTask("Validating modules ...");
-			checkProjectModules(projectModules, ProgressUtil.subProgressMonitor(monitor, 1));
+			phaseStart = System.nanoTime();
+			checkProjectModules(projectModules, typeResolutionCache, problems, ProgressUtil.subProgressMonitor(monitor, 1));
+			BuildMetrics.phase(BuildMetrics.PHASE_CHECK_MODULES, phaseStart);
 
 			return includedModulesProjects.toArray(new IProject[includedModulesProjects.size()]);
 
@@ -215,11 +433,18 @@ public class GwtProjectBuilder extends IncrementalProjectBuilder {
 			forgetLastBuiltState();
 			throw new CoreException(new Status(IStatus.ERROR, GwtCore.PLUGIN_ID, IResourceStatus.BUILD_FAILED, "An error occured during building: " + e.toString(), e));
 		} finally {
+			try {
+				problems.apply(null);
+			} catch (final CoreException e) {
+				GwtCore.logError("Error while updating GWT problem markers.", e);
+			}
+			saveBuildState();
+			BuildMetrics.build(project.getName(), !isIncrementalBuild, buildStart);
 			monitor.done();
 		}
 	}
 
-	private void checkProjectModules(final GwtModule[] projectModules, IProgressMonitor monitor) throws GwtModelException, CoreException {
+	private void checkProjectModules(final GwtModule[] projectModules, final TypeResolutionCache typeResolutionCache, final ProblemMarkerReconciler problems, IProgressMonitor monitor) throws GwtModelException, CoreException {
 		monitor = ProgressUtil.monitor(monitor);
 		try {
 			monitor.beginTask("Validating", projectModules.length);
@@ -227,16 +452,17 @@ public class GwtProjectBuilder extends IncrementalProjectBuilder {
 				monitor.setTaskName(gwtModule.getName());
 				final IStorage moduleDescriptor = gwtModule.getModuleDescriptor();
 				if (moduleDescriptor instanceof IResource) {
+					problems.addScope((IResource) moduleDescriptor);
 					try {
 						final String entryPointTypeName = gwtModule.getEntryPointTypeName();
 						if (null != entryPointTypeName) {
-							final IType entryPointType = gwtModule.getEntryPointType();
+							final IType entryPointType = gwtModule.getEntryPointType(typeResolutionCache);
 							if (null == entryPointType) {
-								ResourceUtil.createProblem((IResource) moduleDescriptor, MessageFormat.format("Entry point \"{0}\" could not be found on the project build path.", entryPointTypeName));
+								problems.addProblem((IResource) moduleDescriptor, MessageFormat.format("Entry point \"{0}\" could not be found on the project build path.", entryPointTypeName));
 							}
 						}
 					} catch (final GwtModelException e) {
-						ResourceUtil.createProblem((IResource) moduleDescriptor, MessageFormat.format("Error while analyzing module \"{0}\": {1} ", gwtModule.getModuleId(), e.getMessage()));
+						problems.addProblem((IResource) moduleDescriptor, MessageFormat.format("Error while analyzing module \"{0}\": {1} ", gwtModule.getModuleId(), e.getMessage()));
 					}
 				}
 				monitor.worked(1);
@@ -265,6 +491,12 @@ public class GwtProjectBuilder extends IncrementalProjectBuilder {
 				return;
 			}
 
+			// forget pending compiles
+			GwtCompileScheduler.cancelCompiles(project);
+
+			// regenerate all async service interfaces and compile all modules
+			getBuildState().clear();
+
 			// remove all markers
 			project.deleteMarkers(GwtCore.PROBLEM_MARKER, true, IResource.DEPTH_INFINITE);
 			monitor.worked(1);
@@ -282,15 +514,95 @@ public class GwtProjectBuilder extends IncrementalProjectBuilder {
 		}
 	}
 
-	private void compileProjectModules(final GwtProject gwtProject, final GwtModule[] projectModules, final IResourceDelta delta, final IProgressMonitor monitor) throws CoreException {
-		// TODO we should be smart and support incremental builds
+	private void compileProjectModules(final GwtProject gwtProject, final GwtModule[] projectModules, final IResourceDelta delta, final ProblemMarkerReconciler problems, final IProgressMonitor monitor) throws CoreException {
 		try {
-			new GwtProjectPublisher(gwtProject).runInWorkspace(monitor);
+			final GwtModule[] modules;
+			Map<String, String> inputDigests = null;
+			if (null == delta) {
+				// nothing is known about the changes, skip modules compiled from the same inputs before
+				// (the publisher computes the digests of changed modules in the background otherwise)
+				final GwtBuildState buildState = getBuildState();
+				inputDigests = GwtBuildState.computeInputDigests(gwtProject, projectModules);
+				buildState.setInputDigests(inputDigests);
+				modules = buildState.getOutdatedModules(gwtProject, projectModules);
+			} else {
+				modules = findChangedModules(gwtProject, projectModules, delta);
+			}
+
+			// the scheduler compiles in the background
+			GwtCompileScheduler.schedule(gwtProject, modules, inputDigests);
 		} catch (final CoreException e) {
-			ResourceUtil.createProblem(gwtProject.getProjectResource(), MessageFormat.format("Error while compiling modules: {0} ", e.getMessage()));
+			problems.addProblem(gwtProject.getProjectResource(), MessageFormat.format("Error while compiling modules: {0} ", e.getMessage()));
 		}
 	}
 
+	/**
+	 * Finds the project modules which must be compiled because a resource
+	 * they depend on changed.
+	 * <p>
+	 * A module depends on the resources of its own source, super source,
+	 * public and server folders as well as on those of all modules it inherits
+	 * either directly or indirectly.
+	 * </p>
+	 * 
+	 * @param gwtProject
+	 * @param projectModules
+	 * @param delta
+	 *            the delta of the project being built
+	 * @return the modules to compile
+	 * @throws CoreException
+	 */
+	private GwtModule[] findChangedModules(final GwtProject gwtProject, final GwtModule[] projectModules, final IResourceDelta delta) throws CoreException {
+		// collect the modules changed in this project
+		final Set<String> changedModuleIds = new HashSet<String>();
+		final FindChangedModulesVisitor visitor = new FindChangedModulesVisitor(gwtProject, changedModuleIds);
+		delta.accept(visitor);
+		if (visitor.isCompileAll()) {
+			return projectModules;
+		}
+
+		// collect the modules changed in other projects
+		final GwtModuleGraph moduleGraph = GwtCore.getModel().getModuleGraph();
+		final Set<IProject> inheritedProjects = new HashSet<IProject>();
+		for (final GwtModule module : projectModules) {
+			for (final GwtModule inheritedModule : moduleGraph.getInheritedModules(module.getModuleId())) {
+				inheritedProjects.add(inheritedModule.getProjectResource());
+			}
+		}
+		inheritedProjects.remove(gwtProject.getProjectResource());
+		for (final IProject inheritedProject : inheritedProjects) {
+			final IResourceDelta inheritedProjectDelta = getDelta(inheritedProject);
+			if (null == inheritedProjectDelta) {
+				// nothing known about the project
+				return projectModules;
+			}
+			final FindChangedModulesVisitor inheritedProjectVisitor = new FindChangedModulesVisitor(GwtCore.create(inheritedProject), changedModuleIds);
+			inheritedProjectDelta.accept(inheritedProjectVisitor);
+			if (inheritedProjectVisitor.isCompileAll()) {
+				return projectModules;
+			}
+		}
+		if (changedModuleIds.isEmpty()) {
+			return NO_MODULES;
+		}
+
+		// a module must be compiled if itself or one of its inherited modules changed
+		final List<GwtModule> changedModules = new ArrayList<GwtModule>(projectModules.length);
+		for (final GwtModule module : projectModules) {
+			if (changedModuleIds.contains(module.getModuleId())) {
+				changedModules.add(module);
+				continue;
+			}
+			for (final String inheritedModuleId : moduleGraph.getInheritedModuleIds(module.getModuleId())) {
+				if (changedModuleIds.contains(inheritedModuleId)) {
+					changedModules.add(module);
+					break;
+				}
+			}
+		}
+		return changedModules.toArray(new GwtModule[changedModules.size()]);
+	}
+
 	private List<IType> findRemoteServiceFiles(final GwtProject gwtProject, final GwtModule[] projectModules, final IResourceDelta delta, IProgressMonitor monitor) throws CoreException {
 		monitor = ProgressUtil.monitor(monitor);
 		try {
@@ -302,7 +614,9 @@ public class GwtProjectBuilder extends IncrementalProjectBuilder {
 			} else {
 				// incremental build
 				final List<IType> remoteServices = new ArrayList<IType>();
-				delta.accept(new FindRemoteServicesVisitor(remoteServices));
+				final FindRemoteServicesVisitor visitor = new FindRemoteServicesVisitor(remoteServices, monitor);
+				delta.accept(visitor);
+				visitor.flush();
 				return remoteServices;
 			}
 
@@ -312,70 +626,175 @@ public class GwtProjectBuilder extends IncrementalProjectBuilder {
 	}
 
 	/**
-	 * @param remoteService
+	 * Generates the async service interfaces of the specified remote services
+	 * and commits all of them together.
+	 * <p>
+	 * Must be called within a workspace operation so that the Java builder
+	 * sees a single change.
+	 * </p>
+	 * 
+	 * @param remoteServices
+	 *            the remote services with their signature fingerprints
+	 * @param methods
+	 *            the methods of the remote services collected in advance
+	 * @param typeResolutionCache
+	 * @param problems
 	 * @param monitor
 	 * @throws CoreException
 	 */
-	private void generateAsynchServiceInterface(final IType remoteService, IProgressMonitor monitor) throws CoreException {
+	private void generateAsyncServiceInterfaces(final Map<IType, String> remoteServices, final Map<IType, IMethod[]> methods, final TypeResolutionCache typeResolutionCache, final ProblemMarkerReconciler problems, IProgressMonitor monitor) throws CoreException {
 		monitor = ProgressUtil.monitor(monitor);
-		ICompilationUnit asyncServiceCu = null;
+		final Map<IType, ICompilationUnit> workingCopies = new LinkedHashMap<IType, ICompilationUnit>(remoteServices.size());
 		try {
-			final IPackageFragment pack = remoteService.getPackageFragment();
-			final String asyncServiceTypeName = AsyncServiceCodeGenerator.getAsyncTypeNameWithoutParameters(remoteService);
-			final String asyncServiceCuName = asyncServiceTypeName.concat(".java");
-			final AsyncServiceCodeGenerator generator = new AsyncServiceCodeGenerator(remoteService);
-
-			monitor.beginTask(NLS.bind("{0}...", asyncServiceCuName), 10);
-
-			// check that file is writable
-			final IFile asyncServiceFile = ((IContainer) pack.getResource()).getFile(new Path(asyncServiceCuName));
-			final IStatus canWrite = Resources.makeCommittable(asyncServiceFile, null);
-			if (!canWrite.isOK()) {
-				throw new CoreException(canWrite);
-			}
+			monitor.beginTask("Generating Async Remote Service files...", remoteServices.size() * 11);
 
-			ProgressUtil.checkCanceled(monitor);
+			// generate all
+			for (final IType remoteService : remoteServices.keySet()) {
+				ProgressUtil.checkCanceled(monitor);
+				final IPackageFragment pack = remoteService.getPackageFragment();
+				final String asyncServiceTypeName = AsyncServiceCodeGenerator.getAsyncTypeNameWithoutParameters(remoteService);
+				final String asyncServiceCuName = asyncServiceTypeName.concat(".java");
+				monitor.subTask(NLS.bind("{0}...", asyncServiceCuName));
+				try {
+					// check if overwrite is allowed
+					final ICompilationUnit asyncServiceCu = pack.getCompilationUnit(asyncServiceCuName);
+					if (!AsyncServiceCodeGenerator.isAllowedToGenerateAsyncServiceType(asyncServiceCu, asyncServiceTypeName)) {
+						monitor.worked(11);
+						continue;
+					}
 
-			// get the compilation unit
-			asyncServiceCu = pack.getCompilationUnit(asyncServiceCuName);
+					// make cu a working copy
+					asyncServiceCu.becomeWorkingCopy(ProgressUtil.subProgressMonitor(monitor, 1));
+					workingCopies.put(remoteService, asyncServiceCu);
 
-			// check if overwrite is allowed
-			if (!AsyncServiceCodeGenerator.isAllowedToGenerateAsyncServiceType(asyncServiceCu, asyncServiceTypeName)) {
-				return;
+					// create the async service type
+					final AsyncServiceCodeGenerator generator = new AsyncServiceCodeGenerator(remoteService, typeResolutionCache);
+					generator.setMethods(methods.get(remoteService));
+					generator.createType(asyncServiceCu, ProgressUtil.subProgressMonitor(monitor, 10));
+				} catch (final CoreException e) {
+					final ICompilationUnit failed = workingCopies.remove(remoteService);
+					if (null != failed) {
+						failed.discardWorkingCopy();
+					}
+					problems.addProblem(remoteService.getResource(), NLS.bind("Could not generate async service interface for ''{0}'': ''{1}''", remoteService.getElementName(), e.getMessage()));
+				}
 			}
 
-			// make cu a working copy
-			asyncServiceCu.becomeWorkingCopy(ProgressUtil.subProgressMonitor(monitor, 1));
-
-			// create the async service type
-			generator.createType(asyncServiceCu, ProgressUtil.subProgressMonitor(monitor, 10));
-
-			// save
-			asyncServiceCu.commitWorkingCopy(true, ProgressUtil.subProgressMonitor(monitor, 1));
+			// save all
+			for (final Map.Entry<IType, ICompilationUnit> entry : workingCopies.entrySet()) {
+				final IType remoteService = entry.getKey();
+				try {
+					entry.getValue().commitWorkingCopy(true, null);
+					BuildMetrics.asyncFileGenerated();
+					if (null != remoteServices.get(remoteService)) {
+						getBuildState().setAsyncServiceFingerprint(remoteService.getHandleIdentifier(), remoteServices.get(remoteService));
+					}
+				} catch (final CoreException e) {
+					problems.addProblem(remoteService.getResource(), NLS.bind("Could not generate async service interface for ''{0}'': ''{1}''", remoteService.getElementName(), e.getMessage()));
+				}
 
-			// mark the resource as derived
-			// TODO: this should be a preference
-			// asyncServiceCu.getResource().setDerived(true);
+				// mark the resource as derived
+				// TODO: this should be a preference
+				// asyncServiceCu.getResource().setDerived(true);
+			}
 		} finally {
-			if (asyncServiceCu != null) {
+			for (final ICompilationUnit asyncServiceCu : workingCopies.values()) {
 				asyncServiceCu.discardWorkingCopy();
 			}
 			monitor.done();
 		}
 	}
 
-	private void updateAsyncFiles(final List<IType> remoteServices, IProgressMonitor monitor) throws CoreException {
+	/**
+	 * Returns the persisted build state of the project.
+	 * 
+	 * @return the build state
+	 */
+	private GwtBuildState getBuildState() {
+		return GwtBuildState.getState(getProject());
+	}
+
+	/**
+	 * Saves the build state of the project if it has been modified.
+	 */
+	private void saveBuildState() {
+		try {
+			getBuildState().save();
+		} catch (final IOException e) {
+			GwtCore.logError(MessageFormat.format("Error while saving GWT build state of project {0}.", getProject().getName()), e);
+		}
+	}
+
+	/**
+	 * Updates the async service interfaces of the specified remote services.
+	 * <p>
+	 * Remote services whose signature did not change since the last
+	 * generation are skipped. The others are resolved with a single shared AST
+	 * pass and generated and saved in one workspace operation.
+	 * </p>
+	 * 
+	 * @param remoteServices
+	 * @param typeResolutionCache
+	 * @param problems
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	private void updateAsyncFiles(final List<IType> remoteServices, final TypeResolutionCache typeResolutionCache, final ProblemMarkerReconciler problems, IProgressMonitor monitor) throws CoreException {
 		monitor = ProgressUtil.monitor(monitor);
 		try {
-			monitor.beginTask("Generating Async Remote Service files...", remoteServices.size());
+			monitor.beginTask("Generating Async Remote Service files...", 10);
+
+			// find the remote services which changed
+			final Map<IType, String> outdated = new LinkedHashMap<IType, String>(remoteServices.size());
+			final List<IFile> asyncServiceFiles = new ArrayList<IFile>(remoteServices.size());
 			for (final IType remoteService : remoteServices) {
 				ProgressUtil.checkCanceled(monitor);
+				problems.addScope(remoteService.getResource());
 				try {
-					generateAsynchServiceInterface(remoteService, ProgressUtil.subProgressMonitor(monitor, 1));
+					final IPackageFragment pack = remoteService.getPackageFragment();
+					final String asyncServiceCuName = AsyncServiceCodeGenerator.getAsyncTypeNameWithoutParameters(remoteService).concat(".java");
+
+					// skip if the remote service signature did not change
+					final String fingerprint = AsyncServiceCodeGenerator.computeSignatureFingerprint(remoteService, typeResolutionCache);
+					if ((null != fingerprint) && fingerprint.equals(getBuildState().getAsyncServiceFingerprint(remoteService.getHandleIdentifier())) && pack.getCompilationUnit(asyncServiceCuName).exists()) {
+						BuildMetrics.asyncFileUpToDate();
+						continue;
+					}
+
+					outdated.put(remoteService, fingerprint);
+					asyncServiceFiles.add(((IContainer) pack.getResource()).getFile(new Path(asyncServiceCuName)));
 				} catch (final CoreException e) {
-					ResourceUtil.createProblem(remoteService.getResource(), NLS.bind("Could not generate async service interface for ''{0}'': ''{1}''", remoteService.getElementName(), e.getMessage()));
+					problems.addProblem(remoteService.getResource(), NLS.bind("Could not generate async service interface for ''{0}'': ''{1}''", remoteService.getElementName(), e.getMessage()));
 				}
 			}
+			monitor.worked(1);
+			if (outdated.isEmpty()) {
+				return;
+			}
+
+			// check that the files are writable (all at once)
+			final IStatus canWrite = Resources.makeCommittable(asyncServiceFiles.toArray(new IResource[asyncServiceFiles.size()]), null);
+			if (!canWrite.isOK()) {
+				int i = 0;
+				for (final Iterator<IType> stream = outdated.keySet().iterator(); stream.hasNext(); i++) {
+					final IType remoteService = stream.next();
+					final IFile asyncServiceFile = asyncServiceFiles.get(i);
+					if (asyncServiceFile.exists() && asyncServiceFile.isReadOnly()) {
+						stream.remove();
+						problems.addProblem(remoteService.getResource(), NLS.bind("Could not generate async service interface for ''{0}'': ''{1}''", remoteService.getElementName(), canWrite.getMessage()));
+					}
+				}
+			}
+
+			// resolve all remote services at once
+			final Map<IType, IMethod[]> methods = AsyncServiceCodeGenerator.collectMethods(outdated.keySet(), ProgressUtil.subProgressMonitor(monitor, 1));
+
+			// generate and save in one operation
+			JavaCore.run(new IWorkspaceRunnable() {
+				public void run(final IProgressMonitor monitor) throws CoreException {
+					generateAsyncServiceInterfaces(outdated, methods, typeResolutionCache, problems, monitor);
+				}
+			}, ProgressUtil.subProgressMonitor(monitor, 8));
 		} finally {
 			monitor.done();
 		}
@@ -13,9 +13,12 @@
 package org.eclipseguru.gwt.core.builder;
 
 import org.eclipseguru.gwt.core.GwtCore;
+import org.eclipseguru.gwt.core.GwtModelException;
 import org.eclipseguru.gwt.core.GwtModule;
+import org.eclipseguru.gwt.core.GwtModuleGraph;
 import org.eclipseguru.gwt.core.GwtProject;
 import org.eclipseguru.gwt.core.GwtUtil;
+import org.eclipseguru.gwt.core.internal.metrics.BuildMetrics;
 import org.eclipseguru.gwt.core.launch.GwtLaunchUtil;
 import org.eclipseguru.gwt.core.runtimes.GwtRuntime;
 import org.eclipseguru.gwt.core.utils.ProgressUtil;
@@ -23,27 +26,26 @@ import org.eclipseguru.gwt.core.utils.ResourceUtil;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceStatus;
 import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.resources.WorkspaceJob;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.variables.VariablesPlugin;
-import org.eclipse.debug.core.DebugEvent;
 import org.eclipse.debug.core.DebugPlugin;
-import org.eclipse.debug.core.IDebugEventSetListener;
-import org.eclipse.debug.core.ILaunch;
 import org.eclipse.debug.core.ILaunchManager;
-import org.eclipse.debug.core.IStreamListener;
-import org.eclipse.debug.core.Launch;
-import org.eclipse.debug.core.model.IProcess;
-import org.eclipse.debug.core.model.IStreamMonitor;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.internal.corext.util.Resources;
 import org.eclipse.jdt.launching.IVMInstall;
@@ -54,19 +56,31 @@ import org.eclipse.osgi.util.NLS;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Compiles and publishes GWT projects.
@@ -75,84 +89,320 @@ import java.util.concurrent.locks.ReentrantLock;
 public class GwtProjectPublisher extends WorkspaceJob {
 
 	/**
-	 * Parses the output of the GWT compiler for compile errors.
+	 * A problem found while compiling a module.
 	 */
-	private final class CompileErrorParser implements IStreamListener {
-		/** compileErrors */
-		private final List<String> compileErrors = new ArrayList<String>();
+	private static final class CompileProblem {
 
-		private final StringBuilder collectedOutput = new StringBuilder();
+		/** resource */
+		final IResource resource;
 
-		private void analyzeOutput() {
-			compileErrors.clear();
-			try {
-				final BufferedReader reader = new BufferedReader(new StringReader(collectedOutput.toString()));
-				String text = null;
-				while ((text = reader.readLine()) != null) {
-					if (text.trim().startsWith("[ERROR] ")) {
-						String errorMsg = text.trim().substring("[ERROR] ".length());
-						errorMsg = stripNewlines(errorMsg);
-						if (!ignoreError(errorMsg)) {
-							compileErrors.add(errorMsg);
-						}
-					}
-				}
-			} catch (final IOException e) {
-				compileErrors.add("Internal error while analyzing compile output: " + e.getMessage());
-			}
+		/** message */
+		final String message;
+
+		/** lineNumber */
+		final int lineNumber;
 
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param resource
+		 * @param message
+		 */
+		CompileProblem(final IResource resource, final String message) {
+			this(resource, message, -1);
 		}
 
 		/**
-		 * Returns the collected compile errors.
+		 * Creates a new instance.
 		 * 
-		 * @return the compile errors
+		 * @param resource
+		 * @param message
+		 * @param lineNumber
+		 *            the line number (<code>-1</code> if none)
 		 */
-		public List<String> getCompileErrors() {
-			analyzeOutput();
-			return Collections.unmodifiableList(compileErrors);
+		CompileProblem(final IResource resource, final String message, final int lineNumber) {
+			this.resource = resource;
+			this.message = message;
+			this.lineNumber = lineNumber;
+		}
+	}
+
+	/** the heap size (in MB) assumed for a compiler without <code>-Xmx</code> */
+	private static final int DEFAULT_COMPILER_HEAP = 512;
+
+	/** the system property to configure the memory (in MB) available to parallel compilers */
+	private static final String COMPILER_MEMORY_LIMIT_PROPERTY = "org.eclipseguru.gwt.core.compilerMemoryLimit"; //$NON-NLS-1$
+
+	/** the shared pool for parallel compiles (guarded by <code>GwtProjectPublisher.class</code>) */
+	private static ExecutorService executor;
+
+	/** the memory (in MB) available to parallel compilers (guarded by <code>GwtProjectPublisher.class</code>) */
+	private static Semaphore compilerMemory;
+
+	/** the total memory (in MB) available to parallel compilers (guarded by <code>GwtProjectPublisher.class</code>) */
+	private static int compilerMemoryLimit;
+
+	/**
+	 * Adds the source files with problems reported by a previous compile of
+	 * the specified modules to the scope of the reconciler.
+	 * <p>
+	 * The compiler reports problems in the sources of the compiled modules and
+	 * of all modules they inherit either directly or indirectly. Those may be
+	 * located in other projects.
+	 * </p>
+	 * 
+	 * @param gwtProject
+	 *            the project of the modules
+	 * @param modules
+	 *            the modules being compiled
+	 * @param markers
+	 *            the reconciler
+	 * @throws CoreException
+	 */
+	static void addCompiledSourcesToScope(final GwtProject gwtProject, final List<GwtModule> modules, final ProblemMarkerReconciler markers) throws CoreException {
+		// the compiled modules, their inherited modules and the projects providing them
+		final GwtModuleGraph moduleGraph = GwtCore.getModel().getModuleGraph();
+		final Set<String> compiledModuleIds = new HashSet<String>();
+		final Set<IProject> compiledProjects = new LinkedHashSet<IProject>();
+		compiledProjects.add(gwtProject.getProjectResource());
+		for (final GwtModule module : modules) {
+			compiledModuleIds.add(module.getModuleId());
+			for (final GwtModule inheritedModule : moduleGraph.getInheritedModules(module.getModuleId())) {
+				compiledModuleIds.add(inheritedModule.getModuleId());
+				if (!inheritedModule.isBinary()) {
+					compiledProjects.add(inheritedModule.getProjectResource());
+				}
+			}
 		}
 
-		private boolean ignoreError(final String errorMsg) {
-			if (errorMsg.equals("Build failed")) {
-				return true;
+		for (final IProject project : compiledProjects) {
+			if (!GwtProject.hasGwtNature(project)) {
+				continue;
+			}
+			final Set<IResource> markedResources = new HashSet<IResource>();
+			for (final IMarker marker : project.findMarkers(GwtCore.PROBLEM_MARKER, true, IResource.DEPTH_INFINITE)) {
+				if (ProblemMarkerReconciler.SOURCE_PUBLISHER.equals(marker.getAttribute(IMarker.SOURCE_ID, null))) {
+					markedResources.add(marker.getResource());
+				}
 			}
-			if (errorMsg.equals("Failure while parsing XML")) {
-				return true;
+			if (markedResources.isEmpty()) {
+				continue;
 			}
-			if (errorMsg.contains("Unexpected exception while processing element")) {
-				return true;
+			final GwtProject markedProject = GwtCore.create(project);
+			for (final IResource resource : markedResources) {
+				for (final GwtModule owningModule : markedProject.getOwningModules(resource)) {
+					if (compiledModuleIds.contains(owningModule.getModuleId())) {
+						markers.addScope(resource);
+						break;
+					}
+				}
 			}
-			return false;
 		}
+	}
 
-		/*
-		 * (non-Javadoc)
-		 * @see
-		 * org.eclipse.debug.core.IStreamListener#streamAppended(java.lang.String
-		 * , org.eclipse.debug.core.model.IStreamMonitor)
-		 */
-		public void streamAppended(final String text, final IStreamMonitor monitor) {
-			collectedOutput.append(text);
+	/**
+	 * Returns the maximum heap size configured in the specified VM arguments.
+	 * 
+	 * @param vmArgs
+	 * @return the maximum heap size in MB
+	 */
+	static int getCompilerHeap(final String[] vmArgs) {
+		int heap = DEFAULT_COMPILER_HEAP;
+		for (final String arg : vmArgs) {
+			if (!arg.startsWith("-Xmx") || (arg.length() < 5)) { //$NON-NLS-1$
+				continue;
+			}
+			// last one wins
+			String size = arg.substring(4).toLowerCase();
+			long factor = 1;
+			switch (size.charAt(size.length() - 1)) {
+				case 'k':
+					factor = 1024;
+					break;
+				case 'm':
+					factor = 1024 * 1024;
+					break;
+				case 'g':
+					factor = 1024 * 1024 * 1024;
+					break;
+			}
+			if (factor > 1) {
+				size = size.substring(0, size.length() - 1);
+			}
+			try {
+				heap = (int) Math.max(1, (Long.parseLong(size) * factor) / (1024 * 1024));
+			} catch (final NumberFormatException e) {
+				// ignore, the compiler will complain
+			}
 		}
+		return heap;
+	}
 
-		private String stripNewlines(final String errorMsg) {
-			return errorMsg.replace('\r', ' ').replace('\n', ' ').trim();
+	/**
+	 * Returns the shared pool for parallel compiles.
+	 * 
+	 * @return the pool
+	 */
+	private static synchronized ExecutorService getExecutor() {
+		if (null == executor) {
+			final int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+			executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private int count;
+
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r, "GWT Compiler Launcher " + (++count)); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			compilerMemoryLimit = getCompilerMemoryLimit();
+			compilerMemory = new Semaphore(compilerMemoryLimit, true);
 		}
+		return executor;
 	}
 
+	/**
+	 * Returns the memory (in MB) which may be used by compilers running in
+	 * parallel.
+	 * <p>
+	 * The limit can be set using a system property. Otherwise it is the
+	 * physical memory not claimed by this VM if the VM tells us about it.
+	 * </p>
+	 * 
+	 * @return the memory limit in MB
+	 */
+	private static int getCompilerMemoryLimit() {
+		final String configured = System.getProperty(COMPILER_MEMORY_LIMIT_PROPERTY);
+		if (null != configured) {
+			try {
+				return Math.max(DEFAULT_COMPILER_HEAP, Integer.parseInt(configured.trim()));
+			} catch (final NumberFormatException e) {
+				GwtCore.logError("Invalid value for " + COMPILER_MEMORY_LIMIT_PROPERTY + ": " + configured, e);
+			}
+		}
+
+		long physicalMemory = 0;
+		try {
+			// not part of the standard API
+			final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+			final Method method = os.getClass().getMethod("getTotalPhysicalMemorySize"); //$NON-NLS-1$
+			method.setAccessible(true);
+			physicalMemory = ((Number) method.invoke(os)).longValue();
+		} catch (final Exception e) {
+			// not available
+		}
+		if (physicalMemory <= 0) {
+			return Runtime.getRuntime().availableProcessors() * DEFAULT_COMPILER_HEAP;
+		}
+		return (int) Math.max(DEFAULT_COMPILER_HEAP, (physicalMemory - Runtime.getRuntime().maxMemory()) / (1024 * 1024));
+	}
+
+	/**
+	 * Returns the time to wait for the GWT compiler to compile a module.
+	 * <p>
+	 * A timeout configured for the module or project is used as is. Otherwise
+	 * the timeout is a multiple of the last compile time of the module.
+	 * </p>
+	 * 
+	 * @param gwtProject
+	 * @param module
+	 * @param buildState
+	 * @return the timeout in milliseconds
+	 * @see GwtUtil#getCompilerTimeout(GwtProject, String)
+	 */
+	private static long getCompilerTimeout(final GwtProject gwtProject, final GwtModule module, final GwtBuildState buildState) {
+		final int configured = GwtUtil.getCompilerTimeout(gwtProject, module.getModuleId());
+		if (configured > 0) {
+			return configured * 1000L;
+		}
+		final long lastCompileDuration = buildState.getCompileDuration(module.getModuleId());
+		if (lastCompileDuration > 0) {
+			return Math.max(MIN_COMPILER_TIMEOUT * 1000L, lastCompileDuration * COMPILER_TIMEOUT_FACTOR);
+		}
+		return DEFAULT_COMPILER_TIMEOUT * 1000L;
+	}
+
+	/**
+	 * Returns the name of the folder the compiler writes the module into.
+	 * 
+	 * @param module
+	 * @return the module output folder name
+	 */
+	static String getModuleOutputName(final GwtModule module) {
+		try {
+			final String alternateName = module.getAlternateName();
+			if (null != alternateName) {
+				return alternateName;
+			}
+		} catch (final GwtModelException e) {
+			// fall back to module id
+		}
+		return module.getModuleId();
+	}
+
+	/**
+	 * Returns the resource for markers of the specified module.
+	 * 
+	 * @param module
+	 * @return the marker resource
+	 */
+	private static IResource getMarkerResource(final GwtModule module) {
+		return (module.getModuleDescriptor() instanceof IResource) ? (IResource) module.getModuleDescriptor() : module.getProjectResource();
+	}
+
+	/**
+	 * Stops the shared pool for parallel compiles and the compiler daemons.
+	 */
+	static synchronized void shutdown() {
+		GwtCompilerProcess.shutdown();
+		GwtCompilerDaemon.shutdown();
+		if (null != executor) {
+			executor.shutdownNow();
+			executor = null;
+			compilerMemory = null;
+		}
+	}
+
+	/** the time (in seconds) to wait for the GWT compiler if a module has not been compiled before */
+	private static final int DEFAULT_COMPILER_TIMEOUT = 1800;
+
+	/** the minimum time (in seconds) to wait for the GWT compiler */
+	private static final int MIN_COMPILER_TIMEOUT = 300;
+
+	/** the multiple of the last compile time of a module to wait for the GWT compiler */
+	private static final int COMPILER_TIMEOUT_FACTOR = 4;
+
 	/** GWT_DEV_COMPILER */
 	private static final String GWT_DEV_COMPILER_CLASS = "com.google.gwt.dev.Compiler";
 
 	/** project */
 	private final GwtProject project;
 
-	/** a specific module to compile */
-	private GwtModule module;
+	/** specific modules to compile (<code>null</code> for all modules) */
+	private GwtModule[] modules;
+
+	/** the input digests computed in advance by module id (maybe <code>null</code>) */
+	private Map<String, String> inputDigests;
+
+	/** the compile result store (<code>null</code> for the configured one) */
+	private File resultCacheLocation;
 
 	public GwtProjectPublisher(final GwtModule module) {
 		this(module.getProject());
-		this.module = module;
+		modules = new GwtModule[] { module };
+	}
+
+	/**
+	 * Creates a publisher which compiles only the specified modules of a
+	 * project.
+	 * 
+	 * @param project
+	 * @param modules
+	 *            the modules to compile
+	 */
+	public GwtProjectPublisher(final GwtProject project, final GwtModule[] modules) {
+		this(project);
+		this.modules = modules;
 	}
 
 	public GwtProjectPublisher(final GwtProject project) {
@@ -164,25 +414,44 @@ public class GwtProjectPublisher extends WorkspaceJob {
 		setPriority(LONG);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.runtime.jobs.Job#canceling()
+	 */
+	@Override
+	protected void canceling() {
+		// don't wait for the compilers to notice
+		GwtCompilerProcess.destroyAll(this);
+	}
+
 	/**
 	 * Compiles the module.
+	 * <p>
+	 * Problems are not reported directly but collected into the specified list
+	 * so that the caller can create the markers.
+	 * </p>
 	 * 
 	 * @param module
 	 * @param targetFolder
+	 * @param problems
+	 *            the list to add problems to
 	 * @param monitor
 	 * @throws CoreException
 	 */
-	private void compileModule(final GwtProject gwtProject, final GwtModule module, final IFolder targetFolder, final IProgressMonitor monitor) throws CoreException {
+	private void compileModule(final GwtProject gwtProject, final GwtModule module, final IFolder targetFolder, final List<CompileProblem> problems, final IProgressMonitor monitor) throws CoreException {
 		// check for local install
 		if (null == targetFolder.getLocation()) {
 			throw new CoreException(GwtCore.newErrorStatus("Target Folder must be on the local filesystem!"));
 		}
 
 		// determine the marker resource
-		final IResource markerResource = (module.getModuleDescriptor() instanceof IResource) ? (IResource) module.getModuleDescriptor() : module.getProjectResource();
+		final IResource markerResource = getMarkerResource(module);
 
-		// remove module descriptor markers
-		markerResource.deleteMarkers(GwtCore.PROBLEM_MARKER, true, IResource.DEPTH_ZERO);
+		// the output is about to change, remember the inputs it is compiled from
+		final GwtBuildState buildState = GwtBuildState.getState(gwtProject.getProjectResource());
+		final String inputDigest = buildState.getInputDigest(module.getModuleId());
+		buildState.moduleCompileStarted(module.getModuleId());
+		final int problemCount = problems.size();
 
 		// we don't compile modules without an entry point
 		// TODO: this needs to be revisited, it's possible to "inherit" an entry point
@@ -195,10 +464,6 @@ public class GwtProjectPublisher extends WorkspaceJob {
 		//			return;
 		//		}
 
-		// the lock for the external process
-		final Lock compilerLaunchLock = new ReentrantLock();
-		final Condition compilerLaunchFinishes = compilerLaunchLock.newCondition();
-
 		// get project specific VM
 		IVMInstall vmInstall = JavaRuntime.getVMInstall(gwtProject.getJavaProject());
 		if (vmInstall == null) {
@@ -207,7 +472,7 @@ public class GwtProjectPublisher extends WorkspaceJob {
 
 			// fail if no VM is available
 			if (vmInstall == null) {
-				ResourceUtil.createProblem(gwtProject.getProjectResource(), "No JRE installed for launching the GWT compiler.");
+				problems.add(new CompileProblem(gwtProject.getProjectResource(), "No JRE installed for launching the GWT compiler."));
 				return;
 			}
 		}
@@ -215,15 +480,18 @@ public class GwtProjectPublisher extends WorkspaceJob {
 		// get VM runner for executing the compiler
 		final IVMRunner vmRunner = vmInstall.getVMRunner(ILaunchManager.RUN_MODE);
 		if (vmRunner == null) {
-			ResourceUtil.createProblem(gwtProject.getProjectResource(), NLS.bind("JRE \"{0}\" does not support launching external Java applications.", vmInstall.getName()));
+			problems.add(new CompileProblem(gwtProject.getProjectResource(), NLS.bind("JRE \"{0}\" does not support launching external Java applications.", vmInstall.getName())));
 			return;
 		}
 
 		// setup classpath
 		final List<String> classpath = new ArrayList<String>();
+		final List<String> runtimeClasspath = new ArrayList<String>();
+		final int sourceEntries;
 		try {
 			// source folders
 			GwtLaunchUtil.addSourceFolderToClasspath(gwtProject, classpath, true);
+			sourceEntries = classpath.size();
 
 			// we must insert GWT libs before the project classpath
 			// http://code.google.com/p/gwt-tooling/issues/detail?id=31
@@ -233,6 +501,7 @@ public class GwtProjectPublisher extends WorkspaceJob {
 			final String[] gwtRuntimeClasspath = runtime.getGwtRuntimeClasspath();
 			for (final String element : gwtRuntimeClasspath) {
 				classpath.add(element);
+				runtimeClasspath.add(element);
 			}
 
 			// regular classpath
@@ -240,91 +509,222 @@ public class GwtProjectPublisher extends WorkspaceJob {
 			classpath.addAll(Arrays.asList(projectClassPath));
 		} catch (final CoreException e) {
 			// unable to compute classpath
-			ResourceUtil.createProblem(markerResource, NLS.bind("Unable to compile module {0}: {1}", module.getSimpleName(), e.toString()));
+			problems.add(new CompileProblem(markerResource, NLS.bind("Unable to compile module {0}: {1}", module.getSimpleName(), e.toString())));
 			return;
 		}
 
-		// we collect compile error messages
-		final CompileErrorParser compileErrorLogger = new CompileErrorParser();
-
 		// launch
 		if (!classpath.isEmpty()) {
-			final VMRunnerConfiguration vmConfig = new VMRunnerConfiguration(GWT_DEV_COMPILER_CLASS, classpath.toArray(new String[classpath.size()]));
-			vmConfig.setWorkingDirectory(targetFolder.getLocation().toOSString());
-			vmConfig.setProgramArguments(prepareGwtCompileArguments(module, targetFolder));
-			vmConfig.setVMArguments(prepareGwtCompilerVmArguments(module));
-			final ILaunch gwtLaunch = new Launch(null, ILaunchManager.RUN_MODE, null);
-			DebugPlugin.getDefault().getLaunchManager().addLaunch(gwtLaunch);
-			DebugPlugin.getDefault().addDebugEventListener(new IDebugEventSetListener() {
-				public void handleDebugEvents(final DebugEvent[] events) {
-					for (final DebugEvent event : events) {
-						final Object source = event.getSource();
-						if ((source instanceof IProcess)) {
-							final IProcess process = (IProcess) source;
-							final ILaunch launch = process.getLaunch();
-							if ((launch != null) && (launch == gwtLaunch)) {
-								if (event.getKind() == DebugEvent.CREATE) {
-									process.getStreamsProxy().getOutputStreamMonitor().addListener(compileErrorLogger);
-								} else if (event.getKind() == DebugEvent.TERMINATE) {
-									process.getStreamsProxy().getOutputStreamMonitor().removeListener(compileErrorLogger);
-									DebugPlugin.getDefault().removeDebugEventListener(this);
-
-									// wakeup the publisher thread
-									compilerLaunchLock.lock();
-									try {
-										compilerLaunchFinishes.signal();
-									} finally {
-										compilerLaunchLock.unlock();
-									}
-								}
-							}
-						}
-					}
-				}
-
-			});
+			final String[] programArguments = prepareGwtCompileArguments(module, targetFolder);
+			final String[] vmArguments = prepareGwtCompilerVmArguments(module);
 
-			compilerLaunchLock.lock();
+			// re-use a previous result if nothing changed
+			final GwtCompileResultCache resultCache = null != resultCacheLocation ? GwtCompileResultCache.getCache(resultCacheLocation) : GwtCompileResultCache.getCache();
+			final File moduleOutputFolder = targetFolder.getLocation().append(getModuleOutputName(module)).toFile();
+			String resultKey = null;
 			try {
-				// launch the compiler
-				vmRunner.run(vmConfig, gwtLaunch, monitor);
+				resultKey = resultCache.computeKey(GWT_DEV_COMPILER_CLASS, classpath, vmArguments, programArguments, targetFolder.getLocation().toFile());
+				final boolean restored = resultCache.restore(resultKey, moduleOutputFolder);
+				BuildMetrics.cacheLookup(module.getModuleId(), restored);
+				if (restored) {
+					buildState.moduleCompiled(module.getModuleId(), inputDigest, moduleOutputFolder);
+					return;
+				}
+			} catch (final IOException e) {
+				GwtCore.logError(MessageFormat.format("Error while looking up previous compile result of module {0}.", module.getModuleId()), e);
+			}
 
-				// try to wait for the compiler
+			// compile in a warm daemon if possible
+			final long timeout = getCompilerTimeout(gwtProject, module, buildState);
+			final long compileStart = System.nanoTime();
+			GwtCompilerOutputParser compileErrorLogger = new GwtCompilerOutputParser(module, markerResource, true);
+			boolean compiled = false;
+			int exitStatus = -1;
+			if (GwtUtil.isCompilerDaemonEnabled(gwtProject) && (null != GwtCompilerDaemon.getWorkerClasspath())) {
+				// the daemon keeps the order of the classpath
+				final List<String> sourceClasspath = classpath.subList(0, sourceEntries);
+				final List<String> projectClasspath = new ArrayList<String>(classpath.subList(sourceEntries, classpath.size()));
+				projectClasspath.removeAll(runtimeClasspath);
 				monitor.subTask(MessageFormat.format("Waiting for the GWT Compiler to finish compiling module ''{0}''...", module.getName()));
-				int i = 0;
-				while (!gwtLaunch.isTerminated() && (i < 1800)) {
-					ProgressUtil.checkCanceled(monitor);
-					try {
-						compilerLaunchFinishes.await(1, TimeUnit.SECONDS);
-						i++;
-					} catch (final InterruptedException e) {
-						// ok;
-						Thread.interrupted();
-					}
+				try {
+					exitStatus = GwtCompilerDaemon.compile(vmInstall, vmRunner, runtimeClasspath, sourceClasspath, projectClasspath, vmArguments, GwtUtil.getCompilerDaemonMaxCompiles(gwtProject), GWT_DEV_COMPILER_CLASS, programArguments, compileErrorLogger, timeout, monitor);
+					compiled = true;
+				} catch (final IOException e) {
+					GwtCore.logError(MessageFormat.format("Error while compiling module {0} in a GWT compiler daemon. The compiler will be launched instead.", module.getModuleId()), e);
+					compileErrorLogger = new GwtCompilerOutputParser(module, markerResource, true);
+				} catch (final TimeoutException e) {
+					problems.add(new CompileProblem(markerResource, "GWT Compiler: Took too long (>" + (timeout / 1000) + " seconds) to complete. The compiler has been terminated."));
+					compiled = true;
 				}
-				if (!gwtLaunch.isTerminated()) {
-					ResourceUtil.createProblem(markerResource, "GWT Compiler: Took too long (>" + i + " seconds) to complete. Compile results might be undefined.");
-				}
-			} finally {
-				compilerLaunchLock.unlock();
 			}
+			if (!compiled) {
+				exitStatus = launchCompiler(vmRunner, classpath, vmArguments, programArguments, module, targetFolder, markerResource, compileErrorLogger, timeout, problems, monitor);
+			}
+			BuildMetrics.compile(module.getModuleId(), exitStatus, compileErrorLogger.getPermutationCount(), compileStart);
 
 			// create marker for error message
-			final List<String> compileErrors = compileErrorLogger.getCompileErrors();
+			final List<GwtCompilerOutputParser.CompileError> compileErrors = compileErrorLogger.getCompileErrors();
 			if (compileErrors.size() > 0) {
-				for (final String error : compileErrors) {
-					if (module.getModuleDescriptor() instanceof IResource) {
-						ResourceUtil.createProblem(markerResource, NLS.bind("GWT Compiler: {0}", error));
-					} else {
-						ResourceUtil.createProblem(markerResource, NLS.bind("GWT Compiler, module {0}: {1}", module.getModuleId(), error));
-					}
+				for (final GwtCompilerOutputParser.CompileError error : compileErrors) {
+					problems.add(new CompileProblem(error.resource, error.message, error.lineNumber));
+				}
+			} else if (exitStatus > 0) {
+				// failed without reporting an error
+				final String recentOutput = compileErrorLogger.getRecentOutput();
+				if (recentOutput.length() > 0) {
+					problems.add(new CompileProblem(markerResource, NLS.bind("GWT Compiler: Failed with exit code {0}: {1}", String.valueOf(exitStatus), recentOutput)));
+				} else {
+					problems.add(new CompileProblem(markerResource, NLS.bind("GWT Compiler: Failed with exit code {0}. See the console for the complete compiler output.", String.valueOf(exitStatus))));
+				}
+			} else if ((null != resultKey) && (exitStatus == 0)) {
+				// remember the result
+				try {
+					resultCache.store(resultKey, moduleOutputFolder);
+				} catch (final IOException e) {
+					GwtCore.logError(MessageFormat.format("Error while storing compile result of module {0}.", module.getModuleId()), e);
 				}
 			}
 
-			// refresh
-			targetFolder.refreshLocal(IResource.DEPTH_INFINITE, monitor);
+			// remember a successful compile across sessions
+			if ((exitStatus == 0) && (problems.size() == problemCount)) {
+				buildState.moduleCompiled(module.getModuleId(), inputDigest, moduleOutputFolder);
+				buildState.setCompileDuration(module.getModuleId(), (System.nanoTime() - compileStart) / 1000000L);
+			}
+		}
+
+	}
+
+	/**
+	 * Compiles the specified modules in parallel.
+	 * <p>
+	 * The number of compilers running at the same time is limited by the
+	 * number of processors and by the maximum heap configured for each
+	 * compiler. Each compiler writes generated files into its own folder.
+	 * Problems are collected and reported by the caller once all modules are
+	 * compiled.
+	 * </p>
+	 * 
+	 * @param gwtProject
+	 * @param modules
+	 * @param targetFolder
+	 * @param problems
+	 *            the list to add problems to
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	private void compileModulesInParallel(final GwtProject gwtProject, final List<GwtModule> modules, final IFolder targetFolder, final List<CompileProblem> problems, final IProgressMonitor monitor) throws CoreException {
+		// workers only look at the cancellation state of the publisher monitor
+		final IProgressMonitor workerMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return monitor.isCanceled();
+			}
+		};
+
+		final ExecutorService executor = getExecutor();
+		final Semaphore memory;
+		final int memoryLimit;
+		synchronized (GwtProjectPublisher.class) {
+			memory = compilerMemory;
+			memoryLimit = compilerMemoryLimit;
+		}
+
+		monitor.subTask(MessageFormat.format("Compiling {0} modules in parallel...", modules.size()));
+		final List<Future<List<CompileProblem>>> results = new ArrayList<Future<List<CompileProblem>>>(modules.size());
+		for (final GwtModule module : modules) {
+			results.add(executor.submit(new Callable<List<CompileProblem>>() {
+				public List<CompileProblem> call() throws Exception {
+					final List<CompileProblem> moduleProblems = new ArrayList<CompileProblem>();
+
+					// admission by heap size (a compiler larger than the limit runs alone)
+					final int heap = Math.min(memoryLimit, getCompilerHeap(prepareGwtCompilerVmArguments(module)));
+					memory.acquire(heap);
+					try {
+						if (!workerMonitor.isCanceled()) {
+							compileModule(gwtProject, module, targetFolder, moduleProblems, workerMonitor);
+						}
+					} finally {
+						memory.release(heap);
+					}
+					return moduleProblems;
+				}
+			}));
 		}
 
+		// wait for all modules even if one fails so that all problems are reported
+		boolean canceled = false;
+		for (int i = 0; i < results.size(); i++) {
+			final Future<List<CompileProblem>> result = results.get(i);
+			final GwtModule module = modules.get(i);
+			try {
+				while (true) {
+					try {
+						problems.addAll(result.get(1, TimeUnit.SECONDS));
+						break;
+					} catch (final TimeoutException e) {
+						// stay responsive, workers see the cancellation
+						canceled |= monitor.isCanceled();
+					}
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			} catch (final ExecutionException e) {
+				if (e.getCause() instanceof OperationCanceledException) {
+					canceled = true;
+				} else {
+					problems.add(new CompileProblem(getMarkerResource(module), NLS.bind("Unable to compile module {0}: {1}", module.getSimpleName(), String.valueOf(e.getCause()))));
+				}
+			}
+			monitor.worked(1);
+		}
+		if (canceled || monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
+
+	/**
+	 * Launches the GWT compiler in a new VM and waits for it to finish.
+	 * <p>
+	 * The compiler is terminated together with all processes it started when
+	 * the compile is cancelled or takes too long.
+	 * </p>
+	 * 
+	 * @param vmRunner
+	 * @param classpath
+	 * @param vmArguments
+	 * @param programArguments
+	 * @param module
+	 * @param targetFolder
+	 * @param markerResource
+	 * @param compileErrorLogger
+	 *            the listener receiving the compiler output
+	 * @param timeout
+	 *            the time (in milliseconds) to wait for the compiler
+	 * @param problems
+	 *            the list to add problems to
+	 * @param monitor
+	 * @return the exit status of the compiler (<code>-1</code> if it did not
+	 *         terminate)
+	 * @throws CoreException
+	 */
+	private int launchCompiler(final IVMRunner vmRunner, final List<String> classpath, final String[] vmArguments, final String[] programArguments, final GwtModule module, final IFolder targetFolder, final IResource markerResource, final GwtCompilerOutputParser compileErrorLogger, final long timeout, final List<CompileProblem> problems, final IProgressMonitor monitor) throws CoreException {
+		final VMRunnerConfiguration vmConfig = new VMRunnerConfiguration(GWT_DEV_COMPILER_CLASS, classpath.toArray(new String[classpath.size()]));
+		vmConfig.setWorkingDirectory(targetFolder.getLocation().toOSString());
+		vmConfig.setProgramArguments(programArguments);
+		vmConfig.setVMArguments(vmArguments);
+
+		// launch the compiler
+		final GwtCompilerProcess compiler = GwtCompilerProcess.launch(vmRunner, vmConfig, compileErrorLogger, this, monitor);
+
+		// wait for the compiler
+		monitor.subTask(MessageFormat.format("Waiting for the GWT Compiler to finish compiling module ''{0}''...", module.getName()));
+		try {
+			return compiler.waitFor(timeout, monitor);
+		} catch (final TimeoutException e) {
+			problems.add(new CompileProblem(markerResource, "GWT Compiler: Took too long (>" + (timeout / 1000) + " seconds) to complete. The compiler has been terminated."));
+			return -1;
+		}
 	}
 
 	/**
@@ -354,8 +754,9 @@ public class GwtProjectPublisher extends WorkspaceJob {
 		args.add("INFO");
 
 		// TODO: what's about gen? another preference?
+		// generated files are kept separate per module so that modules can be compiled in parallel
 		args.add("-gen");
-		args.add(targetFolder.getLocation().append(".gen").toOSString());
+		args.add(targetFolder.getLocation().append(".gen").append(module.getModuleId()).toOSString());
 
 		args.add("-war");
 		args.add(targetFolder.getLocation().toOSString());
@@ -400,10 +801,12 @@ public class GwtProjectPublisher extends WorkspaceJob {
 	 * @param gwtProject
 	 * @param targetFolder
 	 * @param modules
+	 * @param markers
+	 *            the reconciler to report problems to
 	 * @param monitor
 	 * @throws CoreException
 	 */
-	private void publishAndCompileModules(final GwtProject gwtProject, final IFolder targetFolder, final GwtModule[] modules, final IProgressMonitor monitor) throws CoreException {
+	private void publishAndCompileModules(final GwtProject gwtProject, final IFolder targetFolder, final GwtModule[] modules, final ProblemMarkerReconciler markers, final IProgressMonitor monitor) throws CoreException {
 		try {
 			monitor.beginTask("Publishing GWT modules ...", modules.length);
 
@@ -420,80 +823,133 @@ public class GwtProjectPublisher extends WorkspaceJob {
 				throw new CoreException(canWrite);
 			}
 
-			// compile the modules
+			// find the modules to compile
+			final List<GwtModule> compilableModules = new ArrayList<GwtModule>(modules.length);
 			for (final GwtModule module : modules) {
 				final IPackageFragment modulePackage = module.getModulePackage();
 				if (null != modulePackage) {
-					monitor.subTask(module.getModuleId());
-					// TODO: things changed in GWT 1.1
-					// we need a "smart" publish that just generates
-					// the (module.nocache.html)
-					// http://groups.google.com/group/Google-Web-Toolkit/browse_thread/thread/aa3a8d942e493c26/69a1a5689cb56e2b#69a1a5689cb56e2b
-					//if (false) {
-					//	publishHostedModuleFull(module, targetFolder, ProgressUtil.subProgressMonitor(monitor, 1));
-					//}
-					compileModule(gwtProject, module, targetFolder, ProgressUtil.subProgressMonitor(monitor, 1));
-
+					// module descriptor markers are reconciled at the end
+					markers.addScope(getMarkerResource(module));
+					compilableModules.add(module);
 				} else {
-					ResourceUtil.createProblem(gwtProject.getProjectResource(), NLS.bind("Could not resolve module ''{0}''.", module.getModuleId()));
+					markers.addProblem(gwtProject.getProjectResource(), NLS.bind("Could not resolve module ''{0}''.", module.getModuleId()));
+					monitor.worked(1);
 				}
 			}
 
-			// mark all generated resources as derived
-			final String lineSeparator = GwtUtil.getLineSeparator(gwtProject.getProjectResource());
-			targetFolder.accept(new IResourceVisitor() {
-				public boolean visit(final IResource resource) throws CoreException {
+			// source files with compile errors of a previous compile of these modules are reconciled as well
+			addCompiledSourcesToScope(gwtProject, compilableModules, markers);
 
-					// mark derived
-					resource.setDerived(true, null);
-
-					// fix the line endings
-					if (resource.getType() == IResource.FILE) {
-						final IFile file = (IFile) resource;
-						final String name = file.getName().toLowerCase();
-						if (name.endsWith(".cache.html") || name.endsWith(".cache.xml") || name.endsWith(".nocache.html")) {
-							final InputStream contents = file.getContents();
-							try {
-								final BufferedReader reader = new BufferedReader(new InputStreamReader(contents, file.getCharset()));
-								final StringBuilder newContents = new StringBuilder(50000);
-								while (reader.ready()) {
-									newContents.append(reader.readLine()).append(lineSeparator);
-								}
-								file.setContents(new ByteArrayInputStream(newContents.toString().getBytes(file.getCharset())), IResource.NONE, null);
-							} catch (final IOException e) {
-								// ignore, we don't care if there is such a problem
-							} finally {
-								try {
-									contents.close();
-								} catch (final IOException e) {
-									//  ignore
+			// remember the inputs the modules are compiled from (unless computed in advance)
+			final List<GwtModule> undigestedModules = new ArrayList<GwtModule>(compilableModules.size());
+			for (final GwtModule module : compilableModules) {
+				if ((null == inputDigests) || !inputDigests.containsKey(module.getModuleId())) {
+					undigestedModules.add(module);
+				}
+			}
+			if (!undigestedModules.isEmpty()) {
+				GwtBuildState.getState(gwtProject.getProjectResource()).setInputDigests(GwtBuildState.computeInputDigests(gwtProject, undigestedModules.toArray(new GwtModule[undigestedModules.size()])));
+			}
+
+			// compile the modules
+			final List<CompileProblem> problems = new ArrayList<CompileProblem>();
+			try {
+				if ((compilableModules.size() > 1) && GwtUtil.isCompileInParallel(gwtProject)) {
+					compileModulesInParallel(gwtProject, compilableModules, targetFolder, problems, monitor);
+				} else {
+					for (final GwtModule module : compilableModules) {
+						ProgressUtil.checkCanceled(monitor);
+						monitor.subTask(module.getModuleId());
+						// TODO: things changed in GWT 1.1
+						// we need a "smart" publish that just generates
+						// the (module.nocache.html)
+						// http://groups.google.com/group/Google-Web-Toolkit/browse_thread/thread/aa3a8d942e493c26/69a1a5689cb56e2b#69a1a5689cb56e2b
+						//if (false) {
+						//	publishHostedModuleFull(module, targetFolder, ProgressUtil.subProgressMonitor(monitor, 1));
+						//}
+						compileModule(gwtProject, module, targetFolder, problems, ProgressUtil.subProgressMonitor(monitor, 1));
+					}
+				}
+			} finally {
+				// report problems of all modules
+				for (final CompileProblem problem : problems) {
+					markers.addProblem(problem.resource, problem.message, problem.lineNumber);
+				}
+			}
+
+			// refresh and fix the generated resources in one operation (single delta)
+			ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
+				public void run(final IProgressMonitor monitor) throws CoreException {
+					targetFolder.refreshLocal(IResource.DEPTH_INFINITE, null);
+
+					// mark all generated resources as derived
+					final String lineSeparator = GwtUtil.getLineSeparator(gwtProject.getProjectResource());
+					targetFolder.accept(new IResourceVisitor() {
+						public boolean visit(final IResource resource) throws CoreException {
+
+							// mark derived
+							resource.setDerived(true, null);
+
+							// fix the line endings
+							if (resource.getType() == IResource.FILE) {
+								final IFile file = (IFile) resource;
+								final String name = file.getName().toLowerCase();
+								if (name.endsWith(".cache.html") || name.endsWith(".cache.xml") || name.endsWith(".nocache.html")) {
+									final InputStream contents = file.getContents();
+									try {
+										final BufferedReader reader = new BufferedReader(new InputStreamReader(contents, file.getCharset()));
+										final StringBuilder newContents = new StringBuilder(50000);
+										while (reader.ready()) {
+											newContents.append(reader.readLine()).append(lineSeparator);
+										}
+										file.setContents(new ByteArrayInputStream(newContents.toString().getBytes(file.getCharset())), IResource.NONE, null);
+									} catch (final IOException e) {
+										// ignore, we don't care if there is such a problem
+									} finally {
+										try {
+											contents.close();
+										} catch (final IOException e) {
+											//  ignore
+										}
+									}
 								}
 							}
-						}
-					}
 
-					return true;
+							return true;
+						}
+					});
 				}
-			});
+			}, null, IWorkspace.AVOID_UPDATE, null);
 
 		} finally {
 			monitor.done();
 		}
 	}
 
-	@Override
-	public IStatus runInWorkspace(IProgressMonitor monitor) throws CoreException {
+	/**
+	 * Compiles and publishes the project.
+	 * <p>
+	 * Problems are reported to the specified reconciler which the caller must
+	 * apply. The project is in its scope.
+	 * </p>
+	 * 
+	 * @param markers
+	 *            the reconciler to report problems to
+	 * @param monitor
+	 * @return the status
+	 */
+	IStatus publish(final ProblemMarkerReconciler markers, IProgressMonitor monitor) {
 		monitor = ProgressUtil.monitor(monitor);
 		try {
 			monitor.beginTask("Publishing GWT project " + project.getName(), 10);
 
-			// remove project markers
-			project.getProjectResource().deleteMarkers(GwtCore.PROBLEM_MARKER, true, IResource.DEPTH_ZERO);
+			// project markers are reconciled at the end
+			markers.addScope(project.getProjectResource());
 
 			// check output folder
 			final IPath outputLocation = GwtUtil.getOutputLocation(project);
 			if (outputLocation.makeRelative().isEmpty()) {
-				ResourceUtil.createProblem(project.getProjectResource(), "The GWT build output folder is mapped to the project root which is not yet supported!");
+				markers.addProblem(project.getProjectResource(), "The GWT build output folder is mapped to the project root which is not yet supported!");
 			} else {
 				// initialize output folder
 				final IFolder targetFolder = project.getProjectResource().getFolder(outputLocation);
@@ -501,12 +957,12 @@ public class GwtProjectPublisher extends WorkspaceJob {
 					ResourceUtil.createFolderHierarchy(targetFolder, ProgressUtil.subProgressMonitor(monitor, 1));
 				}
 
-				if (null != module) {
-					// publish single module
-					publishAndCompileModules(project, targetFolder, new GwtModule[] { module }, ProgressUtil.subProgressMonitor(monitor, 1));
+				if (null != modules) {
+					// publish specific modules
+					publishAndCompileModules(project, targetFolder, modules, markers, ProgressUtil.subProgressMonitor(monitor, 1));
 				} else {
 					// publish all modules in project
-					publishAndCompileModules(project, targetFolder, project.getModules(), ProgressUtil.subProgressMonitor(monitor, 1));
+					publishAndCompileModules(project, targetFolder, project.getModules(), markers, ProgressUtil.subProgressMonitor(monitor, 1));
 				}
 			}
 
@@ -519,8 +975,58 @@ public class GwtProjectPublisher extends WorkspaceJob {
 		} catch (final Exception e) {
 			return new Status(IStatus.ERROR, GwtCore.PLUGIN_ID, IResourceStatus.BUILD_FAILED, MessageFormat.format("An error occured during publishing of project {0}.", project.getName()), e);
 		} finally {
+			try {
+				GwtBuildState.getState(project.getProjectResource()).save();
+			} catch (final IOException e) {
+				GwtCore.logError(MessageFormat.format("Error while saving GWT build state of project {0}.", project.getName()), e);
+			}
 			monitor.done();
 		}
 	}
 
+	@Override
+	public IStatus runInWorkspace(final IProgressMonitor monitor) throws CoreException {
+		final ProblemMarkerReconciler markers = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		try {
+			return publish(markers, monitor);
+		} finally {
+			try {
+				markers.apply(null);
+			} catch (final CoreException e) {
+				GwtCore.logError("Error while updating GWT problem markers.", e);
+			}
+		}
+	}
+
+	/**
+	 * Sets the input digests of modules which have been computed in advance
+	 * and recorded in the build state already.
+	 * <p>
+	 * The digests of other modules are computed before compiling them.
+	 * </p>
+	 * 
+	 * @param inputDigests
+	 *            the input digests by module id (maybe <code>null</code>)
+	 * @see GwtBuildState#computeInputDigests(GwtProject, GwtModule[])
+	 */
+	void setInputDigests(final Map<String, String> inputDigests) {
+		this.inputDigests = inputDigests;
+	}
+
+	/**
+	 * Sets the folder storing compile results.
+	 * <p>
+	 * Allows headless builds to use a store which is shared with other
+	 * workspaces and machines.
+	 * </p>
+	 * 
+	 * @param resultCacheLocation
+	 *            the store folder (maybe <code>null</code> for the configured
+	 *            one)
+	 * @see GwtUtil#getCompileCacheLocation()
+	 */
+	public void setResultCacheLocation(final File resultCacheLocation) {
+		this.resultCacheLocation = resultCacheLocation;
+	}
+
 }
@@ -0,0 +1,357 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.builder;
+
+import org.eclipseguru.gwt.core.GwtCore;
+import org.eclipseguru.gwt.core.internal.metrics.BuildMetrics;
+import org.eclipseguru.gwt.core.utils.ProgressUtil;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.osgi.util.NLS;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reconciles the GWT problem markers of a set of resources.
+ * <p>
+ * Problems are collected first. When applied, the collected problems are
+ * compared with the existing problem markers of every resource in scope. Only
+ * markers which are no longer reported are deleted and only new problems are
+ * created. All changes are made in one workspace operation so that a single
+ * marker delta is fired.
+ * </p>
+ * <p>
+ * A reconciler only touches markers it owns, i.e. markers with its source id
+ * or without any source id. Identical problems of a resource are reported
+ * once and the number of problems per resource is capped. Problems may also
+ * be shown right away (eg. while a compile is still running); such markers
+ * are kept when the same problem is reported again.
+ * </p>
+ */
+final class ProblemMarkerReconciler {
+
+	/**
+	 * A reported problem.
+	 */
+	private static final class Problem {
+
+		/** message */
+		final String message;
+
+		/** lineNumber */
+		final int lineNumber;
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param message
+		 * @param lineNumber
+		 *            the line number (<code>-1</code> if none)
+		 */
+		Problem(final String message, final int lineNumber) {
+			this.message = message;
+			this.lineNumber = lineNumber;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Problem)) {
+				return false;
+			}
+			final Problem other = (Problem) obj;
+			return (lineNumber == other.lineNumber) && message.equals(other.message);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return (31 * message.hashCode()) + lineNumber;
+		}
+	}
+
+	/** the maximum number of problem markers per resource */
+	static final int MAX_PROBLEMS_PER_RESOURCE = 50;
+
+	/** the marker attributes set on created markers */
+	private static final String[] ATTRIBUTE_NAMES = new String[] { IMarker.MESSAGE, IMarker.SEVERITY, IMarker.SOURCE_ID };
+
+	/** the marker attributes set on created markers with a line number */
+	private static final String[] ATTRIBUTE_NAMES_WITH_LINE = new String[] { IMarker.MESSAGE, IMarker.SEVERITY, IMarker.SOURCE_ID, IMarker.LINE_NUMBER };
+
+	/** the marker source id of problems reported by the builder */
+	static final String SOURCE_BUILDER = GwtCore.PLUGIN_ID + ".builder"; //$NON-NLS-1$
+
+	/** the marker source id of problems reported by the publisher */
+	static final String SOURCE_PUBLISHER = GwtCore.PLUGIN_ID + ".publisher"; //$NON-NLS-1$
+
+	/**
+	 * Creates a problem marker.
+	 * 
+	 * @param resource
+	 * @param sourceId
+	 * @param message
+	 * @param lineNumber
+	 *            the line number (<code>-1</code> if none)
+	 * @throws CoreException
+	 */
+	private static void createMarker(final IResource resource, final String sourceId, final String message, final int lineNumber) throws CoreException {
+		if (lineNumber < 0) {
+			resource.createMarker(GwtCore.PROBLEM_MARKER).setAttributes(ATTRIBUTE_NAMES, new Object[] { message, new Integer(IMarker.SEVERITY_ERROR), sourceId });
+		} else {
+			resource.createMarker(GwtCore.PROBLEM_MARKER).setAttributes(ATTRIBUTE_NAMES_WITH_LINE, new Object[] { message, new Integer(IMarker.SEVERITY_ERROR), sourceId, new Integer(lineNumber) });
+		}
+		BuildMetrics.markerCreated();
+	}
+
+	/**
+	 * Indicates if a marker shows the specified problem.
+	 * 
+	 * @param marker
+	 * @param message
+	 * @param lineNumber
+	 * @return <code>true</code> if the marker shows the problem
+	 */
+	private static boolean isSameProblem(final IMarker marker, final String message, final int lineNumber) {
+		return (marker.getAttribute(IMarker.SEVERITY, -1) == IMarker.SEVERITY_ERROR) && message.equals(marker.getAttribute(IMarker.MESSAGE, null)) && (marker.getAttribute(IMarker.LINE_NUMBER, -1) == lineNumber);
+	}
+
+	/**
+	 * Shows a problem right away unless it's already shown.
+	 * <p>
+	 * The problem must be reported again to the reconciler of the operation
+	 * so that the marker is kept. Errors are logged.
+	 * </p>
+	 * 
+	 * @param sourceId
+	 *            the source id of the reconciler which will own the marker
+	 * @param resource
+	 * @param message
+	 * @param lineNumber
+	 *            the line number (<code>-1</code> if none)
+	 */
+	static void reportImmediately(final String sourceId, final IResource resource, final String message, final int lineNumber) {
+		try {
+			ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
+				public void run(final IProgressMonitor monitor) throws CoreException {
+					if (!resource.exists()) {
+						return;
+					}
+					for (final IMarker marker : resource.findMarkers(GwtCore.PROBLEM_MARKER, true, IResource.DEPTH_ZERO)) {
+						if (isSameProblem(marker, message, lineNumber)) {
+							return;
+						}
+					}
+					createMarker(resource, sourceId, message, lineNumber);
+				}
+			}, null, IWorkspace.AVOID_UPDATE, null);
+		} catch (final CoreException e) {
+			GwtCore.logError("Error while creating GWT problem marker.", e);
+		}
+	}
+
+	/** sourceId */
+	private final String sourceId;
+
+	/** the reported problems by resource (also defines the scope) */
+	private final Map<IResource, Set<Problem>> problems = new LinkedHashMap<IResource, Set<Problem>>();
+
+	/** the number of problems not reported because of the cap by resource */
+	private final Map<IResource, Integer> omitted = new LinkedHashMap<IResource, Integer>();
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param sourceId
+	 *            the source id of the markers owned by the reconciler
+	 */
+	ProblemMarkerReconciler(final String sourceId) {
+		this.sourceId = sourceId;
+	}
+
+	/**
+	 * Reports a problem.
+	 * <p>
+	 * The resource is added to the scope of the reconciler.
+	 * </p>
+	 * 
+	 * @param resource
+	 *            the resource (maybe <code>null</code> for the workspace root)
+	 * @param message
+	 *            the problem message
+	 */
+	void addProblem(final IResource resource, final String message) {
+		addProblem(resource, message, -1);
+	}
+
+	/**
+	 * Reports a problem at a line.
+	 * <p>
+	 * The resource is added to the scope of the reconciler.
+	 * </p>
+	 * 
+	 * @param resource
+	 *            the resource (maybe <code>null</code> for the workspace root)
+	 * @param message
+	 *            the problem message
+	 * @param lineNumber
+	 *            the line number (<code>-1</code> if none)
+	 */
+	void addProblem(IResource resource, final String message, final int lineNumber) {
+		if (null == resource) {
+			resource = ResourcesPlugin.getWorkspace().getRoot();
+		}
+		final Set<Problem> resourceProblems = getProblems(resource);
+		final Problem problem = new Problem(message, lineNumber);
+		if (resourceProblems.contains(problem)) {
+			return;
+		}
+		if (resourceProblems.size() < MAX_PROBLEMS_PER_RESOURCE) {
+			resourceProblems.add(problem);
+		} else {
+			final Integer count = omitted.get(resource);
+			omitted.put(resource, new Integer(null != count ? count.intValue() + 1 : 1));
+		}
+	}
+
+	/**
+	 * Adds a resource to the scope of the reconciler.
+	 * <p>
+	 * The owned problem markers of all resources in scope which are not
+	 * reported again are deleted when the reconciler is applied.
+	 * </p>
+	 * 
+	 * @param resource
+	 *            the resource (maybe <code>null</code>)
+	 */
+	void addScope(final IResource resource) {
+		if (null != resource) {
+			getProblems(resource);
+		}
+	}
+
+	/**
+	 * Applies the reported problems to the markers of all resources in scope.
+	 * 
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	void apply(final IProgressMonitor monitor) throws CoreException {
+		if (problems.isEmpty()) {
+			return;
+		}
+		ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
+			public void run(final IProgressMonitor monitor) throws CoreException {
+				reconcile(monitor);
+			}
+		}, null, IWorkspace.AVOID_UPDATE, monitor);
+	}
+
+	/**
+	 * Returns the problems reported for the specified resource.
+	 * 
+	 * @param resource
+	 * @return the modifiable set of problems
+	 */
+	private Set<Problem> getProblems(final IResource resource) {
+		Set<Problem> resourceProblems = problems.get(resource);
+		if (null == resourceProblems) {
+			resourceProblems = new LinkedHashSet<Problem>(4);
+			problems.put(resource, resourceProblems);
+		}
+		return resourceProblems;
+	}
+
+	/**
+	 * Indicates if the reconciler owns the specified marker.
+	 * 
+	 * @param marker
+	 * @return <code>true</code> if the marker is owned
+	 * @throws CoreException
+	 */
+	private boolean isOwned(final IMarker marker) throws CoreException {
+		final Object markerSourceId = marker.getAttribute(IMarker.SOURCE_ID);
+		return (null == markerSourceId) || sourceId.equals(markerSourceId);
+	}
+
+	/**
+	 * Reconciles the markers.
+	 * 
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	private void reconcile(IProgressMonitor monitor) throws CoreException {
+		monitor = ProgressUtil.monitor(monitor);
+		try {
+			monitor.beginTask("Updating problem markers...", problems.size());
+			final List<IMarker> obsolete = new ArrayList<IMarker>();
+			for (final Map.Entry<IResource, Set<Problem>> entry : problems.entrySet()) {
+				final IResource resource = entry.getKey();
+				if (!resource.exists()) {
+					monitor.worked(1);
+					continue;
+				}
+
+				// the desired problems
+				final Set<Problem> missing = new LinkedHashSet<Problem>(entry.getValue());
+				final Integer omittedCount = omitted.get(resource);
+				if (null != omittedCount) {
+					missing.add(new Problem(NLS.bind("{0} more problems are not shown. See the console for the complete compiler output.", omittedCount), -1));
+				}
+
+				// keep existing markers which are still reported
+				for (final IMarker marker : resource.findMarkers(GwtCore.PROBLEM_MARKER, true, IResource.DEPTH_ZERO)) {
+					if (!isOwned(marker)) {
+						continue;
+					}
+					final String message = marker.getAttribute(IMarker.MESSAGE, null);
+					if ((marker.getAttribute(IMarker.SEVERITY, -1) == IMarker.SEVERITY_ERROR) && (null != message) && missing.remove(new Problem(message, marker.getAttribute(IMarker.LINE_NUMBER, -1)))) {
+						continue;
+					}
+					obsolete.add(marker);
+				}
+
+				// create the new ones
+				for (final Problem problem : missing) {
+					createMarker(resource, sourceId, problem.message, problem.lineNumber);
+				}
+				monitor.worked(1);
+			}
+
+			if (!obsolete.isEmpty()) {
+				ResourcesPlugin.getWorkspace().deleteMarkers(obsolete.toArray(new IMarker[obsolete.size()]));
+			}
+		} finally {
+			monitor.done();
+		}
+	}
+}
@@ -14,6 +14,7 @@ package org.eclipseguru.gwt.core.internal.codegen;
 
 import org.eclipseguru.gwt.core.GwtUtil;
 import org.eclipseguru.gwt.core.internal.jdtext.ImportsManager;
+import org.eclipseguru.gwt.core.internal.jdtext.TypeResolutionCache;
 import org.eclipseguru.gwt.core.utils.ProgressUtil;
 
 import org.eclipse.core.runtime.CoreException;
@@ -22,6 +23,8 @@ import org.eclipse.jdt.core.Flags;
 import org.eclipse.jdt.core.IBuffer;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IImportDeclaration;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IMethod;
 import org.eclipse.jdt.core.ISourceRange;
 import org.eclipse.jdt.core.IType;
@@ -32,8 +35,12 @@ import org.eclipse.jdt.core.ToolFactory;
 import org.eclipse.jdt.core.compiler.IScanner;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
 import org.eclipse.jdt.core.dom.BodyDeclaration;
 import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.Javadoc;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.SimpleName;
@@ -50,10 +57,18 @@ import org.eclipse.osgi.util.NLS;
 import org.eclipse.text.edits.TextEdit;
 import org.eclipse.text.edits.TextEditGroup;
 
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -98,10 +113,12 @@ public class AsyncServiceCodeGenerator extends JdtTypeGenerator {
 	 *            Interface to get the methods of
 	 * @param output
 	 *            List to add the methods to
+	 * @param typeResolutionCache
+	 *            the cache to resolve super interfaces with
 	 * @throws CoreException
 	 *             If an error occurs
 	 */
-	private static void collectAllInterfaceAndSuperMethods(final IType type, final List<IMethod> output, final Set<String> methodSigs) throws CoreException {
+	static void collectAllInterfaceAndSuperMethods(final IType type, final List<IMethod> output, final Set<String> methodSigs, final TypeResolutionCache typeResolutionCache) throws CoreException {
 		for (final IMethod method : type.getMethods()) {
 			// Don't repeat the same method
 			final String methodSig = method.getElementName() + method.getSignature();
@@ -111,16 +128,8 @@ public class AsyncServiceCodeGenerator extends JdtTypeGenerator {
 
 			output.add(method);
 		}
-		for (final String superInterfaceName : type.getSuperInterfaceNames()) {
-			final String[][] resolvedType = type.resolveType(superInterfaceName);
-			if (resolvedType != null) {
-				for (final String[] typeSegments : resolvedType) {
-					final IType superInterface = type.getJavaProject().findType(Signature.toQualifiedName(typeSegments));
-					if (superInterface != null) {
-						collectAllInterfaceAndSuperMethods(superInterface, output, methodSigs);
-					}
-				}
-			}
+		for (final IType superInterface : typeResolutionCache.getSuperInterfaces(type)) {
+			collectAllInterfaceAndSuperMethods(superInterface, output, methodSigs, typeResolutionCache);
 		}
 	}
 
@@ -130,9 +139,10 @@ public class AsyncServiceCodeGenerator extends JdtTypeGenerator {
 	 * 
 	 * @param type
 	 * @param imports
+	 * @param typeResolutionCache
 	 * @throws JavaModelException
 	 */
-	private static void collectImports(final IType type, final ImportsManager imports) throws JavaModelException {
+	private static void collectImports(final IType type, final ImportsManager imports, final TypeResolutionCache typeResolutionCache) throws JavaModelException {
 		final ICompilationUnit compilationUnit = type.getCompilationUnit();
 		if (compilationUnit != null) {
 			final IImportDeclaration[] existingImports = compilationUnit.getImports();
@@ -151,16 +161,177 @@ public class AsyncServiceCodeGenerator extends JdtTypeGenerator {
 			}
 		}
 
-		for (final String superInterfaceName : type.getSuperInterfaceNames()) {
-			final String[][] resolvedType = type.resolveType(superInterfaceName);
-			if (resolvedType != null) {
-				for (final String[] typeSegments : resolvedType) {
-					final IType superInterface = type.getJavaProject().findType(Signature.toQualifiedName(typeSegments));
-					if (superInterface != null) {
-						collectImports(superInterface, imports);
+		for (final IType superInterface : typeResolutionCache.getSuperInterfaces(type)) {
+			collectImports(superInterface, imports, typeResolutionCache);
+		}
+	}
+
+	/**
+	 * Collects the methods of the specified type binding and its super
+	 * interfaces.
+	 * <p>
+	 * The binding is only used to resolve the super interfaces. The methods
+	 * are taken from the Java model because the order of the methods of a
+	 * binding is not specified.
+	 * </p>
+	 * 
+	 * @param binding
+	 * @param output
+	 * @param methodSigs
+	 * @throws JavaModelException
+	 */
+	private static void collectMethods(final ITypeBinding binding, final List<IMethod> output, final Set<String> methodSigs) throws JavaModelException {
+		final IJavaElement element = binding.getJavaElement();
+		if (element instanceof IType) {
+			for (final IMethod method : ((IType) element).getMethods()) {
+				// Don't repeat the same method
+				if (methodSigs.add(method.getElementName() + method.getSignature())) {
+					output.add(method);
+				}
+			}
+		}
+		for (final ITypeBinding superInterface : binding.getInterfaces()) {
+			collectMethods(superInterface, output, methodSigs);
+		}
+	}
+
+	/**
+	 * Collects the methods of all the specified remote services and their
+	 * super interfaces.
+	 * <p>
+	 * The compilation units of the remote services are parsed and resolved
+	 * with a single shared AST pass per Java project. The methods are the same
+	 * (and in the same order) as the ones collected through the Java model by
+	 * a generator for a single remote service.
+	 * </p>
+	 * 
+	 * @param remoteServiceTypes
+	 * @param monitor
+	 * @return the methods by remote service (remote services which could not
+	 *         be resolved are missing)
+	 * @throws CoreException
+	 */
+	public static Map<IType, IMethod[]> collectMethods(final Collection<IType> remoteServiceTypes, IProgressMonitor monitor) throws CoreException {
+		// group by project and compilation unit
+		final Map<IJavaProject, Map<ICompilationUnit, List<IType>>> typesByProject = new HashMap<IJavaProject, Map<ICompilationUnit, List<IType>>>();
+		for (final IType type : remoteServiceTypes) {
+			final ICompilationUnit cu = type.getCompilationUnit();
+			if (null == cu) {
+				continue;
+			}
+			Map<ICompilationUnit, List<IType>> typesByCu = typesByProject.get(type.getJavaProject());
+			if (null == typesByCu) {
+				typesByCu = new LinkedHashMap<ICompilationUnit, List<IType>>();
+				typesByProject.put(type.getJavaProject(), typesByCu);
+			}
+			List<IType> types = typesByCu.get(cu);
+			if (null == types) {
+				types = new ArrayList<IType>(1);
+				typesByCu.put(cu, types);
+			}
+			types.add(type);
+		}
+
+		final Map<IType, IMethod[]> result = new HashMap<IType, IMethod[]>(remoteServiceTypes.size());
+		monitor = ProgressUtil.monitor(monitor);
+		try {
+			monitor.beginTask("Resolving remote services...", typesByProject.size());
+			for (final Map.Entry<IJavaProject, Map<ICompilationUnit, List<IType>>> entry : typesByProject.entrySet()) {
+				final Map<ICompilationUnit, List<IType>> typesByCu = entry.getValue();
+				final JavaModelException[] failure = new JavaModelException[1];
+				final ASTParser parser = ASTParser.newParser(AST.JLS3);
+				parser.setProject(entry.getKey());
+				parser.setResolveBindings(true);
+				parser.createASTs(typesByCu.keySet().toArray(new ICompilationUnit[typesByCu.size()]), new String[0], new ASTRequestor() {
+					@Override
+					public void acceptAST(final ICompilationUnit source, final CompilationUnit ast) {
+						for (final IType type : typesByCu.get(source)) {
+							for (final Object node : ast.types()) {
+								final AbstractTypeDeclaration declaration = (AbstractTypeDeclaration) node;
+								if (!type.getElementName().equals(declaration.getName().getIdentifier())) {
+									continue;
+								}
+								final ITypeBinding binding = declaration.resolveBinding();
+								if (null == binding) {
+									continue;
+								}
+								try {
+									final List<IMethod> methods = new ArrayList<IMethod>();
+									collectMethods(binding, methods, new HashSet<String>());
+									result.put(type, methods.toArray(new IMethod[methods.size()]));
+								} catch (final JavaModelException e) {
+									failure[0] = e;
+								}
+							}
+						}
 					}
+				}, ProgressUtil.subProgressMonitor(monitor, 1));
+				if (null != failure[0]) {
+					throw failure[0];
 				}
 			}
+		} finally {
+			monitor.done();
+		}
+		return result;
+	}
+
+	/**
+	 * Computes a fingerprint of everything the async service interface is
+	 * generated from.
+	 * <p>
+	 * The fingerprint covers the type parameters, super interfaces and imports
+	 * of the remote service and the signatures, parameter names and type
+	 * parameters of all methods of the remote service and its super
+	 * interfaces. Method bodies, comments and formatting are not covered.
+	 * </p>
+	 * 
+	 * @param remoteServiceType
+	 * @param typeResolutionCache
+	 *            the cache to resolve super interfaces with
+	 * @return the fingerprint (maybe <code>null</code> if no digest algorithm
+	 *         is available)
+	 * @throws CoreException
+	 *             if the remote service cannot be accessed
+	 */
+	public static String computeSignatureFingerprint(final IType remoteServiceType, final TypeResolutionCache typeResolutionCache) throws CoreException {
+		final StringBuilder content = new StringBuilder(1024);
+		content.append(remoteServiceType.getFullyQualifiedName('.')).append(';');
+		content.append(remoteServiceType.getFlags()).append(';');
+		content.append(JavaModelUtil.is50OrHigher(remoteServiceType.getJavaProject())).append(';');
+		for (final ITypeParameter typeParameter : remoteServiceType.getTypeParameters()) {
+			content.append(typeParameter.getSource()).append(';');
+		}
+		for (final String superInterfaceName : remoteServiceType.getSuperInterfaceNames()) {
+			content.append(superInterfaceName).append(';');
+		}
+		final ICompilationUnit compilationUnit = remoteServiceType.getCompilationUnit();
+		if (null != compilationUnit) {
+			for (final IImportDeclaration declaration : compilationUnit.getImports()) {
+				content.append(declaration.getElementName()).append(declaration.getFlags()).append(';');
+			}
+		}
+
+		final List<IMethod> methods = new ArrayList<IMethod>();
+		collectAllInterfaceAndSuperMethods(remoteServiceType, methods, new HashSet<String>(), typeResolutionCache);
+		for (final IMethod method : methods) {
+			content.append('\n').append(method.getDeclaringType().getFullyQualifiedName('.'));
+			content.append('#').append(method.getElementName()).append(method.getSignature());
+			content.append(';').append(method.getFlags());
+			for (final String parameterName : method.getRawParameterNames()) {
+				content.append(';').append(parameterName);
+			}
+			for (final ITypeParameter typeParameter : method.getTypeParameters()) {
+				content.append(';').append(typeParameter.getSource());
+			}
+		}
+
+		try {
+			return new BigInteger(1, MessageDigest.getInstance("SHA-1").digest(content.toString().getBytes("UTF-8"))).toString(16); //$NON-NLS-1$ //$NON-NLS-2$
+		} catch (final NoSuchAlgorithmException e) {
+			return null;
+		} catch (final UnsupportedEncodingException e) {
+			return null;
 		}
 	}
 
@@ -226,6 +397,12 @@ public class AsyncServiceCodeGenerator extends JdtTypeGenerator {
 
 	private final IType remoteServiceType;
 
+	/** typeResolutionCache */
+	private final TypeResolutionCache typeResolutionCache;
+
+	/** the methods collected in advance (maybe <code>null</code>) */
+	private IMethod[] methods;
+
 	/**
 	 * Creates a new instance using the specified remote service.
 	 * 
@@ -237,8 +414,24 @@ public class AsyncServiceCodeGenerator extends JdtTypeGenerator {
 	 *             if the remote service cannot be accessed
 	 */
 	public AsyncServiceCodeGenerator(final IType remoteServiceType) throws CoreException {
+		this(remoteServiceType, new TypeResolutionCache());
+	}
+
+	/**
+	 * Creates a new instance using the specified remote service and type
+	 * resolution cache.
+	 * 
+	 * @param remoteServiceType
+	 *            the remote service to create the asynch service interface for
+	 * @param typeResolutionCache
+	 *            the cache to resolve super interfaces with
+	 * @throws CoreException
+	 *             if the remote service cannot be accessed
+	 */
+	public AsyncServiceCodeGenerator(final IType remoteServiceType, final TypeResolutionCache typeResolutionCache) throws CoreException {
 		super(getAsyncTypeNameWithoutParameters(remoteServiceType), INTERFACE_TYPE, remoteServiceType.getFlags());
 		this.remoteServiceType = remoteServiceType;
+		this.typeResolutionCache = typeResolutionCache;
 	}
 
 	/**
@@ -457,11 +650,27 @@ public class AsyncServiceCodeGenerator extends JdtTypeGenerator {
 	 * Return all methods of the remote service type and its super interfaces.
 	 */
 	IMethod[] getMethods() throws CoreException {
+		if (null != methods) {
+			return methods;
+		}
 		final List<IMethod> result = new ArrayList<IMethod>();
-		collectAllInterfaceAndSuperMethods(remoteServiceType, result, new HashSet<String>());
+		collectAllInterfaceAndSuperMethods(remoteServiceType, result, new HashSet<String>(), typeResolutionCache);
 		return result.toArray(new IMethod[result.size()]);
 	}
 
+	/**
+	 * Sets the methods of the remote service type and its super interfaces
+	 * if they have been collected in advance.
+	 * 
+	 * @param methods
+	 *            the methods (maybe <code>null</code> to collect them on
+	 *            demand)
+	 * @see #collectMethods(Collection, IProgressMonitor)
+	 */
+	public void setMethods(final IMethod[] methods) {
+		this.methods = methods;
+	}
+
 	@Override
 	protected String getTypeComment(final ICompilationUnit parentCU, final String lineDelimiter) {
 		// take remote service comment if possible
@@ -584,6 +793,6 @@ public class AsyncServiceCodeGenerator extends JdtTypeGenerator {
 	 * @throws JavaModelException
 	 */
 	private void writeImports(final ImportsManager imports) throws JavaModelException {
-		collectImports(remoteServiceType, imports);
+		collectImports(remoteServiceType, imports, typeResolutionCache);
 	}
 }
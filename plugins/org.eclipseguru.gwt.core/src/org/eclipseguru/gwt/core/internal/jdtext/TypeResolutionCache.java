@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.internal.jdtext;
+
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.Signature;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers resolved types.
+ * <p>
+ * A cache is meant to live for a single operation (eg. a build) during which
+ * the Java model does not change. Each type name is then looked up and the
+ * super interfaces of each type are resolved at most once. Types which could
+ * not be found are remembered as well.
+ * </p>
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ */
+public final class TypeResolutionCache {
+
+	/** NO_TYPES */
+	private static final IType[] NO_TYPES = new IType[0];
+
+	/** the found types by project and fully qualified name (values maybe <code>null</code>) */
+	private final Map<String, IType> types = new HashMap<String, IType>();
+
+	/** the resolved super interfaces by type */
+	private final Map<IType, IType[]> superInterfaces = new HashMap<IType, IType[]>();
+
+	/**
+	 * Finds a type.
+	 * 
+	 * @param project
+	 *            the project to search in
+	 * @param fullyQualifiedName
+	 *            the fully qualified type name
+	 * @return the type (maybe <code>null</code> if not found)
+	 * @throws JavaModelException
+	 * @see IJavaProject#findType(String)
+	 */
+	public IType findType(final IJavaProject project, final String fullyQualifiedName) throws JavaModelException {
+		final String key = project.getElementName() + '/' + fullyQualifiedName;
+		if (types.containsKey(key)) {
+			return types.get(key);
+		}
+		final IType type = project.findType(fullyQualifiedName);
+		types.put(key, type);
+		return type;
+	}
+
+	/**
+	 * Returns the directly implemented or extended interfaces of a type.
+	 * <p>
+	 * The super interface names of the type are resolved in the context of
+	 * the type. Interfaces which cannot be resolved are omitted.
+	 * </p>
+	 * 
+	 * @param type
+	 * @return the super interfaces (maybe empty)
+	 * @throws JavaModelException
+	 */
+	public IType[] getSuperInterfaces(final IType type) throws JavaModelException {
+		IType[] resolved = superInterfaces.get(type);
+		if (null != resolved) {
+			return resolved;
+		}
+
+		final List<IType> result = new ArrayList<IType>(2);
+		for (final String superInterfaceName : type.getSuperInterfaceNames()) {
+			final String[][] resolvedType = type.resolveType(superInterfaceName);
+			if (resolvedType != null) {
+				for (final String[] typeSegments : resolvedType) {
+					final IType superInterface = findType(type.getJavaProject(), Signature.toQualifiedName(typeSegments));
+					if (superInterface != null) {
+						result.add(superInterface);
+					}
+				}
+			}
+		}
+		resolved = result.isEmpty() ? NO_TYPES : result.toArray(new IType[result.size()]);
+		superInterfaces.put(type, resolved);
+		return resolved;
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.internal.metrics;
+
+/**
+ * The metrics recorded while building GWT projects.
+ */
+public final class BuildMetrics {
+
+	/** PHASE_MARKER_CLEANUP */
+	public static final String PHASE_MARKER_CLEANUP = "markerCleanup"; //$NON-NLS-1$
+
+	/** PHASE_FIND_REMOTE_SERVICES */
+	public static final String PHASE_FIND_REMOTE_SERVICES = "findRemoteServiceFiles"; //$NON-NLS-1$
+
+	/** PHASE_UPDATE_ASYNC_FILES */
+	public static final String PHASE_UPDATE_ASYNC_FILES = "updateAsyncFiles"; //$NON-NLS-1$
+
+	/** PHASE_COMPILE_MODULES */
+	public static final String PHASE_COMPILE_MODULES = "compileProjectModules"; //$NON-NLS-1$
+
+	/** PHASE_CHECK_MODULES */
+	public static final String PHASE_CHECK_MODULES = "checkProjectModules"; //$NON-NLS-1$
+
+	/** the buckets (in seconds) for build phases */
+	private static final double[] PHASE_BUCKETS = new double[] { 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30 };
+
+	/** the buckets (in seconds) for module compiles */
+	private static final double[] COMPILE_BUCKETS = new double[] { 1, 5, 10, 30, 60, 120, 300, 600, 1800 };
+
+	/** the buckets for permutation counts */
+	private static final double[] PERMUTATION_BUCKETS = new double[] { 1, 2, 4, 6, 8, 12, 16, 24, 32, 64 };
+
+	/**
+	 * Records that an async service interface has been generated.
+	 */
+	public static void asyncFileGenerated() {
+		MetricsRegistry.getDefault().counter("gwt_async_files_generated_total", "Async service interfaces generated").increment(); //$NON-NLS-1$
+	}
+
+	/**
+	 * Records that an async service interface was up to date and has not been
+	 * generated again.
+	 */
+	public static void asyncFileUpToDate() {
+		MetricsRegistry.getDefault().counter("gwt_async_files_up_to_date_total", "Async service interfaces skipped because the remote service signature did not change").increment(); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Records a build.
+	 * 
+	 * @param project
+	 *            the project name
+	 * @param full
+	 *            <code>true</code> for full builds
+	 * @param startNanos
+	 *            the start of the build as returned by
+	 *            {@link System#nanoTime()}
+	 */
+	public static void build(final String project, final boolean full, final long startNanos) {
+		MetricsRegistry.getDefault().histogram("gwt_build_seconds", "Duration of GWT project builds", PHASE_BUCKETS, "project", project, "kind", full ? "full" : "incremental").observeSince(startNanos); //$NON-NLS-1$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+	}
+
+	/**
+	 * Records a lookup in the compile result cache.
+	 * 
+	 * @param module
+	 *            the module id
+	 * @param hit
+	 *            <code>true</code> if the result has been restored
+	 */
+	public static void cacheLookup(final String module, final boolean hit) {
+		MetricsRegistry.getDefault().counter("gwt_compile_cache_lookups_total", "Lookups in the compile result cache", "module", module, "result", hit ? "hit" : "miss").increment(); //$NON-NLS-1$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+	}
+
+	/**
+	 * Records a module compile.
+	 * 
+	 * @param module
+	 *            the module id
+	 * @param exitStatus
+	 *            the exit status of the compiler (<code>-1</code> if unknown)
+	 * @param permutations
+	 *            the number of permutations compiled (<code>0</code> if
+	 *            unknown)
+	 * @param startNanos
+	 *            the start of the compile as returned by
+	 *            {@link System#nanoTime()}
+	 */
+	public static void compile(final String module, final int exitStatus, final int permutations, final long startNanos) {
+		final MetricsRegistry registry = MetricsRegistry.getDefault();
+		registry.histogram("gwt_module_compile_seconds", "Wall time of GWT module compiles", COMPILE_BUCKETS, "module", module).observeSince(startNanos); //$NON-NLS-1$ //$NON-NLS-3$
+		registry.counter("gwt_module_compiles_total", "GWT module compiles by compiler exit status", "module", module, "status", String.valueOf(exitStatus)).increment(); //$NON-NLS-1$ //$NON-NLS-3$ //$NON-NLS-4$
+		if (permutations > 0) {
+			registry.histogram("gwt_module_permutations", "Permutations per GWT module compile", PERMUTATION_BUCKETS, "module", module).observe(permutations); //$NON-NLS-1$ //$NON-NLS-3$
+		}
+	}
+
+	/**
+	 * Records that a problem marker has been created.
+	 */
+	public static void markerCreated() {
+		MetricsRegistry.getDefault().counter("gwt_markers_created_total", "GWT problem markers created").increment(); //$NON-NLS-1$
+	}
+
+	/**
+	 * Records a build phase.
+	 * 
+	 * @param phase
+	 *            the phase
+	 * @param startNanos
+	 *            the start of the phase as returned by
+	 *            {@link System#nanoTime()}
+	 */
+	public static void phase(final String phase, final long startNanos) {
+		MetricsRegistry.getDefault().histogram("gwt_build_phase_seconds", "Duration of GWT builder phases", PHASE_BUCKETS, "phase", phase).observeSince(startNanos); //$NON-NLS-1$ //$NON-NLS-3$
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private BuildMetrics() {
+		// empty
+	}
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.internal.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A monotonically increasing count.
+ */
+public final class Counter {
+
+	/** value */
+	private final AtomicLong value = new AtomicLong();
+
+	/**
+	 * Creates a new instance.
+	 */
+	Counter() {
+		// empty
+	}
+
+	/**
+	 * Adds the specified amount.
+	 * 
+	 * @param amount
+	 *            the amount to add (must not be negative)
+	 */
+	public void add(final long amount) {
+		if (amount < 0) {
+			throw new IllegalArgumentException("counters only increase");
+		}
+		value.addAndGet(amount);
+	}
+
+	/**
+	 * Returns the current count.
+	 * 
+	 * @return the count
+	 */
+	public long get() {
+		return value.get();
+	}
+
+	/**
+	 * Adds one.
+	 */
+	public void increment() {
+		value.incrementAndGet();
+	}
+}
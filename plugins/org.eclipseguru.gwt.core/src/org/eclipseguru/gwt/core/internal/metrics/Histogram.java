@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.internal.metrics;
+
+/**
+ * Counts observed values in buckets.
+ * <p>
+ * A histogram is used for timers as well. Times are observed in seconds.
+ * </p>
+ */
+public final class Histogram {
+
+	/** the upper bounds of the buckets (ascending) */
+	private final double[] bounds;
+
+	/** the number of values per bucket (the last one is unbounded, guarded by <code>this</code>) */
+	private final long[] counts;
+
+	/** the sum of all values (guarded by <code>this</code>) */
+	private double sum;
+
+	/** the number of values (guarded by <code>this</code>) */
+	private long count;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param bounds
+	 *            the upper bounds of the buckets (ascending)
+	 */
+	Histogram(final double[] bounds) {
+		this.bounds = bounds;
+		counts = new long[bounds.length + 1];
+	}
+
+	/**
+	 * Returns the upper bounds of the buckets.
+	 * 
+	 * @return the bucket bounds (must not be modified)
+	 */
+	double[] getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * Returns the number of observed values.
+	 * 
+	 * @return the count
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the cumulative counts of the buckets.
+	 * 
+	 * @return the number of values less than or equal to each bound followed
+	 *         by the total count
+	 */
+	synchronized long[] getCumulativeCounts() {
+		final long[] cumulative = new long[counts.length];
+		long total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			total += counts[i];
+			cumulative[i] = total;
+		}
+		return cumulative;
+	}
+
+	/**
+	 * Returns the sum of all observed values.
+	 * 
+	 * @return the sum
+	 */
+	public synchronized double getSum() {
+		return sum;
+	}
+
+	/**
+	 * Observes a value.
+	 * 
+	 * @param value
+	 */
+	public synchronized void observe(final double value) {
+		int bucket = 0;
+		while ((bucket < bounds.length) && (value > bounds[bucket])) {
+			bucket++;
+		}
+		counts[bucket]++;
+		sum += value;
+		count++;
+	}
+
+	/**
+	 * Observes the time elapsed since the specified start.
+	 * 
+	 * @param startNanos
+	 *            the start as returned by {@link System#nanoTime()}
+	 */
+	public void observeSince(final long startNanos) {
+		observe((System.nanoTime() - startNanos) / 1e9);
+	}
+}
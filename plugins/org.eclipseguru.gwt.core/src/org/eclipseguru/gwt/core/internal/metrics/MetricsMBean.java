@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.internal.metrics;
+
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes the metrics of a registry as read-only MBean attributes.
+ * <p>
+ * Each counter is an attribute. Each histogram contributes a count and a sum
+ * attribute. The attributes are determined whenever the MBean info is
+ * requested so that metrics created later show up.
+ * </p>
+ */
+final class MetricsMBean implements DynamicMBean {
+
+	/** registry */
+	private final MetricsRegistry registry;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param registry
+	 */
+	MetricsMBean(final MetricsRegistry registry) {
+		this.registry = registry;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.management.DynamicMBean#getAttribute(java.lang.String)
+	 */
+	public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+		final Number value = registry.getValues().get(attribute);
+		if (null == value) {
+			throw new AttributeNotFoundException(attribute);
+		}
+		return value;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.management.DynamicMBean#getAttributes(java.lang.String[])
+	 */
+	public AttributeList getAttributes(final String[] attributes) {
+		final Map<String, Number> values = registry.getValues();
+		final AttributeList list = new AttributeList(attributes.length);
+		for (final String attribute : attributes) {
+			final Number value = values.get(attribute);
+			if (null != value) {
+				list.add(new Attribute(attribute, value));
+			}
+		}
+		return list;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.management.DynamicMBean#getMBeanInfo()
+	 */
+	public MBeanInfo getMBeanInfo() {
+		final Map<String, Number> values = registry.getValues();
+		final MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+		int i = 0;
+		for (final Map.Entry<String, Number> entry : values.entrySet()) {
+			attributes[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(), entry.getKey(), true, false, false);
+		}
+		return new MBeanInfo(getClass().getName(), "GWT build metrics", attributes, new MBeanConstructorInfo[0], new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.management.DynamicMBean#invoke(java.lang.String,
+	 * java.lang.Object[], java.lang.String[])
+	 */
+	public Object invoke(final String actionName, final Object[] params, final String[] signature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.management.DynamicMBean#setAttribute(javax.management.Attribute)
+	 */
+	public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.management.DynamicMBean#setAttributes(javax.management.AttributeList)
+	 */
+	public AttributeList setAttributes(final AttributeList attributes) {
+		// all attributes are read-only
+		return new AttributeList();
+	}
+}
@@ -0,0 +1,332 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.internal.metrics;
+
+import org.eclipseguru.gwt.core.GwtCore;
+import org.eclipseguru.gwt.core.GwtUtil;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A registry of counters and histograms.
+ * <p>
+ * Metrics are grouped in families by name. The metrics of a family are
+ * distinguished by label values (eg. the build phase or the module id). The
+ * default registry is exposed as a JMX MBean and optionally in the Prometheus
+ * text format on a local port.
+ * </p>
+ */
+public final class MetricsRegistry {
+
+	/**
+	 * Metrics sharing a name.
+	 */
+	private static final class Family {
+
+		/** name */
+		final String name;
+
+		/** help */
+		final String help;
+
+		/** the bucket bounds of histograms (<code>null</code> for counters) */
+		final double[] bounds;
+
+		/** metrics by rendered labels (guarded by the registry) */
+		final Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+
+		/**
+		 * Creates a new instance.
+		 * 
+		 * @param name
+		 * @param help
+		 * @param bounds
+		 */
+		Family(final String name, final String help, final double[] bounds) {
+			this.name = name;
+			this.help = help;
+			this.bounds = bounds;
+		}
+	}
+
+	/** the object name of the MBean */
+	static final String OBJECT_NAME = GwtCore.PLUGIN_ID + ":type=Metrics"; //$NON-NLS-1$
+
+	/** the default registry (guarded by <code>MetricsRegistry.class</code>) */
+	private static MetricsRegistry defaultRegistry;
+
+	/** the running endpoint (guarded by <code>MetricsRegistry.class</code>) */
+	private static PrometheusEndpoint endpoint;
+
+	/**
+	 * Escapes a label value.
+	 * 
+	 * @param value
+	 * @return the escaped value
+	 */
+	private static String escape(final String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+	}
+
+	/**
+	 * Formats a value.
+	 * 
+	 * @param value
+	 * @return the formatted value
+	 */
+	private static String format(final double value) {
+		if (Double.isInfinite(value)) {
+			return value > 0 ? "+Inf" : "-Inf"; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		if ((value == Math.rint(value)) && (Math.abs(value) < Long.MAX_VALUE)) {
+			return String.valueOf((long) value);
+		}
+		return String.valueOf(value);
+	}
+
+	/**
+	 * Returns the default registry.
+	 * 
+	 * @return the default registry
+	 */
+	public static synchronized MetricsRegistry getDefault() {
+		if (null == defaultRegistry) {
+			defaultRegistry = new MetricsRegistry();
+		}
+		return defaultRegistry;
+	}
+
+	/**
+	 * Renders label names and values.
+	 * 
+	 * @param labels
+	 *            alternating label names and values
+	 * @return the rendered labels (maybe empty)
+	 */
+	private static String render(final String[] labels) {
+		if (labels.length == 0) {
+			return ""; //$NON-NLS-1$
+		}
+		if ((labels.length % 2) != 0) {
+			throw new IllegalArgumentException("labels must be name value pairs");
+		}
+		final StringBuilder rendered = new StringBuilder();
+		for (int i = 0; i < labels.length; i += 2) {
+			rendered.append(i == 0 ? '{' : ',');
+			rendered.append(labels[i]).append("=\"").append(escape(String.valueOf(labels[i + 1]))).append('"'); //$NON-NLS-1$
+		}
+		return rendered.append('}').toString();
+	}
+
+	/**
+	 * Registers the default registry as MBean and starts the Prometheus
+	 * endpoint if a port is configured.
+	 */
+	public static synchronized void startup() {
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(new MetricsMBean(getDefault()), name);
+			}
+		} catch (final Exception e) {
+			GwtCore.logError("Error while registering GWT metrics MBean.", e);
+		}
+
+		final int port = GwtUtil.getMetricsPort();
+		if ((port > 0) && (null == endpoint)) {
+			try {
+				endpoint = new PrometheusEndpoint(getDefault(), port);
+				endpoint.start();
+			} catch (final IOException e) {
+				endpoint = null;
+				GwtCore.logError("Error while starting GWT metrics endpoint on port " + port + ".", e);
+			}
+		}
+	}
+
+	/**
+	 * Stops the Prometheus endpoint and unregisters the MBean.
+	 */
+	public static synchronized void shutdown() {
+		if (null != endpoint) {
+			endpoint.shutdown();
+			endpoint = null;
+		}
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (final Exception e) {
+			GwtCore.logError("Error while unregistering GWT metrics MBean.", e);
+		}
+	}
+
+	/** families by name (guarded by <code>this</code>) */
+	private final Map<String, Family> families = new TreeMap<String, Family>();
+
+	/**
+	 * Creates a new instance.
+	 */
+	MetricsRegistry() {
+		// empty
+	}
+
+	/**
+	 * Returns the counter with the specified name and labels.
+	 * 
+	 * @param name
+	 *            the family name
+	 * @param help
+	 *            the family description
+	 * @param labels
+	 *            alternating label names and values
+	 * @return the counter
+	 */
+	public Counter counter(final String name, final String help, final String... labels) {
+		return (Counter) getMetric(name, help, null, labels);
+	}
+
+	/**
+	 * Returns the family with the specified name.
+	 * 
+	 * @param name
+	 * @param help
+	 * @param bounds
+	 * @return the family
+	 */
+	private Family getFamily(final String name, final String help, final double[] bounds) {
+		Family family = families.get(name);
+		if (null == family) {
+			family = new Family(name, help, bounds);
+			families.put(name, family);
+		} else if ((null == family.bounds) != (null == bounds)) {
+			throw new IllegalArgumentException("metric " + name + " registered with a different type");
+		}
+		return family;
+	}
+
+	/**
+	 * Returns the metric with the specified name and labels.
+	 * 
+	 * @param name
+	 * @param help
+	 * @param bounds
+	 * @param labels
+	 * @return the metric
+	 */
+	private synchronized Object getMetric(final String name, final String help, final double[] bounds, final String[] labels) {
+		final Family family = getFamily(name, help, bounds);
+		final String key = render(labels);
+		Object metric = family.metrics.get(key);
+		if (null == metric) {
+			metric = null != bounds ? new Histogram(bounds) : new Counter();
+			family.metrics.put(key, metric);
+		}
+		return metric;
+	}
+
+	/**
+	 * Returns the current values of all metrics.
+	 * <p>
+	 * Histograms contribute their count and sum.
+	 * </p>
+	 * 
+	 * @return the values by series name
+	 */
+	synchronized Map<String, Number> getValues() {
+		final Map<String, Number> values = new LinkedHashMap<String, Number>();
+		for (final Family family : families.values()) {
+			for (final Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+				if (entry.getValue() instanceof Counter) {
+					values.put(family.name + entry.getKey(), new Long(((Counter) entry.getValue()).get()));
+				} else {
+					final Histogram histogram = (Histogram) entry.getValue();
+					values.put(family.name + "_count" + entry.getKey(), new Long(histogram.getCount())); //$NON-NLS-1$
+					values.put(family.name + "_sum" + entry.getKey(), new Double(histogram.getSum())); //$NON-NLS-1$
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the histogram with the specified name and labels.
+	 * 
+	 * @param name
+	 *            the family name
+	 * @param help
+	 *            the family description
+	 * @param bounds
+	 *            the upper bounds of the buckets (ascending)
+	 * @param labels
+	 *            alternating label names and values
+	 * @return the histogram
+	 */
+	public Histogram histogram(final String name, final String help, final double[] bounds, final String... labels) {
+		return (Histogram) getMetric(name, help, bounds, labels);
+	}
+
+	/**
+	 * Writes all metrics in the Prometheus text format.
+	 * 
+	 * @param writer
+	 * @throws IOException
+	 */
+	void writePrometheus(final Writer writer) throws IOException {
+		final List<Family> snapshot;
+		final List<Map<String, Object>> metrics = new ArrayList<Map<String, Object>>();
+		synchronized (this) {
+			snapshot = new ArrayList<Family>(families.values());
+			for (final Family family : snapshot) {
+				metrics.add(new LinkedHashMap<String, Object>(family.metrics));
+			}
+		}
+
+		for (int i = 0; i < snapshot.size(); i++) {
+			final Family family = snapshot.get(i);
+			writer.write("# HELP " + family.name + ' ' + family.help.replace("\\", "\\\\").replace("\n", "\\n") + '\n'); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+			writer.write("# TYPE " + family.name + (null != family.bounds ? " histogram\n" : " counter\n")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			for (final Map.Entry<String, Object> entry : metrics.get(i).entrySet()) {
+				final String labels = entry.getKey();
+				if (entry.getValue() instanceof Counter) {
+					writer.write(family.name + labels + ' ' + ((Counter) entry.getValue()).get() + '\n');
+					continue;
+				}
+
+				final Histogram histogram = (Histogram) entry.getValue();
+				final long[] cumulativeCounts = histogram.getCumulativeCounts();
+				final double[] bounds = histogram.getBounds();
+				final String labelPrefix = labels.length() == 0 ? "{" : labels.substring(0, labels.length() - 1) + ','; //$NON-NLS-1$
+				for (int b = 0; b < cumulativeCounts.length; b++) {
+					final String bound = b < bounds.length ? format(bounds[b]) : "+Inf"; //$NON-NLS-1$
+					writer.write(family.name + "_bucket" + labelPrefix + "le=\"" + bound + "\"} " + cumulativeCounts[b] + '\n'); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				}
+				writer.write(family.name + "_sum" + labels + ' ' + format(histogram.getSum()) + '\n'); //$NON-NLS-1$
+				writer.write(family.name + "_count" + labels + ' ' + cumulativeCounts[cumulativeCounts.length - 1] + '\n'); //$NON-NLS-1$
+			}
+		}
+		writer.flush();
+	}
+}
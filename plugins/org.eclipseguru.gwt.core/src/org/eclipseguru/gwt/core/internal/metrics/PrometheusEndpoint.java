@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.internal.metrics;
+
+import org.eclipseguru.gwt.core.GwtCore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Serves the metrics of a registry in the Prometheus text format.
+ * <p>
+ * The endpoint only listens on the loopback interface. It answers every
+ * <code>GET</code> request with all metrics and handles one request at a
+ * time.
+ * </p>
+ */
+final class PrometheusEndpoint extends Thread {
+
+	/** CONTENT_TYPE */
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8"; //$NON-NLS-1$
+
+	/** the time (in milliseconds) to wait for a request */
+	private static final int READ_TIMEOUT = 5000;
+
+	/** UTF_8 */
+	private static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
+
+	/** registry */
+	private final MetricsRegistry registry;
+
+	/** serverSocket */
+	private final ServerSocket serverSocket;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param registry
+	 * @param port
+	 * @throws IOException
+	 *             if the port could not be opened
+	 */
+	PrometheusEndpoint(final MetricsRegistry registry, final int port) throws IOException {
+		super("GWT Metrics Endpoint"); //$NON-NLS-1$
+		this.registry = registry;
+		serverSocket = new ServerSocket(port, 5, InetAddress.getByName("127.0.0.1")); //$NON-NLS-1$
+		setDaemon(true);
+	}
+
+	/**
+	 * Answers a request.
+	 * 
+	 * @param socket
+	 * @throws IOException
+	 */
+	private void handle(final Socket socket) throws IOException {
+		socket.setSoTimeout(READ_TIMEOUT);
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+		final String requestLine = reader.readLine();
+		if (null == requestLine) {
+			return;
+		}
+		// skip headers
+		String header;
+		while ((null != (header = reader.readLine())) && (header.length() > 0)) {
+			// ignore
+		}
+
+		final boolean get = requestLine.startsWith("GET "); //$NON-NLS-1$
+		final boolean head = requestLine.startsWith("HEAD "); //$NON-NLS-1$
+		String status = "200 OK"; //$NON-NLS-1$
+		String body;
+		if (get || head) {
+			final StringWriter writer = new StringWriter(4096);
+			registry.writePrometheus(writer);
+			body = writer.toString();
+		} else {
+			status = "405 Method Not Allowed"; //$NON-NLS-1$
+			body = ""; //$NON-NLS-1$
+		}
+
+		final byte[] content = body.getBytes(UTF_8);
+		final OutputStream out = socket.getOutputStream();
+		out.write(("HTTP/1.0 " + status + "\r\nContent-Type: " + CONTENT_TYPE + "\r\nContent-Length: " + content.length + "\r\nConnection: close\r\n\r\n").getBytes(UTF_8)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		if (!head) {
+			out.write(content);
+		}
+		out.flush();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run() {
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				try {
+					handle(socket);
+				} finally {
+					socket.close();
+				}
+			} catch (final SocketTimeoutException e) {
+				// idle client
+			} catch (final SocketException e) {
+				// closed
+			} catch (final IOException e) {
+				GwtCore.logError("Error while serving GWT metrics.", e);
+			}
+		}
+	}
+
+	/**
+	 * Stops the endpoint.
+	 */
+	void shutdown() {
+		try {
+			serverSocket.close();
+		} catch (final IOException e) {
+			// ignore
+		}
+	}
+}
@@ -45,6 +45,34 @@ public interface GwtCorePreferenceConstants {
 
 	String PREF_AUTO_BUILD_MODULES = "autoBuildModules";
 
+	/** the time (in milliseconds) to wait for further changes before compiling modules automatically */
+	String PREF_COMPILE_QUIET_PERIOD = "compileQuietPeriod";
+
+	/** PREF_COMPILE_IN_PARALLEL */
+	String PREF_COMPILE_IN_PARALLEL = "compileInParallel";
+
+	/** PREF_COMPILER_DAEMON */
+	String PREF_COMPILER_DAEMON = "compilerDaemon";
+
+	/** the number of compiles after which a compiler daemon is recycled */
+	String PREF_COMPILER_DAEMON_MAX_COMPILES = "compilerDaemonMaxCompiles";
+
+	/**
+	 * the time (in seconds) to wait for the GWT compiler (0 to derive it from
+	 * previous compiles); may be suffixed with <code>.</code> and a module id
+	 * to configure a single module
+	 */
+	String PREF_COMPILER_TIMEOUT = "compilerTimeout";
+
+	/** the folder storing compile results (maybe shared by several workspaces) */
+	String PREF_COMPILE_CACHE_LOCATION = "compileCacheLocation";
+
+	/** the maximum size (in MB) of the compile result store */
+	String PREF_COMPILE_CACHE_SIZE_LIMIT = "compileCacheSizeLimit";
+
+	/** the local port (0 to disable) serving build metrics in the Prometheus text format */
+	String PREF_METRICS_PORT = "metricsPort";
+
 	/** the location key of a GWT runtime */
 	String PREF_LOCATION = "location";
 }
@@ -12,6 +12,7 @@
 package org.eclipseguru.gwt.core.utils;
 
 import org.eclipseguru.gwt.core.GwtCore;
+import org.eclipseguru.gwt.core.internal.metrics.BuildMetrics;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
@@ -154,6 +155,7 @@ public class ResourceUtil {
 		attributes.put(IMarker.MESSAGE, message);
 		attributes.put(IMarker.SEVERITY, IMarker.SEVERITY_ERROR);
 		marker.setAttributes(attributes);
+		BuildMetrics.markerCreated();
 		return marker;
 	}
 
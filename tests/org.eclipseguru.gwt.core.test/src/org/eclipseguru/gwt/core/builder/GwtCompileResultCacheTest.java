@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipseguru.gwt.core.GwtUtil;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GwtCompileResultCache}.
+ */
+public class GwtCompileResultCacheTest {
+
+	private static String read(final File file) throws IOException {
+		final BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			return reader.readLine();
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static void write(final File file, final String content) throws IOException {
+		file.getParentFile().mkdirs();
+		final Writer writer = new FileWriter(file);
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private File tempFolder;
+
+	private GwtCompileResultCache cache;
+
+	private File moduleOutputFolder;
+
+	@Before
+	public void setUp() throws Exception {
+		tempFolder = File.createTempFile("gwtcache", "");
+		tempFolder.delete();
+		assertTrue(tempFolder.mkdirs());
+		cache = GwtCompileResultCache.getCache(new File(tempFolder, "store"));
+		moduleOutputFolder = new File(tempFolder, "war/com.example.App");
+		write(new File(moduleOutputFolder, "com.example.App.nocache.js"), "nocache");
+		write(new File(moduleOutputFolder, "deferred/1.cache.html"), "permutation");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		System.clearProperty(GwtUtil.COMPILE_CACHE_SIZE_LIMIT_PROPERTY);
+		GwtCompileResultCache.delete(tempFolder);
+	}
+
+	@Test
+	public void restoreUnknownResultMisses() throws Exception {
+		assertFalse(cache.restore("unknown", new File(tempFolder, "restored")));
+		assertEquals(1, cache.getMisses());
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public void storedResultIsRestored() throws Exception {
+		cache.store("key", moduleOutputFolder);
+		assertEquals(1, cache.getStores());
+
+		final File restored = new File(tempFolder, "restored/com.example.App");
+		write(new File(restored, "stale.js"), "stale");
+		assertTrue(cache.restore("key", restored));
+		assertEquals(1, cache.getHits());
+		assertEquals("nocache", read(new File(restored, "com.example.App.nocache.js")));
+		assertEquals("permutation", read(new File(restored, "deferred/1.cache.html")));
+		assertFalse("restore must replace the module folder", new File(restored, "stale.js").exists());
+	}
+
+	@Test
+	public void storingAKnownResultKeepsIt() throws Exception {
+		cache.store("key", moduleOutputFolder);
+		write(new File(moduleOutputFolder, "com.example.App.nocache.js"), "changed");
+		cache.store("key", moduleOutputFolder);
+		assertEquals(1, cache.getStores());
+
+		final File restored = new File(tempFolder, "restored");
+		assertTrue(cache.restore("key", restored));
+		assertEquals("nocache", read(new File(restored, "com.example.App.nocache.js")));
+	}
+
+	@Test
+	public void resultsAreEvictedBeyondSizeLimit() throws Exception {
+		System.setProperty(GwtUtil.COMPILE_CACHE_SIZE_LIMIT_PROPERTY, "0");
+		cache.store("key", moduleOutputFolder);
+		assertEquals(1, cache.getEvictions());
+		assertFalse(cache.restore("key", new File(tempFolder, "restored")));
+
+		// nothing is left in the store
+		final String[] names = cache.getStoreFolder().list();
+		assertEquals(0, null != names ? names.length : 0);
+	}
+
+	@Test
+	public void keyDependsOnArguments() throws Exception {
+		final File output = new File(tempFolder, "war");
+		final String key = cache.computeKey("com.google.gwt.dev.Compiler", Collections.<String> emptyList(), new String[] { "-Xmx512m" }, new String[] { "com.example.App" }, output);
+		assertEquals(key, cache.computeKey("com.google.gwt.dev.Compiler", Collections.<String> emptyList(), new String[] { "-Xmx512m" }, new String[] { "com.example.App" }, output));
+		assertFalse(key.equals(cache.computeKey("com.google.gwt.dev.Compiler", Collections.<String> emptyList(), new String[] { "-Xmx1024m" }, new String[] { "com.example.App" }, output)));
+		assertFalse(key.equals(cache.computeKey("com.google.gwt.dev.Compiler", Collections.<String> emptyList(), new String[] { "-Xmx512m" }, new String[] { "com.example.Other" }, output)));
+	}
+
+	@Test
+	public void keyDependsOnClasspathContent() throws Exception {
+		final File sourceFolder = new File(tempFolder, "src");
+		write(new File(sourceFolder, "com/example/client/App.java"), "class App {}");
+		final File output = new File(tempFolder, "war");
+		final String key = cache.computeKey("com.google.gwt.dev.Compiler", Collections.singletonList(sourceFolder.getAbsolutePath()), new String[0], new String[] { "com.example.App" }, output);
+
+		// different length so that the remembered file digest is not used
+		write(new File(sourceFolder, "com/example/client/App.java"), "class App { int i; }");
+		assertFalse(key.equals(cache.computeKey("com.google.gwt.dev.Compiler", Collections.singletonList(sourceFolder.getAbsolutePath()), new String[0], new String[] { "com.example.App" }, output)));
+	}
+
+	@Test
+	public void keyDoesNotDependOnLocations() throws Exception {
+		final File workspace1 = new File(tempFolder, "workspace1");
+		final File workspace2 = new File(tempFolder, "other/workspace2");
+		write(new File(workspace1, "project/src/com/example/client/App.java"), "class App {}");
+		write(new File(workspace2, "project/src/com/example/client/App.java"), "class App {}");
+		final File output1 = new File(workspace1, "project/war");
+		final File output2 = new File(workspace2, "project/war");
+
+		final String key1 = cache.computeKey("com.google.gwt.dev.Compiler", Collections.singletonList(new File(workspace1, "project/src").getAbsolutePath()), new String[] { "-Xmx512m" }, new String[] { "-war", output1.getAbsolutePath(), "-gen", new File(output1, ".gen/com.example.App").getAbsolutePath(), "com.example.App" }, output1);
+		final String key2 = cache.computeKey("com.google.gwt.dev.Compiler", Collections.singletonList(new File(workspace2, "project/src").getAbsolutePath()), new String[] { "-Xmx512m" }, new String[] { "-war", output2.getAbsolutePath(), "-gen", new File(output2, ".gen/com.example.App").getAbsolutePath(), "com.example.App" }, output2);
+		assertEquals(key1, key2);
+	}
+
+	@Test
+	public void keyDependsOnArgumentsOutsideOutputLocation() throws Exception {
+		final File output = new File(tempFolder, "war");
+		final String key1 = cache.computeKey("com.google.gwt.dev.Compiler", Collections.<String> emptyList(), new String[0], new String[] { "-extra", new File(tempFolder, "extra1").getAbsolutePath(), "com.example.App" }, output);
+		final String key2 = cache.computeKey("com.google.gwt.dev.Compiler", Collections.<String> emptyList(), new String[0], new String[] { "-extra", new File(tempFolder, "extra2").getAbsolutePath(), "com.example.App" }, output);
+		assertFalse(key1.equals(key2));
+	}
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipseguru.gwt.core.GwtCore;
+import org.eclipseguru.gwt.core.builder.GwtCompilerOutputParser.CompileError;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GwtCompilerOutputParser}.
+ */
+public class GwtCompilerOutputParserTest {
+
+	private static void assertError(final IResource resource, final String message, final int lineNumber, final CompileError error) {
+		assertSame(resource, error.resource);
+		assertEquals(message, error.message);
+		assertEquals(lineNumber, error.lineNumber);
+	}
+
+	private IProject project;
+
+	private IFile moduleDescriptor;
+
+	private IFile sourceFile;
+
+	private GwtCompilerOutputParser parser;
+
+	private void append(final String output) {
+		parser.streamAppended(output, null);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		project = ResourcesPlugin.getWorkspace().getRoot().getProject("GwtCompilerOutputParserTest");
+		project.create(null);
+		project.open(null);
+		final IFolder folder = project.getFolder("com");
+		folder.create(true, true, null);
+		moduleDescriptor = folder.getFile("App.gwt.xml");
+		moduleDescriptor.create(new ByteArrayInputStream("<module/>".getBytes()), true, null);
+		sourceFile = folder.getFile("App.java");
+		sourceFile.create(new ByteArrayInputStream("class App {}".getBytes()), true, null);
+		parser = new GwtCompilerOutputParser(GwtCore.create(moduleDescriptor), moduleDescriptor, false);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		project.delete(true, true, null);
+	}
+
+	@Test
+	public void errorsAreAttributedToSourceLines() throws Exception {
+		append("Compiling module com.App\n");
+		append("   Validating newly compiled units\n");
+		append("      [ERROR] Errors in '" + sourceFile.getLocationURI() + "'\n");
+		append("         [ERROR] Line 5: foo cannot be resolved\n");
+		append("         [ERROR] Line 7: foo cannot be resolved\n");
+		append("   [ERROR] Aborting compile due to errors in some input files\n");
+
+		final List<CompileError> errors = parser.getCompileErrors();
+		assertEquals(3, errors.size());
+		assertError(sourceFile, "GWT Compiler: foo cannot be resolved", 5, errors.get(0));
+		assertError(sourceFile, "GWT Compiler: foo cannot be resolved", 7, errors.get(1));
+		assertError(moduleDescriptor, "GWT Compiler: Aborting compile due to errors in some input files", -1, errors.get(2));
+	}
+
+	@Test
+	public void errorsOfUnknownSourcesAreReportedOnModule() throws Exception {
+		append("      [ERROR] Errors in 'jar:file:/gwt-user.jar!/com/google/Lib.java'\n");
+		append("         [ERROR] Line 3: bar cannot be resolved\n");
+
+		final List<CompileError> errors = parser.getCompileErrors();
+		assertEquals(1, errors.size());
+		assertError(moduleDescriptor, "GWT Compiler: jar:file:/gwt-user.jar!/com/google/Lib.java, line 3: bar cannot be resolved", -1, errors.get(0));
+	}
+
+	@Test
+	public void sourceWithoutLineErrorsIsReported() throws Exception {
+		append("      [ERROR] Errors in '" + sourceFile.getLocationURI() + "'\n");
+		append("   Compiling 1 permutation\n");
+
+		final List<CompileError> errors = parser.getCompileErrors();
+		assertEquals(1, errors.size());
+		assertError(sourceFile, "GWT Compiler: Errors in '" + sourceFile.getLocationURI() + "'", -1, errors.get(0));
+	}
+
+	@Test
+	public void linesSplitAcrossChunksAreParsed() throws Exception {
+		append("   [ERR");
+		append("OR] Unable to find 'com/Missing.gwt.xml' on your classpath\r");
+		append("\n   [ERROR] Line");
+		append(" is incomplete");
+
+		final List<CompileError> errors = parser.getCompileErrors();
+		assertEquals(2, errors.size());
+		assertError(moduleDescriptor, "GWT Compiler: Unable to find 'com/Missing.gwt.xml' on your classpath", -1, errors.get(0));
+		assertError(moduleDescriptor, "GWT Compiler: Line is incomplete", -1, errors.get(1));
+	}
+
+	@Test
+	public void uninterestingErrorsAreIgnored() throws Exception {
+		append("[ERROR] Build failed\n");
+		append("[ERROR] Failure while parsing XML\n");
+		append("[ERROR] Unexpected exception while processing element 'inherits'\n");
+
+		assertEquals(0, parser.getCompileErrors().size());
+	}
+
+	@Test
+	public void errorsAreCapped() throws Exception {
+		for (int i = 0; i < 600; i++) {
+			append("[ERROR] error " + i + '\n');
+		}
+
+		final List<CompileError> errors = parser.getCompileErrors();
+		assertEquals(501, errors.size());
+		assertError(moduleDescriptor, "GWT Compiler: error 499", -1, errors.get(499));
+		assertTrue(errors.get(500).message.startsWith("GWT Compiler: 100 more errors are not shown."));
+	}
+
+	@Test
+	public void longLinesAreTruncated() throws Exception {
+		final StringBuilder line = new StringBuilder("[ERROR] ");
+		for (int i = 0; i < 10000; i++) {
+			line.append('x');
+		}
+		append(line.append('\n').toString());
+
+		final List<CompileError> errors = parser.getCompileErrors();
+		assertEquals(1, errors.size());
+		assertEquals("GWT Compiler: ".length() + 4096 - "[ERROR] ".length(), errors.get(0).message.length());
+	}
+
+	@Test
+	public void permutationCountIsParsed() throws Exception {
+		append("Compiling module com.App\n");
+		append("   Compiling 6 permutations\n");
+		append("      Compiling permutation 0...\n");
+
+		assertEquals(6, parser.getPermutationCount());
+	}
+
+	@Test
+	public void recentOutputIsKept() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			append("line " + i + '\n');
+		}
+		append("\n");
+
+		assertEquals("line 17 / line 18 / line 19", parser.getRecentOutput());
+		assertEquals(0, parser.getCompileErrors().size());
+	}
+}
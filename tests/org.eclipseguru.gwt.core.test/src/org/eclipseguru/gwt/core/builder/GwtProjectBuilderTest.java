@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.builder;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipseguru.gwt.core.GwtCore;
+import org.eclipseguru.gwt.core.GwtModule;
+import org.eclipseguru.gwt.core.GwtProject;
+import org.eclipseguru.gwt.core.GwtUtil;
+import org.eclipseguru.gwt.core.preferences.GwtCorePreferenceConstants;
+
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.resources.ProjectScope;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.launching.JavaRuntime;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GwtProjectBuilder}.
+ */
+public class GwtProjectBuilderTest {
+
+	private IProject project;
+
+	private GwtProject gwtProject;
+
+	private void build(final int kind) throws Exception {
+		project.build(kind, null);
+	}
+
+	private int getScheduledCompiles() {
+		return Job.getJobManager().find(GwtCompileScheduler.FAMILY).length;
+	}
+
+	/**
+	 * Records a successful compile of the module from its current inputs.
+	 */
+	private void moduleCompiled(final GwtModule module) throws Exception {
+		final File moduleOutputFolder = project.getFolder(GwtUtil.getOutputLocation(gwtProject)).getLocation().append(GwtProjectPublisher.getModuleOutputName(module)).toFile();
+		moduleOutputFolder.mkdirs();
+		final Writer writer = new FileWriter(new File(moduleOutputFolder, module.getModuleId() + ".nocache.js"));
+		try {
+			writer.write("nocache");
+		} finally {
+			writer.close();
+		}
+		final GwtBuildState buildState = GwtBuildState.getState(project);
+		buildState.moduleCompiled(module.getModuleId(), buildState.getInputDigest(module.getModuleId()), moduleOutputFolder);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		project = ResourcesPlugin.getWorkspace().getRoot().getProject("GwtProjectBuilderTest");
+		project.create(null);
+		project.open(null);
+		final IProjectDescription description = project.getDescription();
+		description.setNatureIds(new String[] { JavaCore.NATURE_ID });
+		project.setDescription(description, null);
+		final IFolder sourceFolder = project.getFolder("src");
+		sourceFolder.create(true, true, null);
+		JavaCore.create(project).setRawClasspath(new IClasspathEntry[] { JavaCore.newSourceEntry(sourceFolder.getFullPath()), JavaRuntime.getDefaultJREContainerEntry() }, project.getFolder("bin").getFullPath(), null);
+		final IFolder modulePackage = sourceFolder.getFolder("com");
+		modulePackage.create(true, true, null);
+		modulePackage.getFile("App.gwt.xml").create(new ByteArrayInputStream("<module/>".getBytes()), true, null);
+		GwtProject.addGwtNature(project, null);
+
+		// compile automatically but don't start any compile while testing
+		final IEclipsePreferences preferences = new ProjectScope(project).getNode(GwtCore.PLUGIN_ID);
+		preferences.putBoolean(GwtCorePreferenceConstants.PREF_AUTO_BUILD_MODULES, true);
+		preferences.putLong(GwtCorePreferenceConstants.PREF_COMPILE_QUIET_PERIOD, 600000);
+		preferences.flush();
+		gwtProject = GwtCore.create(project);
+
+		Job.getJobManager().join(ResourcesPlugin.FAMILY_AUTO_BUILD, null);
+		GwtCompileScheduler.cancelCompiles(project);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		GwtCompileScheduler.cancelCompiles(project);
+		project.delete(true, true, null);
+	}
+
+	@Test
+	public void fullBuildCompilesModulesNotCompiledBefore() throws Exception {
+		build(IncrementalProjectBuilder.FULL_BUILD);
+		assertEquals(1, getScheduledCompiles());
+	}
+
+	@Test
+	public void fullBuildSkipsModulesCompiledFromSameInputs() throws Exception {
+		build(IncrementalProjectBuilder.FULL_BUILD);
+		GwtCompileScheduler.cancelCompiles(project);
+		final GwtModule[] modules = gwtProject.getModules();
+		assertEquals(1, modules.length);
+		moduleCompiled(modules[0]);
+
+		build(IncrementalProjectBuilder.FULL_BUILD);
+		assertEquals(0, getScheduledCompiles());
+		assertEquals(0, GwtBuildState.getState(project).getOutdatedModules(gwtProject, modules).length);
+	}
+
+	@Test
+	public void cleanBuildCompilesAllModules() throws Exception {
+		build(IncrementalProjectBuilder.FULL_BUILD);
+		GwtCompileScheduler.cancelCompiles(project);
+		moduleCompiled(gwtProject.getModules()[0]);
+
+		build(IncrementalProjectBuilder.CLEAN_BUILD);
+		build(IncrementalProjectBuilder.FULL_BUILD);
+		assertEquals(1, getScheduledCompiles());
+	}
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.builder;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipseguru.gwt.core.GwtCore;
+import org.eclipseguru.gwt.core.GwtModule;
+import org.eclipseguru.gwt.core.GwtProject;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.launching.JavaRuntime;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link GwtProjectPublisher}.
+ */
+public class GwtProjectPublisherTest {
+
+	private static IFile createFile(final IProject project, final String path, final String contents) throws Exception {
+		final IFile file = project.getFile(new Path(path));
+		createFolder(file.getParent());
+		file.create(new ByteArrayInputStream(contents.getBytes()), true, null);
+		return file;
+	}
+
+	private static void createFolder(final IContainer folder) throws Exception {
+		if (!folder.exists()) {
+			createFolder(folder.getParent());
+			((IFolder) folder).create(true, true, null);
+		}
+	}
+
+	private static IProject createGwtProject(final String name) throws Exception {
+		final IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(name);
+		project.create(null);
+		project.open(null);
+		final IProjectDescription description = project.getDescription();
+		description.setNatureIds(new String[] { JavaCore.NATURE_ID });
+		project.setDescription(description, null);
+		final IFolder sourceFolder = project.getFolder("src");
+		sourceFolder.create(true, true, null);
+		JavaCore.create(project).setRawClasspath(new IClasspathEntry[] { JavaCore.newSourceEntry(sourceFolder.getFullPath()), JavaRuntime.getDefaultJREContainerEntry() }, project.getFolder("bin").getFullPath(), null);
+		GwtProject.addGwtNature(project, null);
+		return project;
+	}
+
+	/**
+	 * Reports a problem on the source while compiling the modules and
+	 * reconciles the markers after they compiled again without problems.
+	 * 
+	 * @return the number of markers left on the source
+	 */
+	private static int reconcileFixedProblem(final GwtProject gwtProject, final List<GwtModule> modules, final IFile source) throws Exception {
+		ProblemMarkerReconciler.reportImmediately(ProblemMarkerReconciler.SOURCE_PUBLISHER, source, "GWT Compiler: foo cannot be resolved", 3);
+		assertEquals(1, source.findMarkers(GwtCore.PROBLEM_MARKER, true, IResource.DEPTH_ZERO).length);
+
+		final ProblemMarkerReconciler markers = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		GwtProjectPublisher.addCompiledSourcesToScope(gwtProject, modules, markers);
+		markers.apply(null);
+		return source.findMarkers(GwtCore.PROBLEM_MARKER, true, IResource.DEPTH_ZERO).length;
+	}
+
+	@Test
+	public void compilerHeapDefaultsWithoutXmx() {
+		assertEquals(512, GwtProjectPublisher.getCompilerHeap(new String[0]));
+		assertEquals(512, GwtProjectPublisher.getCompilerHeap(new String[] { "-Xms256m", "-ea" }));
+	}
+
+	@Test
+	public void compilerHeapIgnoresInvalidXmx() {
+		assertEquals(512, GwtProjectPublisher.getCompilerHeap(new String[] { "-Xmx" }));
+		assertEquals(512, GwtProjectPublisher.getCompilerHeap(new String[] { "-Xmxlots" }));
+	}
+
+	@Test
+	public void compilerHeapLastXmxWins() {
+		assertEquals(2048, GwtProjectPublisher.getCompilerHeap(new String[] { "-Xmx512m", "-Xmx2048m" }));
+		assertEquals(512, GwtProjectPublisher.getCompilerHeap(new String[] { "-Xmx2g", "-Xmx512m" }));
+	}
+
+	@Test
+	public void compilerHeapSupportsSuffixes() {
+		assertEquals(1024, GwtProjectPublisher.getCompilerHeap(new String[] { "-Xmx1048576k" }));
+		assertEquals(1024, GwtProjectPublisher.getCompilerHeap(new String[] { "-Xmx1024M" }));
+		assertEquals(1024, GwtProjectPublisher.getCompilerHeap(new String[] { "-Xmx1G" }));
+		assertEquals(256, GwtProjectPublisher.getCompilerHeap(new String[] { "-Xmx268435456" }));
+	}
+
+	@Test
+	public void compilerHeapIsAtLeastOneMegabyte() {
+		assertEquals(1, GwtProjectPublisher.getCompilerHeap(new String[] { "-Xmx512k" }));
+	}
+
+	@Test
+	public void fixedProblemsOfInheritedModulesInOtherProjectsAreRemoved() throws Exception {
+		final IProject app = createGwtProject("GwtProjectPublisherTestApp");
+		final IProject lib = createGwtProject("GwtProjectPublisherTestLib");
+		try {
+			createFile(app, "src/com/app/App.gwt.xml", "<module><inherits name=\"com.lib.Lib\"/></module>");
+			createFile(lib, "src/com/lib/Lib.gwt.xml", "<module/>");
+			final IFile source = createFile(lib, "src/com/lib/client/Lib.java", "class Lib {}");
+
+			final GwtProject gwtProject = GwtCore.create(app);
+			assertEquals(0, reconcileFixedProblem(gwtProject, Arrays.asList(gwtProject.getModules()), source));
+		} finally {
+			app.delete(true, true, null);
+			lib.delete(true, true, null);
+		}
+	}
+
+	@Test
+	public void fixedProblemsOfInheritedModulesInSameProjectAreRemoved() throws Exception {
+		final IProject app = createGwtProject("GwtProjectPublisherTestApp");
+		try {
+			createFile(app, "src/com/app/App.gwt.xml", "<module><inherits name=\"com.lib.Lib\"/></module>");
+			createFile(app, "src/com/lib/Lib.gwt.xml", "<module/>");
+			final IFile source = createFile(app, "src/com/lib/client/Lib.java", "class Lib {}");
+
+			// only the application module is compiled
+			final GwtProject gwtProject = GwtCore.create(app);
+			assertEquals(0, reconcileFixedProblem(gwtProject, Arrays.asList(gwtProject.getModule("com.app.App")), source));
+		} finally {
+			app.delete(true, true, null);
+		}
+	}
+}
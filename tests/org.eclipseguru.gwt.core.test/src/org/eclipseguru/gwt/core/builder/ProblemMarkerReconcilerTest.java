@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipseguru.gwt.core.GwtCore;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ProblemMarkerReconciler}.
+ */
+public class ProblemMarkerReconcilerTest {
+
+	private IProject project;
+
+	private IFile file;
+
+	private static Set<Long> getIds(final IMarker[] markers) {
+		final Set<Long> ids = new HashSet<Long>();
+		for (final IMarker marker : markers) {
+			ids.add(marker.getId());
+		}
+		return ids;
+	}
+
+	private static Set<Integer> getLineNumbers(final IMarker[] markers) {
+		final Set<Integer> lineNumbers = new HashSet<Integer>();
+		for (final IMarker marker : markers) {
+			lineNumbers.add(marker.getAttribute(IMarker.LINE_NUMBER, -1));
+		}
+		return lineNumbers;
+	}
+
+	private IMarker[] findMarkers() throws Exception {
+		return file.findMarkers(GwtCore.PROBLEM_MARKER, true, IResource.DEPTH_ZERO);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		project = ResourcesPlugin.getWorkspace().getRoot().getProject("ProblemMarkerReconcilerTest");
+		project.create(null);
+		project.open(null);
+		file = project.getFile("App.java");
+		file.create(new ByteArrayInputStream("class App {}".getBytes()), true, null);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		project.delete(true, true, null);
+	}
+
+	@Test
+	public void identicalProblemsAreReportedOnce() throws Exception {
+		final ProblemMarkerReconciler markers = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		markers.addProblem(file, "error");
+		markers.addProblem(file, "error");
+		markers.addProblem(file, "other error");
+		markers.apply(null);
+
+		assertEquals(2, findMarkers().length);
+	}
+
+	@Test
+	public void markersStillReportedAreKept() throws Exception {
+		final ProblemMarkerReconciler markers = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		markers.addProblem(file, "error");
+		markers.apply(null);
+		final long id = findMarkers()[0].getId();
+
+		final ProblemMarkerReconciler again = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		again.addProblem(file, "error");
+		again.apply(null);
+
+		final IMarker[] found = findMarkers();
+		assertEquals(1, found.length);
+		assertEquals(id, found[0].getId());
+	}
+
+	@Test
+	public void markersNoLongerReportedAreDeleted() throws Exception {
+		final ProblemMarkerReconciler markers = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		markers.addProblem(file, "error");
+		markers.addProblem(file, "fixed error");
+		markers.apply(null);
+
+		final ProblemMarkerReconciler again = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		again.addProblem(file, "error");
+		again.apply(null);
+
+		final IMarker[] found = findMarkers();
+		assertEquals(1, found.length);
+		assertEquals("error", found[0].getAttribute(IMarker.MESSAGE));
+	}
+
+	@Test
+	public void markersInScopeWithoutProblemsAreDeleted() throws Exception {
+		final ProblemMarkerReconciler markers = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		markers.addProblem(file, "error");
+		markers.apply(null);
+
+		final ProblemMarkerReconciler again = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		again.addScope(file);
+		again.apply(null);
+
+		assertEquals(0, findMarkers().length);
+	}
+
+	@Test
+	public void markersOfOtherSourcesAreKept() throws Exception {
+		final ProblemMarkerReconciler builderMarkers = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_BUILDER);
+		builderMarkers.addProblem(file, "builder error");
+		builderMarkers.apply(null);
+
+		final ProblemMarkerReconciler publisherMarkers = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		publisherMarkers.addScope(file);
+		publisherMarkers.apply(null);
+
+		final IMarker[] found = findMarkers();
+		assertEquals(1, found.length);
+		assertEquals(ProblemMarkerReconciler.SOURCE_BUILDER, found[0].getAttribute(IMarker.SOURCE_ID));
+	}
+
+	@Test
+	public void identicalProblemsOnDifferentLinesAreReportedOnEachLine() throws Exception {
+		final ProblemMarkerReconciler markers = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		markers.addProblem(file, "error", 3);
+		markers.addProblem(file, "error", 7);
+		markers.addProblem(file, "error", 7);
+		markers.apply(null);
+
+		final IMarker[] found = findMarkers();
+		assertEquals(2, found.length);
+		assertEquals(new HashSet<Integer>(Arrays.asList(3, 7)), getLineNumbers(found));
+	}
+
+	@Test
+	public void markersMovedToOtherLinesAreReplaced() throws Exception {
+		final ProblemMarkerReconciler markers = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		markers.addProblem(file, "error", 3);
+		markers.apply(null);
+
+		final ProblemMarkerReconciler again = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		again.addProblem(file, "error", 4);
+		again.apply(null);
+
+		final IMarker[] found = findMarkers();
+		assertEquals(1, found.length);
+		assertEquals(4, found[0].getAttribute(IMarker.LINE_NUMBER, -1));
+	}
+
+	@Test
+	public void markersReportedImmediatelyAreKept() throws Exception {
+		ProblemMarkerReconciler.reportImmediately(ProblemMarkerReconciler.SOURCE_PUBLISHER, file, "error", 3);
+		ProblemMarkerReconciler.reportImmediately(ProblemMarkerReconciler.SOURCE_PUBLISHER, file, "error", 7);
+		ProblemMarkerReconciler.reportImmediately(ProblemMarkerReconciler.SOURCE_PUBLISHER, file, "error", 7);
+		final IMarker[] reported = findMarkers();
+		assertEquals(2, reported.length);
+
+		final ProblemMarkerReconciler markers = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		markers.addProblem(file, "error", 3);
+		markers.addProblem(file, "error", 7);
+		markers.apply(null);
+
+		final IMarker[] found = findMarkers();
+		assertEquals(2, found.length);
+		assertEquals(getIds(reported), getIds(found));
+	}
+
+	@Test
+	public void problemsPerResourceAreCapped() throws Exception {
+		final ProblemMarkerReconciler markers = new ProblemMarkerReconciler(ProblemMarkerReconciler.SOURCE_PUBLISHER);
+		for (int i = 0; i < (ProblemMarkerReconciler.MAX_PROBLEMS_PER_RESOURCE + 5); i++) {
+			markers.addProblem(file, "error " + i);
+		}
+		markers.apply(null);
+
+		final IMarker[] found = findMarkers();
+		assertEquals(ProblemMarkerReconciler.MAX_PROBLEMS_PER_RESOURCE + 1, found.length);
+		boolean omittedReported = false;
+		for (final IMarker marker : found) {
+			omittedReported |= marker.getAttribute(IMarker.MESSAGE, "").startsWith("5 more problems are not shown.");
+		}
+		assertTrue(omittedReported);
+	}
+}
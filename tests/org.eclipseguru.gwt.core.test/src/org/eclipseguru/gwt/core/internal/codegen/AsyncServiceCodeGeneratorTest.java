@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.internal.codegen;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipseguru.gwt.core.internal.jdtext.TypeResolutionCache;
+
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.launching.JavaRuntime;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AsyncServiceCodeGenerator}.
+ */
+public class AsyncServiceCodeGeneratorTest {
+
+	private static List<String> getNames(final List<IMethod> methods) {
+		final List<String> names = new ArrayList<String>(methods.size());
+		for (final IMethod method : methods) {
+			names.add(method.getElementName());
+		}
+		return names;
+	}
+
+	private IProject project;
+
+	private IJavaProject javaProject;
+
+	@Before
+	public void setUp() throws Exception {
+		project = ResourcesPlugin.getWorkspace().getRoot().getProject("AsyncServiceCodeGeneratorTest");
+		project.create(null);
+		project.open(null);
+		final IProjectDescription description = project.getDescription();
+		description.setNatureIds(new String[] { JavaCore.NATURE_ID });
+		project.setDescription(description, null);
+		final IFolder sourceFolder = project.getFolder("src");
+		sourceFolder.create(true, true, null);
+		javaProject = JavaCore.create(project);
+		javaProject.setRawClasspath(new IClasspathEntry[] { JavaCore.newSourceEntry(sourceFolder.getFullPath()), JavaRuntime.getDefaultJREContainerEntry() }, project.getFolder("bin").getFullPath(), null);
+		final IFolder packageFolder = sourceFolder.getFolder("com");
+		packageFolder.create(true, true, null);
+		packageFolder.getFile("Base.java").create(new ByteArrayInputStream("package com;\npublic interface Base {\n\tvoid b2();\n\tvoid b1(String s);\n}\n".getBytes()), true, null);
+		packageFolder.getFile("Service.java").create(new ByteArrayInputStream("package com;\npublic interface Service extends Base {\n\tString z();\n\tvoid a(String s);\n\tint m(int i);\n\tvoid b1(String s);\n\tvoid a(int i);\n}\n".getBytes()), true, null);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		project.delete(true, true, null);
+	}
+
+	@Test
+	public void batchMethodsMatchJavaModelMethods() throws Exception {
+		final IType service = javaProject.findType("com.Service");
+		final List<IMethod> javaModelMethods = new ArrayList<IMethod>();
+		AsyncServiceCodeGenerator.collectAllInterfaceAndSuperMethods(service, javaModelMethods, new HashSet<String>(), new TypeResolutionCache());
+		assertEquals(Arrays.asList("z", "a", "m", "b1", "a", "b2"), getNames(javaModelMethods));
+
+		final IMethod[] batchMethods = AsyncServiceCodeGenerator.collectMethods(Collections.singleton(service), null).get(service);
+		assertEquals(javaModelMethods, Arrays.asList(batchMethods));
+	}
+}
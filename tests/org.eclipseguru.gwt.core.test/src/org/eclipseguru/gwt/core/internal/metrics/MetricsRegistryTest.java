@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2006, 2010 EclipseGuru and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     EclipseGuru - initial API and implementation
+ *******************************************************************************/
+package org.eclipseguru.gwt.core.internal.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link MetricsRegistry}.
+ */
+public class MetricsRegistryTest {
+
+	private static String writePrometheus(final MetricsRegistry registry) throws Exception {
+		final StringWriter writer = new StringWriter();
+		registry.writePrometheus(writer);
+		return writer.toString();
+	}
+
+	@Test
+	public void countersAreWrittenWithLabels() throws Exception {
+		final MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("gwt_compiles_total", "Module compiles", "module", "com.example.App").add(2);
+		registry.counter("gwt_compiles_total", "Module compiles", "module", "com.example.Other").increment();
+		registry.counter("gwt_builds_total", "Builds").increment();
+
+		assertEquals("# HELP gwt_builds_total Builds\n" //
+				+ "# TYPE gwt_builds_total counter\n" //
+				+ "gwt_builds_total 1\n" //
+				+ "# HELP gwt_compiles_total Module compiles\n" //
+				+ "# TYPE gwt_compiles_total counter\n" //
+				+ "gwt_compiles_total{module=\"com.example.App\"} 2\n" //
+				+ "gwt_compiles_total{module=\"com.example.Other\"} 1\n", writePrometheus(registry));
+	}
+
+	@Test
+	public void histogramsAreWrittenWithCumulativeBuckets() throws Exception {
+		final MetricsRegistry registry = new MetricsRegistry();
+		final Histogram histogram = registry.histogram("gwt_compile_seconds", "Module compile time", new double[] { 1, 2.5, 10 }, "module", "com.example.App");
+		histogram.observe(0.5);
+		histogram.observe(2.5);
+		histogram.observe(30);
+
+		assertEquals("# HELP gwt_compile_seconds Module compile time\n" //
+				+ "# TYPE gwt_compile_seconds histogram\n" //
+				+ "gwt_compile_seconds_bucket{module=\"com.example.App\",le=\"1\"} 1\n" //
+				+ "gwt_compile_seconds_bucket{module=\"com.example.App\",le=\"2.5\"} 2\n" //
+				+ "gwt_compile_seconds_bucket{module=\"com.example.App\",le=\"10\"} 2\n" //
+				+ "gwt_compile_seconds_bucket{module=\"com.example.App\",le=\"+Inf\"} 3\n" //
+				+ "gwt_compile_seconds_sum{module=\"com.example.App\"} 33\n" //
+				+ "gwt_compile_seconds_count{module=\"com.example.App\"} 3\n", writePrometheus(registry));
+	}
+
+	@Test
+	public void histogramsWithoutLabels() throws Exception {
+		final MetricsRegistry registry = new MetricsRegistry();
+		registry.histogram("gwt_build_seconds", "Build time", new double[] { 1 }).observe(0.25);
+
+		assertEquals("# HELP gwt_build_seconds Build time\n" //
+				+ "# TYPE gwt_build_seconds histogram\n" //
+				+ "gwt_build_seconds_bucket{le=\"1\"} 1\n" //
+				+ "gwt_build_seconds_bucket{le=\"+Inf\"} 1\n" //
+				+ "gwt_build_seconds_sum 0.25\n" //
+				+ "gwt_build_seconds_count 1\n", writePrometheus(registry));
+	}
+
+	@Test
+	public void labelValuesAndHelpAreEscaped() throws Exception {
+		final MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("gwt_errors_total", "Errors\nby \\ message", "message", "a \"quoted\"\nvalue\\").increment();
+
+		assertEquals("# HELP gwt_errors_total Errors\\nby \\\\ message\n" //
+				+ "# TYPE gwt_errors_total counter\n" //
+				+ "gwt_errors_total{message=\"a \\\"quoted\\\"\\nvalue\\\\\"} 1\n", writePrometheus(registry));
+	}
+
+	@Test
+	public void metricsAreSharedByNameAndLabels() throws Exception {
+		final MetricsRegistry registry = new MetricsRegistry();
+		assertSame(registry.counter("gwt_compiles_total", "Module compiles", "module", "com.example.App"), registry.counter("gwt_compiles_total", "Module compiles", "module", "com.example.App"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nameCannotBeReusedForOtherType() throws Exception {
+		final MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("gwt_compiles_total", "Module compiles");
+		registry.histogram("gwt_compiles_total", "Module compiles", new double[] { 1 });
+	}
+}